@@ -45,7 +45,7 @@ import org.apache.batik.util.ApplicationSecurityEnforcer;
  * @author <a href="mailto:vhardy@apache.org">Vincent Hardy</a>
  * @version $Id$
  */
-public class Main implements SVGConverterController {
+public class Main implements SVGConverterTimingController {
     /**
      * URL for Squiggle's security policy file
      */
@@ -511,6 +511,15 @@ public class Main implements SVGConverterController {
     public static String CL_OPTION_SECURITY_OFF_DESCRIPTION
         = Messages.get("Main.cl.option.security.off.description", "No description");
 
+    /**
+     * Option to specify the number of files converted concurrently.
+     */
+    public static String CL_OPTION_THREADS
+        = Messages.get("Main.cl.option.threads", "-threads");
+
+    public static String CL_OPTION_THREADS_DESCRIPTION
+        = Messages.get("Main.cl.option.threads.description", "No description");
+
     /**
      * Static map containing all the option handlers able to analyze the
      * various options.
@@ -830,6 +839,22 @@ public class Main implements SVGConverterController {
                               return CL_OPTION_SECURITY_OFF_DESCRIPTION;
                           }
                       });
+
+        optionMap.put(CL_OPTION_THREADS,
+                      new SingleValueOptionHandler() {
+                          public void handleOption(String optionValue,
+                                                   SVGConverter c){
+                              try {
+                                  c.setThreads(Integer.parseInt(optionValue));
+                              } catch(NumberFormatException e){
+                                  throw new IllegalArgumentException();
+                              }
+                          }
+
+                          public String getOptionDescription(){
+                              return CL_OPTION_THREADS_DESCRIPTION;
+                          }
+                      });
     }
 
     /**
@@ -934,6 +959,7 @@ public class Main implements SVGConverterController {
             return;
         }
 
+        concurrent = c.getThreads() > 1;
         try {
             c.execute();
         } catch(SVGConverterException e){
@@ -1008,6 +1034,18 @@ public class Main implements SVGConverterController {
     public static final String MESSAGE_CONVERSION_SUCCESS
         = "Main.message.conversion.success";
 
+    public static final String MESSAGE_CONVERSION_TIME
+        = "Main.message.conversion.time";
+
+    public static final String MESSAGE_TASK_COMPLETED
+        = "Main.message.task.completed";
+
+    /**
+     * Whether the sources are converted concurrently, in which case
+     * each message is printed on its own line.
+     */
+    protected boolean concurrent;
+
     public boolean proceedWithComputedTask(Transcoder transcoder,
                                            Map hints,
                                            List sources,
@@ -1019,25 +1057,57 @@ public class Main implements SVGConverterController {
 
     public boolean proceedWithSourceTranscoding(SVGConverterSource source,
                                                 File dest){
-        System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
-                                                new Object[]{source.toString(),
-                                                             dest.toString()}));
+        if (!concurrent) {
+            System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
+                                                    new Object[]{source.toString(),
+                                                                 dest.toString()}));
+        }
         return true;
     }
 
     public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
                                                      File dest,
                                                      String errorCode){
-        System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_FAILED,
-                                                  new Object[]{errorCode}));
+        String msg = Messages.formatMessage(MESSAGE_CONVERSION_FAILED,
+                                            new Object[]{errorCode});
+        if (concurrent) {
+            msg = Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
+                                         new Object[]{source.toString(),
+                                                      dest.toString()}) + msg;
+        }
+        System.out.println(msg);
 
         return true;
     }
 
     public void onSourceTranscodingSuccess(SVGConverterSource source,
                                            File dest){
-        System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_SUCCESS,
-                                                  null));
+        if (!concurrent) {
+            System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_SUCCESS,
+                                                      null));
+        }
+    }
+
+    public void onSourceTranscodingTime(SVGConverterSource source,
+                                        File dest,
+                                        long time){
+        if (concurrent) {
+            System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_TIME,
+                                                      new Object[]{source.toString(),
+                                                                   dest.toString(),
+                                                                   "" + time}));
+        }
+    }
+
+    public void onTaskCompleted(List sources, List dest, long time){
+        if (concurrent) {
+            int n = sources.size();
+            String rate = (time > 0) ? "" + (n * 1000L / time) : "-";
+            System.out.println(Messages.formatMessage(MESSAGE_TASK_COMPLETED,
+                                                      new Object[]{"" + n,
+                                                                   "" + time,
+                                                                   rate}));
+        }
     }
 }
 
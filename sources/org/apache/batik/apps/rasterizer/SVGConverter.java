@@ -40,6 +40,7 @@ import org.apache.batik.transcoder.image.ImageTranscoder;
 import org.apache.batik.transcoder.image.JPEGTranscoder;
 import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * This application can be used to convert SVG images to raster images.
@@ -90,6 +91,7 @@ import org.apache.batik.util.ParsedURL;
  *     SVG documents.</li>
  * <li>pixelUnitToMillimeter: defines the size of a pixel in millimeters
  *     to use when processing the SVG documents.</li>
+ * <li>threads: the number of sources converted at the same time.</li>
  * </ul>
  *
  * @version $Id$
@@ -280,6 +282,9 @@ public class SVGConverter {
     /** Contents of <code>fileset</code> elements. */
     protected List files = new ArrayList();
 
+    /** Number of sources converted concurrently */
+    protected int threads = 1;
+
     /**
      * Controls some aspects of the converter's operation,
      *  such as whether or not it should proceed in some
@@ -649,6 +654,23 @@ public class SVGConverter {
         return securityOff;
     }
 
+    /**
+     * Sets the number of sources converted at the same time, each
+     * thread using its own transcoder.  When more than one thread is
+     * used, the methods of the {@link SVGConverterController} may be
+     * called concurrently.
+     */
+    public void setThreads(int threads) throws IllegalArgumentException {
+        if (threads < 1){
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
     /**
      * Returns true if f is a File. <code>f</code> is found to be a file if
      * it exists and is a file. If it does not exist, it is declared
@@ -706,15 +728,92 @@ public class SVGConverter {
             return;
         }
 
-        // Convert files one by one
-        for(int i = 0 ; i < sources.size() ; i++) {
-            // Get the file from the vector.
-            SVGConverterSource currentFile
-                = (SVGConverterSource)sources.get(i);
-            File outputFile  = (File)dstFiles.get(i);
+        long start = System.currentTimeMillis();
+        if (threads > 1 && sources.size() > 1) {
+            transcodeConcurrently(sources, dstFiles, transcoder, hints);
+        } else {
+            // Convert files one by one
+            for(int i = 0 ; i < sources.size() ; i++) {
+                // Get the file from the vector.
+                SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                File outputFile  = (File)dstFiles.get(i);
+
+                createOutputDir(outputFile);
+                transcode(currentFile, outputFile, transcoder);
+            }
+        }
+        if (controller instanceof SVGConverterTimingController) {
+            ((SVGConverterTimingController)controller).onTaskCompleted
+                (sources, dstFiles, System.currentTimeMillis() - start);
+        }
+    }
 
-            createOutputDir(outputFile);
-            transcode(currentFile, outputFile, transcoder);
+    /**
+     * Converts the sources using <code>threads</code> threads. Each
+     * thread takes the next source to convert until there are none
+     * left, or until the controller asks to stop.
+     */
+    protected void transcodeConcurrently(final List sources,
+                                         final List dstFiles,
+                                         Transcoder transcoder,
+                                         final Map hints)
+        throws SVGConverterException {
+        // Create the output directories beforehand, as several threads
+        // creating the same directory would fail.
+        for(int i = 0 ; i < dstFiles.size() ; i++) {
+            createOutputDir((File)dstFiles.get(i));
+        }
+
+        final ThreadLocal transcoders = new ThreadLocal() {
+                protected Object initialValue() {
+                    Transcoder t = destinationType.getTranscoder();
+                    t.setTranscodingHints(hints);
+                    return t;
+                }
+            };
+        transcoders.set(transcoder);
+
+        final int[] next = new int[1];
+        final SVGConverterException[] error = new SVGConverterException[1];
+        Runnable worker = new Runnable() {
+                public void run() {
+                    Transcoder t = (Transcoder)transcoders.get();
+                    for (;;) {
+                        int i;
+                        synchronized (next) {
+                            if (error[0] != null || next[0] >= sources.size())
+                                return;
+                            i = next[0]++;
+                        }
+                        try {
+                            transcode((SVGConverterSource)sources.get(i),
+                                      (File)dstFiles.get(i), t);
+                        } catch (SVGConverterException e) {
+                            synchronized (next) {
+                                if (error[0] == null)
+                                    error[0] = e;
+                            }
+                            return;
+                        }
+                    }
+                }
+            };
+
+        int n = Math.min(threads, sources.size());
+        Runnable[] workers = new Runnable[n];
+        for (int i = 0; i < n; i++) {
+            workers[i] = worker;
+        }
+        WorkerPool pool = new WorkerPool(n - 1, "Batik Rasterizer");
+        try {
+            pool.invokeAll(workers);
+        } finally {
+            pool.dispose();
+        }
+
+        if (error[0] != null) {
+            throw error[0];
         }
     }
 
@@ -948,6 +1047,7 @@ public class SVGConverter {
                                                      outputFile)){
             return;
         }
+        long start = System.currentTimeMillis();
 
         try {
             if (inputFile.isSameAs(outputFile.getPath())) {
@@ -1029,6 +1129,12 @@ public class SVGConverter {
 
         if (success){
             controller.onSourceTranscodingSuccess(inputFile, outputFile);
+            if (controller instanceof SVGConverterTimingController) {
+                ((SVGConverterTimingController)controller)
+                    .onSourceTranscodingTime
+                    (inputFile, outputFile,
+                     System.currentTimeMillis() - start);
+            }
         }
     }
 
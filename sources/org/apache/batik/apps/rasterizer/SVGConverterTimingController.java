@@ -0,0 +1,52 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.apps.rasterizer;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A <code>SVGConverterController</code> which is also told how long
+ * the <code>SVGConverter</code> took to transcode each source and the
+ * whole task.  The converter only calls these methods on controllers
+ * implementing this interface.
+ *
+ * @version $Id$
+ */
+public interface SVGConverterTimingController extends SVGConverterController {
+    /**
+     * Invoked after <code>onSourceTranscodingSuccess</code> with the
+     * time it took to transcode the input source.
+     *
+     * @param time the transcoding time, in milliseconds.
+     */
+    void onSourceTranscodingTime(SVGConverterSource source,
+                                 File dest,
+                                 long time);
+
+    /**
+     * Invoked when the rasterizer is done with all the sources of
+     * the task, whether they were successfully transcoded or not.
+     *
+     * @param sources list of SVG sources of the task.
+     * @param dest list of destination files of the task.
+     * @param time the total time taken by the task, in milliseconds.
+     */
+    void onTaskCompleted(List sources, List dest, long time);
+}
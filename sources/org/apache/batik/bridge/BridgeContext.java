@@ -235,6 +235,17 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      */
     protected int dynamicStatus = STATIC;
 
+    /**
+     * Whether 'use' elements which reference the same content share
+     * their GVT tree, in static documents.
+     */
+    protected boolean instancing;
+
+    /**
+     * The GVT trees shared by 'use' elements, by instance key.
+     */
+    protected Map useTemplates;
+
     /**
      * The update manager.
      */
@@ -664,6 +675,48 @@ public class BridgeContext implements ErrorConstants, CSSContext {
             setDynamicState(STATIC);
     }
 
+    /**
+     * Tells whether 'use' elements which reference the same content with
+     * the same computed style share their GVT tree.
+     */
+    public boolean isInstancing() {
+        return instancing;
+    }
+
+    /**
+     * Sets whether 'use' elements which reference the same content with
+     * the same computed style share their GVT tree, instead of each one
+     * cloning and building the referenced content.  Sharing only takes
+     * place in STATIC documents, where the tree is never modified, and
+     * the sharing 'use' elements have no shadow tree.  Call this method
+     * before the build phase.
+     */
+    public void setInstancing(boolean instancing) {
+        this.instancing = instancing;
+    }
+
+    /**
+     * Returns the GVT tree shared by the 'use' elements with the given
+     * instance key, or null.
+     */
+    public GraphicsNode getUseTemplate(Object key) {
+        if (useTemplates == null) {
+            return null;
+        }
+        return (GraphicsNode)useTemplates.get(key);
+    }
+
+    /**
+     * Records the GVT tree to share between the 'use' elements with the
+     * given instance key.
+     */
+    public void putUseTemplate(Object key, GraphicsNode node) {
+        if (useTemplates == null) {
+            useTemplates = new HashMap();
+        }
+        useTemplates.put(key, node);
+    }
+
     /**
      * Returns the update manager, if the bridge supports dynamic features.
      */
@@ -1422,6 +1475,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      */
     public void dispose() {
         clearChildContexts();
+        useTemplates = null;
 
         synchronized (eventListenerSet) {
             // remove all listeners added by Bridges
@@ -25,16 +25,14 @@ import java.awt.geom.Point2D;
 import org.apache.batik.css.engine.SVGCSSEngine;
 import org.apache.batik.dom.svg.AnimatedLiveAttributeValue;
 import org.apache.batik.dom.svg.LiveAttributeException;
-import org.apache.batik.dom.svg.SVGAnimatedPathDataSupport;
 import org.apache.batik.dom.svg.SVGOMAnimatedPathData;
 import org.apache.batik.dom.svg.SVGOMPathElement;
 import org.apache.batik.dom.svg.SVGPathContext;
 import org.apache.batik.ext.awt.geom.PathLength;
 import org.apache.batik.gvt.ShapeNode;
-import org.apache.batik.parser.AWTPathProducer;
+import org.apache.batik.parser.PackedPathProducer;
 
 import org.w3c.dom.Element;
-import org.w3c.dom.svg.SVGPathSegList;
 
 /**
  * Bridge class for the &lt;path> element.
@@ -82,18 +80,18 @@ public class SVGPathElementBridge extends SVGDecoratedShapeElementBridge
                               ShapeNode shapeNode) {
 
         SVGOMPathElement pe = (SVGOMPathElement) e;
-        AWTPathProducer app = new AWTPathProducer();
+        PackedPathProducer ppp = new PackedPathProducer();
+        Shape shape = null;
         try {
             // 'd' attribute - required
             SVGOMAnimatedPathData _d = pe.getAnimatedPathData();
-            _d.check();
-            SVGPathSegList p = _d.getAnimatedPathSegList();
-            app.setWindingRule(CSSUtilities.convertFillRule(e));
-            SVGAnimatedPathDataSupport.handlePathSegList(p, app);
+            ppp.setWindingRule(CSSUtilities.convertFillRule(e));
+            _d.handlePathData(ppp);
+            shape = ppp.getShape();
         } catch (LiveAttributeException ex) {
             throw new BridgeException(ctx, ex);
         } finally {
-            shapeNode.setShape(app.getShape());
+            shapeNode.setShape(shape);
         }
     }
 
@@ -36,6 +36,8 @@ import org.apache.batik.gvt.AbstractGraphicsNode;
 import org.apache.batik.gvt.RootGraphicsNode;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.PatternPaint;
+import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
+import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
 import org.apache.batik.util.ParsedURL;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -78,14 +80,18 @@ public class SVGPatternElementBridge extends AnimatableGenericSVGBridge
 
 
         // extract pattern content
-        RootGraphicsNode patternContentNode;
-        patternContentNode = (RootGraphicsNode)
-            ctx.getElementData(patternElement);
-
-        if (patternContentNode == null) {
-            patternContentNode = extractPatternContent(patternElement, ctx);
-            ctx.setElementData(patternElement, patternContentNode);
+        PatternContent content;
+        content = (PatternContent)ctx.getElementData(patternElement);
+
+        if (content == null) {
+            content = new PatternContent
+                (extractPatternContent(patternElement, ctx));
+            if (ctx.isDynamic() && content.node != null) {
+                content.node.addTreeGraphicsNodeChangeListener(content);
+            }
+            ctx.setElementData(patternElement, content);
         }
+        RootGraphicsNode patternContentNode = content.node;
         if (patternContentNode == null) {
             return null; // no content means no paint
         }
@@ -221,11 +227,78 @@ public class SVGPatternElementBridge extends AnimatableGenericSVGBridge
 
         
 
+        // The paints of the same content, placed and faded the same
+        // way, share their tiles.
+        Object tileKey = new TileKey(content.version,
+                                     patternContentTransform,
+                                     opacity);
+
         return new PatternPaint(gn,
                                 patternRegion,
                                 !overflowIsHidden,
-                                patternTransform);
+                                patternTransform,
+                                tileKey);
+
+    }
+
+    /**
+     * The content of a pattern element, kept as the element data of the
+     * element.  In dynamic documents it listens to the changes of the
+     * content so that the paints created afterwards do not share the
+     * tiles of the previous content.
+     */
+    protected static class PatternContent extends GraphicsNodeChangeAdapter {
+
+        /**
+         * The content, or null if the pattern has none.
+         */
+        protected RootGraphicsNode node;
+
+        /**
+         * An object replaced each time the content changes.
+         */
+        protected Object version = new Object();
+
+        public PatternContent(RootGraphicsNode node) {
+            this.node = node;
+        }
 
+        public void changeCompleted(GraphicsNodeChangeEvent gnce) {
+            version = new Object();
+        }
+    }
+
+    /**
+     * The tile key of a pattern paint: the version of the content, the
+     * transform of the content and the opacity.  It does not reference
+     * the content so the tile cache does not keep documents alive.
+     */
+    protected static class TileKey {
+
+        protected Object version;
+        protected AffineTransform contentTransform;
+        protected float opacity;
+
+        public TileKey(Object version, AffineTransform contentTransform,
+                       float opacity) {
+            this.version = version;
+            this.contentTransform = (AffineTransform)contentTransform.clone();
+            this.opacity = opacity;
+        }
+
+        public int hashCode() {
+            int h = version.hashCode() * 31 + contentTransform.hashCode();
+            return h * 31 + Float.floatToIntBits(opacity);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey))
+                return false;
+            TileKey k = (TileKey)o;
+            return version == k.version
+                && opacity == k.opacity
+                && contentTransform.equals(k.contentTransform);
+        }
     }
 
     /**
@@ -22,7 +22,12 @@ import java.awt.Cursor;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.batik.css.engine.CSSEngine;
+import org.apache.batik.css.engine.value.Value;
+import org.apache.batik.css.engine.value.ValueManager;
 import org.apache.batik.dom.events.NodeEventTarget;
 import org.apache.batik.dom.svg.AbstractSVGAnimatedLength;
 import org.apache.batik.dom.svg.AnimatedLiveAttributeValue;
@@ -33,6 +38,7 @@ import org.apache.batik.dom.svg.SVGOMUseElement;
 import org.apache.batik.dom.svg.SVGOMUseShadowRoot;
 import org.apache.batik.gvt.CompositeGraphicsNode;
 import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.InstanceGraphicsNode;
 import org.apache.batik.util.XMLConstants;
 
 import org.w3c.dom.Attr;
@@ -134,6 +140,26 @@ public class SVGUseElementBridge extends AbstractGraphicsNodeBridge {
             subCtx = (BridgeContext)refDocument.getCSSEngine().getCSSContext();
             theCtx = subCtx;
         }
+
+        // In static documents, the 'use' elements which reference the
+        // same content in the same conditions share its GVT tree.
+        Object instanceKey = null;
+        if (ctx.isInstancing() && !ctx.isInteractive()) {
+            instanceKey = getInstanceKey(ctx, ue, refElement);
+            GraphicsNode template = ctx.getUseTemplate(instanceKey);
+            if (template != null) {
+                if (gn == null) {
+                    gn = new CompositeGraphicsNode();
+                } else {
+                    int s = gn.size();
+                    for (int i=0; i<s; i++)
+                        gn.remove(0);
+                }
+                gn.getChildren().add(new InstanceGraphicsNode(template));
+                setUseProperties(ctx, e, gn);
+                return gn;
+            }
+        }
             
         // import or clone the referenced element in current document
         Element localRefElement;
@@ -219,23 +245,11 @@ public class SVGUseElementBridge extends AbstractGraphicsNodeBridge {
 
         gn.getChildren().add(refNode);
 
-        gn.setTransform(computeTransform((SVGTransformable) e, ctx));
-
-        // set an affine transform to take into account the (x, y)
-        // coordinates of the <use> element
-
-        // 'visibility'
-        gn.setVisible(CSSUtilities.convertVisibility(e));
-
-        RenderingHints hints = null;
-        hints = CSSUtilities.convertColorRendering(e, hints);
-        if (hints != null)
-            gn.setRenderingHints(hints);
+        if (instanceKey != null && refNode != null) {
+            ctx.putUseTemplate(instanceKey, refNode);
+        }
 
-        // 'enable-background'
-        Rectangle2D r = CSSUtilities.convertEnableBackground(e);
-        if (r != null)
-            gn.setBackgroundEnable(r);
+        setUseProperties(ctx, e, gn);
 
         if (l != null) {
             // Remove event listeners
@@ -297,6 +311,73 @@ public class SVGUseElementBridge extends AbstractGraphicsNodeBridge {
         return gn;
     }
 
+    /**
+     * Sets the transform, visibility, rendering hints and background of
+     * the composite graphics node of the specified 'use' element.
+     */
+    protected void setUseProperties(BridgeContext ctx, Element e,
+                                    CompositeGraphicsNode gn) {
+        gn.setTransform(computeTransform((SVGTransformable) e, ctx));
+
+        // set an affine transform to take into account the (x, y)
+        // coordinates of the <use> element
+
+        // 'visibility'
+        gn.setVisible(CSSUtilities.convertVisibility(e));
+
+        RenderingHints hints = null;
+        hints = CSSUtilities.convertColorRendering(e, hints);
+        if (hints != null)
+            gn.setRenderingHints(hints);
+
+        // 'enable-background'
+        Rectangle2D r = CSSUtilities.convertEnableBackground(e);
+        if (r != null)
+            gn.setBackgroundEnable(r);
+    }
+
+    /**
+     * Returns the key under which the GVT tree built for the content
+     * referenced by the specified 'use' element can be shared.  Two
+     * 'use' elements get equal keys when they reference the same
+     * element, in the same viewport, with the same width and height
+     * (which override those of a referenced 'svg' or 'symbol') and the
+     * same computed values for all the properties.  The content gets
+     * the inherited properties of the 'use' element, but also any
+     * other one it sets to 'inherit' (such as 'opacity' or 'filter').
+     */
+    protected Object getInstanceKey(BridgeContext ctx, SVGOMUseElement ue,
+                                    Element refElement) {
+        List key = new ArrayList(5);
+        key.add(refElement);
+        key.add(ctx.getViewport(ue));
+
+        String ln = refElement.getLocalName();
+        if (SVG_SYMBOL_TAG.equals(ln) || SVG_SVG_TAG.equals(ln)) {
+            try {
+                SVGOMAnimatedLength al = (SVGOMAnimatedLength) ue.getWidth();
+                key.add(al.isSpecified()
+                        ? al.getAnimVal().getValueAsString() : null);
+                al = (SVGOMAnimatedLength) ue.getHeight();
+                key.add(al.isSpecified()
+                        ? al.getAnimVal().getValueAsString() : null);
+            } catch (LiveAttributeException ex) {
+                throw new BridgeException(ctx, ex);
+            }
+        }
+
+        CSSEngine eng = ((SVGOMDocument)ue.getOwnerDocument()).getCSSEngine();
+        ValueManager[] vms = eng.getValueManagers();
+        StringBuffer sb = new StringBuffer(512);
+        for (int i = 0; i < vms.length; i++) {
+            Value v = eng.getComputedStyle(ue, null, i);
+            sb.append(v.getCssText());
+            sb.append(';');
+        }
+        key.add(sb.toString());
+        return key;
+    }
+
     public void dispose() {
         if (l != null) {
             // Remove event listeners
@@ -42,6 +42,7 @@ import org.apache.batik.util.EventDispatcher;
 import org.apache.batik.util.XMLConstants;
 import org.apache.batik.util.EventDispatcher.Dispatcher;
 import org.apache.batik.util.RunnableQueue;
+import org.apache.batik.util.RunnableQueuePool;
 import org.w3c.dom.Document;
 import org.w3c.dom.events.DocumentEvent;
 import org.w3c.dom.events.EventTarget;
@@ -158,7 +159,7 @@ public class UpdateManager  {
 
         document = doc;
 
-        updateRunnableQueue = RunnableQueue.createRunnableQueue();
+        updateRunnableQueue = createUpdateRunnableQueue();
         runHandler = createRunHandler();
         updateRunnableQueue.setRunHandler(runHandler);
 
@@ -844,6 +845,19 @@ public class UpdateManager  {
 
 
     // RunnableQueue.RunHandler /////////////////////////////////////////
+
+    /**
+     * Creates the queue the updates are run in: a queue of the default
+     * RunnableQueuePool if there is one, or a queue with its own thread.
+     */
+    protected RunnableQueue createUpdateRunnableQueue() {
+        RunnableQueuePool pool = RunnableQueuePool.getDefault();
+        if (pool != null) {
+            return pool.createRunnableQueue();
+        }
+        return RunnableQueue.createRunnableQueue();
+    }
+
     protected RunnableQueue.RunHandler createRunHandler() {
         return new UpdateManagerRunHander();
     }
@@ -38,6 +38,7 @@ import org.apache.batik.css.engine.value.ValueManager;
 import org.apache.batik.css.parser.ExtendedParser;
 import org.apache.batik.util.CSSConstants;
 import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.XMLConstants;
 
 import org.w3c.css.sac.CSSException;
 import org.w3c.css.sac.DocumentHandler;
@@ -118,6 +119,12 @@ public abstract class CSSEngine {
         return null;
     }
 
+    /**
+     * The number of preceding siblings examined when looking for a
+     * style map to share.
+     */
+    protected static final int STYLE_SHARING_CANDIDATES = 8;
+
     /**
      * The user agent used for showing error messages.
      */
@@ -718,16 +725,16 @@ public abstract class CSSEngine {
 
         // Apply the user-agent style-sheet to the result.
         if (userAgentStyleSheet != null) {
-            ArrayList rules = new ArrayList();
+            MatchingRules rules = new MatchingRules();
             addMatchingRules(rules, userAgentStyleSheet, elt, pseudo);
-            addRules(elt, pseudo, result, rules, StyleMap.USER_AGENT_ORIGIN);
+            addRules(result, rules, StyleMap.USER_AGENT_ORIGIN);
         }
 
         // Apply the user properties style-sheet to the result.
         if (userStyleSheet != null) {
-            ArrayList rules = new ArrayList();
+            MatchingRules rules = new MatchingRules();
             addMatchingRules(rules, userStyleSheet, elt, pseudo);
-            addRules(elt, pseudo, result, rules, StyleMap.USER_ORIGIN);
+            addRules(result, rules, StyleMap.USER_ORIGIN);
         }
 
         element = elt;
@@ -786,7 +793,7 @@ public abstract class CSSEngine {
             List snodes = eng.getStyleSheetNodes();
             int slen = snodes.size();
             if (slen > 0) {
-                ArrayList rules = new ArrayList();
+                MatchingRules rules = new MatchingRules();
                 for (int i = 0; i < slen; i++) {
                     CSSStyleSheetNode ssn = (CSSStyleSheetNode)snodes.get(i);
                     StyleSheet ss = ssn.getCSSStyleSheet();
@@ -798,7 +805,7 @@ public abstract class CSSEngine {
                         addMatchingRules(rules, ss, elt, pseudo);
                     }
                 }
-                addRules(elt, pseudo, result, rules, StyleMap.AUTHOR_ORIGIN);
+                addRules(result, rules, StyleMap.AUTHOR_ORIGIN);
             }
 
             // Apply the inline style to the result.
@@ -865,7 +872,12 @@ public abstract class CSSEngine {
                                   int propidx) {
         StyleMap sm = elt.getComputedStyleMap(pseudo);
         if (sm == null) {
-            sm = getCascadedStyleMap(elt, pseudo);
+            if (pseudo == null) {
+                sm = getSharedStyleMap(elt);
+            }
+            if (sm == null) {
+                sm = getCascadedStyleMap(elt, pseudo);
+            }
             elt.setComputedStyleMap(pseudo, sm);
         }
 
@@ -907,6 +919,160 @@ public abstract class CSSEngine {
         return result;
     }
 
+    /**
+     * Returns the style map of a preceding sibling of the given element
+     * which is guaranteed to hold the same style, or null.  The
+     * returned map is marked as shared, so it is copied by the engine
+     * before being updated for one of the elements using it.
+     */
+    protected StyleMap getSharedStyleMap(CSSStylableElement elt) {
+        if (!isStyleShareable(elt)) {
+            return null;
+        }
+        int n = 0;
+        for (Node nd = getCSSPreviousSibling(elt);
+             nd != null && n < STYLE_SHARING_CANDIDATES;
+             nd = getCSSPreviousSibling(nd)) {
+            if (!(nd instanceof CSSStylableElement)) {
+                continue;
+            }
+            n++;
+            CSSStylableElement sib = (CSSStylableElement)nd;
+            StyleMap sm = sib.getComputedStyleMap(null);
+            if (sm != null &&
+                !sm.hasFixedCascadedValues() &&
+                haveSameStyleInputs(elt, sib)) {
+                sm.setShared(true);
+                return sm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the style map of the given element may be shared with its
+     * siblings.  Subclasses can exclude the elements whose computed
+     * values depend on more than their parent and their cascaded
+     * values.
+     */
+    protected boolean isStyleShareable(CSSStylableElement elt) {
+        return true;
+    }
+
+    /**
+     * Tells whether two children of the same element have the same
+     * cascaded style: same name, class, style attribute, presentational
+     * hints and override style, and no style rule telling them apart.
+     */
+    protected boolean haveSameStyleInputs(CSSStylableElement e1,
+                                          CSSStylableElement e2) {
+        if (!isStyleShareable(e2)) {
+            return false;
+        }
+        String ns1 = e1.getNamespaceURI();
+        String ns2 = e2.getNamespaceURI();
+        if (!e1.getNodeName().equals(e2.getNodeName()) ||
+            (ns1 == null ? ns2 != null : !ns1.equals(ns2))) {
+            return false;
+        }
+        if (!e1.getCSSClass().equals(e2.getCSSClass())) {
+            return false;
+        }
+        if (styleLocalName != null &&
+            !e1.getAttributeNS(styleNamespaceURI, styleLocalName).equals
+            (e2.getAttributeNS(styleNamespaceURI, styleLocalName))) {
+            return false;
+        }
+        // Relative URIs are resolved against xml:base.
+        if (!e1.getAttributeNS(XMLConstants.XML_NAMESPACE_URI,
+                               XMLConstants.XML_BASE_ATTRIBUTE).equals
+            (e2.getAttributeNS(XMLConstants.XML_NAMESPACE_URI,
+                               XMLConstants.XML_BASE_ATTRIBUTE))) {
+            return false;
+        }
+        if (hasOverrideStyle(e1) || hasOverrideStyle(e2)) {
+            return false;
+        }
+
+        if (nonCSSPresentationalHints != null) {
+            NamedNodeMap attrs = e1.getAttributes();
+            int len = attrs.getLength();
+            int count = 0;
+            for (int i = 0; i < len; i++) {
+                Node attr = attrs.item(i);
+                String an = attr.getNodeName();
+                if (nonCSSPresentationalHints.contains(an)) {
+                    Node attr2 = e2.getAttributes().getNamedItem(an);
+                    if (attr2 == null ||
+                        !attr.getNodeValue().equals(attr2.getNodeValue())) {
+                        return false;
+                    }
+                    count++;
+                }
+            }
+            attrs = e2.getAttributes();
+            len = attrs.getLength();
+            for (int i = 0; i < len; i++) {
+                if (nonCSSPresentationalHints.contains
+                    (attrs.item(i).getNodeName())) {
+                    count--;
+                }
+            }
+            if (count != 0) {
+                return false;
+            }
+        }
+
+        if (userAgentStyleSheet != null &&
+            !userAgentStyleSheet.getRuleIndex().canShareStyle(e1, e2)) {
+            return false;
+        }
+        if (userStyleSheet != null &&
+            !userStyleSheet.getRuleIndex().canShareStyle(e1, e2)) {
+            return false;
+        }
+        CSSEngine eng = cssContext.getCSSEngineForElement(e1);
+        if (eng != cssContext.getCSSEngineForElement(e2)) {
+            return false;
+        }
+        List snodes = eng.getStyleSheetNodes();
+        int slen = snodes.size();
+        for (int i = 0; i < slen; i++) {
+            CSSStyleSheetNode ssn = (CSSStyleSheetNode)snodes.get(i);
+            StyleSheet ss = ssn.getCSSStyleSheet();
+            if (ss != null && !ss.getRuleIndex().canShareStyle(e1, e2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the given element has override style declarations.
+     */
+    protected static boolean hasOverrideStyle(CSSStylableElement elt) {
+        StyleDeclarationProvider p = elt.getOverrideStyleDeclarationProvider();
+        if (p == null) {
+            return false;
+        }
+        StyleDeclaration sd = p.getStyleDeclaration();
+        return sd != null && sd.size() > 0;
+    }
+
+    /**
+     * Returns the computed style map of the given element, first
+     * replacing it with a private copy if it is shared with other
+     * elements.
+     */
+    protected StyleMap getUnsharedStyleMap(CSSStylableElement elt) {
+        StyleMap sm = elt.getComputedStyleMap(null);
+        if (sm != null && sm.isShared()) {
+            sm = new StyleMap(sm);
+            elt.setComputedStyleMap(null, sm);
+        }
+        return sm;
+    }
+
     /**
      * Returns the document CSSStyleSheetNodes in a list. This list is
      * updated as the document is modified.
@@ -1298,6 +1464,41 @@ public abstract class CSSEngine {
         }
     }
 
+    /**
+     * Adds the rules matching the element/pseudo-element of given style
+     * sheet to the list, with the specificity of the selector which
+     * matched.  Only the rules found in the style sheet's
+     * {@link RuleIndex} for the element are tested.
+     */
+    protected void addMatchingRules(MatchingRules rules,
+                                    StyleSheet ss,
+                                    Element elt,
+                                    String pseudo) {
+        List cands = ss.getRuleIndex().getCandidates(elt);
+        StyleRule last = null;
+        int len = cands.size();
+        for (int i = 0; i < len; i++) {
+            RuleIndex.Entry e = (RuleIndex.Entry)cands.get(i);
+            if (e.mediaRule != null) {
+                if (mediaMatch(e.mediaRule.getMediaList())) {
+                    addMatchingRules(rules, e.mediaRule, elt, pseudo);
+                }
+                last = null;
+                continue;
+            }
+            if (e.selector.match(elt, pseudo)) {
+                int spec = e.selector.getSpecificity();
+                if (e.rule == last) {
+                    // Another selector of the same rule matched.
+                    rules.raiseLastSpecificity(spec);
+                } else {
+                    rules.add(e.rule, spec);
+                    last = e.rule;
+                }
+            }
+        }
+    }
+
     /**
      * Adds the rules matching the element/pseudo-element of given style
      * sheet to the list.
@@ -1343,31 +1544,43 @@ public abstract class CSSEngine {
                             short origin) {
         sortRules(rules, elt, pseudo);
         int rlen = rules.size();
+        for (int r = 0; r < rlen; r++) {
+            addRule(sm, (StyleRule)rules.get(r), origin);
+        }
+    }
 
+    /**
+     * Adds the given matching rules to the given style map, in order of
+     * increasing specificity.
+     */
+    protected void addRules(StyleMap sm, MatchingRules rules, short origin) {
+        rules.sort();
+        int rlen = rules.size;
+        for (int r = 0; r < rlen; r++) {
+            addRule(sm, rules.rules[r], origin);
+        }
+    }
+
+    /**
+     * Adds the declarations of the given rule to the given style map.
+     */
+    protected void addRule(StyleMap sm, StyleRule sr, short origin) {
+        StyleDeclaration sd = sr.getStyleDeclaration();
+        int len = sd.size();
         if (origin == StyleMap.AUTHOR_ORIGIN) {
-            for (int r = 0; r < rlen; r++) {
-                StyleRule sr = (StyleRule)rules.get(r);
-                StyleDeclaration sd = sr.getStyleDeclaration();
-                int len = sd.size();
-                for (int i = 0; i < len; i++) {
-                    putAuthorProperty(sm,
-                                      sd.getIndex(i),
-                                      sd.getValue(i),
-                                      sd.getPriority(i),
-                                      origin);
-                }
+            for (int i = 0; i < len; i++) {
+                putAuthorProperty(sm,
+                                  sd.getIndex(i),
+                                  sd.getValue(i),
+                                  sd.getPriority(i),
+                                  origin);
             }
         } else {
-            for (int r = 0; r < rlen; r++) {
-                StyleRule sr = (StyleRule)rules.get(r);
-                StyleDeclaration sd = sr.getStyleDeclaration();
-                int len = sd.size();
-                for (int i = 0; i < len; i++) {
-                    int idx = sd.getIndex(i);
-                    sm.putValue(idx, sd.getValue(i));
-                    sm.putImportant(idx, sd.getPriority(i));
-                    sm.putOrigin(idx, origin);
-                }
+            for (int i = 0; i < len; i++) {
+                int idx = sd.getIndex(i);
+                sm.putValue(idx, sd.getValue(i));
+                sm.putImportant(idx, sd.getPriority(i));
+                sm.putOrigin(idx, origin);
             }
         }
     }
@@ -1433,6 +1646,74 @@ public abstract class CSSEngine {
     return false;
     }
 
+    /**
+     * The rules matching an element, with the specificity of the
+     * selector they matched with.
+     */
+    protected static class MatchingRules {
+
+        /**
+         * The rules.
+         */
+        protected StyleRule[] rules = new StyleRule[8];
+
+        /**
+         * The specificities of the rules.
+         */
+        protected int[] specificities = new int[8];
+
+        /**
+         * The number of rules.
+         */
+        protected int size;
+
+        /**
+         * Appends a rule.
+         */
+        public void add(StyleRule r, int spec) {
+            if (size == rules.length) {
+                StyleRule[] t = new StyleRule[size * 2];
+                System.arraycopy(rules, 0, t, 0, size);
+                rules = t;
+                int[] ts = new int[size * 2];
+                System.arraycopy(specificities, 0, ts, 0, size);
+                specificities = ts;
+            }
+            rules[size] = r;
+            specificities[size] = spec;
+            size++;
+        }
+
+        /**
+         * Raises the specificity of the last rule to the given one, if
+         * it is higher.
+         */
+        public void raiseLastSpecificity(int spec) {
+            if (specificities[size - 1] < spec) {
+                specificities[size - 1] = spec;
+            }
+        }
+
+        /**
+         * Sorts the rules by increasing specificity, keeping the
+         * document order of rules with the same specificity.
+         */
+        public void sort() {
+            for (int i = 1; i < size; i++) {
+                StyleRule rule = rules[i];
+                int spec = specificities[i];
+                int j = i - 1;
+                while (j >= 0 && specificities[j] > spec) {
+                    rules[j + 1] = rules[j];
+                    specificities[j + 1] = specificities[j];
+                    j--;
+                }
+                rules[j + 1] = rule;
+                specificities[j + 1] = spec;
+            }
+        }
+    }
+
     /**
      * To parse a style declaration.
      */
@@ -2044,7 +2325,7 @@ public abstract class CSSEngine {
         if (!(node instanceof CSSStylableElement))
             return;
         CSSStylableElement elt = (CSSStylableElement)node;
-        StyleMap style = elt.getComputedStyleMap(null);
+        StyleMap style = getUnsharedStyleMap(elt);
         if (style != null) {
             boolean[] updated =
                 styleDeclarationUpdateHandler.updatedProperties;
@@ -2310,7 +2591,7 @@ public abstract class CSSEngine {
         String name = attrNS == null ? attr.getNodeName() : attr.getLocalName();
 
         CSSStylableElement elt = (CSSStylableElement) e;
-        StyleMap style = elt.getComputedStyleMap(null);
+        StyleMap style = getUnsharedStyleMap(elt);
         if (style != null) {
             if (attrNS == styleNamespaceURI
                     || attrNS != null && attrNS.equals(styleNamespaceURI)) {
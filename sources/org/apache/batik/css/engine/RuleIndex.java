@@ -0,0 +1,390 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.batik.css.engine.sac.AbstractDescendantSelector;
+import org.apache.batik.css.engine.sac.AbstractSiblingSelector;
+import org.apache.batik.css.engine.sac.CSSAndCondition;
+import org.apache.batik.css.engine.sac.CSSAttributeCondition;
+import org.apache.batik.css.engine.sac.CSSClassCondition;
+import org.apache.batik.css.engine.sac.CSSConditionalSelector;
+import org.apache.batik.css.engine.sac.CSSElementSelector;
+import org.apache.batik.css.engine.sac.CSSIdCondition;
+import org.apache.batik.css.engine.sac.CSSPseudoElementSelector;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+
+/**
+ * An index of the rules of a style-sheet, used to quickly find the
+ * rules which may apply to an element.
+ *
+ * <p>Each selector of a style rule is filed under the most specific
+ * key found in its rightmost compound selector: the id, else a class
+ * name, else the element name.  Selectors with none of these (and the
+ * nested @media and @import rules) are kept in a list of rules which
+ * must always be considered.  The candidates returned for an element
+ * must still be matched against it.</p>
+ *
+ * <p>The index also records what the rules can tell apart among the
+ * children of one element (see {@link #canShareStyle}), which the
+ * engine uses to share style maps between siblings.</p>
+ *
+ * @version $Id$
+ */
+public class RuleIndex {
+
+    /**
+     * An indexed selector, or a nested style-sheet.
+     */
+    protected static class Entry {
+
+        /**
+         * The index of the rule in the style-sheet.
+         */
+        protected int position;
+
+        /**
+         * The style rule, or null if this is a nested style-sheet.
+         */
+        protected StyleRule rule;
+
+        /**
+         * The selector of the style rule this entry stands for.
+         */
+        protected ExtendedSelector selector;
+
+        /**
+         * The nested @media or @import rule, if any.
+         */
+        protected MediaRule mediaRule;
+    }
+
+    /**
+     * Orders entries by position in the style-sheet.
+     */
+    protected static final Comparator POSITION_COMPARATOR = new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((Entry)o1).position - ((Entry)o2).position;
+            }
+        };
+
+    /**
+     * Maps ids to lists of entries.
+     */
+    protected HashMap ids = new HashMap();
+
+    /**
+     * Maps class names to lists of entries.
+     */
+    protected HashMap classes = new HashMap();
+
+    /**
+     * Maps element names to lists of entries.
+     */
+    protected HashMap names = new HashMap();
+
+    /**
+     * The entries to consider for every element.
+     */
+    protected List universal = new ArrayList();
+
+    /**
+     * The nested @media and @import rules.
+     */
+    protected List nestedRules = new ArrayList();
+
+    /**
+     * The attributes tested by the rightmost compound selectors.
+     */
+    protected HashSet attributes = new HashSet();
+
+    /**
+     * Whether the rules only depend on the element name, id, class and
+     * attributes of the element they apply to (besides its ancestors).
+     */
+    protected boolean siblingIndependent = true;
+
+    /**
+     * Creates an index of the rules currently in the given style-sheet.
+     */
+    public RuleIndex(StyleSheet ss) {
+        int len = ss.getSize();
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            switch (r.getType()) {
+            case StyleRule.TYPE:
+                StyleRule style = (StyleRule)r;
+                SelectorList sl = style.getSelectorList();
+                int slen = sl.getLength();
+                for (int j = 0; j < slen; j++) {
+                    Entry e = new Entry();
+                    e.position = i;
+                    e.rule = style;
+                    e.selector = (ExtendedSelector)sl.item(j);
+                    addEntry(e);
+                }
+                break;
+
+            case MediaRule.TYPE:
+            case ImportRule.TYPE:
+                Entry e = new Entry();
+                e.position = i;
+                e.mediaRule = (MediaRule)r;
+                universal.add(e);
+                nestedRules.add(r);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Files the given entry under the key of its selector.
+     */
+    protected void addEntry(Entry e) {
+        Selector s = e.selector;
+
+        // Find the rightmost compound selector.
+        for (;;) {
+            if (s instanceof AbstractDescendantSelector) {
+                s = ((AbstractDescendantSelector)s).getSimpleSelector();
+            } else if (s instanceof AbstractSiblingSelector) {
+                // The preceding siblings of the element matter.
+                siblingIndependent = false;
+                s = ((AbstractSiblingSelector)s).getSiblingSelector();
+            } else {
+                break;
+            }
+        }
+
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            Condition c = cs.getCondition();
+            addConditionAttributes(c);
+            String id = getId(c);
+            if (id != null) {
+                addEntry(ids, id, e);
+                return;
+            }
+            String cl = getClassName(c);
+            if (cl != null) {
+                addEntry(classes, cl, e);
+                return;
+            }
+            s = cs.getSimpleSelector();
+        }
+
+        if (s != null && s.getClass() == CSSElementSelector.class) {
+            String name = ((CSSElementSelector)s).getLocalName();
+            if (name != null) {
+                addEntry(names, name, e);
+                return;
+            }
+        } else if (!(s instanceof CSSPseudoElementSelector)) {
+            // Unknown kind of selector.
+            siblingIndependent = false;
+        }
+        universal.add(e);
+    }
+
+    /**
+     * Records the attributes tested by the given condition.  Conditions
+     * other than ids and attribute tests (e.g. :first-child, :lang())
+     * make the rules sibling dependent.
+     */
+    protected void addConditionAttributes(Condition c) {
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            addConditionAttributes(ac.getFirstCondition());
+            addConditionAttributes(ac.getSecondCondition());
+        } else if (c instanceof CSSAttributeCondition) {
+            attributes.add(((CSSAttributeCondition)c).getLocalName());
+        } else if (c.getClass() != CSSIdCondition.class) {
+            siblingIndependent = false;
+        }
+    }
+
+    /**
+     * Tells whether the rules of the style-sheet (including the nested
+     * @media and @import rules, whatever their media) necessarily
+     * match the same way for two children of the same element.  This
+     * is the case when the elements have the same name, which the
+     * caller must check, when no rule depends on their position among
+     * their siblings, when they agree on all the tested attributes and
+     * when no rule targets their ids.
+     */
+    public boolean canShareStyle(CSSStylableElement e1,
+                                 CSSStylableElement e2) {
+        if (!siblingIndependent) {
+            return false;
+        }
+        if (ids.size() > 0) {
+            String id1 = e1.getXMLId();
+            String id2 = e2.getXMLId();
+            if (!id1.equals(id2) &&
+                (ids.containsKey(id1) || ids.containsKey(id2))) {
+                return false;
+            }
+        }
+        Iterator it = attributes.iterator();
+        while (it.hasNext()) {
+            String an = (String)it.next();
+            if (!e1.getAttribute(an).equals(e2.getAttribute(an))) {
+                return false;
+            }
+        }
+        int len = nestedRules.size();
+        for (int i = 0; i < len; i++) {
+            MediaRule mr = (MediaRule)nestedRules.get(i);
+            if (!mr.getRuleIndex().canShareStyle(e1, e2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the id a condition requires, if any.
+     */
+    protected static String getId(Condition c) {
+        if (c.getClass() == CSSIdCondition.class) {
+            return ((CSSIdCondition)c).getValue();
+        }
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            String id = getId(ac.getFirstCondition());
+            return (id != null) ? id : getId(ac.getSecondCondition());
+        }
+        return null;
+    }
+
+    /**
+     * Returns a class name a condition requires, if any.
+     */
+    protected static String getClassName(Condition c) {
+        if (c.getClass() == CSSClassCondition.class) {
+            String cl = ((CSSClassCondition)c).getValue();
+            return (cl == null || cl.length() == 0) ? null : cl;
+        }
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            String cl = getClassName(ac.getFirstCondition());
+            return (cl != null) ? cl : getClassName(ac.getSecondCondition());
+        }
+        return null;
+    }
+
+    private static void addEntry(HashMap m, String key, Entry e) {
+        List l = (List)m.get(key);
+        if (l == null) {
+            l = new ArrayList();
+            m.put(key, l);
+        }
+        l.add(e);
+    }
+
+    /**
+     * Returns the entries which may match the given element, in
+     * style-sheet order.
+     */
+    public List getCandidates(Element elt) {
+        List[] lists = new List[4];
+        int n = 0;
+        if (universal.size() > 0) {
+            lists[n++] = universal;
+        }
+
+        String eName;
+        if (elt.getPrefix() == null) eName = elt.getNodeName();
+        else                         eName = elt.getLocalName();
+        List l = (List)names.get(eName);
+        if (l != null) {
+            lists[n++] = l;
+        }
+
+        if (elt instanceof CSSStylableElement) {
+            CSSStylableElement se = (CSSStylableElement)elt;
+            if (ids.size() > 0) {
+                l = (List)ids.get(se.getXMLId());
+                if (l != null) {
+                    lists[n++] = l;
+                }
+            }
+            if (classes.size() > 0) {
+                String cl = se.getCSSClass();
+                int len = (cl == null) ? 0 : cl.length();
+                int i = 0;
+                while (i < len) {
+                    while (i < len && Character.isSpaceChar(cl.charAt(i))) {
+                        i++;
+                    }
+                    int start = i;
+                    while (i < len && !Character.isSpaceChar(cl.charAt(i))) {
+                        i++;
+                    }
+                    if (start == i) {
+                        break;
+                    }
+                    l = (List)classes.get(cl.substring(start, i));
+                    if (l != null && !contains(lists, n, l)) {
+                        if (n == lists.length) {
+                            List[] t = new List[n * 2];
+                            System.arraycopy(lists, 0, t, 0, n);
+                            lists = t;
+                        }
+                        lists[n++] = l;
+                    }
+                }
+            }
+        }
+
+        switch (n) {
+        case 0:
+            return Collections.EMPTY_LIST;
+        case 1:
+            return lists[0];
+        }
+        ArrayList result = new ArrayList();
+        for (int i = 0; i < n; i++) {
+            result.addAll(lists[i]);
+        }
+        // The sort is stable, so the selectors of a rule stay in order.
+        Collections.sort(result, POSITION_COMPARATOR);
+        return result;
+    }
+
+    private static boolean contains(List[] lists, int n, List l) {
+        for (int i = 0; i < n; i++) {
+            if (lists[i] == l) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -76,6 +76,7 @@ import org.apache.batik.css.engine.value.svg.WritingModeManager;
 import org.apache.batik.css.parser.ExtendedParser;
 import org.apache.batik.util.CSSConstants;
 import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.SVGConstants;
 
 import org.w3c.dom.Document;
 
@@ -188,6 +189,16 @@ public class SVGCSSEngine extends CSSEngine {
         return result;
     }
 
+    /**
+     * Whether the style map of the given element may be shared with its
+     * siblings.  'svg' elements establish a new viewport, so their
+     * percentage values may differ from those of their siblings.
+     */
+    protected boolean isStyleShareable(CSSStylableElement elt) {
+        return !(SVGConstants.SVG_NAMESPACE_URI.equals(elt.getNamespaceURI())
+                 && SVGConstants.SVG_SVG_TAG.equals(elt.getLocalName()));
+    }
+
     /**
      * The value managers for SVG.
      */
@@ -72,6 +72,11 @@ public class StyleMap {
      */
     protected boolean fixedCascadedValues;
 
+    /**
+     * Whether this map is used by more than one element.
+     */
+    protected boolean shared;
+
     /**
      * Creates a new StyleMap.
      */
@@ -80,6 +85,31 @@ public class StyleMap {
         masks = new short[size];
     }
 
+    /**
+     * Creates a new StyleMap holding the same values as the given one.
+     * The new map is not shared.
+     */
+    public StyleMap(StyleMap sm) {
+        values = (Value[])sm.values.clone();
+        masks = (short[])sm.masks.clone();
+        fixedCascadedValues = sm.fixedCascadedValues;
+    }
+
+    /**
+     * Whether this map is used by more than one element, in which case
+     * it must be copied before being modified for one of them.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Sets the shared property.
+     */
+    public void setShared(boolean b) {
+        shared = b;
+    }
+
     /**
      * Whether this map has fixed cascaded value.
      */
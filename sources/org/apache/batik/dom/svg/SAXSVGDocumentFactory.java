@@ -371,7 +371,8 @@ public class SAXSVGDocumentFactory
             }
 
             if (publicId == null)
-                return null; // Let SAX Parser find it.
+                // Let SAX Parser find it.
+                return super.resolveEntity(publicId, systemId);
 
             if (!isValidating &&
                 (skippable_dtdids.indexOf(publicId) != -1)) {
@@ -396,6 +397,6 @@ public class SAXSVGDocumentFactory
             throw new SAXException(e);
         }
         // Let the SAX parser find the entity.
-        return null;
+        return super.resolveEntity(publicId, systemId);
     }
 }
@@ -27,6 +27,8 @@ import org.apache.batik.dom.anim.AnimationTarget;
 
 import org.apache.batik.parser.ParseException;
 import org.apache.batik.parser.PathArrayProducer;
+import org.apache.batik.parser.PathHandler;
+import org.apache.batik.parser.PathParser;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -178,6 +180,44 @@ public class SVGOMAnimatedPathData
         }
     }
 
+    /**
+     * Sends the current value of the path data to the given handler.
+     * When the value is not animated and the base path segment list has
+     * not been built, the attribute is parsed straight into the handler,
+     * without creating the path segment objects.
+     * @throws LiveAttributeException if the path data is missing or
+     *         malformed, in which case the handler may have received
+     *         a part of the path
+     */
+    public void handlePathData(PathHandler handler) {
+        if (hasAnimVal) {
+            SVGAnimatedPathDataSupport.handlePathSegList
+                (getAnimatedPathSegList(), handler);
+            return;
+        }
+        if (pathSegs != null && pathSegs.valid) {
+            check();
+            SVGAnimatedPathDataSupport.handlePathSegList(pathSegs, handler);
+            return;
+        }
+        Attr attr = element.getAttributeNodeNS(namespaceURI, localName);
+        String s = (attr == null) ? defaultValue : attr.getValue();
+        if (s == null) {
+            throw new LiveAttributeException
+                (element, localName,
+                 LiveAttributeException.ERR_ATTRIBUTE_MISSING, null);
+        }
+        try {
+            PathParser pp = new PathParser();
+            pp.setPathHandler(handler);
+            pp.parse(s);
+        } catch (ParseException e) {
+            throw new LiveAttributeException
+                (element, localName,
+                 LiveAttributeException.ERR_ATTRIBUTE_MALFORMED, s);
+        }
+    }
+
     /**
      * Returns the base value of the attribute as an {@link AnimatableValue}.
      */
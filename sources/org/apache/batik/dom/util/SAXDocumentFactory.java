@@ -22,9 +22,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -211,6 +214,34 @@ public class SAXDocumentFactory
      */
     protected List preInfo;
 
+    /**
+     * Whether the SAX parsers are kept, per thread, to parse the next
+     * documents.
+     */
+    protected boolean reuseParser;
+
+    /**
+     * Whether the external DTD subsets are loaded when not validating.
+     */
+    protected boolean loadExternalDTD = true;
+
+    /**
+     * The SAX parsers kept for reuse by the current thread, by class name
+     * (the empty string for the JAXP default parser).
+     */
+    protected static ThreadLocal parserPool = new ThreadLocal() {
+            protected Object initialValue() {
+                return new HashMap();
+            }
+        };
+
+    /**
+     * The handler set on the parsers waiting for reuse, so that they do
+     * not keep the last document alive.
+     */
+    protected static final DefaultHandler NULL_HANDLER =
+        new NullHandler();
+
     /**
      * Creates a new SAXDocumentFactory object.
      * No document descriptor will be created while generating a document.
@@ -408,18 +439,17 @@ public class SAXDocumentFactory
      */
     protected Document createDocument(InputSource is)
         throws IOException {
+        String key = (parserClassName == null) ? "" : parserClassName;
+        Map pool = reuseParser ? (Map)parserPool.get() : null;
+        boolean done = false;
         try {
-            if (parserClassName != null) {
-                parser = XMLReaderFactory.createXMLReader(parserClassName);
-            } else {
-                SAXParser saxParser;
-                try {
-                    saxParser = saxFactory.newSAXParser();
-                } catch (ParserConfigurationException pce) {
-                    throw new IOException("Could not create SAXParser: "
-                            + pce.getMessage());
-                }
-                parser = saxParser.getXMLReader();
+            if (pool != null) {
+                // Taken out of the pool while in use, so that a nested
+                // parse in the same thread gets its own parser.
+                parser = (XMLReader)pool.remove(key);
+            }
+            if (parser == null) {
+                parser = createXMLReader();
             }
 
             parser.setContentHandler(this);
@@ -437,12 +467,18 @@ public class SAXDocumentFactory
             parser.setProperty("http://xml.org/sax/properties/lexical-handler",
                                this);
             parser.parse(is);
+            done = true;
         } catch (SAXException e) {
             Exception ex = e.getException();
             if (ex != null && ex instanceof InterruptedIOException) {
                 throw (InterruptedIOException)ex;
             }
             throw new SAXIOException(e);
+        } finally {
+            if (done && pool != null) {
+                releaseXMLReader(pool, key, parser);
+            }
+            parser = null;
         }
 
         currentNode  = null;
@@ -450,10 +486,96 @@ public class SAXDocumentFactory
         document     = null;
         doctype      = null;
         locator      = null;
-        parser       = null;
         return ret;
     }
 
+    /**
+     * Creates a new SAX parser.
+     */
+    protected XMLReader createXMLReader() throws SAXException, IOException {
+        if (parserClassName != null) {
+            return XMLReaderFactory.createXMLReader(parserClassName);
+        }
+        SAXParser saxParser;
+        try {
+            saxParser = saxFactory.newSAXParser();
+        } catch (ParserConfigurationException pce) {
+            throw new IOException("Could not create SAXParser: "
+                    + pce.getMessage());
+        }
+        return saxParser.getXMLReader();
+    }
+
+    /**
+     * Resets the given parser and keeps it for the next document parsed
+     * by the current thread.  A parser whose handlers cannot be reset is
+     * dropped.
+     */
+    protected void releaseXMLReader(Map pool, String key, XMLReader r) {
+        try {
+            r.setContentHandler(NULL_HANDLER);
+            r.setDTDHandler(NULL_HANDLER);
+            r.setEntityResolver(NULL_HANDLER);
+            r.setErrorHandler(NULL_HANDLER);
+            r.setProperty("http://xml.org/sax/properties/lexical-handler",
+                          NULL_HANDLER);
+        } catch (SAXException e) {
+            return;
+        }
+        pool.put(key, r);
+    }
+
+    /**
+     * Sets whether the SAX parsers are kept, per thread, to parse the next
+     * documents instead of being created for each document.  A parser is
+     * reset after each document and only reused by the thread which
+     * created it.
+     */
+    public void setReuseParser(boolean b) {
+        reuseParser = b;
+    }
+
+    /**
+     * Returns whether the SAX parsers are reused.
+     */
+    public boolean isReuseParser() {
+        return reuseParser;
+    }
+
+    /**
+     * Sets whether the external DTD subsets, and the external parameter
+     * entities they reference, are loaded when the document is not
+     * validated.  When false, they are replaced by empty documents, so
+     * that no DTD is ever read over the network or from the disk; the
+     * entities and default attributes they declare are then unknown.
+     */
+    public void setLoadExternalDTD(boolean b) {
+        loadExternalDTD = b;
+    }
+
+    /**
+     * Returns whether the external DTD subsets are loaded when the
+     * document is not validated.
+     */
+    public boolean isLoadExternalDTD() {
+        return loadExternalDTD;
+    }
+
+    /**
+     * <b>SAX</b>: Implements {@link
+     * org.xml.sax.EntityResolver#resolveEntity(String,String)}.
+     * Returns an empty entity for the external DTD subset and parameter
+     * entities if they must not be loaded, or null to let the parser
+     * load them.
+     */
+    public InputSource resolveEntity(String publicId, String systemId)
+        throws SAXException {
+        if (inDTD && !loadExternalDTD && !isValidating) {
+            return new InputSource(new StringReader(""));
+        }
+        return null;
+    }
+
     /**
      * Returns the document descriptor associated with the latest created
      * document.
@@ -802,4 +924,26 @@ public class SAXDocumentFactory
             currentNode.appendChild(document.createComment(str));
         }
     }
+
+    /**
+     * A SAX handler which ignores everything.
+     */
+    protected static class NullHandler
+        extends DefaultHandler
+        implements LexicalHandler {
+        public void startDTD(String name, String publicId, String systemId) {
+        }
+        public void endDTD() {
+        }
+        public void startEntity(String name) {
+        }
+        public void endEntity(String name) {
+        }
+        public void startCDATA() {
+        }
+        public void endCDATA() {
+        }
+        public void comment(char[] ch, int start, int length) {
+        }
+    }
 }
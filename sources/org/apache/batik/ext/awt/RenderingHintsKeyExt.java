@@ -77,9 +77,24 @@ public final class RenderingHintsKeyExt {
     public static final Object VALUE_AVOID_TILE_PAINTING_OFF = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_DEFAULT = new Object();
 
+    /**
+     * Hint for the graphics nodes that they may keep the results of
+     * their filters, to draw them again when they are repainted with
+     * the same transform up to whole pixels of translation.  This is
+     * primarily for the interactive renderers, which repaint the same
+     * nodes after pans and updates.  The
+     * org.apache.batik.filter_result_cache system property overrides
+     * it when it is set.
+     */
+    public static final RenderingHints.Key KEY_FILTER_RESULT_CACHE;
+
+    public static final Object VALUE_FILTER_RESULT_CACHE_ON = new Object();
+    public static final Object VALUE_FILTER_RESULT_CACHE_OFF = new Object();
+
     static {
         int base = 10100;
-        RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null;
+        RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null,
+            frc=null;
         while (true) {
             int val = base;
 
@@ -89,6 +104,7 @@ public final class RenderingHintsKeyExt {
                 bi    = new BufferedImageHintKey (val++);
                 cs    = new ColorSpaceHintKey    (val++);
                 atp   = new AvoidTilingHintKey   (val++);
+                frc   = new FilterResultCacheHintKey(val++);
             } catch (Exception e) {
                 System.err.println
                     ("You have loaded the Batik jar files more than once\n" +
@@ -106,6 +122,7 @@ public final class RenderingHintsKeyExt {
         KEY_BUFFERED_IMAGE      = bi;
         KEY_COLORSPACE          = cs;
         KEY_AVOID_TILE_PAINTING = atp;
+        KEY_FILTER_RESULT_CACHE = frc;
     }
 
     /**
@@ -0,0 +1,660 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A compact path made of straight lines, quadratic and cubic curves and
+ * elliptical arcs, stored as a single array of coordinates and a single
+ * array of segment types.
+ *
+ * <p>Unlike {@link ExtendedGeneralPath}, which keeps both its segments
+ * and an equivalent <code>GeneralPath</code>, this class only stores the
+ * segments as they were appended: the path iterator derives the
+ * rendered path from them (converting the arcs to curves and dropping
+ * the empty subpaths exactly as <code>ExtendedGeneralPath</code> does).
+ * It is not synchronized, and is meant to be built once, typically by a
+ * {@link org.apache.batik.parser.PackedPathProducer}, and not modified
+ * once in use.</p>
+ *
+ * @version $Id$
+ */
+public class PackedPath implements ExtendedShape, Cloneable {
+
+    /**
+     * The segment type used to store the arcs.
+     */
+    protected static final byte ARCTO = 5;
+
+    /**
+     * The number of coordinates of each segment type.
+     */
+    protected static final int[] NUM_VALUES = { 2, 2, 4, 6, 0, 7 };
+
+    /**
+     * The winding rule.
+     */
+    protected int windingRule;
+
+    /**
+     * The coordinates of the segments.
+     */
+    protected float[] values;
+
+    /**
+     * The types of the segments.
+     */
+    protected byte[] types;
+
+    /**
+     * The number of coordinates.
+     */
+    protected int numVals;
+
+    /**
+     * The number of segments.
+     */
+    protected int numSeg;
+
+    /**
+     * The last moveto point and the current point.
+     */
+    protected float mx, my, cx, cy;
+
+    /**
+     * The number of segments when the last omitted arc was appended
+     * right after a moveto, or -1.  Such an arc still starts a subpath,
+     * which is rendered if nothing else is.
+     */
+    protected int omittedArc = -1;
+
+    /**
+     * The moveto point before the last omitted arc.
+     */
+    protected float omittedX, omittedY;
+
+    /**
+     * The bounds of the path, computed on demand.
+     */
+    protected Rectangle2D bounds;
+
+    /**
+     * Constructs a new <code>PackedPath</code> with the non-zero winding
+     * rule.
+     */
+    public PackedPath() {
+        this(PathIterator.WIND_NON_ZERO, 20);
+    }
+
+    /**
+     * Constructs a new <code>PackedPath</code> with the specified
+     * winding rule.
+     */
+    public PackedPath(int rule) {
+        this(rule, 20);
+    }
+
+    /**
+     * Constructs a new <code>PackedPath</code> with the specified
+     * winding rule and initial capacity, in coordinates.
+     */
+    public PackedPath(int rule, int initialCapacity) {
+        windingRule = rule;
+        values = new float[Math.max(initialCapacity, 8)];
+        types = new byte[Math.max(initialCapacity / 2, 4)];
+    }
+
+    /**
+     * Adds a point to the path by moving to the specified coordinates.
+     */
+    public void moveTo(float x, float y) {
+        makeRoom(2);
+        types[numSeg++] = PathIterator.SEG_MOVETO;
+        cx = mx = values[numVals++] = x;
+        cy = my = values[numVals++] = y;
+    }
+
+    /**
+     * Adds a straight line to the specified coordinates.
+     */
+    public void lineTo(float x, float y) {
+        makeRoom(2);
+        types[numSeg++] = PathIterator.SEG_LINETO;
+        cx = values[numVals++] = x;
+        cy = values[numVals++] = y;
+    }
+
+    /**
+     * Adds a quadratic curve to the specified coordinates.
+     */
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        makeRoom(4);
+        types[numSeg++] = PathIterator.SEG_QUADTO;
+        values[numVals++] = x1;
+        values[numVals++] = y1;
+        cx = values[numVals++] = x2;
+        cy = values[numVals++] = y2;
+    }
+
+    /**
+     * Adds a cubic curve to the specified coordinates.
+     */
+    public void curveTo(float x1, float y1,
+                        float x2, float y2,
+                        float x3, float y3) {
+        makeRoom(6);
+        types[numSeg++] = PathIterator.SEG_CUBICTO;
+        values[numVals++] = x1;
+        values[numVals++] = y1;
+        values[numVals++] = x2;
+        values[numVals++] = y2;
+        cx = values[numVals++] = x3;
+        cy = values[numVals++] = y3;
+    }
+
+    /**
+     * Adds an elliptical arc, as specified by the SVG 'A' path command.
+     * See {@link ExtendedGeneralPath#arcTo}.
+     */
+    public void arcTo(float rx, float ry,
+                      float angle,
+                      boolean largeArcFlag,
+                      boolean sweepFlag,
+                      float x, float y) {
+        // Ensure radii are valid
+        if (rx == 0 || ry == 0) {
+            lineTo(x, y);
+            return;
+        }
+        if (cx == x && cy == y) {
+            // Equivalent to omitting the elliptical arc segment entirely.
+            if (numSeg != 0
+                && (types[numSeg - 1] == PathIterator.SEG_MOVETO
+                    || (types[numSeg - 1] == PathIterator.SEG_CLOSE
+                        && numSeg > 1
+                        && types[numSeg - 2] == PathIterator.SEG_MOVETO))) {
+                omittedArc = numSeg;
+                omittedX = mx;
+                omittedY = my;
+                bounds = null;
+            }
+            return;
+        }
+        makeRoom(7);
+        types[numSeg++] = ARCTO;
+        values[numVals++] = rx;
+        values[numVals++] = ry;
+        values[numVals++] = angle;
+        values[numVals++] = largeArcFlag ? 1 : 0;
+        values[numVals++] = sweepFlag ? 1 : 0;
+        cx = values[numVals++] = x;
+        cy = values[numVals++] = y;
+    }
+
+    /**
+     * Closes the current subpath.
+     */
+    public void closePath() {
+        // Don't double close path.
+        if (numSeg != 0 && types[numSeg - 1] == PathIterator.SEG_CLOSE) {
+            return;
+        }
+        makeRoom(0);
+        types[numSeg++] = PathIterator.SEG_CLOSE;
+        cx = mx;
+        cy = my;
+    }
+
+    /**
+     * Returns the current point of the path, or null.
+     */
+    public Point2D getCurrentPoint() {
+        if (numVals == 0) return null;
+        return new Point2D.Double(cx, cy);
+    }
+
+    /**
+     * Returns the winding rule.
+     */
+    public int getWindingRule() {
+        return windingRule;
+    }
+
+    /**
+     * Sets the winding rule.
+     */
+    public void setWindingRule(int rule) {
+        windingRule = rule;
+    }
+
+    /**
+     * Returns the number of segments of the path.
+     */
+    public int getNumberOfSegments() {
+        return numSeg;
+    }
+
+    /**
+     * Releases the unused capacity of the arrays.
+     */
+    public void trimToSize() {
+        if (values.length != numVals) {
+            float[] v = new float[numVals];
+            System.arraycopy(values, 0, v, 0, numVals);
+            values = v;
+        }
+        if (types.length != numSeg) {
+            byte[] t = new byte[numSeg];
+            System.arraycopy(types, 0, t, 0, numSeg);
+            types = t;
+        }
+    }
+
+    /**
+     * Returns a <code>GeneralPath</code> equal to the rendered path.
+     */
+    public GeneralPath toGeneralPath() {
+        GeneralPath gp = new GeneralPath(windingRule, numVals + 2);
+        gp.append(getPathIterator(null), false);
+        return gp;
+    }
+
+    // Shape ///////////////////////////////////////////////////////////////
+
+    /**
+     * Implements {@link Shape#getBounds()}.
+     */
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    /**
+     * Implements {@link Shape#getBounds2D()}.  The bounds are those the
+     * equivalent <code>GeneralPath</code> would return; they are
+     * computed once.
+     */
+    public Rectangle2D getBounds2D() {
+        Rectangle2D r = bounds;
+        if (r == null) {
+            r = toGeneralPath().getBounds2D();
+            bounds = r;
+        }
+        return (Rectangle2D)r.clone();
+    }
+
+    /**
+     * Implements {@link Shape#contains(double,double)}.
+     */
+    public boolean contains(double x, double y) {
+        return toGeneralPath().contains(x, y);
+    }
+
+    /**
+     * Implements {@link Shape#contains(Point2D)}.
+     */
+    public boolean contains(Point2D p) {
+        return toGeneralPath().contains(p);
+    }
+
+    /**
+     * Implements {@link Shape#contains(double,double,double,double)}.
+     */
+    public boolean contains(double x, double y, double w, double h) {
+        return toGeneralPath().contains(x, y, w, h);
+    }
+
+    /**
+     * Implements {@link Shape#contains(Rectangle2D)}.
+     */
+    public boolean contains(Rectangle2D r) {
+        return toGeneralPath().contains(r);
+    }
+
+    /**
+     * Implements {@link Shape#intersects(double,double,double,double)}.
+     */
+    public boolean intersects(double x, double y, double w, double h) {
+        if (!getBounds2D().intersects(x, y, w, h)) {
+            return false;
+        }
+        return toGeneralPath().intersects(x, y, w, h);
+    }
+
+    /**
+     * Implements {@link Shape#intersects(Rectangle2D)}.
+     */
+    public boolean intersects(Rectangle2D r) {
+        return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Implements {@link Shape#getPathIterator(AffineTransform)}.
+     */
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new PI(at);
+    }
+
+    /**
+     * Implements {@link Shape#getPathIterator(AffineTransform,double)}.
+     */
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new FlatteningPathIterator(getPathIterator(at), flatness);
+    }
+
+    /**
+     * Implements {@link ExtendedShape#getExtendedPathIterator()}.
+     */
+    public ExtendedPathIterator getExtendedPathIterator() {
+        return new EPI();
+    }
+
+    /**
+     * Returns a copy of this path.
+     */
+    public Object clone() {
+        try {
+            PackedPath result = (PackedPath)super.clone();
+            result.values = (float[])values.clone();
+            result.types = (byte[])types.clone();
+            return result;
+        } catch (CloneNotSupportedException ex) {}
+        return null;
+    }
+
+    /**
+     * Makes sure there is room for one more segment with the given
+     * number of coordinates.
+     */
+    protected void makeRoom(int numValues) {
+        bounds = null;
+        int newSize = numVals + numValues;
+        if (newSize > values.length) {
+            int nlen = Math.max(values.length * 2, newSize);
+            float[] nvals = new float[nlen];
+            System.arraycopy(values, 0, nvals, 0, numVals);
+            values = nvals;
+        }
+        if (numSeg == types.length) {
+            byte[] ntypes = new byte[Math.max(types.length * 2, 4)];
+            System.arraycopy(types, 0, ntypes, 0, numSeg);
+            types = ntypes;
+        }
+    }
+
+    /**
+     * Tells whether the given segment type adds something to draw.
+     */
+    protected static boolean isDrawing(int type) {
+        return type != PathIterator.SEG_MOVETO
+            && type != PathIterator.SEG_CLOSE;
+    }
+
+    /**
+     * The iterator over the rendered path.  A moveto is only rendered
+     * when a segment to draw follows it (possibly after a close), a
+     * close only when it does not follow a moveto, and the arcs are
+     * appended as curves connected to the current point.
+     */
+    protected class PI implements PathIterator {
+
+        /**
+         * The transform to apply, or null.
+         */
+        protected AffineTransform at;
+
+        /**
+         * The index of the next segment and of its first coordinate.
+         */
+        protected int segNum, valsIdx;
+
+        /**
+         * The current rendered segment.
+         */
+        protected int curType;
+        protected float[] cur = new float[6];
+        protected boolean done;
+
+        /**
+         * The last rendered segment type, point and source segment.
+         */
+        protected int lastType = -1;
+        protected int lastSeg = -1;
+        protected float lastX, lastY;
+
+        /**
+         * The current and last moveto points of the segments.
+         */
+        protected float px, py, pmx, pmy;
+
+        /**
+         * The iterator over the curves of the current arc, or null.
+         */
+        protected PathIterator arc;
+        protected boolean arcStart;
+
+        public PI(AffineTransform at) {
+            if (at != null && !at.isIdentity()) {
+                this.at = at;
+            }
+            fetch();
+        }
+
+        public int getWindingRule() {
+            return windingRule;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public void next() {
+            fetch();
+        }
+
+        public int currentSegment(float[] coords) {
+            int n = NUM_VALUES[curType] / 2;
+            if (at == null) {
+                System.arraycopy(cur, 0, coords, 0, n * 2);
+            } else {
+                at.transform(cur, 0, coords, 0, n);
+            }
+            return curType;
+        }
+
+        public int currentSegment(double[] coords) {
+            int n = NUM_VALUES[curType] / 2;
+            if (at == null) {
+                for (int i = 0; i < n * 2; i++) {
+                    coords[i] = cur[i];
+                }
+            } else {
+                at.transform(cur, 0, coords, 0, n);
+            }
+            return curType;
+        }
+
+        /**
+         * Moves to the next rendered segment.
+         */
+        protected void fetch() {
+            for (;;) {
+                if (arc != null) {
+                    if (fetchArc()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (segNum == numSeg) {
+                    if (lastSeg < omittedArc) {
+                        // The subpath started by an omitted arc is alone.
+                        cur[0] = omittedX;
+                        cur[1] = omittedY;
+                        emit(SEG_MOVETO, cur, 0, 2);
+                        lastSeg = numSeg;
+                        return;
+                    }
+                    done = true;
+                    return;
+                }
+                int type = types[segNum++];
+                int idx = valsIdx;
+                valsIdx += NUM_VALUES[type];
+                switch (type) {
+                case SEG_MOVETO:
+                    px = pmx = values[idx];
+                    py = pmy = values[idx + 1];
+                    if (segNum < numSeg) {
+                        int t = types[segNum];
+                        if (isDrawing(t)
+                            || (t == SEG_CLOSE && segNum + 1 < numSeg
+                                && isDrawing(types[segNum + 1]))) {
+                            emit(SEG_MOVETO, values, idx, 2);
+                            return;
+                        }
+                    }
+                    break;
+                case SEG_CLOSE:
+                    px = pmx;
+                    py = pmy;
+                    if (segNum > 1 && types[segNum - 2] != SEG_MOVETO) {
+                        emit(SEG_CLOSE, values, idx, 0);
+                        return;
+                    }
+                    break;
+                case ARCTO: {
+                    float rx = values[idx];
+                    float ry = values[idx + 1];
+                    float angle = values[idx + 2];
+                    boolean largeArcFlag = values[idx + 3] != 0;
+                    boolean sweepFlag = values[idx + 4] != 0;
+                    float x = values[idx + 5];
+                    float y = values[idx + 6];
+                    Arc2D a = ExtendedGeneralPath.computeArc
+                        (px, py, rx, ry, angle, largeArcFlag, sweepFlag,
+                         x, y);
+                    px = x;
+                    py = y;
+                    AffineTransform t = AffineTransform.getRotateInstance
+                        (Math.toRadians(angle), a.getCenterX(),
+                         a.getCenterY());
+                    arc = t.createTransformedShape(a).getPathIterator(null);
+                    arcStart = true;
+                    break;
+                }
+                default:
+                    int n = NUM_VALUES[type];
+                    px = values[idx + n - 2];
+                    py = values[idx + n - 1];
+                    emit(type, values, idx, n);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Moves to the next segment of the current arc, and returns false
+         * when there is none.  The arc is connected to the current point
+         * the way <code>GeneralPath.append</code> does.
+         */
+        protected boolean fetchArc() {
+            while (!arc.isDone()) {
+                int type = arc.currentSegment(cur);
+                arc.next();
+                boolean start = arcStart;
+                arcStart = false;
+                if (start && type == SEG_MOVETO && lastType != -1) {
+                    if (lastType != SEG_CLOSE
+                        && lastX == cur[0] && lastY == cur[1]) {
+                        continue;
+                    }
+                    type = SEG_LINETO;
+                }
+                emit(type, cur, 0, NUM_VALUES[type]);
+                return true;
+            }
+            arc = null;
+            return false;
+        }
+
+        /**
+         * Makes the given segment the current one.
+         */
+        protected void emit(int type, float[] src, int idx, int n) {
+            if (src != cur) {
+                System.arraycopy(src, idx, cur, 0, n);
+            }
+            curType = type;
+            lastType = type;
+            lastSeg = segNum - 1;
+            if (n != 0) {
+                lastX = cur[n - 2];
+                lastY = cur[n - 1];
+            }
+        }
+    }
+
+    /**
+     * The iterator over the segments of the path, as they were appended.
+     */
+    protected class EPI implements ExtendedPathIterator {
+        protected int segNum;
+        protected int valsIdx;
+
+        public int currentSegment() {
+            int type = types[segNum];
+            return (type == ARCTO) ? SEG_ARCTO : type;
+        }
+
+        public int currentSegment(double[] coords) {
+            int type = types[segNum];
+            int n = NUM_VALUES[type];
+            for (int i = 0; i < n; i++) {
+                coords[i] = values[valsIdx + i];
+            }
+            return (type == ARCTO) ? SEG_ARCTO : type;
+        }
+
+        public int currentSegment(float[] coords) {
+            int type = types[segNum];
+            System.arraycopy(values, valsIdx, coords, 0, NUM_VALUES[type]);
+            return (type == ARCTO) ? SEG_ARCTO : type;
+        }
+
+        public int getWindingRule() {
+            return windingRule;
+        }
+
+        public boolean isDone() {
+            return segNum == numSeg;
+        }
+
+        public void next() {
+            valsIdx += NUM_VALUES[types[segNum++]];
+        }
+    }
+}
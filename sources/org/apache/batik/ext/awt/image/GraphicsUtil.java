@@ -18,6 +18,7 @@
  */
 package org.apache.batik.ext.awt.image;
 
+import java.awt.AlphaComposite;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
@@ -255,6 +256,20 @@ public class GraphicsUtil {
             if (atpHint == RenderingHintsKeyExt.VALUE_AVOID_TILE_PAINTING_OFF)
                 useDrawRenderedImage = false;
 
+            // With SrcOver, fully transparent pixels leave the
+            // destination unchanged: only draw the bounds of the
+            // painted pixels (typically the content of an offscreen
+            // used for group opacity).  Printers and vector outputs
+            // get the image as it is.
+            Object transcoding = g2d.getRenderingHint
+                (RenderingHintsKeyExt.KEY_TRANSCODING);
+            boolean drawContentBounds =
+                (is_INT_PACK_Data(srcSM, true) &&
+                 isSrcOver(g2dComposite) &&
+                 (transcoding !=
+                  RenderingHintsKeyExt.VALUE_TRANSCODING_PRINTING) &&
+                 (transcoding !=
+                  RenderingHintsKeyExt.VALUE_TRANSCODING_VECTOR));
 
             WritableRaster wr;
             if (useDrawRenderedImage) {
@@ -262,8 +277,18 @@ public class GraphicsUtil {
                 // require much more memory, so we only use it when
                 // the clip size is smaller than the tile size.
                 Raster r = cr.getData(clipR);
+                Rectangle drawR = clipR;
+                if (drawContentBounds &&
+                    is_INT_PACK_Data(r.getSampleModel(), true)) {
+                    drawR = getContentBounds_INT_PACK
+                        (r.createChild(clipR.x, clipR.y,
+                                       clipR.width, clipR.height,
+                                       clipR.x, clipR.y, null));
+                    if (drawR == null)
+                        return; // Nothing painted...
+                }
                 wr = ((WritableRaster)r).createWritableChild
-                    (clipR.x, clipR.y, clipR.width, clipR.height,
+                    (drawR.x, drawR.y, drawR.width, drawR.height,
                      0, 0, null);
 
                 BufferedImage bi = new BufferedImage
@@ -273,7 +298,7 @@ public class GraphicsUtil {
                 // Affine are prone to the 'CGGStackRestore: gstack
                 // underflow' bug on Mac OS X.  This should work
                 // around that problem.
-                g2d.drawImage(bi, clipR.x, clipR.y, null);
+                g2d.drawImage(bi, drawR.x, drawR.y, null);
             } else {
                 // Use tiles to draw image...
                 wr = Raster.createWritableRaster(srcSM, new Point(0,0));
@@ -347,8 +372,15 @@ public class GraphicsUtil {
                         cr.copyData(twr);
 
                         // Make sure we only draw the region that was written.
+                        Rectangle drawR = iR;
+                        if (drawContentBounds) {
+                            drawR = getContentBounds_INT_PACK(twr);
+                            if (drawR == null)
+                                continue; // Nothing painted in this tile
+                        }
                         BufferedImage subBI;
-                        subBI = bi.getSubimage(0, 0, iR.width,  iR.height);
+                        subBI = bi.getSubimage(drawR.x-iR.x, drawR.y-iR.y,
+                                               drawR.width,  drawR.height);
 
                         if (false) {
                             System.out.println("Drawing: " + tR);
@@ -358,7 +390,7 @@ public class GraphicsUtil {
                         // For some reason using the transform version
                         // causes a gStackUnderflow error but if I just
                         // use the drawImage with an x & y it works.
-                        g2d.drawImage(subBI, iR.x, iR.y, null);
+                        g2d.drawImage(subBI, drawR.x, drawR.y, null);
                         // AffineTransform trans
                         //  = AffineTransform.getTranslateInstance(iR.x, iR.y);
                         // g2d.drawImage(subBI, trans, null);
@@ -1355,6 +1387,83 @@ public class GraphicsUtil {
         }
     }
 
+    /**
+     * Returns true if drawing with the given composite leaves the
+     * destination unchanged under fully transparent pixels, that is
+     * if it is a SrcOver composite.
+     */
+    protected static boolean isSrcOver(Composite c) {
+        if (c instanceof AlphaComposite)
+            return (((AlphaComposite)c).getRule() == AlphaComposite.SRC_OVER);
+        return SVGComposite.OVER.equals(c);
+    }
+
+    /**
+     * Returns the bounds of the pixels of <code>ras</code> which are
+     * not fully transparent, or null if they all are.  The rows and
+     * columns are scanned from the edges inwards and each scan stops at
+     * the first painted pixel, so apart from one row or column per edge
+     * only the transparent margins cropped off are read: a raster
+     * painted up to its edges costs little more than its perimeter.
+     * @param ras A raster of INT_PACK data with alpha.
+     */
+    public static Rectangle getContentBounds_INT_PACK(Raster ras) {
+        SinglePixelPackedSampleModel sppsm;
+        sppsm = (SinglePixelPackedSampleModel)ras.getSampleModel();
+        DataBufferInt db = (DataBufferInt)ras.getDataBuffer();
+
+        final int [] pixels = db.getBankData()[0];
+        final int x0 = ras.getMinX();
+        final int y0 = ras.getMinY();
+        final int w  = ras.getWidth();
+        final int h  = ras.getHeight();
+        final int scanStride = sppsm.getScanlineStride();
+        final int base =
+            (db.getOffset() +
+             sppsm.getOffset(x0-ras.getSampleModelTranslateX(),
+                             y0-ras.getSampleModelTranslateY()));
+
+        // First and last painted rows.
+        int top = 0;
+        while ((top < h) &&
+               isTransparent_INT_PACK(pixels, base+top*scanStride, 1, w))
+            top++;
+        if (top == h)
+            return null;
+
+        int bottom = h-1;
+        while (isTransparent_INT_PACK(pixels, base+bottom*scanStride, 1, w))
+            bottom--;
+
+        // First and last painted columns between those rows.
+        final int sp = base+top*scanStride;
+        final int rows = bottom-top+1;
+        int left = 0;
+        while (isTransparent_INT_PACK(pixels, sp+left, scanStride, rows))
+            left++;
+
+        int right = w-1;
+        while (isTransparent_INT_PACK(pixels, sp+right, scanStride, rows))
+            right--;
+
+        return new Rectangle(x0+left, y0+top, right-left+1, bottom-top+1);
+    }
+
+    /**
+     * Returns true if the n pixels from sp, step pixels apart, have
+     * zero alpha.
+     */
+    private static boolean isTransparent_INT_PACK(int [] pixels,
+                                                  int sp, int step,
+                                                  int n) {
+        final int end = sp+n*step;
+        for (; sp<end; sp+=step) {
+            if ((pixels[sp]>>>24) != 0)
+                return false;
+        }
+        return true;
+    }
+
     public static boolean is_INT_PACK_Data(SampleModel sm,
                                            boolean requireAlpha) {
         // Check ColorModel is of type DirectColorModel
@@ -29,6 +29,7 @@ import java.awt.image.PackedColorModel;
 import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
  * This provides an implementation of all the composite rules in SVG.
@@ -261,6 +262,36 @@ public class SVGComposite
     public abstract static class AlphaPreCompositeContext_INT_PACK
         extends AlphaPreCompositeContext {
 
+        /**
+         * Fully transparent source pixels are composited like the
+         * others.
+         */
+        protected static final int TRANSPARENT_COMPOSED   = 0;
+
+        /**
+         * Fully transparent source pixels leave the destination
+         * unchanged.
+         */
+        protected static final int TRANSPARENT_KEEPS_DST  = 1;
+
+        /**
+         * Fully transparent source pixels clear the destination.
+         */
+        protected static final int TRANSPARENT_CLEARS_DST = 2;
+
+        /**
+         * The kinds of source pixels, besides the transparent rules:
+         * pixels composited as usual, and opaque pixels copied.
+         */
+        private static final int COMPOSED      = TRANSPARENT_COMPOSED;
+        private static final int OPAQUE_COPIED = 3;
+
+        /**
+         * Runs of transparent or opaque source pixels shorter than
+         * this are composited with their neighbours.
+         */
+        static final int MIN_RUN = 16;
+
         AlphaPreCompositeContext_INT_PACK(ColorModel srcCM, ColorModel dstCM) {
             super(srcCM, dstCM);
         }
@@ -271,6 +302,25 @@ public class SVGComposite
              final int [] dstInPixels,  final int dstInAdjust,  int dstInSp,
              final int [] dstOutPixels, final int dstOutAdjust, int dstOutSp);
 
+        /**
+         * Returns what this composite does with fully transparent
+         * (zero) source pixels, one of TRANSPARENT_COMPOSED,
+         * TRANSPARENT_KEEPS_DST or TRANSPARENT_CLEARS_DST.  Runs of
+         * such pixels are then not composited.
+         */
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_COMPOSED;
+        }
+
+        /**
+         * Returns true if this composite replaces the destination with
+         * fully opaque source pixels.  Runs of such pixels are then
+         * copied.
+         */
+        protected boolean isOpaqueSourceCopied() {
+            return false;
+        }
+
         protected void precompose(Raster src, Raster dstIn,
                                            WritableRaster dstOut) {
 
@@ -318,10 +368,96 @@ public class SVGComposite
             final int  dstInAdjust =  dstInScanStride - w;
             final int dstOutAdjust = dstOutScanStride - w;
 
-            precompose_INT_PACK(w, h,
-                                srcPixels,    srcAdjust,    srcBase,
-                                dstInPixels,  dstInAdjust,  dstInBase,
-                                dstOutPixels, dstOutAdjust, dstOutBase);
+            final int transparentRule = getTransparentSourceRule();
+            final boolean opaqueCopied = isOpaqueSourceCopied();
+            if ((transparentRule == TRANSPARENT_COMPOSED) && !opaqueCopied) {
+                precompose_INT_PACK(w, h,
+                                    srcPixels,    srcAdjust,    srcBase,
+                                    dstInPixels,  dstInAdjust,  dstInBase,
+                                    dstOutPixels, dstOutAdjust, dstOutBase);
+                return;
+            }
+
+            // Composite only the runs of source pixels which are not
+            // fully transparent or fully opaque, typically the edges
+            // of what was painted in an offscreen.
+            final boolean inPlace = ((dstInPixels == dstOutPixels) &&
+                                     (dstInBase   == dstOutBase)   &&
+                                     (dstInScanStride == dstOutScanStride));
+
+            for (int y=0; y<h; y++) {
+                final int srcSp    = srcBase    + y*srcScanStride;
+                final int dstInSp  = dstInBase  + y*dstInScanStride;
+                final int dstOutSp = dstOutBase + y*dstOutScanStride;
+
+                int composeStart = 0;
+                int x = 0;
+                while (x < w) {
+                    final int kind = getRunKind(srcPixels[srcSp+x],
+                                                transparentRule,
+                                                opaqueCopied);
+                    if (kind == COMPOSED) {
+                        x++;
+                        continue;
+                    }
+                    final int runStart = x;
+                    do {
+                        x++;
+                    } while ((x < w) &&
+                             (getRunKind(srcPixels[srcSp+x],
+                                         transparentRule,
+                                         opaqueCopied) == kind));
+                    if (x-runStart < MIN_RUN)
+                        continue;
+
+                    if (runStart > composeStart)
+                        precompose_INT_PACK
+                            (runStart-composeStart, 1,
+                             srcPixels,    0, srcSp   +composeStart,
+                             dstInPixels,  0, dstInSp +composeStart,
+                             dstOutPixels, 0, dstOutSp+composeStart);
+
+                    switch (kind) {
+                    case TRANSPARENT_KEEPS_DST:
+                        if (!inPlace)
+                            System.arraycopy(dstInPixels,  dstInSp +runStart,
+                                             dstOutPixels, dstOutSp+runStart,
+                                             x-runStart);
+                        break;
+                    case TRANSPARENT_CLEARS_DST:
+                        Arrays.fill(dstOutPixels, dstOutSp+runStart,
+                                    dstOutSp+x, 0);
+                        break;
+                    default:
+                        System.arraycopy(srcPixels,    srcSp   +runStart,
+                                         dstOutPixels, dstOutSp+runStart,
+                                         x-runStart);
+                    }
+                    composeStart = x;
+                }
+
+                if (w > composeStart)
+                    precompose_INT_PACK
+                        (w-composeStart, 1,
+                         srcPixels,    0, srcSp   +composeStart,
+                         dstInPixels,  0, dstInSp +composeStart,
+                         dstOutPixels, 0, dstOutSp+composeStart);
+            }
+        }
+
+        /**
+         * Returns how the given source pixel is handled:
+         * transparentRule if it is fully transparent and runs of such
+         * pixels are not composited, OPAQUE_COPIED if it is fully
+         * opaque and copied, COMPOSED otherwise.
+         */
+        private static int getRunKind(int srcP, int transparentRule,
+                                      boolean opaqueCopied) {
+            if (srcP == 0)
+                return transparentRule;
+            if (opaqueCopied && ((srcP>>>24) == 0xFF))
+                return OPAQUE_COPIED;
+            return COMPOSED;
         }
     }
 
@@ -428,6 +564,14 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
+        protected boolean isOpaqueSourceCopied() {
+            return true;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -523,6 +667,14 @@ public class SVGComposite
                      "sources with unpremultiplied alpha");
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
+        protected boolean isOpaqueSourceCopied() {
+            return true;
+        }
+
         public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
             ColorModel dstPreCM = dstCM;
             if (!dstCM.isAlphaPremultiplied())
@@ -621,6 +773,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_CLEARS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -694,6 +850,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_CLEARS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -770,6 +930,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -857,6 +1021,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -1136,6 +1304,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -1243,6 +1415,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -1348,6 +1524,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
@@ -1473,6 +1653,10 @@ public class SVGComposite
             super(srcCM, dstCM);
         }
 
+        protected int getTransparentSourceRule() {
+            return TRANSPARENT_KEEPS_DST;
+        }
+
         public void precompose_INT_PACK
             (final int width,           final int height,
              final int [] srcPixels,    final int srcAdjust,    int srcSp,
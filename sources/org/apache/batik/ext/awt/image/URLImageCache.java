@@ -19,6 +19,10 @@
 
 package org.apache.batik.ext.awt.image;
 
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.util.ParsedURL;
 import org.apache.batik.util.SoftReferenceCache;
@@ -36,21 +40,178 @@ import org.apache.batik.util.SoftReferenceCache;
  *   If someone requests a ParsedURL after it has been added but before it has
  *   been put they will be blocked until the put.
  * </p>
+ * <p>
+ *   A cache created with a memory budget holds its images through
+ *   strong references instead, and drops the least recently used ones
+ *   when the pixels they hold (estimated from their bounds, 4 bytes
+ *   per pixel, see {@link #getCost}) exceed the budget.  Such a cache is split into
+ *   independently locked stripes, each running an exact LRU over its
+ *   share of the budget, and keeps hit, miss, eviction and decoding
+ *   time counters.  The caches of the default image registry use a
+ *   budget when the <code>org.apache.batik.image_cache_budget</code>
+ *   system property is set to a positive number of bytes.
+ * </p>
  *
  * @author <a href="mailto:thomas.deweese@kodak.com">Thomas DeWeese</a>
  * @version $Id$
  */
 public class URLImageCache extends SoftReferenceCache {
 
-    static URLImageCache theCache = new URLImageCache();
+    /**
+     * The default number of stripes of a budgeted cache.
+     */
+    public static final int DEFAULT_STRIPES = 4;
+
+    /**
+     * The memory budget, in bytes, of the caches returned by
+     * {@link #createCache()}.  If zero or negative (the default) they
+     * hold soft references.
+     */
+    static final long MEMORY_BUDGET;
+    static {
+        long value = 0;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.image_cache_budget", "0");
+            value = Long.parseLong(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            MEMORY_BUDGET = value;
+        }
+    }
+
+    static URLImageCache theCache = createCache();
 
     public static URLImageCache getDefaultCache() { return theCache; }
 
+    /**
+     * Creates a cache with the default policy: a budgeted cache if the
+     * <code>org.apache.batik.image_cache_budget</code> system property
+     * is positive, a cache of soft references otherwise.
+     */
+    public static URLImageCache createCache() {
+        if (MEMORY_BUDGET > 0)
+            return new URLImageCache(MEMORY_BUDGET);
+        return new URLImageCache();
+    }
+
+    /**
+     * A cached image, or a pending request for one.
+     */
+    protected static class Entry {
+        /**
+         * The image, null until it is put.
+         */
+        protected Filter filter;
+        protected long cost;
+
+        /**
+         * The time the request missed, in milliseconds.
+         */
+        protected long start;
+    }
+
+    /**
+     * One independently locked part of a budgeted cache.
+     */
+    protected static class Stripe {
+        /**
+         * Maps ParsedURLs to Entries, in access order.
+         */
+        protected LinkedHashMap map = new LinkedHashMap(16, 0.75f, true);
+        protected long budget;
+        protected long bytes;
+        protected long hits;
+        protected long misses;
+        protected long evictions;
+        protected long decodes;
+        protected long decodeTime;
+
+        protected Stripe(long budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * Drops least recently used images until the stripe is back
+         * within budget.  Pending requests and the most recently used
+         * entry are always kept.
+         */
+        protected void evict() {
+            Iterator i = map.values().iterator();
+            int n = map.size();
+            while ((bytes > budget) && (n-- > 1)) {
+                Entry e = (Entry)i.next();
+                if (e.filter == null)
+                    continue;
+                i.remove();
+                bytes -= e.cost;
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * The stripes of a budgeted cache, null for a cache of soft
+     * references.
+     */
+    private Stripe [] stripes;
+    private long      budget;
+
     /**
      * Let people create there own caches.
      */
     public URLImageCache() { }
 
+    /**
+     * Creates a budgeted cache with the default number of stripes.
+     * @param budget The number of bytes of image data to hold.
+     */
+    public URLImageCache(long budget) {
+        this(budget, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a budgeted cache.
+     * @param budget The number of bytes of image data to hold.
+     * @param numStripes The number of independently locked stripes.
+     */
+    public URLImageCache(long budget, int numStripes) {
+        if (numStripes <= 0) numStripes = 1;
+        if (budget < numStripes) budget = numStripes;
+
+        this.budget  = budget;
+        this.stripes = new Stripe[numStripes];
+        for (int i=0; i<numStripes; i++)
+            stripes[i] = new Stripe(budget/numStripes);
+    }
+
+    protected Stripe getStripe(ParsedURL purl) {
+        int h = purl.hashCode();
+        h ^= (h >>> 16);
+        return stripes[(h & 0x7FFFFFFF) % stripes.length];
+    }
+
+    /**
+     * Returns the number of bytes an image is charged: 4 bytes per
+     * pixel of its bounds.  The images decoded by the registry entries
+     * have bounds matching their size in pixels, so this is the size of
+     * their decoded data.  This is only a nominal cost for an image
+     * which is not a raster, such as a broken link image built from a
+     * GVT tree (a <code>GraphicsNodeRable</code>): its bounds are in user
+     * space and its memory use depends on the renderings it caches, so
+     * the budget does not really account for it.  Subclasses can
+     * override this method to charge such images differently.
+     */
+    protected long getCost(Filter filt) {
+        Rectangle2D r = filt.getBounds2D();
+        long w = (long)Math.ceil(r.getWidth());
+        long h = (long)Math.ceil(r.getHeight());
+        if ((w <= 0) || (h <= 0))
+            return 1;
+        return w*h*4;
+    }
+
     /**
      * Check if <code>request(url)</code> will return with a Filter
      * (not putting you on the hook for it).  Note that it is possible
@@ -59,8 +220,14 @@ public class URLImageCache extends SoftReferenceCache {
      * is still possible for request to return NULL, just much less
      * likely (you can always call 'clear' in that case). 
      */
-    public synchronized boolean isPresent(ParsedURL purl) {
-        return super.isPresentImpl(purl);
+    public boolean isPresent(ParsedURL purl) {
+        if (stripes == null)
+            return super.isPresentImpl(purl);
+
+        Stripe s = getStripe(purl);
+        synchronized (s) {
+            return s.map.containsKey(purl);
+        }
     }
 
     /**
@@ -69,16 +236,47 @@ public class URLImageCache extends SoftReferenceCache {
      * true but between this call and the call to request the
      * soft-reference will be cleared.
      */
-    public synchronized boolean isDone(ParsedURL purl) {
-        return super.isDoneImpl(purl);
+    public boolean isDone(ParsedURL purl) {
+        if (stripes == null)
+            return super.isDoneImpl(purl);
+
+        Stripe s = getStripe(purl);
+        synchronized (s) {
+            Entry e = (Entry)s.map.get(purl);
+            return (e != null) && (e.filter != null);
+        }
     }
 
     /**
      * If this returns null then you are now 'on the hook'.
      * to put the Filter associated with ParsedURL into the
      * cache.  */
-    public synchronized Filter request(ParsedURL purl) {
-        return (Filter)super.requestImpl(purl);
+    public Filter request(ParsedURL purl) {
+        if (stripes == null)
+            return (Filter)super.requestImpl(purl);
+
+        Stripe s = getStripe(purl);
+        synchronized (s) {
+            Entry e = (Entry)s.map.get(purl);
+            while ((e != null) && (e.filter == null)) {
+                try {
+                    // When something is cleared or put we will be notified.
+                    s.wait();
+                } catch (InterruptedException ie) { }
+                e = (Entry)s.map.get(purl);
+            }
+            if (e != null) {
+                s.hits++;
+                return e.filter;
+            }
+
+            // So now the caller get's the hot potato.
+            s.misses++;
+            e = new Entry();
+            e.start = System.currentTimeMillis();
+            s.map.put(purl, e);
+            return null;
+        }
     }
 
     /**
@@ -86,18 +284,178 @@ public class URLImageCache extends SoftReferenceCache {
      * This is the easiest way to 'get off the hook'.
      * if you didn't indend to get on it.
      */
-    public synchronized void clear(ParsedURL purl) {
-        super.clearImpl(purl);
+    public void clear(ParsedURL purl) {
+        if (stripes == null) {
+            super.clearImpl(purl);
+            return;
+        }
+
+        Stripe s = getStripe(purl);
+        synchronized (s) {
+            Entry e = (Entry)s.map.remove(purl);
+            if (e != null)
+                s.bytes -= e.cost;
+            s.notifyAll();
+        }
     }
 
     /**
      * Associate bi with purl.  bi is only referenced through
-     * a soft reference so don't rely on the cache to keep it
+     * a soft reference (or may be evicted from a budgeted cache)
+     * so don't rely on the cache to keep it
      * around.  If the map no longer contains our purl it was
      * probably cleared or flushed since we were put on the hook
      * for it, so in that case we will do nothing.
      */
-    public synchronized void put(ParsedURL purl, Filter filt) {
-        super.putImpl(purl, filt);
+    public void put(ParsedURL purl, Filter filt) {
+        if (stripes == null) {
+            super.putImpl(purl, filt);
+            return;
+        }
+
+        if (filt == null) {
+            // Nothing to cache, let the next requester try.
+            clear(purl);
+            return;
+        }
+
+        // Outside of the lock: this may wait for the image header.
+        long cost = getCost(filt);
+        Stripe s = getStripe(purl);
+        synchronized (s) {
+            Entry e = (Entry)s.map.get(purl);
+            if (e == null)
+                return;
+            if (e.filter == null) {
+                s.decodes++;
+                s.decodeTime += System.currentTimeMillis() - e.start;
+            }
+            e.filter = filt;
+            s.bytes += cost - e.cost;
+            e.cost = cost;
+            s.evict();
+            s.notifyAll();
+        }
+    }
+
+    /**
+     * Let people flush the cache (remove any cached data).  Pending
+     * requests will be treated as though clear() was called on the
+     * key, this should cause them to go and re-read the data.
+     */
+    public void flush() {
+        if (stripes == null) {
+            super.flush();
+            return;
+        }
+
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                s.map.clear();
+                s.bytes = 0;
+                s.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the memory budget of the cache in bytes, or 0 for a
+     * cache of soft references.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the number of bytes of image data currently held by a
+     * budgeted cache.
+     */
+    public long getUsedBytes() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.bytes; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of requests of a budgeted cache which were
+     * served from the cache (including after waiting for another
+     * thread to load the image).
+     */
+    public long getHitCount() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.hits; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of requests of a budgeted cache which put the
+     * caller on the hook for loading the image.
+     */
+    public long getMissCount() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.misses; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of images a budgeted cache dropped to stay
+     * within budget.
+     */
+    public long getEvictionCount() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.evictions; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of images put in a budgeted cache after a
+     * miss.
+     */
+    public long getDecodeCount() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.decodes; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the total time, in milliseconds, between the misses of
+     * a budgeted cache and the put of the corresponding images.
+     */
+    public long getDecodeTime() {
+        long ret = 0;
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.decodeTime; }
+        }
+        return ret;
+    }
+
+    /**
+     * Resets the counters of a budgeted cache.
+     */
+    public void resetStatistics() {
+        for (int i=0; stripes != null && i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                s.hits = s.misses = s.evictions = 0;
+                s.decodes = s.decodeTime = 0;
+            }
+        }
     }
 }
@@ -28,6 +28,7 @@ import java.awt.image.SampleModel;
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.zip.Deflater;
 
 /**
  * An instance of <code>ImageEncodeParam</code> for encoding images in
@@ -587,6 +588,80 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return useInterlacing;
     }
 
+    // IDAT compression
+
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private int compressionThreads = 1;
+
+    /**
+     * Sets the deflate compression level, from 0 (no compression) to
+     * 9 (best compression).  The default is 9.
+     */
+    public void setCompressionLevel(int level) {
+        if (level < Deflater.NO_COMPRESSION ||
+            level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam25"));
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Returns the deflate compression level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate compression strategy, one of
+     * <code>Deflater.DEFAULT_STRATEGY</code>,
+     * <code>Deflater.FILTERED</code> or
+     * <code>Deflater.HUFFMAN_ONLY</code>.  The default is
+     * <code>Deflater.DEFAULT_STRATEGY</code>.
+     */
+    public void setCompressionStrategy(int strategy) {
+        if (strategy != Deflater.DEFAULT_STRATEGY &&
+            strategy != Deflater.FILTERED &&
+            strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam26"));
+        }
+        this.compressionStrategy = strategy;
+    }
+
+    /**
+     * Returns the deflate compression strategy.
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * Sets the number of threads used to filter and compress the
+     * image data.  With more than one thread, the rows of a
+     * non-interlaced image are split in bands which are filtered and
+     * compressed independently, each band being primed with the end
+     * of the previous one.  The output is a regular PNG stream, at
+     * most slightly larger than the one produced by a single thread.
+     * In that case <code>filterRow</code> is called concurrently and
+     * must not depend on state shared between calls.  The default
+     * is 1.
+     */
+    public void setCompressionThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam27"));
+        }
+        this.compressionThreads = threads;
+    }
+
+    /**
+     * Returns the number of threads used to filter and compress the
+     * image data.
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private.  The JDK 1.2 compiler
@@ -19,6 +19,7 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import org.apache.batik.ext.awt.image.codec.util.ImageEncoderImpl;
+import org.apache.batik.util.WorkerPool;
 
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
@@ -32,10 +33,12 @@ import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -328,52 +331,85 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         cs.close();
     }
 
-    private byte[] prevRow = null;
-    private byte[] currRow = null;
-
-    private byte[][] filteredRows = null;
-
     private static int clamp(int val, int maxValue) {
         return (val > maxValue) ? maxValue : val;
     }
 
-    private void encodePass(OutputStream os, Raster ras,
-                            int xOffset,     int yOffset,
-                            int xSkip,       int ySkip)
-        throws IOException {
-        int minX   = ras.getMinX();
-        int minY   = ras.getMinY();
-        int width  = ras.getWidth();
-        int height = ras.getHeight();
-
-        xOffset *= numBands;
-        xSkip   *= numBands;
-
-        int samplesPerByte = 8/bitDepth;
-
-        int numSamples = width*numBands;
-        int[] samples = new int[numSamples];
+    /**
+     * Packs and filters the rows of one interlacing pass (or of the
+     * whole image), read from a raster holding some of them.  Each
+     * instance has its own row buffers, so bands of rows can be
+     * encoded concurrently by several instances.
+     */
+    private class RowEncoder {
+
+        private Raster ras;
+        private int minX;
+        private int width;
+        private int xOffset;
+        private int xSkip;
+        private int numSamples;
+        private int bytesPerRow;
+
+        private int[] samples;
+        private byte[] prevRow;
+        private byte[] currRow;
+        private byte[][] filteredRows;
+
+        RowEncoder(int xOffset, int xSkip) {
+            this.minX = image.getMinX();
+            this.width = image.getWidth();
+            this.xOffset = xOffset * numBands;
+            this.xSkip = xSkip * numBands;
+            this.numSamples = width * numBands;
+
+            int pixels = (numSamples - this.xOffset + this.xSkip - 1)/this.xSkip;
+            bytesPerRow = pixels*numBands;
+            if (bitDepth < 8) {
+                int samplesPerByte = 8/bitDepth;
+                bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
+            } else if (bitDepth == 16) {
+                bytesPerRow *= 2;
+            }
 
-        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
-        int bytesPerRow = pixels*numBands;
-        if (bitDepth < 8) {
-            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
-        } else if (bitDepth == 16) {
-            bytesPerRow *= 2;
+            if (bytesPerRow > 0) {
+                samples = new int[numSamples];
+                currRow = new byte[bytesPerRow + bpp];
+                prevRow = new byte[bytesPerRow + bpp];
+                filteredRows = new byte[5][bytesPerRow + bpp];
+            }
         }
 
-        if (bytesPerRow == 0) {
-            return;
+        /**
+         * Sets the raster the rows are read from.
+         */
+        void setRaster(Raster ras) {
+            this.ras = ras;
         }
 
-        currRow = new byte[bytesPerRow + bpp];
-        prevRow = new byte[bytesPerRow + bpp];
-
-        filteredRows = new byte[5][bytesPerRow + bpp];
+        /**
+         * Starts a pass: its first row is filtered against a row of
+         * zeros.
+         */
+        void startPass() {
+            for (int i = 0; i < prevRow.length; i++) {
+                prevRow[i] = 0;
+            }
+        }
 
-        int maxValue = (1 << bitDepth) - 1;
+        /**
+         * Starts encoding below the given row, which the raster must
+         * hold.
+         */
+        void startAfter(int row) {
+            packRow(row, prevRow);
+        }
 
-        for (int row = minY + yOffset; row < minY + height; row += ySkip) {
+        /**
+         * Fills <code>dest</code>, from index <code>bpp</code>, with
+         * the packed samples of the given row.
+         */
+        void packRow(int row, byte[] dest) {
             ras.getPixels(minX, row, width, 1, samples);
 
             if (compressGray) {
@@ -383,6 +419,7 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                 }
             }
 
+            int maxValue = (1 << bitDepth) - 1;
             int count = bpp; // leave first 'bpp' bytes zero
             int pos = 0;
             int tmp = 0;
@@ -391,13 +428,14 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             case 1: case 2: case 4:
                 // Image can only have a single band
 
+                int samplesPerByte = 8/bitDepth;
                 int mask = samplesPerByte - 1;
                 for (int s = xOffset; s < numSamples; s += xSkip) {
                     int val = clamp(samples[s] >> bitShift, maxValue);
                     tmp = (tmp << bitDepth) | val;
 
                     if (pos++  == mask) {
-                        currRow[count++] = (byte)tmp;
+                        dest[count++] = (byte)tmp;
                         tmp = 0;
                         pos = 0;
                     }
@@ -406,14 +444,14 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                 // Left shift the last byte
                 if (pos != 0) {
                     tmp <<= (samplesPerByte - pos)*bitDepth;
-                    currRow[count++] = (byte)tmp;
+                    dest[count++] = (byte)tmp;
                 }
                 break;
 
             case 8:
                 for (int s = xOffset; s < numSamples; s += xSkip) {
                     for (int b = 0; b < numBands; b++) {
-                        currRow[count++] =
+                        dest[count++] =
                             (byte)clamp(samples[s + b] >> bitShift, maxValue);
                     }
                 }
@@ -423,44 +461,120 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                 for (int s = xOffset; s < numSamples; s += xSkip) {
                     for (int b = 0; b < numBands; b++) {
                         int val = clamp(samples[s + b] >> bitShift, maxValue);
-                        currRow[count++] = (byte)(val >> 8);
-                        currRow[count++] = (byte)(val & 0xff);
+                        dest[count++] = (byte)(val >> 8);
+                        dest[count++] = (byte)(val & 0xff);
                     }
                 }
                 break;
             }
+        }
 
-            // Perform filtering
-            int filterType = param.filterRow(currRow, prevRow,
-                                             filteredRows,
-                                             bytesPerRow, bpp);
+        /**
+         * Writes the filtered rows from <code>firstRow</code> to
+         * <code>endRow</code> (excluded), stepping by
+         * <code>ySkip</code>.  Each row is filtered against the
+         * previous one encoded, or as set up by <code>startPass</code>
+         * or <code>startAfter</code>.
+         */
+        void encodeRows(int firstRow, int endRow, int ySkip,
+                        OutputStream os)
+            throws IOException {
+            for (int row = firstRow; row < endRow; row += ySkip) {
+                packRow(row, currRow);
+
+                // Perform filtering
+                int filterType = param.filterRow(currRow, prevRow,
+                                                 filteredRows,
+                                                 bytesPerRow, bpp);
+
+                os.write(filterType);
+                os.write(filteredRows[filterType], bpp, bytesPerRow);
+
+                // Swap current and previous rows
+                byte[] swap = currRow;
+                currRow = prevRow;
+                prevRow = swap;
+            }
+        }
+    }
 
-            os.write(filterType);
-            os.write(filteredRows[filterType], bpp, bytesPerRow);
+    private void encodePass(OutputStream os, Raster ras,
+                            int xOffset,     int yOffset,
+                            int xSkip,       int ySkip)
+        throws IOException {
+        RowEncoder re = new RowEncoder(xOffset, xSkip);
+        if (re.bytesPerRow == 0) {
+            return;
+        }
+        int minY = ras.getMinY();
+        re.setRaster(ras);
+        re.startPass();
+        re.encodeRows(minY + yOffset, minY + ras.getHeight(), ySkip, os);
+    }
+
+    /**
+     * The approximate number of samples read from the image at once
+     * when it is not tiled.
+     */
+    private static final int STRIP_SAMPLES = 256 * 1024;
 
-            // Swap current and previous rows
-            byte[] swap = currRow;
-            currRow = prevRow;
-            prevRow = swap;
+    /**
+     * Encodes the rows of a non-interlaced image, reading them from the
+     * image a strip at a time so that the whole image is never held in
+     * memory as a single raster.
+     */
+    private void encodeStrips(OutputStream os) throws IOException {
+        RowEncoder re = new RowEncoder(0, 1);
+        if (re.bytesPerRow == 0) {
+            return;
+        }
+        re.startPass();
+        int y = image.getMinY();
+        int endY = y + image.getHeight();
+        while (y < endY) {
+            int stripEnd = getStripEnd(y, endY);
+            re.setRaster(getRows(y, stripEnd));
+            re.encodeRows(y, stripEnd, 1, os);
+            y = stripEnd;
         }
     }
 
-    private void writeIDAT() throws IOException {
-        IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
+    /**
+     * Returns the end of the strip of rows starting at <code>y</code>
+     * to read from the image at once: the end of the row of tiles if
+     * the image is tiled, else a few rows.
+     */
+    private int getStripEnd(int y, int endY) {
+        int end;
+        if (image.getNumYTiles() > 1) {
+            int th = image.getTileHeight();
+            int off = (y - image.getTileGridYOffset()) % th;
+            if (off < 0) {
+                off += th;
+            }
+            end = y + th - off;
+        } else {
+            int samplesPerRow = image.getWidth() *
+                image.getSampleModel().getNumBands();
+            end = y + Math.max(1, STRIP_SAMPLES / samplesPerRow);
+        }
+        return Math.min(end, endY);
+    }
 
-        // Future work - don't convert entire image to a Raster It
-        // might seem that you could just call image.getData() but
+    /**
+     * Returns a raster holding the rows of the image from
+     * <code>y0</code> to <code>y1</code> (excluded), without the alpha
+     * channel if it is not encoded.
+     */
+    private Raster getRows(int y0, int y1) {
+        // It might seem that you could just call image.getData() but
         // 'BufferedImage.subImage' doesn't appear to set the Width
         // and height properly of the Child Raster, so the Raster
         // you get back here appears larger than it should.
         // This solves that problem by bounding the raster to the
         // image's bounds...
-        Raster ras = image.getData(new Rectangle(image.getMinX(),
-                                                 image.getMinY(),
-                                                 image.getWidth(),
-                                                 image.getHeight()));
+        Raster ras = image.getData(new Rectangle(image.getMinX(), y0,
+                                                 image.getWidth(), y1 - y0));
         // System.out.println("Image: [" +
         //                    image.getMinY()  + ", " +
         //                    image.getMinX()  + ", " +
@@ -478,13 +592,36 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             for (int i = 0; i < numBands; i++) {
                 bandList[i] = i;
             }
-            ras = ras.createChild(0, 0,
+            ras = ras.createChild(ras.getMinX(), ras.getMinY(),
                                   ras.getWidth(), ras.getHeight(),
-                                  0, 0,
+                                  ras.getMinX(), ras.getMinY(),
                                   bandList);
         }
+        return ras;
+    }
+
+    private void writeIDAT() throws IOException {
+        if (!interlace && param.getCompressionThreads() > 1) {
+            WorkerPool pool = new WorkerPool
+                (param.getCompressionThreads() - 1, "PNG Encoder");
+            try {
+                writeIDATConcurrently(pool);
+            } finally {
+                pool.dispose();
+            }
+            return;
+        }
+
+        IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
+        Deflater deflater = new Deflater(param.getCompressionLevel());
+        deflater.setStrategy(param.getCompressionStrategy());
+        DeflaterOutputStream dos = new DeflaterOutputStream(ios, deflater);
 
         if (interlace) {
+            // Every pass needs rows from all over the image.
+            int minY = image.getMinY();
+            Raster ras = getRows(minY, minY + image.getHeight());
+
             // Interlacing pass 1
             encodePass(dos, ras, 0, 0, 8, 8);
             // Interlacing pass 2
@@ -500,15 +637,317 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             // Interlacing pass 7
             encodePass(dos, ras, 0, 1, 1, 2);
         } else {
-            encodePass(dos, ras, 0, 0, 1, 1);
+            encodeStrips(dos);
         }
 
         dos.finish();
         dos.close();
+        deflater.end();
         ios.flush();
         ios.close();
     }
 
+    // Concurrent compression --------------------------------------------
+
+    /**
+     * The approximate amount of filtered data in one band of rows when
+     * compressing concurrently.
+     */
+    private static final int BAND_SIZE = 128 * 1024;
+
+    /**
+     * The size of the deflate window, the most of the previous band a
+     * preset dictionary can use.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * <code>Deflater.deflate(byte[], int, int, int)</code>, which is
+     * needed to end a band on a byte boundary without ending the
+     * stream, and <code>Deflater.SYNC_FLUSH</code>.  They are only
+     * available from Java 7, so they are looked up reflectively;
+     * without them the bands are filtered concurrently but
+     * compressed by a single deflater.
+     */
+    private static final Method deflateMethod;
+    private static final Integer syncFlush;
+
+    static {
+        Method m = null;
+        Integer f = null;
+        try {
+            m = Deflater.class.getMethod("deflate", new Class[] {
+                byte[].class, Integer.TYPE, Integer.TYPE, Integer.TYPE });
+            f = (Integer)Deflater.class.getField("SYNC_FLUSH").get(null);
+        } catch (Exception e) {
+            m = null;
+        }
+        deflateMethod = m;
+        syncFlush = f;
+    }
+
+    /**
+     * A <code>ByteArrayOutputStream</code> giving access to its buffer.
+     */
+    private static class BandBuffer extends ByteArrayOutputStream {
+        BandBuffer(int size) {
+            super(size);
+        }
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * A band of rows compressed independently: its filtered data is
+     * deflated as a raw stream, primed with the end of the previous
+     * band's data and ended with a sync flush (or the final block for
+     * the last band), so the bands can simply be concatenated.
+     */
+    private class Band {
+
+        private RowEncoder encoder;
+        int firstRow;
+        int endRow;
+        boolean last;
+
+        Raster rows;
+        BandBuffer data;
+        BandBuffer compressed;
+        byte[] dictionary;
+        int dictionaryOffset;
+        int dictionaryLength;
+        Exception error;
+
+        Band(int size) {
+            encoder = new RowEncoder(0, 1);
+            data = new BandBuffer(size);
+            compressed = new BandBuffer(size / 2);
+        }
+
+        /**
+         * Reads the rows of the band, and the row before it which the
+         * filters refer to.
+         */
+        void readRows() {
+            int y0 = (firstRow == image.getMinY()) ? firstRow : firstRow - 1;
+            rows = getRows(y0, endRow);
+        }
+
+        void filter() {
+            data.reset();
+            try {
+                encoder.setRaster(rows);
+                if (firstRow == image.getMinY()) {
+                    encoder.startPass();
+                } else {
+                    encoder.startAfter(firstRow - 1);
+                }
+                encoder.encodeRows(firstRow, endRow, 1, data);
+            } catch (IOException ioe) {
+                error = ioe;
+            } finally {
+                encoder.setRaster(null);
+                rows = null;
+            }
+        }
+
+        void deflate() {
+            compressed.reset();
+            Deflater d = new Deflater(param.getCompressionLevel(), true);
+            try {
+                byte[] buf = new byte[8192];
+                d.setStrategy(param.getCompressionStrategy());
+                // zlib applies a new strategy on the next deflate call,
+                // which must come before the dictionary is set or the
+                // dictionary is lost.
+                d.deflate(buf);
+                if (dictionaryLength > 0) {
+                    d.setDictionary(dictionary, dictionaryOffset,
+                                    dictionaryLength);
+                }
+                d.setInput(data.getBuffer(), 0, data.size());
+                if (last) {
+                    d.finish();
+                    while (!d.finished()) {
+                        int n = d.deflate(buf);
+                        compressed.write(buf, 0, n);
+                    }
+                } else {
+                    Object[] args = new Object[] {
+                        buf, new Integer(0), new Integer(buf.length), syncFlush
+                    };
+                    int n;
+                    do {
+                        n = ((Integer)deflateMethod.invoke(d, args)).intValue();
+                        compressed.write(buf, 0, n);
+                    } while (n == buf.length);
+                }
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                d.end();
+            }
+        }
+
+        void checkError() throws IOException {
+            if (error instanceof IOException) {
+                throw (IOException)error;
+            }
+            if (error != null) {
+                throw new IOException(error.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the image data of a non-interlaced image, filtering and
+     * compressing bands of rows on the threads of the given pool.  A
+     * few bands per thread are kept in memory at a time.  The image is
+     * read in order, on the calling thread.
+     */
+    private void writeIDATConcurrently(WorkerPool pool)
+        throws IOException {
+        int minY = image.getMinY();
+        int endY = minY + image.getHeight();
+
+        IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
+        Band[] bands = new Band[pool.getParallelism() * 2];
+        int bandRows = -1;
+
+        boolean parallelDeflate = deflateMethod != null;
+        Deflater deflater = null;
+        DeflaterOutputStream dos = null;
+        Adler32 adler = null;
+        if (parallelDeflate) {
+            adler = new Adler32();
+            ios.write(0x78);
+            ios.write(getZlibFlags(param.getCompressionLevel(),
+                                   param.getCompressionStrategy()));
+        } else {
+            deflater = new Deflater(param.getCompressionLevel());
+            deflater.setStrategy(param.getCompressionStrategy());
+            dos = new DeflaterOutputStream(ios, deflater);
+        }
+
+        byte[] dictionary = new byte[DICTIONARY_SIZE];
+        int dictionaryLength = 0;
+
+        int y = minY;
+        while (y < endY) {
+            int n = 0;
+            while (n < bands.length && y < endY) {
+                if (bands[n] == null) {
+                    bands[n] = new Band(BAND_SIZE);
+                    if (bandRows < 0) {
+                        int bytesPerRow = bands[n].encoder.bytesPerRow + 1;
+                        bandRows = Math.max(1, BAND_SIZE / bytesPerRow);
+                    }
+                }
+                Band b = bands[n++];
+                b.firstRow = y;
+                b.endRow = Math.min(y + bandRows, endY);
+                b.last = b.endRow == endY;
+                b.error = null;
+                y = b.endRow;
+            }
+
+            // The rows are read on this thread, from top to bottom, as
+            // images rendered on demand (like the transcoders' banded
+            // images) may only keep the last rows they rendered.
+            for (int i = 0; i < n; i++) {
+                bands[i].readRows();
+            }
+
+            Runnable[] tasks = new Runnable[n];
+            for (int i = 0; i < n; i++) {
+                final Band b = bands[i];
+                tasks[i] = new Runnable() {
+                        public void run() { b.filter(); }
+                    };
+            }
+            pool.invokeAll(tasks);
+            for (int i = 0; i < n; i++) {
+                bands[i].checkError();
+            }
+
+            if (!parallelDeflate) {
+                for (int i = 0; i < n; i++) {
+                    dos.write(bands[i].data.getBuffer(), 0,
+                              bands[i].data.size());
+                }
+                continue;
+            }
+
+            for (int i = 0; i < n; i++) {
+                Band b = bands[i];
+                if (i == 0) {
+                    b.dictionary = dictionary;
+                    b.dictionaryOffset = 0;
+                    b.dictionaryLength = dictionaryLength;
+                } else {
+                    BandBuffer prev = bands[i - 1].data;
+                    int len = Math.min(prev.size(), DICTIONARY_SIZE);
+                    b.dictionary = prev.getBuffer();
+                    b.dictionaryOffset = prev.size() - len;
+                    b.dictionaryLength = len;
+                }
+                final Band fb = b;
+                tasks[i] = new Runnable() {
+                        public void run() { fb.deflate(); }
+                    };
+            }
+            pool.invokeAll(tasks);
+
+            for (int i = 0; i < n; i++) {
+                Band b = bands[i];
+                b.checkError();
+                adler.update(b.data.getBuffer(), 0, b.data.size());
+                ios.write(b.compressed.getBuffer(), 0, b.compressed.size());
+            }
+
+            // Keep the end of the last band to prime the next window.
+            BandBuffer prev = bands[n - 1].data;
+            dictionaryLength = Math.min(prev.size(), DICTIONARY_SIZE);
+            System.arraycopy(prev.getBuffer(), prev.size() - dictionaryLength,
+                             dictionary, 0, dictionaryLength);
+        }
+
+        if (parallelDeflate) {
+            int checksum = (int)adler.getValue();
+            ios.write(checksum >>> 24);
+            ios.write((checksum >> 16) & 0xff);
+            ios.write((checksum >> 8) & 0xff);
+            ios.write(checksum & 0xff);
+        } else {
+            dos.finish();
+            dos.close();
+            deflater.end();
+        }
+        ios.flush();
+        ios.close();
+    }
+
+    /**
+     * Returns the second byte of the zlib header (FLG) that zlib itself
+     * writes for the given compression level and strategy.
+     */
+    private static int getZlibFlags(int level, int strategy) {
+        int levelFlags;
+        if (strategy == Deflater.HUFFMAN_ONLY || level < 2) {
+            levelFlags = 0;
+        } else if (level < 6) {
+            levelFlags = 1;
+        } else if (level == 6) {
+            levelFlags = 2;
+        } else {
+            levelFlags = 3;
+        }
+        int flags = levelFlags << 6;
+        // FCHECK makes the header a multiple of 31.
+        return flags + (31 - ((0x78 << 8) + flags) % 31) % 31;
+    }
+
     private void writeIEND() throws IOException {
         ChunkStream cs = new ChunkStream("IEND");
         cs.writeToStream(dataOutput);
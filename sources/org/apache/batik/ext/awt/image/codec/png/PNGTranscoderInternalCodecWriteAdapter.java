@@ -19,6 +19,7 @@
 package org.apache.batik.ext.awt.image.codec.png;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -35,7 +36,7 @@ import org.apache.batik.transcoder.image.PNGTranscoder;
  * @version $Id$
  */
 public class PNGTranscoderInternalCodecWriteAdapter implements
-        PNGTranscoder.WriteAdapter {
+        PNGTranscoder.BandWriteAdapter {
 
     /**
      * @throws TranscoderException
@@ -53,6 +54,17 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
                 img = IndexImage.getIndexedImage(img,1<<n);
         }
 
+        writeBands(transcoder, img, output);
+    }
+
+    /**
+     * @throws TranscoderException
+     * @see org.apache.batik.transcoder.image.PNGTranscoder.BandWriteAdapter#writeBands(org.apache.batik.transcoder.image.PNGTranscoder, java.awt.image.RenderedImage, org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeBands(PNGTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
+        TranscodingHints hints = transcoder.getTranscodingHints();
+
         PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(img);
         if (params instanceof PNGEncodeParam.RGB) {
             ((PNGEncodeParam.RGB)params).setBackgroundRGB
@@ -76,6 +88,22 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
         }
 
 
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_LEVEL)) {
+            params.setCompressionLevel
+                (((Integer)hints.get
+                  (PNGTranscoder.KEY_COMPRESSION_LEVEL)).intValue());
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_STRATEGY)) {
+            params.setCompressionStrategy
+                (((Integer)hints.get
+                  (PNGTranscoder.KEY_COMPRESSION_STRATEGY)).intValue());
+        }
+        if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_THREADS)) {
+            params.setCompressionThreads
+                (((Integer)hints.get
+                  (PNGTranscoder.KEY_COMPRESSION_THREADS)).intValue());
+        }
+
         float PixSzMM = transcoder.getUserAgent().getPixelUnitToMillimeter();
         // num Pixs in 1 Meter
         int numPix      = (int)((1000/PixSzMM)+0.5);
@@ -41,7 +41,7 @@ import org.apache.batik.transcoder.image.TIFFTranscoder;
  * @version $Id$
  */
 public class TIFFTranscoderInternalCodecWriteAdapter implements
-        TIFFTranscoder.WriteAdapter {
+        TIFFTranscoder.BandWriteAdapter {
 
     /**
      * @throws TranscoderException
@@ -49,6 +49,15 @@ public class TIFFTranscoderInternalCodecWriteAdapter implements
      */
     public void writeImage(TIFFTranscoder transcoder, BufferedImage img,
             TranscoderOutput output) throws TranscoderException {
+        writeBands(transcoder, img, output);
+    }
+
+    /**
+     * @throws TranscoderException
+     * @see org.apache.batik.transcoder.image.TIFFTranscoder.BandWriteAdapter#writeBands(org.apache.batik.transcoder.image.TIFFTranscoder, java.awt.image.RenderedImage, org.apache.batik.transcoder.TranscoderOutput)
+     */
+    public void writeBands(TIFFTranscoder transcoder, RenderedImage img,
+            TranscoderOutput output) throws TranscoderException {
         TranscodingHints hints = transcoder.getTranscodingHints();
 
         TIFFEncodeParam params = new TIFFEncodeParam();
@@ -90,7 +99,9 @@ public class TIFFTranscoderInternalCodecWriteAdapter implements
 
         try {
             int w = img.getWidth();
-            int h = img.getHeight();
+            // Keep the tiles of the image, which may be computed band
+            // by band.
+            int h = img.getTileHeight();
             SinglePixelPackedSampleModel sppsm;
             sppsm = (SinglePixelPackedSampleModel)img.getSampleModel();
             OutputStream ostream = output.getOutputStream();
@@ -18,28 +18,35 @@
  */
 package org.apache.batik.ext.awt.image.codec.util;
 
-import java.util.MissingResourceException;
-
-import org.apache.batik.i18n.LocalizableSupport;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
 
 /**
+ * Gives access to the messages of the image codecs, which are read
+ * from the <code>properties</code> file of the codec package.  A key
+ * without a message is returned as is.
  *
  * @version $Id$
  */
 public class PropertyUtil {
     protected static final String RESOURCES =
-        "org.apache.batik.bridge.resources.properties";
-
-
-    protected static LocalizableSupport localizableSupport =
-        new LocalizableSupport
-        (RESOURCES, PropertyUtil.class.getClassLoader());
+        "/org/apache/batik/ext/awt/image/codec/properties";
+
+    protected static Properties properties = new Properties();
+
+    static {
+        InputStream is = PropertyUtil.class.getResourceAsStream(RESOURCES);
+        if (is != null) {
+            try {
+                properties.load(is);
+                is.close();
+            } catch (IOException e) {
+            }
+        }
+    }
 
     public static String getString(String key) {
-        try{
-            return localizableSupport.formatMessage(key, null);
-        }catch(MissingResourceException e){
-            return key;
-        }
-   }
+        return properties.getProperty(key, key);
+    }
 }
@@ -23,6 +23,9 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.util.WorkerPool;
 
 /**
  * Default BumpMap implementation.
@@ -79,34 +82,118 @@ public final class BumpMap {
          final int w, final int h)
     {
         final double[][][] N = new double[h][w][4];
+        if ((w <= 0) || (h <= 0))
+            return N;
+
+        final Raster r = getData(x, y, w, h);
+        if (r == null)
+            return N;
 
+        for (int i=0; i<h; i++)
+            getNormalRow(r, x, y+i, w, N[i]);
+        return N;
+    }
+
+    /**
+     * Returns the part of the texture needed to compute the normals
+     * of a rectangle with {@link #getNormalRow}, that is the rectangle
+     * grown by one pixel on each side, clipped to the texture.
+     *
+     * @return the texture data or null if the texture does not
+     *         intersect the grown rectangle.
+     */
+    public Raster getData(final int x, final int y,
+                          final int w, final int h) {
         Rectangle srcRect = new Rectangle(x-1, y-1, w+2, h+2);
         Rectangle srcBound = new Rectangle
             (texture.getMinX(), texture.getMinY(),
              texture.getWidth(), texture.getHeight());
 
         if ( ! srcRect.intersects(srcBound) )
-            return N;
+            return null;
 
         srcRect = srcRect.intersection(srcBound);
-        final Raster r = texture.getData(srcRect);
+        return texture.getData(srcRect);
+    }
 
-        srcRect = r.getBounds();
+    /**
+     * Requests smaller than this many pixels are not split between
+     * threads by {@link #lightRows}.
+     */
+    static final int PARALLEL_MIN_PIXELS = 128*128;
 
-        // System.out.println("SrcRect: " + srcRect);
-        // System.out.println("rect: [" +
-        //                    x + ", " + y + ", " +
-        //                    w + ", " + h + "]");
+    /**
+     * Lights the rows of a raster, from the texture data returned by
+     * {@link #getData} for it.
+     */
+    interface RowLighter {
+        /**
+         * Lights the rows y0 (inclusive) to y1 (exclusive) of wr,
+         * counted from its top.
+         * @param src The texture data for wr, may be null.
+         */
+        void lightRows(WritableRaster wr, Raster src, int y0, int y1);
+    }
 
-        final DataBufferInt db = (DataBufferInt)r.getDataBuffer();
+    /**
+     * Lights the rows of wr with the given lighter.  Only the texture
+     * is read here: the normals are computed one row at a time while
+     * lighting, from the texture rows around it.  Large requests are
+     * split in bands of rows lit concurrently on the
+     * {@link WorkerPool#getDefault() default worker pool}.
+     */
+    void lightRows(final WritableRaster wr, final RowLighter lighter) {
+        final int w = wr.getWidth();
+        final int h = wr.getHeight();
+        final Raster src = getData(wr.getMinX(), wr.getMinY(), w, h);
+
+        WorkerPool pool = WorkerPool.getDefault();
+        pool.invokeBands(0, h, pool.getNumBands(h, (long)w*h,
+                                                PARALLEL_MIN_PIXELS),
+                         new WorkerPool.BandTask() {
+                             public void run(int y0, int y1) {
+                                 lighter.lightRows(wr, src, y0, y1);
+                             }
+                         });
+    }
+
+    /**
+     * Computes the normals of one row of pixels, in the same way as
+     * {@link #getNormalArray}, from the texture data returned by
+     * {@link #getData} for a rectangle holding the row.  Only the
+     * rows of r above and below the row are read, and nothing is
+     * modified, so the rows of a rectangle can be computed
+     * concurrently.
+     *
+     * @param r the texture data, may be null.
+     * @param x x-axis coordinate of the first pixel of the row
+     * @param y y-axis coordinate of the row
+     * @param w number of pixels of the row
+     * @param N receives the normal of each pixel in its first three
+     *          components and its elevation in the fourth. Pixels
+     *          outside the texture get zeros.
+     */
+    public void getNormalRow(final Raster r,
+                             final int x, final int y, final int w,
+                             final double[][] N) {
+        for (int i=0; i<w; i++) {
+            final double [] n = N[i];
+            n[0] = n[1] = n[2] = n[3] = 0;
+        }
+        if (r == null)
+            return;
 
+        final Rectangle srcRect = r.getBounds();
+        if ((y < srcRect.y) || (y >= srcRect.y+srcRect.height))
+            return;
+
+        final DataBufferInt db = (DataBufferInt)r.getDataBuffer();
 
         final int[] pixels = db.getBankData()[0];
 
         final SinglePixelPackedSampleModel sppsm;
         sppsm = (SinglePixelPackedSampleModel)r.getSampleModel();
 
-
         final int scanStride = sppsm.getScanlineStride();
         final int scanStridePP = scanStride + 1;
         final int scanStrideMM = scanStride - 1;
@@ -126,35 +213,23 @@ public final class BumpMap {
 
         final double pixelScale = 1.0/255;
 
-        if(w <= 0)
-            return N;
-        // Process pixels on the border
-        if(h <= 0)
-            return N;
-
         final int xEnd   = Math.min(srcRect.x+srcRect.width -1, x+w);
-        final int yEnd   = Math.min(srcRect.y+srcRect.height-1, y+h);
         final int offset =
             (db.getOffset() +
              sppsm.getOffset(srcRect.x -r.getSampleModelTranslateX(),
                              srcRect.y -r.getSampleModelTranslateY()));
 
-        int yloc=y;
-        if (yloc < srcRect.y) {
-            yloc = srcRect.y;
-        }
+        int xloc=x;
+        if (xloc < srcRect.x)
+            xloc = srcRect.x;
+        if (xloc >= srcRect.x+srcRect.width)
+            return;
 
-        // Top edge extend filters...
-        if (yloc == srcRect.y) {
-            if (yloc == yEnd) {
-                // Only one row of pixels...
-                final double [][] NRow = N[yloc-y];
-                int xloc=x;
-                if (xloc < srcRect.x)
-                    xloc = srcRect.x;
-                int p  = (offset + (xloc-srcRect.x) +
-                          scanStride*(yloc-srcRect.y));
+        int p = offset + (xloc-srcRect.x) + scanStride*(y-srcRect.y);
 
+        if (y == srcRect.y) {
+            if (y == srcRect.y+srcRect.height-1) {
+                // Only one row of pixels...
                 crcc = (pixels[p] >>> 24)*pixelScale;
 
                 if (xloc != srcRect.x) {
@@ -164,7 +239,7 @@ public final class BumpMap {
                     // Top left pixel, in src (0, 0);
                     crnc = (pixels[p+1] >>> 24)*pixelScale;
 
-                    final double [] n = NRow[xloc-x];
+                    final double [] n = N[xloc-x];
 
                     n[0] = 2*surfaceScaleX*(crcc - crnc);
                     invNorm = 1.0/Math.sqrt(n[0]*n[0] + 1);
@@ -184,7 +259,7 @@ public final class BumpMap {
                 for (; xloc<xEnd; xloc++) {
                     // Middle Top row...
                     crnc = (pixels[p+1] >>> 24)*pixelScale;
-                    final double [] n = NRow[xloc-x];
+                    final double [] n = N[xloc-x];
 
                     n[0] = surfaceScaleX * (crpc - crnc );
                     invNorm = 1.0/Math.sqrt(n[0]*n[0] + 1);
@@ -200,7 +275,7 @@ public final class BumpMap {
                 if ((xloc < x+w) &&
                     (xloc == srcRect.x+srcRect.width-1)) {
                     // Last pixel of top row
-                    final double [] n = NRow[xloc-x];
+                    final double [] n = N[xloc-x];
 
                     n[0] = 2*surfaceScaleX*(crpc - crcc);
                     invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
@@ -209,16 +284,9 @@ public final class BumpMap {
                     n[2]  = invNorm;
                     n[3]  = crcc*surfaceScale;
                 }
-                return N;
+                return;
             }
 
-            final double [][] NRow = N[yloc-y];
-            int p  = offset + scanStride*(yloc-srcRect.y);
-            int xloc=x;
-            if (xloc < srcRect.x)
-                xloc = srcRect.x;
-            p += xloc-srcRect.x;
-
             crcc = (pixels[p] >>> 24)*pixelScale;
             nrcc = (pixels[p + scanStride] >>> 24)*pixelScale;
 
@@ -231,7 +299,7 @@ public final class BumpMap {
                 crnc = (pixels[p+1] >>> 24)*pixelScale;
                 nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
 
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - twoThirdSurfaceScaleX *
                     ((2*crnc + nrnc - 2*crcc - nrcc));
@@ -259,7 +327,7 @@ public final class BumpMap {
                 crnc = (pixels[p+1] >>> 24)*pixelScale;
                 nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
 
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - thirdSurfaceScaleX * (( 2*crnc + nrnc)
                                                - (2*crpc + nrpc));
@@ -281,7 +349,7 @@ public final class BumpMap {
             if ((xloc < x+w) &&
                 (xloc == srcRect.x+srcRect.width-1)) {
                 // Last pixel of top row
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - twoThirdSurfaceScaleX *(( 2*crcc + nrcc)
                                                  - (2*crpc + nrpc));
@@ -294,119 +362,10 @@ public final class BumpMap {
                 n[2]  = invNorm;
                 n[3]  = crcc*surfaceScale;
             }
-            yloc++;
+            return;
         }
 
-        for (; yloc<yEnd; yloc++) {
-            final double [][] NRow = N[yloc-y];
-            int p  = offset + scanStride*(yloc-srcRect.y);
-
-            int xloc=x;
-            if (xloc < srcRect.x)
-                xloc = srcRect.x;
-
-            p += xloc-srcRect.x;
-
-            prcc = (pixels[p - scanStride] >>> 24)*pixelScale;
-            crcc = (pixels[p] >>> 24)*pixelScale;
-            nrcc = (pixels[p + scanStride] >>> 24)*pixelScale;
-
-            if (xloc != srcRect.x) {
-                prpc = (pixels[p - scanStridePP] >>> 24)*pixelScale;
-                crpc = (pixels[p - 1] >>> 24)*pixelScale;
-                nrpc = (pixels[p + scanStrideMM] >>> 24)*pixelScale;
-            }
-            else if (xloc < xEnd) {
-                // Now, process left column, from (0, 1) to (0, h-1)
-                crnc = (pixels[p+1] >>> 24)*pixelScale;
-                prnc = (pixels[p - scanStrideMM] >>> 24)*pixelScale;
-                nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
-
-                final double [] n = NRow[xloc-x];
-
-                n[0] = - halfSurfaceScaleX *(( prnc + 2*crnc + nrnc)
-                                             - (prcc + 2*crcc + nrcc));
-                n[1] = - thirdSurfaceScaleY *(( 2*prcc + prnc)
-                                              - ( 2*crcc + crnc));
-
-                invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
-                n[0] *= invNorm;
-                n[1] *= invNorm;
-                n[2]  = invNorm;
-                n[3]  = crcc*surfaceScale;
-
-                p++;
-                xloc++;
-
-                prpc = prcc;
-                crpc = crcc;
-                nrpc = nrcc;
-                prcc = prnc;
-                crcc = crnc;
-                nrcc = nrnc;
-            } else {
-                // Single pix
-                prpc = prcc;
-                crpc = crcc;
-                nrpc = nrcc;
-            }
-
-            for (; xloc<xEnd; xloc++) {
-                // Middle Middle row...
-                prnc = (pixels[p - scanStrideMM] >>> 24)*pixelScale;
-                crnc = (pixels[p+1] >>> 24)*pixelScale;
-                nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
-
-                final double [] n = NRow[xloc-x];
-
-                n[0] = - quarterSurfaceScaleX *(( prnc + 2*crnc + nrnc)
-                                                - (prpc + 2*crpc + nrpc));
-                n[1] = - quarterSurfaceScaleY *(( nrpc + 2*nrcc + nrnc)
-                                                - (prpc + 2*prcc + prnc));
-
-                invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
-                n[0] *= invNorm;
-                n[1] *= invNorm;
-                n[2]  = invNorm;
-                n[3]  = crcc*surfaceScale;
-
-                p++;
-                prpc = prcc;
-                crpc = crcc;
-                nrpc = nrcc;
-                prcc = prnc;
-                crcc = crnc;
-                nrcc = nrnc;
-            }
-
-            if ((xloc < x+w) &&
-                (xloc == srcRect.x+srcRect.width-1)) {
-                // Now, proces right column, from (w-1, 1) to (w-1, h-1)
-                final double [] n = NRow[xloc-x];
-
-                n[0] = - halfSurfaceScaleX *( (prcc + 2*crcc + nrcc)
-                                             -(prpc + 2*crpc + nrpc));
-                n[1] = - thirdSurfaceScaleY *(( nrpc + 2*nrcc)
-                                              - ( prpc + 2*prcc));
-
-                invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
-                n[0] *= invNorm;
-                n[1] *= invNorm;
-                n[2]  = invNorm;
-                n[3]  = crcc*surfaceScale;
-            }
-        }
-
-        if ((yloc < y+h) &&
-            (yloc == srcRect.y+srcRect.height-1)) {
-            final double [][] NRow = N[yloc-y];
-            int p  = offset + scanStride*(yloc-srcRect.y);
-            int xloc=x;
-            if (xloc < srcRect.x)
-                xloc = srcRect.x;
-
-            p += xloc-srcRect.x;
-
+        if (y == srcRect.y+srcRect.height-1) {
             crcc = (pixels[p] >>> 24)*pixelScale;
             prcc = (pixels[p - scanStride] >>> 24)*pixelScale;
 
@@ -419,7 +378,7 @@ public final class BumpMap {
                 crnc = (pixels[p + 1] >>> 24)*pixelScale;
                 prnc = (pixels[p - scanStrideMM] >>> 24)*pixelScale;
 
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - twoThirdSurfaceScaleX * ((2*crnc + prnc - 2*crcc - prcc));
                 n[1] = - twoThirdSurfaceScaleY * ((2*crcc + crnc - 2*prcc - prnc));
@@ -450,7 +409,7 @@ public final class BumpMap {
                 //                    prpc + "," + prcc + "," + prnc + "  " +
                 //                    crpc + "," + crcc + "," + crnc );
 
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - thirdSurfaceScaleX *(( 2*crnc + prnc)
                                               - (2*crpc + prpc));
@@ -473,7 +432,7 @@ public final class BumpMap {
             if ((xloc < x+w) &&
                 (xloc == srcRect.x+srcRect.width-1)) {
                 // Bottom right corner
-                final double [] n = NRow[xloc-x];
+                final double [] n = N[xloc-x];
 
                 n[0] = - twoThirdSurfaceScaleX *(( 2*crcc + prcc)
                                                  - (2*crpc + prpc));
@@ -486,8 +445,96 @@ public final class BumpMap {
                 n[2]  = invNorm;
                 n[3]  = crcc*surfaceScale;
             }
+            return;
+        }
+
+        prcc = (pixels[p - scanStride] >>> 24)*pixelScale;
+        crcc = (pixels[p] >>> 24)*pixelScale;
+        nrcc = (pixels[p + scanStride] >>> 24)*pixelScale;
+
+        if (xloc != srcRect.x) {
+            prpc = (pixels[p - scanStridePP] >>> 24)*pixelScale;
+            crpc = (pixels[p - 1] >>> 24)*pixelScale;
+            nrpc = (pixels[p + scanStrideMM] >>> 24)*pixelScale;
+        }
+        else if (xloc < xEnd) {
+            // Now, process left column, from (0, 1) to (0, h-1)
+            crnc = (pixels[p+1] >>> 24)*pixelScale;
+            prnc = (pixels[p - scanStrideMM] >>> 24)*pixelScale;
+            nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
+
+            final double [] n = N[xloc-x];
+
+            n[0] = - halfSurfaceScaleX *(( prnc + 2*crnc + nrnc)
+                                         - (prcc + 2*crcc + nrcc));
+            n[1] = - thirdSurfaceScaleY *(( 2*prcc + prnc)
+                                          - ( 2*crcc + crnc));
+
+            invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
+            n[0] *= invNorm;
+            n[1] *= invNorm;
+            n[2]  = invNorm;
+            n[3]  = crcc*surfaceScale;
+
+            p++;
+            xloc++;
+
+            prpc = prcc;
+            crpc = crcc;
+            nrpc = nrcc;
+            prcc = prnc;
+            crcc = crnc;
+            nrcc = nrnc;
+        } else {
+            // Single pix
+            prpc = prcc;
+            crpc = crcc;
+            nrpc = nrcc;
+        }
+
+        for (; xloc<xEnd; xloc++) {
+            // Middle Middle row...
+            prnc = (pixels[p - scanStrideMM] >>> 24)*pixelScale;
+            crnc = (pixels[p+1] >>> 24)*pixelScale;
+            nrnc = (pixels[p + scanStridePP] >>> 24)*pixelScale;
+
+            final double [] n = N[xloc-x];
+
+            n[0] = - quarterSurfaceScaleX *(( prnc + 2*crnc + nrnc)
+                                            - (prpc + 2*crpc + nrpc));
+            n[1] = - quarterSurfaceScaleY *(( nrpc + 2*nrcc + nrnc)
+                                            - (prpc + 2*prcc + prnc));
+
+            invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
+            n[0] *= invNorm;
+            n[1] *= invNorm;
+            n[2]  = invNorm;
+            n[3]  = crcc*surfaceScale;
+
+            p++;
+            prpc = prcc;
+            crpc = crcc;
+            nrpc = nrcc;
+            prcc = prnc;
+            crcc = crnc;
+            nrcc = nrnc;
+        }
+
+        if ((xloc < x+w) &&
+            (xloc == srcRect.x+srcRect.width-1)) {
+            // Now, proces right column, from (w-1, 1) to (w-1, h-1)
+            final double [] n = N[xloc-x];
+
+            n[0] = - halfSurfaceScaleX *( (prcc + 2*crcc + nrcc)
+                                         -(prpc + 2*crpc + nrpc));
+            n[1] = - thirdSurfaceScaleY *(( nrpc + 2*nrcc)
+                                          - ( prpc + 2*prcc));
+
+            invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
+            n[0] *= invNorm;
+            n[1] *= invNorm;
+            n[2]  = invNorm;
+            n[3]  = crcc*surfaceScale;
         }
-        return N;
     }
 }
-
@@ -21,6 +21,7 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
@@ -94,11 +95,25 @@ public class DiffuseLightingRed extends AbstractRed{
              litRegion.x, litRegion.y, null);
     }
 
-    public WritableRaster copyData(WritableRaster wr){
+    public WritableRaster copyData(final WritableRaster wr) {
+        bumpMap.lightRows(wr, new BumpMap.RowLighter() {
+                public void lightRows(WritableRaster wr, Raster src,
+                                      int y0, int y1) {
+                    DiffuseLightingRed.this.lightRows(wr, src, y0, y1);
+                }
+            });
+        return wr;
+    }
+
+    /**
+     * Lights the rows y0 (inclusive) to y1 (exclusive) of wr, counted
+     * from its top.
+     * @param src The texture data returned by the bump map for wr.
+     */
+    protected void lightRows(WritableRaster wr, Raster src, int y0, int y1){
         final double[] lightColor = light.getColor(linear);
         
         final int w = wr.getWidth();
-        final int h = wr.getHeight();
         final int minX = wr.getMinX();
         final int minY = wr.getMinY();
 
@@ -108,29 +123,30 @@ public class DiffuseLightingRed extends AbstractRed{
         final SinglePixelPackedSampleModel sppsm;
         sppsm = (SinglePixelPackedSampleModel)wr.getSampleModel();
         
+        final int scanStride = sppsm.getScanlineStride();
         final int offset = 
             (db.getOffset() +
              sppsm.getOffset(minX-wr.getSampleModelTranslateX(), 
-                             minY-wr.getSampleModelTranslateY()));
+                             minY-wr.getSampleModelTranslateY()) +
+             y0*scanStride);
 
-        final int scanStride = sppsm.getScanlineStride();
         final int adjust = scanStride - w;
         int p = offset;
         int r=0, g=0, b=0;
         int i=0, j=0;
 
-        // System.out.println("Getting diffuse red : " + minX + "/" + minY + "/" + w + "/" + h);
         double x = scaleX*minX;
         double y = scaleY*minY;
         double NL = 0;
 
-        // final double[] L = new double[3];
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
+        // The normals of the current row
+        final double[][] NR = new double[w][4];
+
         if(!light.isConstant()){
             final double[][] LA = new double[w][3];
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
+            for(i=y0; i<y1; i++){
+                bumpMap.getNormalRow(src, minX, minY+i, w, NR);
                 light.getLightRow(x, y+i*scaleY, scaleX, w, NR, LA);
                 for(j=0; j<w; j++){
                     // Get Normal 
@@ -173,8 +189,8 @@ public class DiffuseLightingRed extends AbstractRed{
             final double[] L = new double[3];
             light.getLight(0, 0, 0, L);
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
+            for(i=y0; i<y1; i++){
+                bumpMap.getNormalRow(src, minX, minY+i, w, NR);
                 for(j=0; j<w; j++){
                     // Get Normal 
                     final double[] N = NR[j];
@@ -207,7 +223,6 @@ public class DiffuseLightingRed extends AbstractRed{
             }
         }
         
-        return wr;
     }
 
 }
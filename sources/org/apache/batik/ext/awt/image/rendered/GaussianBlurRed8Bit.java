@@ -31,8 +31,11 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * This implementation of RenderableImage will render its input
@@ -208,6 +211,88 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         return new Kernel(1, len, computeQualityKernelData(len, stdDevY));
     }
 
+    /**
+     * The box filter passes of requests smaller than this many pixels
+     * are not split between threads.
+     */
+    static final int PARALLEL_MIN_PIXELS = 256*256;
+
+    /**
+     * Scratch memory of a thread, reused from one request to the next.
+     */
+    static class Scratch {
+        int [] pixels = new int[0];
+        int [] ints   = new int[0];
+
+        /**
+         * Whether <code>pixels</code> is in use (the source of a blur
+         * may be another blur).
+         */
+        boolean pixelsInUse;
+    }
+
+    private static final ThreadLocal scratch = new ThreadLocal();
+
+    /**
+     * Returns the scratch memory of the calling thread.  It is only
+     * softly referenced since it may be large.
+     */
+    static Scratch getScratch() {
+        SoftReference ref = (SoftReference)scratch.get();
+        Scratch ret = (ref == null) ? null : (Scratch)ref.get();
+        if (ret == null) {
+            ret = new Scratch();
+            scratch.set(new SoftReference(ret));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns an array of at least <code>len</code> ints from the
+     * scratch memory of the calling thread.
+     */
+    static int [] getScratchInts(int len) {
+        Scratch s = getScratch();
+        if (s.ints.length < len)
+            s.ints = new int[len];
+        return s.ints;
+    }
+
+    /**
+     * Returns a raster of the given size compatible with
+     * <code>cm</code>, backed by the scratch memory of the calling
+     * thread if possible, in which case it must be released with
+     * {@link #releaseScratchRaster}.  The raster is cleared unless
+     * <code>clear</code> is false.
+     */
+    static WritableRaster createScratchRaster(ColorModel cm, int w, int h,
+                                              boolean clear) {
+        Scratch s = getScratch();
+        if (s.pixelsInUse || !(cm instanceof DirectColorModel) ||
+            (cm.getTransferType() != DataBuffer.TYPE_INT))
+            return cm.createCompatibleWritableRaster(w, h);
+
+        s.pixelsInUse = true;
+        int len = w*h;
+        if (s.pixels.length < len)
+            s.pixels = new int[len];
+        else if (clear)
+            Arrays.fill(s.pixels, 0, len, 0);
+        DataBufferInt db = new DataBufferInt(s.pixels, len);
+        return Raster.createPackedRaster
+            (db, w, h, w, ((DirectColorModel)cm).getMasks(), null);
+    }
+
+    /**
+     * Releases a raster returned by {@link #createScratchRaster}.
+     */
+    static void releaseScratchRaster(WritableRaster wr) {
+        Scratch s = getScratch();
+        if (wr.getDataBuffer() instanceof DataBufferInt &&
+            ((DataBufferInt)wr.getDataBuffer()).getData() == s.pixels)
+            s.pixelsInUse = false;
+    }
+
     public WritableRaster copyData(WritableRaster wr) {
         // Get my source.
         CachableRed src = (CachableRed)getSources().get(0);
@@ -223,9 +308,25 @@ public class GaussianBlurRed8Bit extends AbstractRed {
 
         ColorModel srcCM = src.getColorModel();
 
-        WritableRaster tmpR1=null, tmpR2=null;
+        // The parts of the raster outside of the source are not filled.
+        WritableRaster tmp = createScratchRaster
+            (srcCM, r.width, r.height, !src.getBounds().contains(r));
+        try {
+            return blur(src, r, tmp, wr);
+        } finally {
+            releaseScratchRaster(tmp);
+        }
+    }
 
-        tmpR1 = srcCM.createCompatibleWritableRaster(r.width, r.height);
+    /**
+     * Blurs the source area <code>r</code>, read into
+     * <code>tmpR1</code>, into <code>wr</code>.
+     */
+    private WritableRaster blur(CachableRed src, Rectangle r,
+                                WritableRaster tmpR1, WritableRaster wr) {
+        ColorModel srcCM = src.getColorModel();
+
+        WritableRaster tmpR2=null;
         {
             WritableRaster fill;
             fill = tmpR1.createWritableTranslatedChild(r.x, r.y);
@@ -304,9 +405,15 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         return wr;
     }
 
-    private WritableRaster boxFilterH(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
+    /**
+     * Box filters the rows of <code>src</code> into <code>dest</code>.
+     * The rows of a large raster are split between the threads of the
+     * worker pool.
+     */
+    private WritableRaster boxFilterH(final Raster src,
+                                      final WritableRaster dest,
+                                      final int skipX, int skipY,
+                                      final int boxSz, final int loc) {
 
         final int w = src.getWidth();
         final int h = src.getHeight();
@@ -315,6 +422,40 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         if (w < (2*skipX)+boxSz) return dest;
         if (h < (2*skipY))       return dest;
 
+        final int y0 = skipY;
+        final int y1 = h-skipY;
+        WorkerPool pool = WorkerPool.getDefault();
+        pool.invokeBands(y0, y1, getNumParts(pool, w, y1-y0),
+                         new WorkerPool.BandTask() {
+                             public void run(int p0, int p1) {
+                                 boxFilterRows(src, dest, skipX, p0, p1,
+                                               boxSz, loc);
+                             }
+                         });
+        return dest;
+    }
+
+    /**
+     * Returns the number of parts to split a box filter pass over
+     * <code>len</code> rows (or columns) of <code>size</code> pixels
+     * between, 1 if it is not worth it.
+     */
+    private static int getNumParts(WorkerPool pool, int size, int len) {
+        if ((long)size*len < PARALLEL_MIN_PIXELS)
+            return 1;
+        return Math.max(1, Math.min(pool.getParallelism(), len/16));
+    }
+
+    /**
+     * Box filters the rows <code>y0</code> to <code>y1</code>
+     * (exclusive) of <code>src</code> into <code>dest</code>.
+     */
+    private void boxFilterRows(Raster src, WritableRaster dest,
+                               int skipX, int y0, int y1,
+                               int boxSz, int loc) {
+
+        final int w = src.getWidth();
+
         final SinglePixelPackedSampleModel srcSPPSM =
             (SinglePixelPackedSampleModel)src.getSampleModel();
 
@@ -346,23 +487,26 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         final int[] srcPixels  = srcDB.getBankData()[0];
         final int[] destPixels = dstDB.getBankData()[0];
 
-        final int [] buffer = new int [boxSz];
+        final int [] buffer = getScratchInts(boxSz);
         int curr, prev;
 
+        // A transparent row stays transparent, so when filtering in
+        // place it can be left alone.
+        final boolean inPlace = (src == dest);
+
           // Fixed point normalization factor (8.24)
         int scale = (1<<24)/boxSz;
 
         /*
          * System.out.println("Info: srcOff: " + srcOff +
          *                    " x: " + skipX +
-         *                    " y: " + skipY +
+         *                    " y: " + y0 + "-" + y1 +
          *                    " w: " + w +
-         *                    " h: " + h +
          *                    " boxSz " + boxSz +
          *                    " srcStride: " + srcScanStride);
          */
 
-        for (int y=skipY; y<(h-skipY); y++) {
+        for (int y=y0; y<y1; y++) {
             int sp     = srcOff + y*srcScanStride;
             int dp     = dstOff + y*dstScanStride;
             int rowEnd = sp + (w-skipX);
@@ -374,6 +518,9 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             int sumB = 0;
 
             sp += skipX;
+            if (inPlace && isTransparent(srcPixels, sp, rowEnd))
+                continue;
+
             int end  = sp+boxSz;
 
             while (sp < end) {
@@ -419,12 +566,27 @@ public class GaussianBlurRed8Bit extends AbstractRed {
                 dp++;
             }
         }
-        return dest;
     }
 
-    private WritableRaster boxFilterV(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
+    /**
+     * Tells whether <code>pixels[start..end)</code> are all zero.
+     */
+    private static boolean isTransparent(int [] pixels, int start, int end) {
+        for (int p=start; p<end; p++)
+            if (pixels[p] != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Box filters the columns of <code>src</code> into
+     * <code>dest</code>.  The columns of a large raster are split
+     * between the threads of the worker pool.
+     */
+    private WritableRaster boxFilterV(final Raster src,
+                                      final WritableRaster dest,
+                                      int skipX, final int skipY,
+                                      final int boxSz, final int loc) {
 
         final int w = src.getWidth();
         final int h = src.getHeight();
@@ -433,6 +595,65 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         if (w < (2*skipX))       return dest;
         if (h < (2*skipY)+boxSz) return dest;
 
+        int x0 = skipX;
+        int x1 = w-skipX;
+        if (src == dest) {
+            // Transparent columns stay transparent, so when filtering
+            // in place only the columns between the first and the last
+            // non transparent pixels need to be filtered.
+            final SinglePixelPackedSampleModel srcSPPSM =
+                (SinglePixelPackedSampleModel)src.getSampleModel();
+            final int srcScanStride = srcSPPSM.getScanlineStride();
+            DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
+            final int srcOff
+                = (srcDB.getOffset() +
+                   srcSPPSM.getOffset
+                   (src.getMinX()-src.getSampleModelTranslateX(),
+                    src.getMinY()-src.getSampleModelTranslateY()));
+            final int[] srcPixels = srcDB.getBankData()[0];
+
+            int minX = x1;
+            int maxX = x0-1;
+            for (int y=skipY; y<h-skipY; y++) {
+                int sp = srcOff + y*srcScanStride;
+                int x = x0;
+                while ((x < minX) && (srcPixels[sp+x] == 0)) x++;
+                if (x < minX) minX = x;
+                x = x1-1;
+                while ((x > maxX) && (srcPixels[sp+x] == 0)) x--;
+                if (x > maxX) maxX = x;
+            }
+            if (maxX < minX)
+                return dest;
+            x0 = minX;
+            x1 = maxX+1;
+        }
+
+        WorkerPool pool = WorkerPool.getDefault();
+        pool.invokeBands(x0, x1, getNumParts(pool, h-2*skipY, x1-x0),
+                         new WorkerPool.BandTask() {
+                             public void run(int p0, int p1) {
+                                 boxFilterColumns(src, dest, p0, p1, skipY,
+                                                  boxSz, loc);
+                             }
+                         });
+        return dest;
+    }
+
+    /**
+     * Box filters the columns <code>x0</code> to <code>x1</code>
+     * (exclusive) of <code>src</code> into <code>dest</code>.  The
+     * columns are filtered side by side, a row at a time, so that
+     * memory is accessed sequentially: the last <code>boxSz</code>
+     * rows read and the running sums of each column are kept in
+     * scratch memory.
+     */
+    private void boxFilterColumns(Raster src, WritableRaster dest,
+                                  int x0, int x1, int skipY,
+                                  int boxSz, int loc) {
+
+        final int h = src.getHeight();
+
         final SinglePixelPackedSampleModel srcSPPSM =
             (SinglePixelPackedSampleModel)src.getSampleModel();
 
@@ -465,81 +686,66 @@ public class GaussianBlurRed8Bit extends AbstractRed {
         final int[] srcPixels  = srcDB.getBankData()[0];
         final int[] destPixels = dstDB.getBankData()[0];
 
-        final int [] buffer = new int [boxSz];
+        final int yEnd = h-skipY;
+        final int cw = x1-x0;
+
+        // The last boxSz rows read, followed by the sums of the alpha,
+        // red, green and blue samples of each column.
+        final int [] buffer = getScratchInts(cw*(boxSz+4));
+        final int sumA = cw*boxSz;
+        final int sumR = sumA+cw;
+        final int sumG = sumR+cw;
+        final int sumB = sumG+cw;
+        Arrays.fill(buffer, sumA, sumB+cw, 0);
         int curr, prev;
 
           // Fixed point normalization factor (8.24)
         final int scale = (1<<24)/boxSz;
 
-        /*
-         * System.out.println("Info: srcOff: " + srcOff +
-         *                    " x: " + skipX +
-         *                    " y: " + skipY +
-         *                    " w: " + w +
-         *                    " h: " + h +
-         *                    " boxSz " + boxSz +
-         *                    " srcStride: " + srcScanStride);
-         */
-
-        for (int x=skipX; x<(w-skipX); x++) {
-            int sp = srcOff + x;
-            int dp = dstOff + x;
-            int colEnd = sp + (h-skipY)*srcScanStride;
-
-            int k=0;
-            int sumA = 0;
-            int sumR = 0;
-            int sumG = 0;
-            int sumB = 0;
-
-            sp += skipY*srcScanStride;
-            int end  = sp+(boxSz*srcScanStride);
-
-            while (sp < end) {
-                curr = buffer[k] = srcPixels[sp];
-                sumA += (curr>>> 24);
-                sumR += (curr >> 16)&0xFF;
-                sumG += (curr >>  8)&0xFF;
-                sumB += (curr      )&0xFF;
-                k++;
-                sp+=srcScanStride;
+        int sp = srcOff + skipY*srcScanStride + x0;
+        for (int k=0; k<boxSz; k++) {
+            int bp = k*cw;
+            for (int i=0; i<cw; i++) {
+                curr = buffer[bp+i] = srcPixels[sp+i];
+                buffer[sumA+i] += (curr>>> 24);
+                buffer[sumR+i] += (curr >> 16)&0xFF;
+                buffer[sumG+i] += (curr >>  8)&0xFF;
+                buffer[sumB+i] += (curr      )&0xFF;
             }
+            sp += srcScanStride;
+        }
 
+        int dp = dstOff + (skipY + loc)*dstScanStride + x0;
+        for (int i=0; i<cw; i++) {
+            destPixels[dp+i] = (( (buffer[sumA+i]*scale)&0xFF000000)       |
+                                (((buffer[sumR+i]*scale)&0xFF000000)>>>8)  |
+                                (((buffer[sumG+i]*scale)&0xFF000000)>>>16) |
+                                (((buffer[sumB+i]*scale)&0xFF000000)>>>24));
+        }
 
-            dp += (skipY + loc)*dstScanStride;
-            prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                     (((sumR*scale)&0xFF000000)>>>8)  |
-                                     (((sumG*scale)&0xFF000000)>>>16) |
-                                     (((sumB*scale)&0xFF000000)>>>24));
-            dp+=dstScanStride;
-            k=0;
-            while (sp < colEnd) {
-                curr = buffer[k];
-                if (curr == srcPixels[sp]) {
-                    destPixels[dp] = prev;
-                } else {
-                    sumA -= (curr>>> 24);
-                    sumR -= (curr >> 16)&0xFF;
-                    sumG -= (curr >>  8)&0xFF;
-                    sumB -= (curr      )&0xFF;
-
-                    curr = buffer[k] = srcPixels[sp];
-
-                    sumA += (curr>>> 24);
-                    sumR += (curr >> 16)&0xFF;
-                    sumG += (curr >>  8)&0xFF;
-                    sumB += (curr      )&0xFF;
-                    prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                             (((sumR*scale)&0xFF000000)>>>8)  |
-                                             (((sumG*scale)&0xFF000000)>>>16) |
-                                             (((sumB*scale)&0xFF000000)>>>24));
+        int k=0;
+        for (int y=skipY+boxSz; y<yEnd; y++) {
+            dp += dstScanStride;
+            int bp = k*cw;
+            for (int i=0; i<cw; i++) {
+                prev = buffer[bp+i];
+                curr = srcPixels[sp+i];
+                if (curr != prev) {
+                    buffer[bp+i] = curr;
+                    buffer[sumA+i] += (curr>>> 24)     - (prev>>> 24);
+                    buffer[sumR+i] += ((curr >> 16)&0xFF) - ((prev >> 16)&0xFF);
+                    buffer[sumG+i] += ((curr >>  8)&0xFF) - ((prev >>  8)&0xFF);
+                    buffer[sumB+i] += ((curr      )&0xFF) - ((prev      )&0xFF);
                 }
-                k = (k+1)%boxSz;
-                sp+=srcScanStride;
-                dp+=dstScanStride;
+                destPixels[dp+i] =
+                    (( (buffer[sumA+i]*scale)&0xFF000000)       |
+                     (((buffer[sumR+i]*scale)&0xFF000000)>>>8)  |
+                     (((buffer[sumG+i]*scale)&0xFF000000)>>>16) |
+                     (((buffer[sumB+i]*scale)&0xFF000000)>>>24));
             }
+            k = (k+1)%boxSz;
+            sp += srcScanStride;
         }
-        return dest;
     }
 
     protected static ColorModel fixColorModel(CachableRed src) {
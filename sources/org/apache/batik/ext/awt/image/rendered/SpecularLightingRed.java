@@ -21,6 +21,7 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
@@ -110,7 +111,21 @@ public class SpecularLightingRed extends AbstractTiledRed{
         return wr;
     }
 
-    public void genRect(WritableRaster wr) {
+    public void genRect(final WritableRaster wr) {
+        bumpMap.lightRows(wr, new BumpMap.RowLighter() {
+                public void lightRows(WritableRaster wr, Raster src,
+                                      int y0, int y1) {
+                    SpecularLightingRed.this.lightRows(wr, src, y0, y1);
+                }
+            });
+    }
+
+    /**
+     * Lights the rows y0 (inclusive) to y1 (exclusive) of wr, counted
+     * from its top.
+     * @param src The texture data returned by the bump map for wr.
+     */
+    protected void lightRows(WritableRaster wr, Raster src, int y0, int y1) {
         // Copy variable on stack for faster access in tight loop
         final double scaleX = this.scaleX;
         final double scaleY = this.scaleY;
@@ -118,7 +133,6 @@ public class SpecularLightingRed extends AbstractTiledRed{
         final double[] lightColor = light.getColor(linear);
 
         final int w = wr.getWidth();
-        final int h = wr.getHeight();
         final int minX = wr.getMinX();
         final int minY = wr.getMinY();
 
@@ -128,12 +142,12 @@ public class SpecularLightingRed extends AbstractTiledRed{
         final SinglePixelPackedSampleModel sppsm;
         sppsm = (SinglePixelPackedSampleModel)wr.getSampleModel();
 
+        final int scanStride = sppsm.getScanlineStride();
         final int offset = 
             (db.getOffset() +
              sppsm.getOffset(minX-wr.getSampleModelTranslateX(), 
-                             minY-wr.getSampleModelTranslateY()));
-        // int offset = db.getOffset();
-        final int scanStride = sppsm.getScanlineStride();
+                             minY-wr.getSampleModelTranslateY()) +
+             y0*scanStride);
         final int adjust = scanStride - w;
         int p = offset;
         int a=0, i=0, j=0;
@@ -159,15 +173,16 @@ public class SpecularLightingRed extends AbstractTiledRed{
 
         // System.out.println("Pixel: 0x" + Integer.toHexString(pixel));
 
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
+        // The normals of the current row
+        final double[][] NR = new double[w][4];
 
         // System.out.println("Entering Specular Lighting");
         if (light instanceof SpotLight) {
             SpotLight slight = (SpotLight)light;
             final double[][] LA = new double[w][4];
-            for(i=0; i<h; i++){
+            for(i=y0; i<y1; i++){
                 // System.out.println("Row: " + i);
-                final double [][] NR = NA[i];
+                bumpMap.getNormalRow(src, minX, minY+i, w, NR);
                 slight.getLightRow4(x, y+i*scaleY, scaleX, w, NR, LA);
                 for (j=0; j<w; j++){
                     // Get Normal 
@@ -194,9 +209,9 @@ public class SpecularLightingRed extends AbstractTiledRed{
             }
         } else if(!light.isConstant()){
             final double[][] LA = new double[w][4];
-            for(i=0; i<h; i++){
+            for(i=y0; i<y1; i++){
                 // System.out.println("Row: " + i);
-                final double [][] NR = NA[i];
+                bumpMap.getNormalRow(src, minX, minY+i, w, NR);
                 light.getLightRow(x, y+i*scaleY, scaleX, w, NR, LA);
                 for (j=0; j<w; j++){
                     // Get Normal 
@@ -232,8 +247,8 @@ public class SpecularLightingRed extends AbstractTiledRed{
                 L[2] /= norm;
             }
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
+            for(i=y0; i<y1; i++){
+                bumpMap.getNormalRow(src, minX, minY+i, w, NR);
                 for(j=0; j<w; j++){
                     // Get Normal 
                     final double [] N = NR[j];
@@ -0,0 +1,313 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import org.apache.batik.util.DoublyLinkedList;
+
+/**
+ * An LRU cache whose size is measured in bytes of raster data rather
+ * than in number of entries, and which is split into a number of
+ * independently locked stripes so that threads touching unrelated
+ * tiles do not contend on a single monitor.
+ *
+ * <p>Each object is assigned to a stripe from its identity hash code
+ * and each stripe runs an exact LRU over its share of the memory
+ * budget, so the cache as a whole is an approximate LRU.  Objects
+ * which are not <code>TileLRUMember</code>s are charged one byte.</p>
+ *
+ * @version $Id$
+ */
+public class StripedLRUCache extends LRUCache {
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * A node of the cache, remembers the number of bytes it was
+     * charged when it was last added.
+     */
+    protected class StripeNode extends LRUNode {
+        protected long cost;
+    }
+
+    /**
+     * One independently locked part of the cache.
+     */
+    protected class Stripe {
+        protected DoublyLinkedList used = new DoublyLinkedList();
+        protected long budget;
+        protected long bytes;
+        protected long hits;
+        protected long misses;
+        protected long evictions;
+
+        protected Stripe(long budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * Drops least recently used entries until the stripe is back
+         * within budget.  The most recently used entry is always kept,
+         * even if it alone exceeds the budget.
+         */
+        protected void evict() {
+            while ((bytes > budget) && (used.getSize() > 1)) {
+                StripeNode nde = (StripeNode)used.getTail();
+                used.remove(nde);
+                bytes -= nde.cost;
+                nde.setObj(null);
+                evictions++;
+            }
+        }
+    }
+
+    private Stripe [] stripes;
+    private long      budget;
+
+    /**
+     * Creates a new cache with the default number of stripes.
+     * @param budget The total number of bytes of raster data to hold.
+     */
+    public StripedLRUCache(long budget) {
+        this(budget, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param budget The total number of bytes of raster data to hold.
+     * @param numStripes The number of independently locked stripes.
+     */
+    public StripedLRUCache(long budget, int numStripes) {
+        super(1);
+        if (numStripes <= 0) numStripes = 1;
+        if (budget < numStripes) budget = numStripes;
+
+        this.budget  = budget;
+        this.stripes = new Stripe[numStripes];
+        for (int i=0; i<numStripes; i++)
+            stripes[i] = new Stripe(budget/numStripes);
+    }
+
+    /**
+     * Returns the number of bytes of raster data one tile is charged.
+     */
+    public static long getCost(LRUObj obj) {
+        if (!(obj instanceof TileLRUMember))
+            return 1;
+
+        Raster ras = ((TileLRUMember)obj).hRaster;
+        if (ras == null)
+            return 1;
+
+        DataBuffer db = ras.getDataBuffer();
+        long elemSz = DataBuffer.getDataTypeSize(db.getDataType())/8;
+        if (elemSz == 0) elemSz = 1;
+        return ((long)db.getSize())*db.getNumBanks()*elemSz;
+    }
+
+    protected Stripe getStripe(LRUObj obj) {
+        int h = System.identityHashCode(obj);
+        h ^= (h >>> 16);
+        return stripes[(h & 0x7FFFFFFF) % stripes.length];
+    }
+
+    /**
+     * Returns the total memory budget of the cache in bytes.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Changes the total memory budget of the cache, evicting entries
+     * if needed.
+     * @param newBudget The new budget in bytes.
+     */
+    public void setBudget(long newBudget) {
+        if (newBudget < stripes.length) newBudget = stripes.length;
+        budget = newBudget;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                s.budget = newBudget/stripes.length;
+                s.evict();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes a tile of the default tile size is
+     * charged, i.e. the size of a 4 byte per pixel square tile.
+     */
+    public static long getDefaultTileCost() {
+        long sz = AbstractTiledRed.getDefaultTileSize();
+        return sz*sz*4;
+    }
+
+    /**
+     * Sets the budget from a number of tiles, as for the classic
+     * cache: each tile is counted as {@link #getDefaultTileCost()}
+     * bytes.  Use {@link #setBudget(long)} to give a number of bytes.
+     * @param newSz The number of default sized tiles to hold.
+     */
+    public void setSize(int newSz) {
+        setBudget(newSz*getDefaultTileCost());
+    }
+
+    public int getUsed() {
+        int ret = 0;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.used.getSize(); }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of bytes of raster data currently held.
+     */
+    public long getUsedBytes() {
+        long ret = 0;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.bytes; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of times an object already in the cache was
+     * added again (i.e. the tile was served from the cache).
+     */
+    public long getHitCount() {
+        long ret = 0;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.hits; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of times an object not in the cache was added
+     * (i.e. the tile had to be generated or recovered).
+     */
+    public long getMissCount() {
+        long ret = 0;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.misses; }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of objects dropped to stay within budget.
+     */
+    public long getEvictionCount() {
+        long ret = 0;
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) { ret += s.evictions; }
+        }
+        return ret;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public void resetStatistics() {
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                s.hits = s.misses = s.evictions = 0;
+            }
+        }
+    }
+
+    public void flush() {
+        for (int i=0; i<stripes.length; i++) {
+            Stripe s = stripes[i];
+            synchronized (s) {
+                while (s.used.getSize() > 0) {
+                    StripeNode nde = (StripeNode)s.used.pop();
+                    nde.setObj(null);
+                }
+                s.bytes = 0;
+            }
+        }
+    }
+
+    public void remove(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        synchronized (s) {
+            StripeNode nde = (StripeNode)obj.lruGet();
+            if (nde == null) return;
+            s.used.remove(nde);
+            s.bytes -= nde.cost;
+            nde.setObj(null);
+        }
+    }
+
+    public void touch(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        synchronized (s) {
+            StripeNode nde = (StripeNode)obj.lruGet();
+            if (nde == null) return;
+            s.used.touch(nde);
+        }
+    }
+
+    public void add(LRUObj obj) {
+        Stripe s = getStripe(obj);
+        synchronized (s) {
+            StripeNode nde = (StripeNode)obj.lruGet();
+            long cost = getCost(obj);
+            if (nde != null) {
+                // already linked in, the raster may have changed though.
+                s.hits++;
+                s.bytes += cost - nde.cost;
+                nde.cost = cost;
+                s.used.touch(nde);
+            } else {
+                s.misses++;
+                nde = new StripeNode();
+                nde.cost = cost;
+                nde.setObj(obj);
+                s.used.add(nde);
+                s.bytes += cost;
+            }
+            s.evict();
+        }
+    }
+
+    protected void print() {
+        System.out.println("Stripes: " + stripes.length +
+                           " In Use: " + getUsed() +
+                           " Bytes: " + getUsedBytes() + "/" + budget +
+                           " Hits: " + getHitCount() +
+                           " Misses: " + getMissCount() +
+                           " Evictions: " + getEvictionCount());
+    }
+}
@@ -25,22 +25,82 @@ import java.awt.image.RenderedImage;
  * @version $Id$
  */
 public class TileCache {
-        private static LRUCache cache = new LRUCache(50);
 
-        public static void setSize(int sz) { cache.setSize(sz); }
+        /**
+         * The memory budget, in bytes, for the striped tile cache.  If
+         * zero or negative (the default) the classic cache holding a
+         * fixed number of tiles is used.
+         */
+        static final long MEMORY_BUDGET;
+        static {
+            long value = 0;
+            try {
+                String s = System.getProperty
+                    ("org.apache.batik.tile_cache_budget", "0");
+                value = Long.parseLong(s);
+            } catch (SecurityException se) {
+            } catch (NumberFormatException nfe) {
+            } finally {
+                MEMORY_BUDGET = value;
+            }
+        }
+
+        private static volatile LRUCache cache = (MEMORY_BUDGET > 0)
+            ? new StripedLRUCache(MEMORY_BUDGET)
+            : new LRUCache(50);
+
+        /**
+         * Sets the size of the current cache as a number of tiles.  A
+         * striped cache converts it to a memory budget, charging each
+         * tile the size of a default sized 4 byte per pixel tile.
+         */
+        public static void setSize(int sz) { getCache().setSize(sz); }
+
+        /**
+         * Replaces the global tile cache with a lock-striped cache
+         * limited by the amount of raster data it holds rather than by
+         * the number of tiles.  Tile stores created before this call
+         * keep using the cache they were created with.
+         * @param budget The memory budget in bytes.
+         * @param stripes The number of independently locked stripes.
+         */
+        public static void setMemoryBudget(long budget, int stripes) {
+            setCache(new StripedLRUCache(budget, stripes));
+        }
+
+        /**
+         * Replaces the global tile cache.  Tile stores created before
+         * this call keep using the cache they were created with.
+         */
+        public static synchronized void setCache(LRUCache newCache) {
+            LRUCache old = cache;
+            cache = newCache;
+            if (old != newCache)
+                old.flush();
+        }
+
+        /**
+         * Returns the global tile cache.  This can be cast to
+         * <code>StripedLRUCache</code> to retrieve hit/miss statistics
+         * when a memory budget is in use.
+         */
+        public static LRUCache getCache() {
+            return cache;
+        }
 
         public static TileStore getTileGrid(int minTileX, int minTileY,
                                        int xSz, int ySz, TileGenerator src) {
-                return new TileGrid(minTileX, minTileY, xSz, ySz, src, cache);
+                return new TileGrid(minTileX, minTileY, xSz, ySz, src,
+                                    getCache());
         }
 
         public static TileStore getTileGrid(RenderedImage img,
                                             TileGenerator src) {
                 return new TileGrid(img.getMinTileX(),  img.getMinTileY(),
                             img.getNumXTiles(), img.getNumYTiles(),
-                            src, cache);
+                            src, getCache());
         }
         public static TileStore getTileMap(TileGenerator src) {
-                return new TileMap(src, cache);
+                return new TileMap(src, getCache());
         }
 }
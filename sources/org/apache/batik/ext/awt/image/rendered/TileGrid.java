@@ -59,31 +59,22 @@ public class TileGrid implements TileStore {
         if ((x<0) || (x>=xSz)) return;
         if ((y<0) || (y>=ySz)) return;
 
-        TileLRUMember [] row = rasters[y];
         TileLRUMember item;
         if (ras == null) {
             // Clearing entry.
-            if (row == null) return;
-            item = row[x];
-            if (item == null) return;
+            synchronized (this) {
+                TileLRUMember [] row = rasters[y];
+                if (row == null) return;
+                item = row[x];
+                if (item == null) return;
 
-            row[x] = null;
+                row[x] = null;
+            }
             cache.remove(item);
             return;
         }
 
-        if (row != null) {
-            item = row[x];
-            if (item == null) {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            item = new TileLRUMember();
-            row[x] = item;
-            rasters[y] = row;
-        }
+        item = getItem(x, y);
         item.setRaster(ras);
 
         cache.add(item);
@@ -100,10 +91,13 @@ public class TileGrid implements TileStore {
         if ((x<0) || (x>=xSz)) return null;
         if ((y<0) || (y>=ySz)) return null;
 
-        TileLRUMember [] row = rasters[y];
-        if (row == null)
-            return null;
-        TileLRUMember item = row[x];
+        TileLRUMember item;
+        synchronized (this) {
+            TileLRUMember [] row = rasters[y];
+            if (row == null)
+                return null;
+            item = row[x];
+        }
         if (item == null)
             return null;
         Raster ret = item.retrieveRaster();
@@ -122,23 +116,8 @@ public class TileGrid implements TileStore {
                                       (y+minTileY) + ")");
         if (COUNT) synchronized (TileGrid.class) { requests++; }
 
-        Raster       ras  = null;
-        TileLRUMember [] row  = rasters[y];
-        TileLRUMember    item = null;
-        if (row != null) {
-            item = row[x];
-            if (item != null)
-                ras = item.retrieveRaster();
-            else {
-                item = new TileLRUMember();
-                row[x] = item;
-            }
-        } else {
-            row = new TileLRUMember[xSz];
-            rasters[y] = row;
-            item = new TileLRUMember();
-            row[x] = item;
-        }
+        TileLRUMember item = getItem(x, y);
+        Raster        ras  = item.retrieveRaster();
 
         if (ras == null) {
             if (DEBUG) System.out.println("Generating: ("+(x+minTileX)+", "+
@@ -161,6 +140,25 @@ public class TileGrid implements TileStore {
         return ras;
     }
 
+    /**
+     * Returns the cache entry for the given (zero based) grid
+     * position, creating it if needed.  The grid itself is guarded by
+     * this object so several threads may share one store.
+     */
+    private synchronized TileLRUMember getItem(int x, int y) {
+        TileLRUMember [] row = rasters[y];
+        if (row == null) {
+            row = new TileLRUMember[xSz];
+            rasters[y] = row;
+        }
+        TileLRUMember item = row[x];
+        if (item == null) {
+            item = new TileLRUMember();
+            row[x] = item;
+        }
+        return item;
+    }
+
     static int requests;
     static int misses;
 }
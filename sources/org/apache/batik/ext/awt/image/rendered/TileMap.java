@@ -46,7 +46,7 @@ public class TileMap implements TileStore {
                 if (DEBUG) System.err.println("Cleaned: " + this);
                 TileMap tm = (TileMap)parent.get();
                 if (tm != null)
-                    tm.rasters.remove(pt);
+                    synchronized (tm.rasters) { tm.rasters.remove(pt); }
             }
         }
 
@@ -76,20 +76,23 @@ public class TileMap implements TileStore {
 
         if (ras == null) {
             // Clearing entry...
-            Object o = rasters.remove(pt);
+            Object o;
+            synchronized (rasters) { o = rasters.remove(pt); }
             if (o != null)
                 cache.remove((TileMapLRUMember)o);
             return;
         }
 
-        Object o = rasters.get(pt);
         TileMapLRUMember item;
-        if (o == null) {
-            item = new TileMapLRUMember(this, pt, ras);
-            rasters.put(pt, item);
-        } else {
-            item = (TileMapLRUMember)o;
-            item.setRaster(ras);
+        synchronized (rasters) {
+            Object o = rasters.get(pt);
+            if (o == null) {
+                item = new TileMapLRUMember(this, pt, ras);
+                rasters.put(pt, item);
+            } else {
+                item = (TileMapLRUMember)o;
+                item.setRaster(ras);
+            }
         }
 
         cache.add(item);
@@ -100,7 +103,8 @@ public class TileMap implements TileStore {
     // If it is not currently in the cache it returns null.
     public Raster getTileNoCompute(int x, int y) {
         Point pt = new Point(x, y);
-        Object o = rasters.get(pt);
+        Object o;
+        synchronized (rasters) { o = rasters.get(pt); }
         if (o == null)
             return null;
 
@@ -118,7 +122,8 @@ public class TileMap implements TileStore {
 
         Raster       ras  = null;
         Point pt = new Point(x, y);
-        Object o = rasters.get(pt);
+        Object o;
+        synchronized (rasters) { o = rasters.get(pt); }
         TileMapLRUMember item = null;
         if (o != null) {
             item = (TileMapLRUMember)o;
@@ -141,7 +146,7 @@ public class TileMap implements TileStore {
                 item.setRaster(ras);
             else  {
                 item = new TileMapLRUMember(this, pt, ras);
-                rasters.put(pt, item);
+                synchronized (rasters) { rasters.put(pt, item); }
             }
         }
 
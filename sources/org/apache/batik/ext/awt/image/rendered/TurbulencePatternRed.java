@@ -29,6 +29,11 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.batik.util.WorkerPool;
+
 /**
  * This class creates a RenderedImage in conformance to the one
  * defined for the feTurbulence filter of the SVG specification.  What
@@ -140,6 +145,12 @@ public final class TurbulencePatternRed extends AbstractRed {
      */
     private StitchInfo stitchInfo = null;
 
+    /**
+     * The stitching information of each octave, computed once from
+     * <code>stitchInfo</code> when stitching is on.
+     */
+    private StitchInfo[] octaveStitchInfo = null;
+
     /**
      * Identity transform, default used when null input in the constructor.
      */
@@ -210,8 +221,39 @@ public final class TurbulencePatternRed extends AbstractRed {
     private static final int BSize = 0x100;
     private static final int BM = 0xff;
     private static final double PerlinN = 0x1000;
-    private final int[] latticeSelector = new int[BSize + 1];
-    private final double[] gradient = new double[(BSize+1)*8];
+    private int[] latticeSelector;
+    private double[] gradient;
+
+    /**
+     * The lattice selector and gradient tables of a seed.  They only
+     * depend on the seed, so the instances using the same seed share
+     * them (read only).
+     */
+    static final class Lattice {
+        final int[] latticeSelector = new int[BSize + 1];
+        final double[] gradient = new double[(BSize+1)*8];
+    }
+
+    /**
+     * The number of lattices kept for reuse.
+     */
+    private static final int LATTICE_CACHE_SIZE = 16;
+
+    /**
+     * Maps seeds to the most recently used Lattices.
+     */
+    private static final Map latticeCache
+        = new LinkedHashMap(LATTICE_CACHE_SIZE, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > LATTICE_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * Requests smaller than this many pixels are not split between
+     * threads.
+     */
+    static final int PARALLEL_MIN_PIXELS = 64*64;
 
     public double getBaseFrequencyX(){
         return baseFrequencyX;
@@ -257,7 +299,29 @@ public final class TurbulencePatternRed extends AbstractRed {
         return result;
     }
 
+    /**
+     * Sets the lattice selector and gradient tables for the given
+     * seed, reusing the ones of a previous instance if possible.
+     */
     private void initLattice(int seed) {
+        Integer key = new Integer(seed);
+        Lattice lattice;
+        synchronized (latticeCache) {
+            lattice = (Lattice)latticeCache.get(key);
+        }
+        if (lattice == null) {
+            lattice = new Lattice();
+            initLattice(seed, lattice.latticeSelector, lattice.gradient);
+            synchronized (latticeCache) {
+                latticeCache.put(key, lattice);
+            }
+        }
+        latticeSelector = lattice.latticeSelector;
+        gradient        = lattice.gradient;
+    }
+
+    private void initLattice(int seed, int[] latticeSelector,
+                             double[] gradient) {
         double u, v, s;
         int i, j, k, s1, s2;
         seed = setupSeed(seed);
@@ -716,13 +780,14 @@ public final class TurbulencePatternRed extends AbstractRed {
      * @param fSum array used to avoid reallocating double array for each pixel
      * @param noise array used to avoid reallocating double array for
      * each pixel
-     * @param stitchInfo The stitching information for the noise function
+     * @param stitchInfo The stitching information for the noise
+     * function, for each octave
      */
     private final void turbulenceStitch(final int[] rgb,
                                         double pointX, double pointY,
                                         final double[] fSum,
                                         final double[] noise,
-                                        StitchInfo stitchInfo){
+                                        final StitchInfo[] stitchInfo){
         double ratio = 1;
         pointX *= baseFrequencyX;
         pointY *= baseFrequencyY;
@@ -730,7 +795,7 @@ public final class TurbulencePatternRed extends AbstractRed {
         switch (channels.length) {
         case 4:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
-                noise2Stitch(noise, pointX, pointY, stitchInfo);
+                noise2Stitch(noise, pointX, pointY, stitchInfo[nOctave]);
 
                 if (noise[3]<0) fSum[3] -= (noise[3] * ratio);
                 else            fSum[3] += (noise[3] * ratio);
@@ -743,8 +808,6 @@ public final class TurbulencePatternRed extends AbstractRed {
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
-
-                stitchInfo.doubleFrequency();
             }
             rgb[3] = (int)(fSum[3] * 255);
             if ((rgb[3] & 0xFFFFFF00) != 0)
@@ -761,7 +824,7 @@ public final class TurbulencePatternRed extends AbstractRed {
             break;
         case 3:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
-                noise2Stitch(noise, pointX, pointY, stitchInfo);
+                noise2Stitch(noise, pointX, pointY, stitchInfo[nOctave]);
                 if (noise[2]<0) fSum[2] -= (noise[2] * ratio);
                 else            fSum[2] += (noise[2] * ratio);
                 if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
@@ -771,8 +834,6 @@ public final class TurbulencePatternRed extends AbstractRed {
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
-
-                stitchInfo.doubleFrequency();
             }
             rgb[2] = (int)(fSum[2] * 255);
             if ((rgb[2] & 0xFFFFFF00) != 0)
@@ -786,7 +847,7 @@ public final class TurbulencePatternRed extends AbstractRed {
             break;
         case 2:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
-                noise2Stitch(noise, pointX, pointY, stitchInfo);
+                noise2Stitch(noise, pointX, pointY, stitchInfo[nOctave]);
                 if (noise[1]<0) fSum[1] -= (noise[1] * ratio);
                 else            fSum[1] += (noise[1] * ratio);
                 if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
@@ -794,8 +855,6 @@ public final class TurbulencePatternRed extends AbstractRed {
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
-
-                stitchInfo.doubleFrequency();
             }
             rgb[1] = (int)(fSum[1] * 255);
             if ((rgb[1] & 0xFFFFFF00) != 0)
@@ -806,14 +865,12 @@ public final class TurbulencePatternRed extends AbstractRed {
             break;
         case 1:
             for(int nOctave = 0; nOctave < numOctaves; nOctave++){
-                noise2Stitch(noise, pointX, pointY, stitchInfo);
+                noise2Stitch(noise, pointX, pointY, stitchInfo[nOctave]);
                 if (noise[0]<0) fSum[0] -= (noise[0] * ratio);
                 else            fSum[0] += (noise[0] * ratio);
                 ratio  *= .5;
                 pointX *= 2;
                 pointY *= 2;
-
-                stitchInfo.doubleFrequency();
             }
             rgb[0] = (int)(fSum[0] * 255);
             if ((rgb[0] & 0xFFFFFF00) != 0)
@@ -986,21 +1043,23 @@ public final class TurbulencePatternRed extends AbstractRed {
      * @param fSum array used to avoid reallocating double array for each pixel
      * @param noise array used to avoid reallocating double array for
      * each pixel
-     * @param stitchInfo The stitching information for the noise function
+     * @param stitchInfo The stitching information for the noise
+     * function, for each octave
      */
     private final void turbulenceFractalStitch(final int[] rgb,
                                                double pointX,
                                                double pointY,
                                                final double[] fSum,
                                                final double[] noise,
-                                               StitchInfo stitchInfo){
+                                               final StitchInfo[] stitchInfo){
         double ratio = 127.5;
         int    nOctave;
         fSum[0] = fSum[1] = fSum[2] = fSum[3] = 127.5;
         pointX *= baseFrequencyX;
         pointY *= baseFrequencyY;
         for(nOctave = numOctaves; nOctave > 0; nOctave--){
-            noise2Stitch(noise, pointX, pointY, stitchInfo);
+            noise2Stitch(noise, pointX, pointY,
+                         stitchInfo[numOctaves - nOctave]);
 
             switch (channels.length) {
             case 4:
@@ -1016,7 +1075,6 @@ public final class TurbulencePatternRed extends AbstractRed {
             ratio  *= .5;
             pointX *= 2;
             pointY *= 2;
-            stitchInfo.doubleFrequency();
         }
 
         switch (channels.length) {
@@ -1040,7 +1098,11 @@ public final class TurbulencePatternRed extends AbstractRed {
     }
 
     /**
-     * Generates a Perlin noise pattern into dest Raster.
+     * Generates a Perlin noise pattern into dest Raster.  Large
+     * requests are split in bands of rows generated concurrently on
+     * the {@link WorkerPool#getDefault() default worker pool}; the
+     * result is the same as when generating the whole raster on the
+     * calling thread.
      * @param dest Raster to fill with the pattern.
      */
     public WritableRaster copyData(WritableRaster dest) {
@@ -1052,8 +1114,8 @@ public final class TurbulencePatternRed extends AbstractRed {
                 ("Cannot generate a noise pattern into a null raster");
 
 
-        int w = dest.getWidth();
-        int h = dest.getHeight();
+        final int w = dest.getWidth();
+        final int h = dest.getHeight();
 
         // Access the integer buffer for the destination Raster
         DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
@@ -1066,7 +1128,79 @@ public final class TurbulencePatternRed extends AbstractRed {
                             minY - dest.getSampleModelTranslateY());
 
         final int[] destPixels = dstDB.getBankData()[0];
-        int dstAdjust = sppsm.getScanlineStride() - w;
+        final int scanStride = sppsm.getScanlineStride();
+
+        double[] p = {minX, minY};
+        txf.transform(p, 0, p, 0, 1);
+
+        WorkerPool pool = WorkerPool.getDefault();
+        int numParts = Math.min(pool.getParallelism(), h);
+        if ((numParts < 2) || ((long)w*h < PARALLEL_MIN_PIXELS)) {
+            generate(destPixels, dstOff, scanStride, w, h, p[0], p[1]);
+            return dest;
+        }
+
+        // The points are found by adding the image space steps to the
+        // starting point, pixel after pixel.  The starting point of
+        // each band is found the same way so that the bands generate
+        // exactly what a single pass would.
+        Runnable [] tasks = new Runnable[numParts];
+        int y0 = 0;
+        for (int i=0; i<numParts; i++) {
+            final int y1 = (h*(i+1))/numParts;
+            final int off = dstOff + y0*scanStride;
+            final int bh = y1-y0;
+            final double point_0 = p[0];
+            final double point_1 = p[1];
+            tasks[i] = new Runnable() {
+                    public void run() {
+                        generate(destPixels, off, scanStride, w, bh,
+                                 point_0, point_1);
+                    }
+                };
+            advance(p, w, bh);
+            y0 = y1;
+        }
+        pool.invokeAll(tasks);
+        return dest;
+    }
+
+    /**
+     * Moves the given point down the given number of rows of the given
+     * width, the same way {@link #generate} does.
+     */
+    private void advance(double[] p, int w, int rows) {
+        final double tx0 = tx[0];
+        final double tx1 = tx[1];
+        final double ty0 = ty[0]-(w*tx0);
+        final double ty1 = ty[1]-(w*tx1);
+        double point_0 = p[0];
+        double point_1 = p[1];
+        for (int i=0; i<rows; i++) {
+            for (int x=0; x<w; x++) {
+                point_0 += tx0;
+                point_1 += tx1;
+            }
+            point_0 += ty0;
+            point_1 += ty1;
+        }
+        p[0] = point_0;
+        p[1] = point_1;
+    }
+
+    /**
+     * Generates the noise for a block of pixels.
+     * @param destPixels The destination pixels.
+     * @param dstOff The offset of the top left pixel in destPixels.
+     * @param scanStride The scanline stride of destPixels.
+     * @param w The width of the block.
+     * @param h The height of the block.
+     * @param point_0 The X coordinate of the top left pixel, in user space.
+     * @param point_1 The Y coordinate of the top left pixel, in user space.
+     */
+    private void generate(final int[] destPixels, int dstOff, int scanStride,
+                          int w, int h, double point_0, double point_1) {
+        int dstAdjust = scanStride - w;
 
         // Generate pixel pattern now
         int i, end, dp=dstOff;
@@ -1082,11 +1216,6 @@ public final class TurbulencePatternRed extends AbstractRed {
         ty0 = ty[0]-(w*tx0);
         ty1 = ty[1]-(w*tx1);
 
-        double[] p = {minX, minY};
-        txf.transform(p, 0, p, 0, 1);
-        double point_0 = p[0];
-        double point_1 = p[1];
-
         if(isFractalNoise){
             if(stitchInfo == null){
                 if (channels.length == 4) {
@@ -1121,12 +1250,10 @@ public final class TurbulencePatternRed extends AbstractRed {
                 }
             }
             else{
-                StitchInfo si = new StitchInfo();
                 for(i=0; i<h; i++){
                     for(end=dp+w; dp<end; dp++){
-                        si.assign(this.stitchInfo);
                         turbulenceFractalStitch(rgb, point_0, point_1,
-                                                fSum, noise, si);
+                                                fSum, noise, octaveStitchInfo);
 
                         // Write RGB value.
                         destPixels[dp] = ((rgb[3]<<24) |
@@ -1177,12 +1304,10 @@ public final class TurbulencePatternRed extends AbstractRed {
                 }
             }
             else{
-                StitchInfo si = new StitchInfo();
                 for(i=0; i<h; i++){
                     for(end=dp+w; dp<end; dp++){
-                        si.assign(this.stitchInfo);
                         turbulenceStitch(rgb, point_0, point_1,
-                                         fSum, noise, si);
+                                         fSum, noise, octaveStitchInfo);
 
                         // Write RGB value.
                         destPixels[dp] = ((rgb[3]<<24) |
@@ -1199,7 +1324,6 @@ public final class TurbulencePatternRed extends AbstractRed {
             }
         }
 
-        return dest;
     }
 
     /**
@@ -1321,6 +1445,15 @@ public final class TurbulencePatternRed extends AbstractRed {
             if(stitchInfo.width == 0) stitchInfo.width = 1;
             if(stitchInfo.height == 0) stitchInfo.height = 1;
 
+            // The stitching information only depends on the octave,
+            // so work it out once rather than for each pixel.
+            octaveStitchInfo = new StitchInfo[Math.max(this.numOctaves, 0)];
+            StitchInfo si = new StitchInfo(stitchInfo);
+            for (int i=0; i<octaveStitchInfo.length; i++) {
+                octaveStitchInfo[i] = new StitchInfo(si);
+                si.doubleFrequency();
+            }
+
             // System.out.println( "minLatticeX = " + minLatticeX +
             //                    " minLatticeY = " + minLatticeY +
             //                     " maxLatticeX = " + maxLatticeX +
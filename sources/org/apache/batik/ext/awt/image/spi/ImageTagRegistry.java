@@ -57,9 +57,9 @@ public class ImageTagRegistry implements ErrorConstants {
 
     public ImageTagRegistry(URLImageCache rawCache, URLImageCache imgCache) {
         if (rawCache == null)
-            rawCache = new URLImageCache();
+            rawCache = URLImageCache.createCache();
         if (imgCache == null)
-            imgCache = new URLImageCache();
+            imgCache = URLImageCache.createCache();
 
         this.rawCache= rawCache;
         this.imgCache= imgCache;
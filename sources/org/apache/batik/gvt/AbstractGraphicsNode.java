@@ -132,6 +132,11 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
      */
     protected WeakReference weakRef;
 
+    /**
+     * The cached result of the filter of this node, or null.
+     */
+    FilterResultCache filterResultCache;
+
     /**
      * Internal Cache: node bounds
      */
@@ -391,7 +396,7 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
      * GraphicsNodeRable is the Renderable (Filter) before any of the
      * filter operations have been applied.
      */
-    public Filter getGraphicsNodeRable(boolean createIfNeeded) {
+    public synchronized Filter getGraphicsNodeRable(boolean createIfNeeded) {
         GraphicsNodeRable ret = null;
         if (graphicsNodeRable != null) {
             ret = (GraphicsNodeRable)graphicsNodeRable.get();
@@ -409,7 +414,7 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
      * GraphicsNodeRable is the Renderable (Filter) after all of the
      * filter operations have been applied.
      */
-    public Filter getEnableBackgroundGraphicsNodeRable
+    public synchronized Filter getEnableBackgroundGraphicsNodeRable
         (boolean createIfNeeded) {
         GraphicsNodeRable ret = null;
         if (enableBackgroundGraphicsNodeRable != null) {
@@ -546,8 +551,12 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
                 Rectangle2D filterBounds = filteredImage.getBounds2D();
                 g2d.clip(filterBounds);
 
-                org.apache.batik.ext.awt.image.GraphicsUtil.drawImage
-                    (g2d, filteredImage);
+                if ((filteredImage != filter) ||
+                    !FilterResultCache.isEnabled(g2d) ||
+                    !getFilterResultCache().drawFilter(g2d, filter)) {
+                    org.apache.batik.ext.awt.image.GraphicsUtil.drawImage
+                        (g2d, filteredImage);
+                }
 
                 g2d.dispose();
                 g2d = baseG2d;
@@ -722,6 +731,18 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
      */
     protected void setRoot(RootGraphicsNode newRoot) {
         this.root = newRoot;
+        // Changes made out of the tree did not clear the cached result.
+        if (filterResultCache != null)
+            filterResultCache.clear();
+    }
+
+    /**
+     * Returns the cache of the result of the filter of this node.
+     */
+    protected synchronized FilterResultCache getFilterResultCache() {
+        if (filterResultCache == null)
+            filterResultCache = new FilterResultCache(this);
+        return filterResultCache;
     }
 
     /**
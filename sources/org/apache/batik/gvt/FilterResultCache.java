@@ -0,0 +1,420 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+import java.awt.image.renderable.RenderableImage;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.ext.awt.image.SVGComposite;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FilterChainRable8Bit;
+import org.apache.batik.ext.awt.image.renderable.PadRable8Bit;
+import org.apache.batik.ext.awt.image.renderable.PaintRable;
+import org.apache.batik.ext.awt.image.rendered.AbstractTiledRed;
+import org.apache.batik.ext.awt.image.rendered.AffineRed;
+import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
+import org.apache.batik.ext.awt.image.rendered.TranslateRed;
+import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
+import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
+import org.apache.batik.gvt.filter.BackgroundRable8Bit;
+import org.apache.batik.gvt.filter.GraphicsNodeRable;
+
+/**
+ * The cached result of the filter of a graphics node, so that
+ * repainting the node (after a pan, or to update another part of the
+ * canvas) does not run its filter chain again.
+ *
+ * <p>
+ *   The filter is rendered once for its whole area, through a tile
+ *   cache, so later paints only compute the tiles they have not seen
+ *   yet (renderings already held in an image are kept as they are).
+ *   The result is held through a soft reference and reused while the filter, its bounds, the
+ *   rendering hints and the user space to device space transform up to
+ *   whole pixels of translation do not change; a transform with
+ *   another translation gets the result translated.  The result is
+ *   dropped whenever the node or one of its descendants changes, which
+ *   the cache learns from a listener on the root of the GVT tree.
+ * </p>
+ * <p>
+ *   Only the filters which are drawn as a rendering anyway are cached:
+ *   the ones drawn directly to the canvas (see {@link PaintRable}) are
+ *   left alone, as are the filters which read other parts of the
+ *   canvas (BackgroundImage) or other graphics nodes (feImage
+ *   referencing an element), whose changes the node does not see.
+ * </p>
+ * <p>
+ *   The cache is used for the paints whose rendering hints set
+ *   {@link RenderingHintsKeyExt#KEY_FILTER_RESULT_CACHE} on, as the
+ *   ones of the renderer JSVGComponent creates for dynamic documents
+ *   do.  The renderers and transcoders do not set it by default.
+ *   Setting the <code>org.apache.batik.filter_result_cache</code>
+ *   system property to <code>true</code> or <code>false</code> uses it
+ *   for all the paints or for none of them.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class FilterResultCache {
+
+    /**
+     * Whether the graphics nodes cache the results of their filters,
+     * from the <code>org.apache.batik.filter_result_cache</code> system
+     * property: null, when it is not set, leaves it to the rendering
+     * hints.
+     */
+    static final Boolean ENABLED;
+    static {
+        Boolean value = null;
+        try {
+            String prop = System.getProperty
+                ("org.apache.batik.filter_result_cache");
+            if (prop != null)
+                value = Boolean.valueOf(prop);
+        } catch (SecurityException se) {
+        } finally {
+            ENABLED = value;
+        }
+    }
+
+    /**
+     * Tells whether the filters painted into the given Graphics2D may
+     * be drawn from their cached results.
+     */
+    static boolean isEnabled(Graphics2D g2d) {
+        if (ENABLED != null)
+            return ENABLED.booleanValue();
+        return (g2d.getRenderingHint
+                (RenderingHintsKeyExt.KEY_FILTER_RESULT_CACHE) ==
+                RenderingHintsKeyExt.VALUE_FILTER_RESULT_CACHE_ON);
+    }
+
+    /**
+     * The largest width or height, in pixels, of a cached result.
+     * Larger filters (typically when printing) are rendered as before,
+     * for the area painted only.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    /**
+     * The node whose filter result this is.
+     */
+    protected GraphicsNode node;
+
+    /**
+     * The filter last checked by {@link #isCachable}, and the result.
+     */
+    protected Filter checkedFilter;
+    protected boolean cachable;
+
+    /**
+     * The root on which the invalidating listener was last installed.
+     */
+    protected RootGraphicsNode root;
+
+    protected Filter          cachedFilter;
+    protected Rectangle2D     cachedBounds;
+    protected AffineTransform cachedUsr2dev;
+    protected RenderingHints  cachedHints;
+    protected SoftReference   cachedRed;
+
+    /**
+     * Creates the cache of the filter result of the given node.
+     */
+    public FilterResultCache(GraphicsNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Drops the cached result.
+     */
+    public synchronized void clear() {
+        cachedFilter  = null;
+        cachedBounds  = null;
+        cachedUsr2dev = null;
+        cachedHints   = null;
+        cachedRed     = null;
+    }
+
+    /**
+     * Draws the given filter, the filter of the node, the same way
+     * {@link GraphicsUtil#drawImage(Graphics2D,RenderableImage)} does,
+     * from the cached result if it can.
+     * @param g2d The Graphics2D to draw into.  Its clip may be changed.
+     * @param filter The filter of the node.
+     * @return false if the filter is not cached and must be drawn by
+     *         the caller (nothing has been drawn then).
+     */
+    public boolean drawFilter(Graphics2D g2d, Filter filter) {
+        Object val = g2d.getRenderingHint(RenderingHintsKeyExt.KEY_TRANSCODING);
+        if ((val == RenderingHintsKeyExt.VALUE_TRANSCODING_PRINTING) ||
+            (val == RenderingHintsKeyExt.VALUE_TRANSCODING_VECTOR))
+            return false;
+
+        // Walk down the filters which just draw their source, as their
+        // paintRable methods would, to the filter that is rendered.
+        List clips = null;
+        Rectangle2D bounds = filter.getBounds2D();
+        if (SVGComposite.OVER.equals(g2d.getComposite())) {
+            for (;;) {
+                if (filter instanceof FilterChainRable8Bit) {
+                    filter = ((FilterChainRable8Bit)filter).getSource();
+                } else if ((filter instanceof PadRable8Bit) &&
+                           (((PadRable8Bit)filter).getPadMode()
+                            == PadMode.ZERO_PAD)) {
+                    PadRable8Bit pad = (PadRable8Bit)filter;
+                    Rectangle2D padRect = pad.getPadRect();
+                    if (clips == null)
+                        clips = new LinkedList();
+                    clips.add(padRect);
+                    bounds = bounds.createIntersection(padRect);
+                    filter = pad.getSource();
+                } else {
+                    break;
+                }
+            }
+        }
+        if ((filter instanceof PaintRable) || !isCachable(filter))
+            return false;
+
+        bounds = bounds.createIntersection(filter.getBounds2D());
+        AffineTransform usr2dev = g2d.getTransform();
+        Rectangle devBounds = usr2dev.createTransformedShape
+            (bounds).getBounds();
+        if ((devBounds.width  <= 0) || (devBounds.height <= 0) ||
+            (devBounds.width  > MAX_SIZE) || (devBounds.height > MAX_SIZE))
+            return false;
+
+        if (!installInvalidator())
+            return false;
+
+        RenderingHints hints = g2d.getRenderingHints();
+        hints.remove(RenderingHintsKeyExt.KEY_AREA_OF_INTEREST);
+        hints.remove(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE);
+
+        CachableRed cr = getResult(filter, bounds, usr2dev, hints);
+
+        if (clips != null) {
+            Iterator i = clips.iterator();
+            while (i.hasNext()) {
+                g2d.clip((Rectangle2D)i.next());
+            }
+        }
+        if (cr != null) {
+            g2d.setTransform(IDENTITY);
+            GraphicsUtil.drawImage(g2d, cr);
+            g2d.setTransform(usr2dev);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the rendering of the given filter, from the cache if
+     * possible.
+     */
+    protected synchronized CachableRed getResult(Filter filter,
+                                                 Rectangle2D bounds,
+                                                 AffineTransform usr2dev,
+                                                 RenderingHints hints) {
+        CachableRed cr = null;
+        if (cachedRed != null)
+            cr = (CachableRed)cachedRed.get();
+
+        if ((cr != null)                                        &&
+            (cachedFilter == filter)                            &&
+            (cachedBounds.equals(bounds))                       &&
+            (cachedHints.equals(hints))                         &&
+            (usr2dev.getScaleX() == cachedUsr2dev.getScaleX())  &&
+            (usr2dev.getScaleY() == cachedUsr2dev.getScaleY())  &&
+            (usr2dev.getShearX() == cachedUsr2dev.getShearX())  &&
+            (usr2dev.getShearY() == cachedUsr2dev.getShearY())) {
+            double deltaX = (usr2dev.getTranslateX() -
+                             cachedUsr2dev.getTranslateX());
+            double deltaY = (usr2dev.getTranslateY() -
+                             cachedUsr2dev.getTranslateY());
+
+            if ((deltaX == 0) && (deltaY == 0))
+                return cr;
+
+            // Integer translation in device space..
+            if ((deltaX == (int)deltaX) && (deltaY == (int)deltaY)) {
+                return new TranslateRed(cr,
+                                        cr.getMinX() + (int)deltaX,
+                                        cr.getMinY() + (int)deltaY);
+            }
+        }
+
+        RenderedImage ri = filter.createRendering
+            (new RenderContext(usr2dev, bounds, hints));
+        if (ri == null) {
+            clear();
+            return null;
+        }
+
+        cr = GraphicsUtil.wrap(ri);
+        if (!isComputed(cr)) {
+            int sz = AbstractTiledRed.getDefaultTileSize();
+            cr = new TileCacheRed(cr, sz, sz);
+        }
+
+        cachedFilter  = filter;
+        cachedBounds  = bounds;
+        cachedUsr2dev = (AffineTransform)usr2dev.clone();
+        cachedHints   = hints;
+        cachedRed     = new SoftReference(cr);
+        return cr;
+    }
+
+    /**
+     * Tells whether the given rendering is a BufferedImage, possibly
+     * transformed.  Such renderings are kept as they are: their pixels
+     * are already computed, and {@link GraphicsUtil} draws them with
+     * the transform rather than through tiles.
+     */
+    protected static boolean isComputed(CachableRed cr) {
+        for (;;) {
+            if (cr instanceof AffineRed) {
+                cr = ((AffineRed)cr).getSource();
+            } else if (cr instanceof TranslateRed) {
+                cr = ((TranslateRed)cr).getSource();
+            } else {
+                return (cr instanceof BufferedImageCachableRed);
+            }
+        }
+    }
+
+    /**
+     * Tells whether the result of the given filter depends only on the
+     * node and its descendants.
+     */
+    protected boolean isCachable(Filter filter) {
+        synchronized (this) {
+            if (filter == checkedFilter)
+                return cachable;
+        }
+        boolean result = isCachable((RenderableImage)filter);
+        synchronized (this) {
+            checkedFilter = filter;
+            cachable = result;
+        }
+        return result;
+    }
+
+    private boolean isCachable(RenderableImage ri) {
+        if (ri.isDynamic() || (ri instanceof BackgroundRable8Bit))
+            return false;
+        if (ri instanceof GraphicsNodeRable) {
+            GraphicsNode gn = ((GraphicsNodeRable)ri).getGraphicsNode();
+            while ((gn != null) && (gn != node))
+                gn = gn.getParent();
+            if (gn == null)
+                return false;
+        }
+        List sources = ri.getSources();
+        if (sources != null) {
+            Iterator i = sources.iterator();
+            while (i.hasNext()) {
+                if (!isCachable((RenderableImage)i.next()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure the root of the node drops the cached results of the
+     * nodes which change.
+     * @return false if the node is not in a GVT tree.
+     */
+    protected boolean installInvalidator() {
+        RootGraphicsNode r = node.getRoot();
+        if (r == null)
+            return false;
+        synchronized (this) {
+            if (r == root)
+                return true;
+            // The node moved to another tree, which did not tell us
+            // about its changes.
+            clear();
+        }
+        synchronized (FilterResultCache.class) {
+            List l = r.getTreeGraphicsNodeChangeListeners();
+            boolean found = false;
+            Iterator i = l.iterator();
+            while (i.hasNext()) {
+                if (i.next() instanceof Invalidator) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                r.addTreeGraphicsNodeChangeListener(new Invalidator());
+            }
+        }
+        synchronized (this) {
+            root = r;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the cached filter results of the nodes which change and of
+     * their ancestors.
+     */
+    protected static class Invalidator extends GraphicsNodeChangeAdapter {
+
+        public void changeStarted(GraphicsNodeChangeEvent gnce) {
+            invalidate(gnce.getGraphicsNode());
+            invalidate(gnce.getChangeSrc());
+        }
+
+        public void changeCompleted(GraphicsNodeChangeEvent gnce) {
+            invalidate(gnce.getGraphicsNode());
+            invalidate(gnce.getChangeSrc());
+        }
+
+        protected void invalidate(GraphicsNode gn) {
+            for (; gn != null; gn = gn.getParent()) {
+                if (gn instanceof AbstractGraphicsNode) {
+                    FilterResultCache frc
+                        = ((AbstractGraphicsNode)gn).filterResultCache;
+                    if (frc != null) {
+                        frc.clear();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A graphics node which paints another graphics node, the template,
+ * in its own user space.  The template is not a child of this node,
+ * so that it can be shared by any number of instances; it must not be
+ * modified once instances of it exist.
+ *
+ * @version $Id$
+ */
+public class InstanceGraphicsNode extends AbstractGraphicsNode {
+
+    /**
+     * The graphics node painted by this instance.
+     */
+    protected GraphicsNode template;
+
+    /**
+     * Constructs a new InstanceGraphicsNode.
+     * @param template the graphics node painted by this instance
+     */
+    public InstanceGraphicsNode(GraphicsNode template) {
+        this.template = template;
+    }
+
+    /**
+     * Returns the graphics node painted by this instance.
+     */
+    public GraphicsNode getTemplate() {
+        return template;
+    }
+
+    //
+    // Drawing methods
+    //
+
+    /**
+     * Paints the template.
+     *
+     * @param g2d the Graphics2D to use
+     */
+    public void primitivePaint(Graphics2D g2d) {
+        template.paint(g2d);
+    }
+
+    //
+    // Geometric methods
+    //
+
+    /**
+     * Returns the bounds of the area covered by the template, in the
+     * user space of this node.
+     */
+    public Rectangle2D getPrimitiveBounds() {
+        return template.getTransformedBounds(new AffineTransform());
+    }
+
+    /**
+     * Returns the geometry bounds of the template, in the user space
+     * of this node.
+     */
+    public Rectangle2D getGeometryBounds() {
+        return template.getTransformedGeometryBounds(new AffineTransform());
+    }
+
+    /**
+     * Returns the sensitive bounds of the template, in the user space
+     * of this node.
+     */
+    public Rectangle2D getSensitiveBounds() {
+        return template.getTransformedSensitiveBounds(new AffineTransform());
+    }
+
+    /**
+     * Returns the outline of the template, in the user space of this
+     * node.
+     */
+    public Shape getOutline() {
+        Shape outline = template.getOutline();
+        AffineTransform at = template.getTransform();
+        if (outline == null || at == null) {
+            return outline;
+        }
+        return at.createTransformedShape(outline);
+    }
+}
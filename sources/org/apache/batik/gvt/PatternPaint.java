@@ -26,10 +26,12 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
 import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.ext.awt.image.renderable.PadRable8Bit;
+import org.apache.batik.util.HaltingThread;
 
 /**
  * The PatternPaint class provides a way to fill a Shape with a a pattern
@@ -70,6 +72,12 @@ public class PatternPaint implements Paint {
      */
     private boolean overflow;
 
+    /**
+     * The key of the tile in the pattern tile cache, or null if the
+     * tile is not shared.
+     */
+    private Object tileKey;
+
     private PatternPaintContext lastContext;
 
     /**
@@ -86,6 +94,28 @@ public class PatternPaint implements Paint {
                         Rectangle2D patternRegion,
                         boolean overflow,
                         AffineTransform patternTransform){
+        this(node, patternRegion, overflow, patternTransform, null);
+    }
+
+    /**
+     * Constructs a new <code>PatternPaint</code> which shares its tiles,
+     * through the {@link PatternTileCache}, with the paints that have
+     * an equal tile key.
+     *
+     * @param node Used to generate the paint pixel pattern
+     * @param patternRegion Region to which this paint is constrained
+     * @param overflow controls whether or not the node can overflow
+     *        the patternRegion.
+     * @param patternTransform additional transform added on
+     *        top of the user space to device space transform.
+     * @param tileKey an object equal for the paints whose nodes paint
+     *        the same in the pattern region, or null.
+     */
+    public PatternPaint(GraphicsNode node,
+                        Rectangle2D patternRegion,
+                        boolean overflow,
+                        AffineTransform patternTransform,
+                        Object tileKey){
 
         if (node == null) {
             throw new IllegalArgumentException();
@@ -99,6 +129,7 @@ public class PatternPaint implements Paint {
         this.patternRegion    = patternRegion;
         this.overflow         = overflow;
         this.patternTransform = patternTransform;
+        this.tileKey          = tileKey;
 
         // Wrap the input node so that the primitivePaint
         // in GraphicsNodeRable takes the filter, clip....
@@ -148,6 +179,13 @@ public class PatternPaint implements Paint {
         return overflow;
     }
 
+    /**
+     * Returns the key of the tile in the pattern tile cache, or null.
+     */
+    public Object getTileKey() {
+        return tileKey;
+    }
+
     /**
      * Creates and returns a context used to generate the pattern.
      */
@@ -162,33 +200,66 @@ public class PatternPaint implements Paint {
             xform.concatenate(patternTransform);
         }
 
-        if ((lastContext!= null) &&
-            lastContext.getColorModel().equals(cm)) {
-
-            double[] p = new double[6];
-            double[] q = new double[6];
-            xform.getMatrix(p);
-            lastContext.getUsr2Dev().getMatrix(q);
-            if ((p[0] == q[0]) && (p[1] == q[1]) &&
-                (p[2] == q[2]) && (p[3] == q[3])) {
-                if ((p[4] == q[4]) && (p[5] == q[5]))
-                    return lastContext;
-                else
-                    return new PatternPaintContextWrapper
-                        (lastContext,
-                         (int)(q[4]-p[4]+0.5),
-                         (int)(q[5]-p[5]+0.5));
+        PatternPaintContext last = lastContext;
+        if ((last != null) &&
+            last.getColorModel().equals(cm)) {
+            PaintContext pc = reuseContext(last, xform);
+            if (pc != null) {
+                return pc;
+            }
+        }
+
+        PatternTileCache.Key key = null;
+        PatternTileCache cache = PatternTileCache.getDefaultCache();
+        if (tileKey != null) {
+            key = new PatternTileCache.Key(tileKey, patternRegion, overflow,
+                                           xform, hints, cm);
+            last = cache.get(key);
+            if (last != null) {
+                lastContext = last;
+                return reuseContext(last, xform);
             }
         }
         // System.out.println("CreateContext Called: " + this);
         // System.out.println("CM : " + cm);
         // System.out.println("xForm : " + xform);
 
-        lastContext = new PatternPaintContext(cm, xform,
+        last = new PatternPaintContext(cm, xform,
                                        hints, tile,
                                        patternRegion,
                                        overflow);
-        return lastContext;
+        if (HaltingThread.hasBeenHalted()) {
+            // The tile may only be partly rendered: do not reuse it.
+            return last;
+        }
+        lastContext = last;
+        if (key != null) {
+            cache.put(key, last);
+        }
+        return last;
+    }
+
+    /**
+     * Returns a context which offsets into the tile of the given context,
+     * or null if the given transform does not have the same scale,
+     * rotation and shear as the transform of the context.
+     */
+    static PaintContext reuseContext(PatternPaintContext ppc,
+                                     AffineTransform xform) {
+        double[] p = new double[6];
+        double[] q = new double[6];
+        xform.getMatrix(p);
+        ppc.getUsr2Dev().getMatrix(q);
+        if ((p[0] != q[0]) || (p[1] != q[1]) ||
+            (p[2] != q[2]) || (p[3] != q[3])) {
+            return null;
+        }
+        // Always wrap so each context has its own raster, the
+        // context may still be in use by another thread.
+        return new PatternPaintContextWrapper
+            (ppc,
+             (int)Math.floor(q[4]-p[4]+0.5),
+             (int)Math.floor(q[5]-p[5]+0.5));
     }
 
     /**
@@ -200,6 +271,7 @@ public class PatternPaint implements Paint {
 
     static class PatternPaintContextWrapper implements PaintContext {
         PatternPaintContext ppc;
+        WritableRaster raster;
         int xShift, yShift;
         PatternPaintContextWrapper(PatternPaintContext ppc,
                             int xShift, int yShift) {
@@ -208,13 +280,21 @@ public class PatternPaint implements Paint {
             this.yShift = yShift;
         }
 
-        public void dispose(){ }
+        public void dispose(){
+            raster = null;
+        }
 
         public ColorModel getColorModel(){
             return ppc.getColorModel();
         }
         public Raster getRaster(int x, int y, int width, int height){
-            return ppc.getRaster(x+xShift, y+yShift, width, height);
+            if ((raster == null)             ||
+                (raster.getWidth() < width)  ||
+                (raster.getHeight() < height)) {
+                raster = ppc.getColorModel().createCompatibleWritableRaster
+                    (width, height);
+            }
+            return ppc.fillRaster(raster, x+xShift, y+yShift, width, height);
         }
     }
 }
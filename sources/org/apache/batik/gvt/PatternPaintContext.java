@@ -161,6 +161,17 @@ public class PatternPaintContext implements PaintContext {
             raster = rasterCM.createCompatibleWritableRaster(width, height);
         }
 
+        return fillRaster(raster, x, y, width, height);
+    }
+
+    /**
+     * Fills the top left corner of <code>raster</code> with the pattern
+     * data for the given device area.  This doesn't touch any state
+     * of this context, so it may be called for different rasters from
+     * several threads at once.
+     */
+    Raster fillRaster(WritableRaster raster,
+                      int x, int y, int width, int height) {
         WritableRaster wr
             = raster.createWritableChild(0, 0, width, height, x, y, null);
 
@@ -0,0 +1,263 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+
+/**
+ * This class manages a cache of the rasterized tiles of patterns, so
+ * that the pattern paints which fill shapes with the same pattern at
+ * the same scale share one tile.
+ *
+ * <p>
+ *   A tile is keyed by the tile key given to its {@link PatternPaint},
+ *   which stands for the content of the pattern, the pattern region,
+ *   the overflow, the user space to device space transform up to whole
+ *   pixels of translation, the rendering hints and the color model.
+ *   A paint drawn with a translation differing by whole pixels reuses
+ *   the tile with an offset.
+ * </p>
+ * <p>
+ *   The cache holds soft references to the most recently used tiles.
+ *   Their number is set by the
+ *   <code>org.apache.batik.pattern_tile_cache_size</code> system
+ *   property (32 by default, zero disables the cache).
+ * </p>
+ *
+ * @version $Id$
+ */
+public class PatternTileCache {
+
+    /**
+     * The number of tiles held by the default cache.
+     */
+    static final int DEFAULT_SIZE;
+    static {
+        int value = 32;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.pattern_tile_cache_size", "32");
+            value = Integer.parseInt(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            DEFAULT_SIZE = value;
+        }
+    }
+
+    static PatternTileCache theCache = new PatternTileCache(DEFAULT_SIZE);
+
+    public static PatternTileCache getDefaultCache() { return theCache; }
+
+    /**
+     * Maps Keys to soft references to PatternPaintContexts, in access
+     * order.
+     */
+    protected LinkedHashMap map;
+
+    /**
+     * The maximum number of tiles.
+     */
+    protected int size;
+
+    protected long hits;
+    protected long misses;
+
+    /**
+     * Creates a new cache.
+     * @param size The maximum number of tiles held, zero or less to
+     *        hold none.
+     */
+    public PatternTileCache(int size) {
+        this.size = size;
+        map = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > PatternTileCache.this.size;
+                }
+            };
+    }
+
+    /**
+     * Returns the context holding the tile for the given key, or null.
+     */
+    public synchronized PatternPaintContext get(Key key) {
+        if (size <= 0) {
+            return null;
+        }
+        SoftReference ref = (SoftReference)map.get(key);
+        PatternPaintContext ppc = null;
+        if (ref != null) {
+            ppc = (PatternPaintContext)ref.get();
+            if (ppc == null) {
+                map.remove(key);
+            }
+        }
+        if (ppc == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return ppc;
+    }
+
+    /**
+     * Adds the context holding the tile for the given key.
+     */
+    public synchronized void put(Key key, PatternPaintContext ppc) {
+        if (size > 0) {
+            map.put(key, new SoftReference(ppc));
+        }
+    }
+
+    /**
+     * Removes all the tiles.
+     */
+    public synchronized void flush() {
+        map.clear();
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests which were not in the cache.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * The key of a tile.
+     */
+    public static class Key {
+
+        protected Object tileKey;
+        protected Rectangle2D patternRegion;
+        protected boolean overflow;
+
+        /**
+         * The scale, rotation and shear of the user space to device
+         * space transform, and the fractions of pixel of its
+         * translation.
+         */
+        protected double m00, m10, m01, m11, fx, fy;
+
+        /**
+         * Whether the transform has a translation.  The tiles of
+         * untranslated patterns are not resampled, so they do not round
+         * their pixels the same as the translated ones.
+         */
+        protected boolean translated;
+
+        protected RenderingHints hints;
+        protected ColorModel cm;
+        protected int hashCode;
+
+        /**
+         * @param tileKey the tile key of the paint
+         * @param patternRegion the region tiled by the paint
+         * @param overflow whether the tile overflows the region
+         * @param usr2dev the user space to device space transform
+         * @param hints the rendering hints, or null
+         * @param cm the color model of the destination
+         */
+        public Key(Object tileKey, Rectangle2D patternRegion,
+                   boolean overflow, AffineTransform usr2dev,
+                   RenderingHints hints, ColorModel cm) {
+            this.tileKey = tileKey;
+            this.patternRegion = (Rectangle2D)patternRegion.clone();
+            this.overflow = overflow;
+            m00 = usr2dev.getScaleX();
+            m10 = usr2dev.getShearY();
+            m01 = usr2dev.getShearX();
+            m11 = usr2dev.getScaleY();
+            fx = usr2dev.getTranslateX();
+            fy = usr2dev.getTranslateY();
+            translated = (fx != 0) || (fy != 0);
+            fx -= Math.floor(fx);
+            fy -= Math.floor(fy);
+            this.cm = cm;
+
+            // The area of interest and destination image change from
+            // paint to paint and do not change the tile.
+            if (hints != null) {
+                hints = (RenderingHints)hints.clone();
+                hints.remove(RenderingHintsKeyExt.KEY_AREA_OF_INTEREST);
+                hints.remove(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE);
+                this.hints = hints;
+            }
+
+            long bits = Double.doubleToLongBits(m00);
+            bits = bits * 31 + Double.doubleToLongBits(m10);
+            bits = bits * 31 + Double.doubleToLongBits(m01);
+            bits = bits * 31 + Double.doubleToLongBits(m11);
+            bits = bits * 31 + Double.doubleToLongBits(fx);
+            bits = bits * 31 + Double.doubleToLongBits(fy);
+            int h = tileKey.hashCode();
+            h = h * 31 + this.patternRegion.hashCode();
+            h = h * 31 + (int)(bits ^ (bits >>> 32));
+            if (this.hints != null)
+                h = h * 31 + this.hints.hashCode();
+            h = h * 31 + cm.hashCode();
+            h = translated ? h * 31 + 1 : h;
+            hashCode = overflow ? ~h : h;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return hashCode == k.hashCode
+                && overflow == k.overflow
+                && translated == k.translated
+                && m00 == k.m00 && m10 == k.m10
+                && m01 == k.m01 && m11 == k.m11
+                && fx == k.fx && fy == k.fy
+                && patternRegion.equals(k.patternRegion)
+                && ((hints == null) ? (k.hints == null)
+                                    : hints.equals(k.hints))
+                && cm.equals(k.cm)
+                && tileKey.equals(k.tileKey);
+        }
+    }
+}
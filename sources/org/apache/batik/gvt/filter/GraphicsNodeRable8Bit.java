@@ -101,7 +101,7 @@ public class GraphicsNodeRable8Bit
     /**
      * Clear any cached Red.
      */
-    public void clearCache() {
+    public synchronized void clearCache() {
         cachedRed     = null;
         cachedUsr2dev = null;
         cachedGn2dev  = null;
@@ -240,7 +240,7 @@ public class GraphicsNodeRable8Bit
      * @param renderContext the RenderContext to use to produce the rendering.
      * @return a RenderedImage containing the rendered data.
      */
-    public RenderedImage createRendering(RenderContext renderContext){
+    public RenderedImage createRendering(RenderContext renderContext) {
         // Get user space to device space transform
         AffineTransform usr2dev = renderContext.getTransform();
 
@@ -260,6 +260,45 @@ public class GraphicsNodeRable8Bit
 
         Rectangle2D bounds2D = getBounds2D();
 
+        // Only the cache fields are accessed under the lock, the
+        // rendering itself is created outside of it so that several
+        // threads can render different nodes (or the same node at
+        // different transforms) concurrently.
+        RenderedImage ret = getCachedRendering(usr2dev, gn2dev, bounds2D);
+        if (ret != null)
+            return ret;
+
+        // Fell through let's do a new rendering...
+        if (false) {
+            System.out.println("Not using Cached Red: " + usr2dev);
+            System.out.println("Old:                  " + cachedUsr2dev);
+        }
+
+        if((bounds2D.getWidth()  > 0) && 
+           (bounds2D.getHeight() > 0)) {
+            CachableRed red = new GraphicsNodeRed8Bit
+                (node, usr2dev, usePrimitivePaint, 
+                 renderContext.getRenderingHints());
+            synchronized (this) {
+                cachedUsr2dev = (AffineTransform)usr2dev.clone();
+                cachedGn2dev  = gn2dev;
+                cachedBounds  = bounds2D;
+                cachedRed     = red;
+            }
+            return red;
+        }
+
+        clearCache();
+        return null;
+    }
+
+    /**
+     * Returns the cached rendering, possibly translated, if it can be
+     * used for the given transforms and bounds, null otherwise.
+     */
+    protected synchronized RenderedImage getCachedRendering
+        (AffineTransform usr2dev, AffineTransform gn2dev,
+         Rectangle2D bounds2D) {
         if ((cachedBounds != null)                            &&
             (cachedGn2dev != null)                            &&
             (cachedBounds.equals(bounds2D))                   &&
@@ -291,28 +330,6 @@ public class GraphicsNodeRable8Bit
                      (int)Math.round(cachedRed.getMinY()+deltaY));
             }
         }
-
-        // Fell through let's do a new rendering...
-        if (false) {
-            System.out.println("Not using Cached Red: " + usr2dev);
-            System.out.println("Old:                  " + cachedUsr2dev);
-        }
-
-        if((bounds2D.getWidth()  > 0) && 
-           (bounds2D.getHeight() > 0)) {
-            cachedUsr2dev = (AffineTransform)usr2dev.clone();
-            cachedGn2dev  = gn2dev;
-            cachedBounds  = bounds2D;
-            cachedRed =  new GraphicsNodeRed8Bit
-                (node, usr2dev, usePrimitivePaint, 
-                 renderContext.getRenderingHints());
-            return cachedRed;
-        }
-
-        cachedUsr2dev = null;
-        cachedGn2dev  = null;
-        cachedBounds  = null;
-        cachedRed     = null;
         return null;
     }
 }
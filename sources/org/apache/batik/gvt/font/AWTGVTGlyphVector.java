@@ -69,7 +69,7 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
     private Shape[] glyphLogicalBounds;
     private boolean[] glyphVisible;
     private GVTGlyphMetrics [] glyphMetrics;
-    private GeneralPath outline;
+    private volatile GeneralPath outline;
     private Rectangle2D visualBounds;
     private Rectangle2D logicalBounds;
     private Rectangle2D bounds2D;
@@ -616,12 +616,20 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
         if (outline != null)
             return outline;
 
-        outline = new GeneralPath();
-        for (int i = 0; i < getNumGlyphs(); i++) {
-            if (glyphVisible[i]) {
-                Shape glyphOutline = getGlyphOutline(i);
-                outline.append(glyphOutline, false);
+        // The glyph outlines are read from the AWT glyph vector, whose
+        // positions draw changes while hinting, so hold its lock.
+        synchronized (awtGlyphVector) {
+            if (outline != null)
+                return outline;
+
+            GeneralPath gp = new GeneralPath();
+            for (int i = 0; i < getNumGlyphs(); i++) {
+                if (glyphVisible[i]) {
+                    Shape glyphOutline = getGlyphOutline(i);
+                    gp.append(glyphOutline, false);
+                }
             }
+            outline = gp;
         }
         return outline;
     }
@@ -897,43 +905,46 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
         }
 
         if (useHinting) {
-            double sf = scaleFactor;
-            double [] mat = new double[6];
-            for (int i=0; i< numGlyphs; i++) {
-                Point2D         pos = glyphPositions[i];
-                double x = pos.getX();
-                double y = pos.getY();
-                AffineTransform at = glyphTransforms[i];
-                if (at != null) {
-                    // Scale the translate portion of matrix,
-                    // and add it into the position.
-                    at.getMatrix(mat);
-                    x += mat[4];
-                    y += mat[5];
-                    if ((mat[0] != 1) || (mat[1] != 0) ||
-                        (mat[2] != 0) || (mat[3] != 1)) {
-                        // More than just translation.
-                        mat[4] = 0; mat[5] = 0;
-                        at = new AffineTransform(mat);
-                    } else {
-                        at = null;
+            // The positions of the AWT glyph vector are changed
+            // while drawing, so it is drawn by one thread at a time.
+            synchronized (awtGlyphVector) {
+                double sf = scaleFactor;
+                double [] mat = new double[6];
+                for (int i=0; i< numGlyphs; i++) {
+                    Point2D         pos = glyphPositions[i];
+                    double x = pos.getX();
+                    double y = pos.getY();
+                    AffineTransform at = glyphTransforms[i];
+                    if (at != null) {
+                        // Scale the translate portion of matrix,
+                        // and add it into the position.
+                        at.getMatrix(mat);
+                        x += mat[4];
+                        y += mat[5];
+                        if ((mat[0] != 1) || (mat[1] != 0) ||
+                            (mat[2] != 0) || (mat[3] != 1)) {
+                            // More than just translation.
+                            mat[4] = 0; mat[5] = 0;
+                            at = new AffineTransform(mat);
+                        } else {
+                            at = null;
+                        }
                     }
+                    pos = new Point2D.Double(x/sf, y/sf);
+                    awtGlyphVector.setGlyphPosition(i, pos);
+                    awtGlyphVector.setGlyphTransform(i, at);
                 }
-                pos = new Point2D.Double(x/sf, y/sf);
-                awtGlyphVector.setGlyphPosition(i, pos);
-                awtGlyphVector.setGlyphTransform(i, at);
-            }
-            graphics2D.scale(sf, sf);
-            graphics2D.setPaint(fillPaint);
-            graphics2D.drawGlyphVector(awtGlyphVector, 0.0f, 0.0f);
-            graphics2D.scale(1.0/sf, 1.0/sf);
-
-            for (int i=0; i< numGlyphs; i++) {
-                Point2D         pos = defaultGlyphPositions[i];
-                awtGlyphVector.setGlyphPosition(i, pos);
-                awtGlyphVector.setGlyphTransform(i, null);
-            }
+                graphics2D.scale(sf, sf);
+                graphics2D.setPaint(fillPaint);
+                graphics2D.drawGlyphVector(awtGlyphVector, 0.0f, 0.0f);
+                graphics2D.scale(1.0/sf, 1.0/sf);
 
+                for (int i=0; i< numGlyphs; i++) {
+                    Point2D         pos = defaultGlyphPositions[i];
+                    awtGlyphVector.setGlyphPosition(i, pos);
+                    awtGlyphVector.setGlyphTransform(i, null);
+                }
+            }
         } else {
             Shape outline = getOutline();
 
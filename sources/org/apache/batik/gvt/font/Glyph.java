@@ -389,8 +389,10 @@ public class Glyph {
 
         // paint the glyph children nodes
         if (glyphChildrenNode != null) {
-            glyphChildrenNode.setTransform(tr);
-            glyphChildrenNode.paint(graphics2D);
+            synchronized (glyphChildrenNode) {
+                glyphChildrenNode.setTransform(tr);
+                glyphChildrenNode.paint(graphics2D);
+            }
         }
     }
 }
@@ -46,7 +46,7 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
     private GVTFont           font;
     private Glyph[]           glyphs;
     private FontRenderContext frc;
-    private GeneralPath       outline;
+    private volatile GeneralPath outline;
     private Rectangle2D       logicalBounds;
     private Rectangle2D       bounds2D;
     private Shape[]           glyphLogicalBounds;
@@ -541,15 +541,18 @@ public final class SVGGVTGlyphVector implements GVTGlyphVector {
      */
     public Shape getOutline() {
         if (outline == null) {
-            outline = new GeneralPath();
+            // Only publish the outline once complete, it may be drawn
+            // by several threads.
+            GeneralPath gp = new GeneralPath();
             for (int i = 0; i < glyphs.length; i++) {
                 if (glyphVisible[i]) {
                     Shape glyphOutline = glyphs[i].getOutline();
                     if (glyphOutline != null) {
-                        outline.append(glyphOutline, false);
+                        gp.append(glyphOutline, false);
                     }
                 }
             }
+            outline = gp;
         }
         return outline;
     }
@@ -189,7 +189,7 @@ public class DynamicRenderer extends StaticRenderer {
             // System.out.println("Dynamic:");
             if (repaintAll) {
                 // System.out.println("Repainting All");
-                cr.copyData(copyRaster);
+                copyData(cr, copyRaster);
             } else {
                 java.awt.Graphics2D g2d = null;
                 if (false) {
@@ -247,7 +247,7 @@ public class DynamicRenderer extends StaticRenderer {
                     // System.err.println("Render: " + r);
                     WritableRaster dst = copyRaster.createWritableChild
                         (r.x, r.y, r.width, r.height, r.x, r.y, null);
-                    cr.copyData(dst);
+                    copyData(cr, dst);
                     if (g2d != null) {
                         g2d.setPaint( fillColor );
                         g2d.fill(r);
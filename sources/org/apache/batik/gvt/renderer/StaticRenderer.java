@@ -46,6 +46,7 @@ import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
 import org.apache.batik.ext.awt.image.rendered.TranslateRed;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.util.HaltingThread;
+import org.apache.batik.util.WorkerPool;
 
 /**
  * Simple implementation of the Renderer that simply does static
@@ -90,6 +91,12 @@ public class StaticRenderer implements ImageRenderer {
     protected RenderingHints renderingHints;
     protected AffineTransform usr2dev;
 
+    /**
+     * Pool used to render independent bands of the offscreen
+     * concurrently, or null to render on the calling thread.
+     */
+    protected WorkerPool workerPool;
+
     protected static RenderingHints defaultRenderingHints;
     static {
         defaultRenderingHints = new RenderingHints(null);
@@ -220,6 +227,28 @@ public class StaticRenderer implements ImageRenderer {
         return usr2dev;
     }
 
+    /**
+     * Sets the pool used to render the offscreen in parallel.  When
+     * set, each area to repaint is split into horizontal bands aligned
+     * with the tile grid of the rendering, and each band is painted
+     * with its own <code>Graphics2D</code> on a worker thread.  The
+     * GVT tree must not be modified while a repaint is in progress
+     * (which the <code>UpdateManager</code> already guarantees).
+     *
+     * @param pool the pool to use or null to render serially.
+     */
+    public void setWorkerPool(WorkerPool pool) {
+        workerPool = pool;
+    }
+
+    /**
+     * Returns the pool used to render the offscreen in parallel, or
+     * null if rendering is done on the calling thread.
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
     /**
      * Returns true if the Renderer is currently doubleBuffering is
      * rendering requests.  If it is then getOffscreen will only
@@ -391,7 +420,7 @@ public class StaticRenderer implements ImageRenderer {
 
         // Ensure only one thread works on baseRaster at a time...
         synchronized (syncRaster) {
-            cr.copyData(copyRaster);
+            copyData(cr, copyRaster);
         }
 
         if (!HaltingThread.hasBeenHalted()) {
@@ -410,6 +439,57 @@ public class StaticRenderer implements ImageRenderer {
         }
     }
 
+    /**
+     * Fills <code>dst</code> with the contents of <code>cr</code>.  If
+     * a worker pool is set the raster is split into bands, aligned with
+     * the tile grid of <code>cr</code>, which are filled concurrently.
+     * Halting the calling thread halts the workers too.
+     */
+    protected void copyData(final CachableRed cr, WritableRaster dst) {
+        WorkerPool pool = workerPool;
+        if ((pool == null) || (pool.getParallelism() < 2)) {
+            cr.copyData(dst);
+            return;
+        }
+
+        Rectangle r   = dst.getBounds();
+        int th        = cr.getSampleModel().getHeight();
+        int tgy       = cr.getTileGridYOffset();
+        int ty0       = (int)Math.floor((r.y-tgy)/(double)th);
+        int ty1       = (int)Math.floor((r.y+r.height-1-tgy)/(double)th);
+        int tileRows  = ty1-ty0+1;
+
+        // A few bands per thread to even out the load, each band
+        // walks the whole tree so don't make them too thin.
+        int numBands = pool.getParallelism()*4;
+        if (numBands > tileRows) numBands = tileRows;
+        if (numBands < 2) {
+            cr.copyData(dst);
+            return;
+        }
+
+        // Compute the lazily cached bounds of the tree up front
+        // rather than racing to do it from every band.
+        if (rootGN != null)
+            rootGN.getBounds();
+
+        Runnable [] tasks = new Runnable[numBands];
+        for (int i=0; i<numBands; i++) {
+            int y0 = tgy+(ty0+(tileRows*i)/numBands)*th;
+            int y1 = tgy+(ty0+(tileRows*(i+1))/numBands)*th;
+            if (y0 < r.y)          y0 = r.y;
+            if (y1 > r.y+r.height) y1 = r.y+r.height;
+            final WritableRaster band = dst.createWritableChild
+                (r.x, y0, r.width, y1-y0, r.x, y0, null);
+            tasks[i] = new Runnable() {
+                    public void run() {
+                        cr.copyData(band);
+                    }
+                };
+        }
+        pool.invokeAll(tasks);
+    }
+
     /**
      * Flush any cached image data.
      */
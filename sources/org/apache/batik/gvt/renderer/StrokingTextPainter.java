@@ -163,7 +163,13 @@ public class StrokingTextPainter extends BasicTextPainter {
         if (aci == null)
             return;
 
-        List textRuns = getTextRuns(node, aci);
+        // The text runs are laid out from the character iterator of
+        // the node, which only one thread may walk at a time.  Once
+        // laid out they can be painted concurrently.
+        List textRuns;
+        synchronized (node) {
+            textRuns = getTextRuns(node, aci);
+        }
 
         // draw the underline and overline first, then the actual text
         // and finally the strikethrough
@@ -869,14 +875,12 @@ public class StrokingTextPainter extends BasicTextPainter {
 
         for (int i = 0; i < textRuns.size(); i++) {
             TextRun textRun = (TextRun)textRuns.get(i);
-            AttributedCharacterIterator runaci = textRun.getACI();
-            runaci.first();
 
             Paint  paint       = null;
             Stroke stroke      = null;
             Paint  strokePaint = null;
             boolean visible    = true;
-            TextPaintInfo tpi = (TextPaintInfo)runaci.getAttribute(PAINT_INFO);
+            TextPaintInfo tpi = getPaintInfo(textRun);
             if (tpi != null) {
                 visible = tpi.visible;
                 if (tpi.composite != null) {
@@ -991,10 +995,7 @@ public class StrokingTextPainter extends BasicTextPainter {
                                Graphics2D g2d) {
         for (int i = 0; i < textRuns.size(); i++) {
             TextRun textRun = (TextRun)textRuns.get(i);
-            AttributedCharacterIterator runaci = textRun.getACI();
-            runaci.first();
-
-            TextPaintInfo tpi = (TextPaintInfo)runaci.getAttribute(PAINT_INFO);
+            TextPaintInfo tpi = getPaintInfo(textRun);
             if ((tpi != null) && (tpi.composite != null)) {
                 g2d.setComposite(tpi.composite);
             }
@@ -1002,6 +1003,18 @@ public class StrokingTextPainter extends BasicTextPainter {
         }
     }
 
+    /**
+     * Returns the paint info of the first character of a text run.  A
+     * copy of the run's iterator is used so that several threads can
+     * paint the same text node.
+     */
+    protected TextPaintInfo getPaintInfo(TextRun textRun) {
+        AttributedCharacterIterator runaci;
+        runaci = (AttributedCharacterIterator)textRun.getACI().clone();
+        runaci.first();
+        return (TextPaintInfo)runaci.getAttribute(PAINT_INFO);
+    }
+
     /**
      * Get a Shape in userspace coords which defines the textnode glyph outlines.
      * @param node the TextNode to measure
@@ -363,7 +363,7 @@ public class GlyphLayout implements TextSpanLayout {
      * This method makes certain that the layout has been
      * completed at this point (much of the layout is done lazily).
      */
-    private final void syncLayout() {
+    private synchronized void syncLayout() {
         if (!pathApplied) {
             // System.out.println("Doing Path Layout: " + this);
             doPathLayout();
@@ -377,7 +377,9 @@ public class GlyphLayout implements TextSpanLayout {
      */
     public void draw(Graphics2D g2d) {
         syncLayout();
-        gv.draw(g2d, aci);
+        // The glyph vector moves the iterator around, give it its
+        // own copy so this layout can be drawn by several threads.
+        gv.draw(g2d, (AttributedCharacterIterator)aci.clone());
     }
 
     /**
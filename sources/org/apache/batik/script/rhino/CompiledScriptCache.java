@@ -0,0 +1,213 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.script.rhino;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.apache.batik.util.SoftReferenceCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * This class manages a cache of soft references to compiled Rhino
+ * scripts, shared by all the interpreters of the JVM so that a script
+ * evaluated by many instances of a document, such as the documents
+ * of successive transcodings or reloads, is compiled once.
+ *
+ * <p>
+ *   Scripts are keyed by their source, their source name and the
+ *   URL of the document they were compiled for.  The code source of
+ *   the compiled classes is that URL, so it determines their
+ *   permissions: a script is only shared by the documents loaded from
+ *   the same URL.  In particular, a script library included by
+ *   different documents is compiled once for each of them.  A compiled
+ *   script does not depend on the scope it is executed in, so it can
+ *   be executed against the global object of each document.
+ * </p>
+ * <p>
+ *   If a thread requests a script which is being compiled by another
+ *   thread, it is blocked until the script is compiled.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCache extends SoftReferenceCache {
+
+    static CompiledScriptCache theCache = new CompiledScriptCache();
+
+    public static CompiledScriptCache getDefaultCache() { return theCache; }
+
+    /**
+     * The number of requests served from the cache.
+     */
+    protected long hits;
+
+    /**
+     * The number of scripts compiled.
+     */
+    protected long compiles;
+
+    /**
+     * The time spent compiling scripts, in milliseconds.
+     */
+    protected long compileTime;
+
+    /**
+     * Let people create their own caches.
+     */
+    public CompiledScriptCache() { }
+
+    /**
+     * Returns the compiled script for the given source, compiling it
+     * if it is not in the cache.
+     * @param cx the context to compile the script with
+     * @param source the source of the script
+     * @param sourceName the name of the script, used in error messages
+     * @param loader the class loader of the document, used as the
+     *        security domain of the script, or null if scripts are
+     *        interpreted
+     */
+    public Script getScript(final Context cx,
+                            final String source,
+                            final String sourceName,
+                            final RhinoClassLoader loader) {
+        Key key = new Key(source, sourceName, loader);
+        Script script = (Script)requestImpl(key);
+        if (script != null) {
+            synchronized (this) {
+                hits++;
+            }
+            return script;
+        }
+
+        // We are on the hook for compiling the script.
+        long start = System.currentTimeMillis();
+        try {
+            PrivilegedAction compile = new PrivilegedAction() {
+                    public Object run() {
+                        return cx.compileString(source, sourceName, 1,
+                                                loader);
+                    }
+                };
+            script = (Script)AccessController.doPrivileged(compile);
+        } finally {
+            if (script == null) {
+                // Let the next requester try.
+                clearImpl(key);
+            }
+        }
+        putImpl(key, script);
+        synchronized (this) {
+            compiles++;
+            compileTime += System.currentTimeMillis() - start;
+        }
+        return script;
+    }
+
+    /**
+     * Returns the number of requests which were served from the cache
+     * (including after waiting for another thread to compile the
+     * script).
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of scripts compiled by the cache.
+     */
+    public synchronized long getCompileCount() {
+        return compiles;
+    }
+
+    /**
+     * Returns the time spent compiling scripts, in milliseconds.
+     */
+    public synchronized long getCompileTime() {
+        return compileTime;
+    }
+
+    /**
+     * Resets the hit and compilation counters.
+     */
+    public synchronized void resetCounters() {
+        hits = 0;
+        compiles = 0;
+        compileTime = 0;
+    }
+
+    /**
+     * The key of a compiled script.
+     */
+    protected static class Key {
+
+        protected String source;
+        protected String sourceName;
+
+        /**
+         * The URL of the document, as a string so that comparing keys
+         * does not resolve host names, or null.
+         */
+        protected String documentURL;
+
+        /**
+         * Whether the script is interpreted rather than compiled to
+         * Java classes.
+         */
+        protected boolean interpreted;
+
+        protected int hashCode;
+
+        public Key(String source, String sourceName,
+                   RhinoClassLoader loader) {
+            this.source = source;
+            this.sourceName = sourceName;
+            interpreted = loader == null;
+            if (loader != null && loader.documentURL != null) {
+                documentURL = loader.documentURL.toString();
+            }
+            int h = source.hashCode();
+            if (sourceName != null)
+                h = h * 31 + sourceName.hashCode();
+            if (documentURL != null)
+                h = h * 31 + documentURL.hashCode();
+            hashCode = interpreted ? ~h : h;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return hashCode == k.hashCode
+                && interpreted == k.interpreted
+                && equals(documentURL, k.documentURL)
+                && equals(sourceName, k.sourceName)
+                && source.equals(k.source);
+        }
+
+        private static boolean equals(String s1, String s2) {
+            return (s1 == null) ? (s2 == null) : s1.equals(s2);
+        }
+    }
+}
@@ -20,12 +20,9 @@ package org.apache.batik.script.rhino;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.security.AccessControlContext;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -60,11 +57,6 @@ import org.w3c.dom.events.EventTarget;
  */
 public class RhinoInterpreter implements Interpreter {
 
-    /**
-     * The number of cached compiled scripts to store.
-     */
-    private static final int MAX_CACHED_SCRIPTS = 0xFFFF;
-
     /**
      * Constant used to describe an SVG source
      */
@@ -91,8 +83,17 @@ public class RhinoInterpreter implements Interpreter {
      */
     protected ScriptableObject globalObject = null;
 
+    /**
+     * The cache of compiled scripts, shared by default with the other
+     * interpreters.
+     */
+    protected CompiledScriptCache scriptCache
+        = CompiledScriptCache.getDefaultCache();
+
     /**
      * List of cached compiled scripts.
+     * @deprecated Compiled scripts are now kept in {@link #scriptCache}:
+     *             this list is no longer used.
      */
     protected LinkedList compiledScripts = new LinkedList();
 
@@ -274,7 +275,9 @@ public class RhinoInterpreter implements Interpreter {
     }
 
     /**
-     * This method evaluates a piece of ECMAScript.
+     * This method evaluates a piece of ECMAScript.  The script is
+     * compiled once per JVM and document URL: see
+     * {@link CompiledScriptCache}.
      * @param scriptReader a <code>java.io.Reader</code> on the piece of script
      * @param description description which can be later used (e.g., for error
      *        messages).
@@ -286,14 +289,15 @@ public class RhinoInterpreter implements Interpreter {
 
         ContextAction evaluateAction = new ContextAction() {
             public Object run(Context cx) {
+                String source;
                 try {
-                    return cx.evaluateReader(globalObject,
-                                             scriptReader,
-                                             description,
-                                             1, rhinoClassLoader);
+                    source = readScript(scriptReader);
                 } catch (IOException ioe) {
                     throw new WrappedException(ioe);
                 }
+                Script script = scriptCache.getScript
+                    (cx, source, description, rhinoClassLoader);
+                return script.exec(cx, globalObject);
             }
         };
         try {
@@ -321,8 +325,8 @@ public class RhinoInterpreter implements Interpreter {
     /**
      * This method evaluates a piece of ECMA script.
      * The first time a String is passed, it is compiled and evaluated.
-     * At next call, the piece of script will only be evaluated to
-     * prevent from recompiling it.
+     * At next call, even from another interpreter, the piece of script
+     * will only be evaluated to prevent from recompiling it.
      * @param scriptStr the piece of script
      * @return if no exception is thrown during the call, should return the
      * value of the last expression evaluated in the script.
@@ -331,55 +335,8 @@ public class RhinoInterpreter implements Interpreter {
 
         ContextAction evalAction = new ContextAction() {
             public Object run(final Context cx) {
-                Script script = null;
-                Entry entry = null;
-                Iterator it = compiledScripts.iterator();
-                // between nlog(n) and log(n) because it is
-                // an AbstractSequentialList
-                while (it.hasNext()) {
-                    if ((entry = (Entry) it.next()).str.equals(scriptStr)) {
-                        // if it is not at the end, remove it because
-                        // it will change from place (it is faster
-                        // to remove it now)
-                        script = entry.script;
-                        it.remove();
-                        break;
-                    }
-                }
-
-                if (script == null) {
-                    // this script has not been compiled yet or has been
-                    // forgotten since the compilation:
-                    // compile it and store it for future use.
-
-                    PrivilegedAction compile = new PrivilegedAction() {
-                        public Object run() {
-                            try {
-                                return cx.compileReader
-                                    (new StringReader(scriptStr),
-                                     SOURCE_NAME_SVG, 1, rhinoClassLoader);
-                            } catch (IOException ioEx ) {
-                                // Should never happen: using a string
-                                throw new Error( ioEx.getMessage() );
-                            }
-                        }
-                    };
-                    script = (Script)AccessController.doPrivileged(compile);
-
-                    if (compiledScripts.size() + 1 > MAX_CACHED_SCRIPTS) {
-                        // too many cached items - we should delete the
-                        // oldest entry.  all of this is very fast on
-                        // linkedlist
-                        compiledScripts.removeFirst();
-                    }
-                    // storing is done here:
-                    compiledScripts.addLast(new Entry(scriptStr, script));
-                } else {
-                    // this script has been compiled before,
-                    // just update its index so it won't get deleted soon.
-                    compiledScripts.addLast(entry);
-                }
-
+                Script script = scriptCache.getScript
+                    (cx, scriptStr, SOURCE_NAME_SVG, rhinoClassLoader);
                 return script.exec(cx, globalObject);
             }
         };
@@ -405,6 +362,19 @@ public class RhinoInterpreter implements Interpreter {
         }
     }
 
+    /**
+     * Reads the whole source of a script.
+     */
+    protected String readScript(Reader reader) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
     /**
      * For <code>RhinoInterpreter</code> this method flushes the
      * Rhino caches to avoid memory leaks.
@@ -560,6 +530,9 @@ public class RhinoInterpreter implements Interpreter {
 
     /**
      * Class to store cached compiled scripts.
+     * @deprecated Compiled scripts are now kept in a
+     *             {@link CompiledScriptCache}: this class is no
+     *             longer used.
      */
     protected static class Entry {
 
@@ -23,6 +23,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.w3c.dom.Element;
+
 /**
  * Abstract class with common utility methods used by subclasses
  * for specific convertion operations. It holds a reference to a
@@ -53,6 +55,12 @@ public abstract class AbstractSVGConverter implements SVGConverter, ErrorConstan
      */
     protected List defSet = new LinkedList();
 
+    /**
+     * Map of the URI references of the shared definitions already used
+     * by this converter, by key. Created if there is a definition cache.
+     */
+    protected Map sharedDefMap;
+
     /**
      * @param generatorContext can be used by the SVGConverter extensions
      *        to create Elements and other types of DOM objects.
@@ -81,4 +89,69 @@ public abstract class AbstractSVGConverter implements SVGConverter, ErrorConstan
     public final String doubleString(double value) {
         return generatorContext.doubleString(value);
     }
+
+    /**
+     * Returns the URI reference of the definition for the given key in
+     * the definition cache of the generator context, adding the
+     * definition to the definition set if needed, or null if there is
+     * no such definition.
+     */
+    protected String getSharedDefinition(Object key) {
+        SVGDefinitionCache cache = generatorContext.definitionCache;
+        if (cache == null)
+            return null;
+
+        if (sharedDefMap == null)
+            sharedDefMap = new HashMap();
+        String ref = (String)sharedDefMap.get(key);
+        if (ref == null) {
+            Element def = cache.getDefinition(key, generatorContext.domFactory);
+            if (def != null) {
+                if (!cache.isExternal())
+                    defSet.add(def);
+                ref = cache.getReference(def);
+                sharedDefMap.put(key, ref);
+            }
+        }
+        return ref;
+    }
+
+    /**
+     * Adds a definition, which has no id yet, to the definition set and
+     * returns its URI reference.  If the generator context has a
+     * definition cache, the definition is shared through it: the
+     * reference may point to an identical definition of the cache,
+     * which is only added to the definition set if the cache is not
+     * external.  Otherwise, the definition is given an id from the
+     * given prefix.
+     *
+     * @param key the key of the definition in the cache, or null to
+     *        use the content of the definition
+     * @param definition the definition
+     * @param idPrefix the prefix of the id of the definition
+     */
+    protected String addDefinition(Object key, Element definition,
+                                   String idPrefix) {
+        SVGDefinitionCache cache = generatorContext.definitionCache;
+        if (cache == null) {
+            definition.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                      generatorContext.idGenerator.
+                                      generateID(idPrefix));
+            defSet.add(definition);
+            return SIGN_POUND + definition.getAttributeNS(null, SVG_ID_ATTRIBUTE);
+        }
+
+        if (key == null)
+            key = SVGDefinitionCache.getContentKey(definition);
+        String ref = getSharedDefinition(key);
+        if (ref == null) {
+            Element def = cache.getDefinition(key, definition, idPrefix,
+                                              generatorContext.domFactory);
+            if (!cache.isExternal())
+                defSet.add(def);
+            ref = cache.getReference(def);
+            sharedDefMap.put(key, ref);
+        }
+        return ref;
+    }
 }
@@ -191,6 +191,7 @@ public class DOMGroupManager implements SVGSyntax, ErrorConstants {
                         setStyle(element, deltaGC.getContext(),
                                  domTreeManager.getGeneratorContext());
                     setTransform(element, deltaGC.getTransformStack());
+                    domTreeManager.streamCompletedElements();
                 } else {
                     //
                     // Need to create a new current group
@@ -18,6 +18,9 @@
  */
 package org.apache.batik.svggen;
 
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,7 +31,9 @@ import java.util.Collections;
 import org.apache.batik.ext.awt.g2d.GraphicContext;
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
@@ -57,6 +62,15 @@ import org.w3c.dom.NodeList;
  *        +-- ...
  *        +-- [g]    Group n
  *
+ * When streaming is started with {@link #startStream}, the tree is
+ * written out to a Writer as it is built instead: a group, or an
+ * element of the current group, is complete as soon as another one is
+ * appended after it, at which point it is written and removed from
+ * the tree. The definitions are written in a deferred defs node, last
+ * child of the top level group, by {@link #endStream}. Apart from the
+ * position of that defs node, the output is the same as the one of
+ * SVGGraphics2D.stream.
+ *
  * @author <a href="mailto:cjolif">Christophe Jolif</a>
  * @author <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -116,6 +130,38 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      */
     protected List otherDefs;
 
+    /**
+     * The writer completed elements are streamed to, or null if the
+     * tree is not streamed.
+     */
+    XmlWriter.IndentWriter streamWriter;
+
+    /**
+     * The root element, once its start tag has been streamed.
+     */
+    protected Element streamRoot;
+
+    /**
+     * The group whose start tag has been streamed while it was the
+     * current group, if any.
+     */
+    protected Element streamGroup;
+
+    /**
+     * The size of the SVG canvas of the streamed document, or null.
+     */
+    protected Dimension streamCanvasSize;
+
+    /**
+     * Whether the streamed content uses CSS style properties.
+     */
+    protected boolean streamUseCss;
+
+    /**
+     * Whether the characters of the streamed content are escaped.
+     */
+    protected boolean streamEscaped;
+
     /**
      * Constructor
      * @param gc default graphic context state
@@ -173,6 +219,7 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      */
     public void appendGroup(Element group, DOMGroupManager groupManager){
         topLevelGroup.appendChild(group);
+        streamCompletedElements();
         synchronized( groupManagers ){
             // we want to prevent that the groupManagers-list changes while
             // we iterate over it. If that would happen, we might skip entries
@@ -252,6 +299,17 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      * the topLevelGroup.
      */
     public Element getRoot(Element svgElement){
+        Element svg = createRoot(svgElement);
+        svg.appendChild(getTopLevelGroup());
+
+        return svg;
+    }
+
+    /**
+     * Returns the root element with the generic definitions, without
+     * the topLevelGroup.
+     */
+    protected Element createRoot(Element svgElement){
         Element svg = svgElement;
 
         if (svg == null) {
@@ -275,7 +333,6 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
         applyDefaultRenderingStyle(svg);
 
         svg.appendChild(getGenericDefinitions());
-        svg.appendChild(getTopLevelGroup());
 
         return svg;
     }
@@ -422,6 +479,203 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
         return topLevelGroup;
     }
 
+    /**
+     * Starts streaming the tree to the given writer. From then on,
+     * elements are written out and removed from the tree as soon as they
+     * are completed, so that the memory used does not depend on the
+     * size of the drawing. The stream must be ended with
+     * {@link #endStream}, and the top level group must not be
+     * accessed meanwhile.
+     *
+     * Note that the root element is written along with the first
+     * completed element, before it is known whether an AlphaComposite
+     * requiring background access is used: its enable-background
+     * attribute is therefore always set to 'new'.
+     *
+     * @param writer the writer to stream the SVG content to
+     * @param svgCanvasSize the size of the SVG canvas, or null
+     * @param useCss defines whether the output SVG should use CSS style
+     *        properties as opposed to plain attributes
+     * @param escaped defines if the characters will be escaped
+     */
+    public void startStream(Writer writer, Dimension svgCanvasSize,
+                            boolean useCss, boolean escaped){
+        if (writer instanceof XmlWriter.IndentWriter)
+            streamWriter = (XmlWriter.IndentWriter)writer;
+        else
+            streamWriter = new XmlWriter.IndentWriter(writer);
+        streamRoot = null;
+        streamGroup = null;
+        streamCanvasSize = svgCanvasSize;
+        streamUseCss = useCss;
+        streamEscaped = escaped;
+    }
+
+    /**
+     * Writes out the elements which remain in the tree, the definitions
+     * and the end of the document started with {@link #startStream},
+     * and flushes the writer. This object then starts working with a
+     * new topLevelGroup, as after {@link #getTopLevelGroup()}.
+     */
+    public void endStream() throws SVGGraphics2DIOException {
+        if (streamWriter == null)
+            return;
+
+        try {
+            if (streamRoot == null) {
+                // Nothing was completed: write the tree as a whole.
+                Element svg = createStreamRoot();
+                svg.appendChild(getTopLevelGroup());
+                if (streamUseCss)
+                    SVGCSSStyler.style(svg);
+                XmlWriter.writeXml(svg.getParentNode(), streamWriter,
+                                   streamEscaped);
+            } else {
+                List defSet = getDefinitionSet();
+                if (defSet.size() > 0) {
+                    Element defElement = generatorContext.domFactory.
+                        createElementNS(SVG_NAMESPACE_URI, SVG_DEFS_TAG);
+                    defElement.setAttributeNS
+                        (null, SVG_ID_ATTRIBUTE,
+                         generatorContext.idGenerator.
+                         generateID(ID_PREFIX_DEFS));
+                    Iterator iter = defSet.iterator();
+                    while (iter.hasNext())
+                        defElement.appendChild((Element)iter.next());
+                    topLevelGroup.appendChild(defElement);
+                }
+
+                writeChildren(topLevelGroup, null);
+                XmlWriter.writeEndTag(topLevelGroup, streamWriter, true);
+                XmlWriter.writeStreamEnd(streamRoot, streamWriter);
+                recycleTopLevelGroup(false);
+            }
+            streamWriter.flush();
+        } catch (IOException io) {
+            generatorContext.errorHandler.
+                handleError(new SVGGraphics2DIOException(io));
+        } finally {
+            streamWriter = null;
+            streamRoot = null;
+            streamGroup = null;
+        }
+    }
+
+    /**
+     * Writes out and removes the elements of the tree which are
+     * complete, if the tree is streamed. This is invoked by the group
+     * managers whenever they append an element to their current group.
+     */
+    void streamCompletedElements() {
+        if (streamWriter == null)
+            return;
+
+        try {
+            writeCompletedElements();
+        } catch (IOException io) {
+            generatorContext.errorHandler.
+                handleError(new SVGGraphics2DRuntimeException(io));
+        }
+    }
+
+    /**
+     * Writes out and removes the elements of the tree which are
+     * complete. Only the last child of the topLevelGroup, the current
+     * group, and the last child of that group may still be modified:
+     * the other elements are complete.
+     */
+    private void writeCompletedElements() throws IOException {
+        Node last = topLevelGroup.getLastChild();
+        boolean groupComplete = (topLevelGroup.getFirstChild() != last);
+        boolean childComplete = (last != null) &&
+            (last.getFirstChild() != last.getLastChild());
+        if (!groupComplete && !childComplete)
+            return;
+
+        if (streamRoot == null) {
+            Element svg = createStreamRoot();
+            svg.appendChild(topLevelGroup);
+            XmlWriter.writeStreamStart(svg, topLevelGroup, streamWriter,
+                                       streamEscaped);
+            XmlWriter.writeStartTag(topLevelGroup, streamWriter,
+                                    streamEscaped);
+            streamRoot = svg;
+        }
+
+        if (groupComplete)
+            writeChildren(topLevelGroup, last);
+
+        if (childComplete) {
+            if (streamGroup != last) {
+                // Style the group itself, not its last child which may
+                // still be modified.
+                Node lastChild = last.getLastChild();
+                if (streamUseCss) {
+                    last.removeChild(lastChild);
+                    SVGCSSStyler.style(last);
+                    last.appendChild(lastChild);
+                }
+                XmlWriter.writeStartTag((Element)last, streamWriter,
+                                        streamEscaped);
+                streamGroup = (Element)last;
+            }
+            writeChildren(streamGroup, streamGroup.getLastChild());
+        }
+    }
+
+    /**
+     * Writes out and removes the children of the given element which
+     * precede the given child, or all of them if it is null.
+     */
+    private void writeChildren(Element element, Node end) throws IOException {
+        Node child;
+        while ((child = element.getFirstChild()) != end) {
+            if (child == streamGroup) {
+                // Its start tag and first children were already written.
+                writeChildren(streamGroup, null);
+                XmlWriter.writeEndTag(streamGroup, streamWriter,
+                                      element.getLastChild() == child);
+                streamGroup = null;
+            } else {
+                if (streamUseCss)
+                    SVGCSSStyler.style(child);
+                XmlWriter.writeXml(child, streamWriter, streamEscaped);
+            }
+            element.removeChild(child);
+        }
+    }
+
+    /**
+     * Creates the root element of the streamed document, in a document
+     * fragment, the way SVGGraphics2D.stream does. The background is
+     * always enabled, since composites may still be converted after
+     * the root is written.
+     */
+    private Element createStreamRoot() {
+        Element svg = createRoot(null);
+        svg.setAttributeNS(null, SVG_ENABLE_BACKGROUND_ATTRIBUTE,
+                           SVG_NEW_VALUE);
+        if (streamCanvasSize != null){
+            svg.setAttributeNS(null, SVG_WIDTH_ATTRIBUTE,
+                               String.valueOf(streamCanvasSize.width));
+            svg.setAttributeNS(null, SVG_HEIGHT_ATTRIBUTE,
+                               String.valueOf(streamCanvasSize.height));
+        }
+        svg.setAttributeNS(XMLNS_NAMESPACE_URI,
+                           XMLNS_PREFIX,
+                           SVG_NAMESPACE_URI);
+        svg.setAttributeNS(XMLNS_NAMESPACE_URI,
+                           XMLNS_PREFIX + ":" + XLINK_PREFIX,
+                           XLINK_NAMESPACE_URI);
+        if (streamUseCss)
+            SVGCSSStyler.style(svg);
+
+        DocumentFragment fragment =
+            generatorContext.domFactory.createDocumentFragment();
+        fragment.appendChild(svg);
+        return svg;
+    }
+
     public SVGBufferedImageOp getFilterConverter() {
         return filterConverter;
     }
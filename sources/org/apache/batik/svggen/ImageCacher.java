@@ -18,6 +18,7 @@
  */
 package org.apache.batik.svggen;
 
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -136,6 +137,44 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
         return href;
     }
 
+    /**
+     * Checks if the image is already in the cache, and adds it if not,
+     * encoding it with the given handler. Returns a unique id for the
+     * entry.
+     *
+     * @param buf               the image
+     * @param handler           the handler which encodes the image
+     * @param ctx               the SVGGeneratorContext
+     *
+     * @return a URI for the image
+     * @throws SVGGraphics2DIOException if an error occurs during image file i/o
+     */
+    String lookup(BufferedImage buf,
+                  DefaultCachedImageHandler handler,
+                  SVGGeneratorContext ctx)
+                      throws SVGGraphics2DIOException {
+        return lookup(encode(buf, handler),
+                      buf.getWidth(), buf.getHeight(), ctx);
+    }
+
+    /**
+     * Encodes the image in memory with the given handler.
+     */
+    ByteArrayOutputStream encode(BufferedImage buf,
+                                 DefaultCachedImageHandler handler)
+                                     throws SVGGraphics2DIOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            handler.encodeImage(buf, os);
+            os.flush();
+            os.close();
+            return os;
+        } catch (IOException e) {
+            // should not happen since we do in-memory processing
+            throw new SVGGraphics2DIOException(ERR_UNEXPECTED, e);
+        }
+    }
+
     /**
      * Returns an object which can be cached.
      * Implementation must determine which information
@@ -209,11 +248,50 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
         }
     }
 
+    /**
+     * The key of an image before it is encoded: its size and pixels.
+     */
+    private static class PixelKey {
+        private int width;
+        private int height;
+        private int[] pixels;
+        private int checksum;
+
+        PixelKey(BufferedImage image, int checksum) {
+            width = image.getWidth();
+            height = image.getHeight();
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            this.checksum = checksum;
+        }
+
+        public int hashCode() {
+            return checksum;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof PixelKey)) {
+                return false;
+            }
+            PixelKey k = (PixelKey)o;
+            return checksum == k.checksum
+                && width == k.width
+                && height == k.height
+                && Arrays.equals(pixels, k.pixels);
+        }
+    }
+
     /**
      * Cache implementation for images embedded in the SVG file.
+     * Images are first looked up by their pixels, so an image found in
+     * the cache is not encoded again.
      */
     public static class Embedded extends ImageCacher {
 
+        /**
+         * The URIs of the images of the tree, keyed by their pixels.
+         */
+        Map pixelCache = new HashMap();
+
         /**
          * Sets the DOMTreeManager this cacher should work on.
          *
@@ -225,7 +303,67 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
             if(this.domTreeManager != domTreeManager) {
                 this.domTreeManager = domTreeManager;
                 this.imageCache     = new HashMap();
+                this.pixelCache     = new HashMap();
+            }
+        }
+
+        String lookup(BufferedImage buf,
+                      DefaultCachedImageHandler handler,
+                      SVGGeneratorContext ctx)
+                          throws SVGGraphics2DIOException {
+            PixelKey key = new PixelKey(buf, getChecksum(buf));
+            String href = (String) pixelCache.get(key);
+            if (href != null) {
+                return href;
+            }
+
+            // Share the image through the definition cache, if any,
+            // keyed by its pixels as well
+            SVGDefinitionCache cache = ctx.definitionCache;
+            if (cache != null) {
+                Document domFactory = domTreeManager.getDOMFactory();
+                Element imageElement = cache.getDefinition(key, domFactory);
+                if (imageElement == null) {
+                    String data = (String) getCacheableData
+                        (encode(buf, handler));
+                    imageElement = cache.getDefinition
+                        (key, createImageElement(null, data,
+                                                 buf.getWidth(),
+                                                 buf.getHeight()),
+                         ID_PREFIX_IMAGE, domFactory);
+                }
+                if (!cache.isExternal()) {
+                    domTreeManager.addOtherDef(imageElement);
+                }
+                href = cache.getReference(imageElement);
+            } else {
+                href = lookup(encode(buf, handler),
+                              buf.getWidth(), buf.getHeight(), ctx);
+            }
+            pixelCache.put(key, href);
+            return href;
+        }
+
+        /**
+         * Calculates a checksum value for the pixels of the given image.
+         */
+        int getChecksum(BufferedImage buf) {
+            int w = buf.getWidth();
+            int[] row = new int[w];
+            byte[] bytes = new byte[w * 4];
+            checkSum.reset();
+            for (int y = 0; y < buf.getHeight(); y++) {
+                buf.getRGB(0, y, w, 1, row, 0, w);
+                for (int x = 0, b = 0; x < w; x++) {
+                    int p = row[x];
+                    bytes[b++] = (byte) (p >>> 24);
+                    bytes[b++] = (byte) (p >>> 16);
+                    bytes[b++] = (byte) (p >>> 8);
+                    bytes[b++] = (byte) p;
+                }
+                checkSum.update(bytes, 0, bytes.length);
             }
+            return (int) checkSum.getValue();
         }
 
         Object getCacheableData(ByteArrayOutputStream os) {
@@ -243,6 +381,21 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
                                     int width, int height,
                                     SVGGeneratorContext ctx) {
 
+            // Share the image through the definition cache, if any
+            SVGDefinitionCache cache = ctx.definitionCache;
+            if (cache != null) {
+                Document domFactory = domTreeManager.getDOMFactory();
+                Element imageElement = cache.getDefinition
+                    (data, createImageElement(null, (String) data,
+                                              width, height),
+                     ID_PREFIX_IMAGE, domFactory);
+                if (!cache.isExternal()) {
+                    domTreeManager.addOtherDef(imageElement);
+                }
+                return new ImageCacheEntry(checksum, data,
+                                           cache.getReference(imageElement));
+            }
+
             // Get a new unique id
             String id = ctx.idGenerator.generateID(ID_PREFIX_IMAGE);
 
@@ -254,21 +407,36 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
         }
 
         /**
-         *  Adds a new image element to the defs section for cached images.
+         * Adds an image element to the defs section.
          */
         private void addToTree(String id,
                                String href,
                                int width, int height,
                                SVGGeneratorContext ctx) {
 
-            Document domFactory = domTreeManager.getDOMFactory();
             // Element imageDefs = getImageDefs(domFactory, ctx);
+            Element imageElement = createImageElement(id, href,
+                                                      width, height);
+            // imageDefs.appendChild(imageElement);
+            domTreeManager.addOtherDef(imageElement);
+        }
+
+        /**
+         * Creates an image element with the given id, or without id
+         * if it is null.
+         */
+        private Element createImageElement(String id,
+                                           String href,
+                                           int width, int height) {
+            Document domFactory = domTreeManager.getDOMFactory();
 
             // Create and initialize the new image element
             Element imageElement = domFactory.createElementNS(SVG_NAMESPACE_URI,
                                                               SVG_IMAGE_TAG);
-            imageElement.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                                              id);
+            if (id != null) {
+                imageElement.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                                  id);
+            }
             imageElement.setAttributeNS(null, SVG_WIDTH_ATTRIBUTE,
                                               Integer.toString(width));
             imageElement.setAttributeNS(null, SVG_HEIGHT_ATTRIBUTE,
@@ -276,8 +444,7 @@ public abstract class ImageCacher implements SVGSyntax, ErrorConstants {
             imageElement.setAttributeNS(DefaultImageHandler.XLINK_NAMESPACE_URI,
                                               XLINK_HREF_QNAME,
                                               href);
-            // imageDefs.appendChild(imageElement);
-            domTreeManager.addOtherDef(imageElement);
+            return imageElement;
         }
 
 
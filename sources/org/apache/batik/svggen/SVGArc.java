@@ -89,15 +89,15 @@ public class SVGArc extends SVGGraphicObjectConverter {
         int     type    = arc.getArcType();
 
         d.append(PATH_MOVE);
-        d.append(doubleString(startPt.getX()));
+        generatorContext.appendDouble(d, startPt.getX());
         d.append(SPACE);
-        d.append(doubleString(startPt.getY()));
+        generatorContext.appendDouble(d, startPt.getY());
         d.append(SPACE);
 
         d.append(PATH_ARC);
-        d.append(doubleString(width / 2));
+        generatorContext.appendDouble(d, width / 2);
         d.append(SPACE);
-        d.append(doubleString(height / 2));
+        generatorContext.appendDouble(d, height / 2);
         d.append(SPACE);
         d.append( '0' );  // no rotation with J2D arc.
         d.append(SPACE);
@@ -116,9 +116,9 @@ public class SVGArc extends SVGGraphicObjectConverter {
         }
 
         d.append(SPACE);
-        d.append(doubleString(endPt.getX()));
+        generatorContext.appendDouble(d, endPt.getX());
         d.append(SPACE);
-        d.append(doubleString(endPt.getY()));
+        generatorContext.appendDouble(d, endPt.getY());
 
         if (type == Arc2D.CHORD) {
             d.append(PATH_CLOSE);
@@ -127,9 +127,9 @@ public class SVGArc extends SVGGraphicObjectConverter {
             double cy = arc.getY() + height / 2;
             d.append(PATH_LINE_TO);
             d.append(SPACE);
-            d.append(doubleString(cx));
+            generatorContext.appendDouble(d, cx);
             d.append(SPACE);
-            d.append(doubleString(cy));
+            generatorContext.appendDouble(d, cy);
             d.append(SPACE);
             d.append(PATH_CLOSE);
         }
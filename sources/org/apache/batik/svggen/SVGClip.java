@@ -85,15 +85,16 @@ public class SVGClip extends AbstractSVGConverter {
                 if (clipDef == null)
                     clipDesc = NO_CLIP;
                 else {
-                    clipPathAttrBuf.append(SIGN_POUND);
-                    clipPathAttrBuf.append(clipDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+                    clipPathAttrBuf.append
+                        (addDefinition(null, clipDef, ID_PREFIX_CLIP_PATH));
                     clipPathAttrBuf.append(URL_SUFFIX);
 
+                    if (generatorContext.definitionCache != null)
+                        clipDef = null;
                     clipDesc = new SVGClipDescriptor(clipPathAttrBuf.toString(),
                                                      clipDef);
 
                     descMap.put(clipKey, clipDesc);
-                    defSet.add(clipDef);
                 }
             }
         } else
@@ -116,10 +117,6 @@ public class SVGClip extends AbstractSVGConverter {
         clipDef.setAttributeNS(null, SVG_CLIP_PATH_UNITS_ATTRIBUTE,
                                SVG_USER_SPACE_ON_USE_VALUE);
 
-        clipDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.
-                               idGenerator.generateID(ID_PREFIX_CLIP_PATH));
-
         Element clipPath = shapeConverter.toSVG(clip);
         // unfortunately it may be null because of SVGPath that may produce null
         // SVG elements.
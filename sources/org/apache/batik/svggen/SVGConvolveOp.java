@@ -95,7 +95,7 @@ public class SVGConvolveOp extends AbstractSVGFilterConverter {
             float[] data = kernel.getKernelData(null);
             StringBuffer kernelMatrixBuf = new StringBuffer( data.length * 8 );
             for(int i=0; i<data.length; i++){
-                kernelMatrixBuf.append(doubleString(data[i]));
+                generatorContext.appendDouble(kernelMatrixBuf, data[i]);
                 kernelMatrixBuf.append(SPACE);
             }
 
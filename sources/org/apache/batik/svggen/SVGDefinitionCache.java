@@ -0,0 +1,236 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A cache of definitions (gradients, patterns, clip paths, images)
+ * which can be shared by several <code>SVGGeneratorContext</code>s, so
+ * that documents which use the same definitions do not build them
+ * again.  Definitions are keyed by their content and given ids which
+ * are the same in all the documents.  This class is thread-safe.
+ *
+ * <p>By default, each document still contains the definitions it
+ * uses, copied from the cache.  When the cache is created with an
+ * external URI, the documents reference the definitions at that URI
+ * instead, and {@link #writeDefinitions} writes them all, e.g. to a
+ * file shared by the documents:</p>
+ *
+ * <pre>
+ *   SVGDefinitionCache cache = new SVGDefinitionCache("defs.svg");
+ *   ...
+ *   // For each document, possibly in several threads:
+ *   ctx.setDefinitionCache(cache);
+ *   ...
+ *   // Once the documents are generated:
+ *   cache.writeDefinitions(new FileWriter("defs.svg"), false);
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class SVGDefinitionCache implements SVGSyntax {
+
+    /**
+     * The URI of the external definitions, or null.
+     */
+    protected String externalURI;
+
+    /**
+     * The document which owns the cached definitions.
+     */
+    protected Document document;
+
+    /**
+     * The element the cached definitions are children of.
+     */
+    protected Element defs;
+
+    /**
+     * The cached definitions, by key.
+     */
+    protected Map definitions = new HashMap();
+
+    /**
+     * Generates the ids of the cached definitions.
+     */
+    protected SVGIDGenerator idGenerator = new SVGIDGenerator();
+
+    /**
+     * Creates a cache whose definitions are copied into the documents
+     * which use them.
+     */
+    public SVGDefinitionCache() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache whose definitions are referenced by the documents
+     * at the given URI, or copied into the documents if it is null.
+     */
+    public SVGDefinitionCache(String externalURI) {
+        this.externalURI = externalURI;
+        document = GenericDOMImplementation.getDOMImplementation().
+            createDocument(SVG_NAMESPACE_URI, SVG_SVG_TAG, null);
+        Element svg = document.getDocumentElement();
+        svg.setAttributeNS(XMLNS_NAMESPACE_URI, XMLNS_PREFIX,
+                           SVG_NAMESPACE_URI);
+        svg.setAttributeNS(XMLNS_NAMESPACE_URI,
+                           XMLNS_PREFIX + ":" + XLINK_PREFIX,
+                           XLINK_NAMESPACE_URI);
+        defs = document.createElementNS(SVG_NAMESPACE_URI, SVG_DEFS_TAG);
+        svg.appendChild(defs);
+    }
+
+    /**
+     * Returns the URI of the external definitions, or null if the
+     * definitions are copied into the documents.
+     */
+    public String getExternalURI() {
+        return externalURI;
+    }
+
+    /**
+     * Tells whether the documents reference the definitions at the
+     * external URI.
+     */
+    public boolean isExternal() {
+        return externalURI != null;
+    }
+
+    /**
+     * Returns a copy of the definition for the given key, as an element
+     * of the given document, or null if the cache has none.
+     */
+    public synchronized Element getDefinition(Object key,
+                                              Document domFactory) {
+        Element cached = (Element)definitions.get(key);
+        if (cached == null) {
+            return null;
+        }
+        return (Element)domFactory.importNode(cached, true);
+    }
+
+    /**
+     * Returns the definition for the given key, creating it from the
+     * given one if the cache has none.  The given definition must not
+     * have an id yet: it is given one from the given prefix.
+     *
+     * @param key the content of the definition, as returned by
+     *        {@link #getContentKey}, or any key which equals the key
+     *        of the definitions with the same content
+     * @param definition the definition built by the caller
+     * @param idPrefix the prefix of the id of the definition
+     * @param domFactory the document the returned element is created in
+     * @return the definition, with its shared id, as an element of
+     *         domFactory: either the given element or a copy of the
+     *         cached one
+     */
+    public synchronized Element getDefinition(Object key, Element definition,
+                                              String idPrefix,
+                                              Document domFactory) {
+        Element cached = (Element)definitions.get(key);
+        if (cached == null) {
+            definition.setAttributeNS
+                (null, SVG_ID_ATTRIBUTE,
+                 idGenerator.generateID(idPrefix + "Shared"));
+            cached = (Element)document.importNode(definition, true);
+            defs.appendChild(cached);
+            definitions.put(key, cached);
+            return definition;
+        }
+        return (Element)domFactory.importNode(cached, true);
+    }
+
+    /**
+     * Returns the URI reference of a definition returned by
+     * {@link #getDefinition}.
+     */
+    public String getReference(Element definition) {
+        String id = definition.getAttributeNS(null, SVG_ID_ATTRIBUTE);
+        if (externalURI == null) {
+            return SIGN_POUND + id;
+        }
+        return externalURI + SIGN_POUND + id;
+    }
+
+    /**
+     * Returns the number of cached definitions.
+     */
+    public synchronized int size() {
+        return definitions.size();
+    }
+
+    /**
+     * Writes an SVG document which contains all the cached definitions.
+     * @param writer the writer to write the document to
+     * @param escaped defines if the characters will be escaped
+     */
+    public synchronized void writeDefinitions(Writer writer, boolean escaped)
+        throws SVGGraphics2DIOException {
+        XmlWriter.writeXml(document, writer, escaped);
+    }
+
+    /**
+     * Returns a key which represents the content of the given
+     * definition, which must not have an id: definitions which are
+     * equal, once serialized, have equal keys.
+     */
+    public static String getContentKey(Element definition) {
+        StringBuffer key = new StringBuffer(128);
+        appendContent(definition, key);
+        return key.toString();
+    }
+
+    private static void appendContent(Node node, StringBuffer key) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            key.append('<');
+            key.append(node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            int n = attributes.getLength();
+            for (int i = 0; i < n; i++) {
+                Attr attr = (Attr)attributes.item(i);
+                key.append(' ');
+                key.append(attr.getName());
+                key.append("=\"");
+                key.append(attr.getValue());
+                key.append('"');
+            }
+            key.append('>');
+            for (Node c = node.getFirstChild(); c != null;
+                 c = c.getNextSibling()) {
+                appendContent(c, key);
+            }
+            key.append("</>");
+            break;
+        default:
+            key.append(node.getNodeValue());
+        }
+    }
+}
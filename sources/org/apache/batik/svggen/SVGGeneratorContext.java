@@ -95,6 +95,11 @@ public class SVGGeneratorContext implements ErrorConstants {
      */
     ErrorHandler errorHandler;
 
+    /**
+     * The cache of definitions shared with other contexts, or null.
+     */
+    SVGDefinitionCache definitionCache;
+
     /**
      * Do we accept SVG Fonts generation?
      */
@@ -379,6 +384,24 @@ public class SVGGeneratorContext implements ErrorConstants {
         this.errorHandler = errorHandler;
     }
 
+    /**
+     * Returns the cache of definitions shared with other contexts, or
+     * <code>null</code>.
+     */
+    public final SVGDefinitionCache getDefinitionCache() {
+        return definitionCache;
+    }
+
+    /**
+     * Sets the cache through which the gradients, patterns, clip paths
+     * and cached images are shared with other contexts. It can be
+     * <code>null</code>, which is the default, for each document to
+     * have its own definitions.
+     */
+    public final void setDefinitionCache(SVGDefinitionCache definitionCache) {
+        this.definitionCache = definitionCache;
+    }
+
     /**
      * Returns <code>true</code> if we should generate SVG Fonts for
      * texts.
@@ -432,7 +455,79 @@ public class SVGGeneratorContext implements ErrorConstants {
         }
         // under 10e-3 we have to put decimals
         else {
-            return decimalFormat.format(value);
+            return appendDecimal(new StringBuffer(16), value).toString();
+        }
+    }
+
+    /**
+     * Appends the input double value to the given buffer, the way
+     * {@link #doubleString} converts it, without creating intermediate
+     * strings.
+     * @return the buffer
+     */
+    public final StringBuffer appendDouble(StringBuffer buf, double value) {
+        double absvalue = Math.abs(value);
+        if (absvalue >= 10e7 || (int)value == value) {
+            return buf.append((int)value);
+        } else {
+            return appendDecimal(buf, value);
+        }
+    }
+
+    /**
+     * Appends a non integer value rounded to the current precision, as
+     * the current DecimalFormat would. The value is scaled by a power of
+     * ten and rounded to a long, which gives the digits; when the
+     * rounding error of the scaling could matter, i.e. when the scaled
+     * value is too large or too close to a tie, the DecimalFormat is
+     * used instead, as it rounds the exact binary value.
+     */
+    private StringBuffer appendDecimal(StringBuffer buf, double value) {
+        double scaled = Math.abs(value) * POWERS_OF_TEN[precision];
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (!(scaled < 1e15)
+            || Math.abs(fraction - 0.5) <= scaled * 2.3e-16) {
+            return buf.append(decimalFormat.format(value));
+        }
+
+        long n = (long)floor;
+        if (fraction > 0.5) {
+            n++;
+        }
+        if (value < 0) {
+            buf.append('-');
+        }
+        long unit = LONG_POWERS_OF_TEN[precision];
+        buf.append(n / unit);
+        long decimals = n % unit;
+        if (decimals != 0) {
+            int digits = precision;
+            while (decimals % 10 == 0) {
+                decimals /= 10;
+                digits--;
+            }
+            buf.append('.');
+            for (long p = LONG_POWERS_OF_TEN[digits - 1]; p > decimals; p /= 10) {
+                buf.append('0');
+            }
+            buf.append(decimals);
+        }
+        return buf;
+    }
+
+    /**
+     * The powers of ten up to the maximum precision.
+     */
+    private static final double[] POWERS_OF_TEN = new double[13];
+    private static final long[] LONG_POWERS_OF_TEN = new long[13];
+
+    static {
+        long p = 1;
+        for (int i = 0; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = p;
+            POWERS_OF_TEN[i] = p;
+            p *= 10;
         }
     }
 
@@ -511,6 +511,33 @@ public class SVGGraphics2D extends AbstractGraphics2D
         }
     }
 
+    /**
+     * Starts streaming the SVG content to the given writer. Instead of
+     * being kept in the DOM tree until {@link #stream(Writer)} is called,
+     * groups of elements are written out as soon as they are completed,
+     * so that the memory used does not grow with the size of the drawing.
+     * The definitions are written at the end of the document, in a
+     * deferred <code>defs</code> element. The stream must be ended with
+     * {@link #endStream}, and the DOM tree must not be accessed meanwhile.
+     *
+     * @param writer used to write out the SVG content
+     * @param useCss defines whether the output SVG should use CSS style
+     * properties as opposed to plain attributes.
+     * @param escaped defines if the characters will be escaped
+     * @see DOMTreeManager#startStream
+     */
+    public void startStream(Writer writer, boolean useCss, boolean escaped) {
+        domTreeManager.startStream(writer, svgCanvasSize, useCss, escaped);
+    }
+
+    /**
+     * Writes out the remaining content of the stream started with
+     * {@link #startStream} and flushes the writer, which is not closed.
+     */
+    public void endStream() throws SVGGraphics2DIOException {
+        domTreeManager.endStream();
+    }
+
     /**
      * Invoking this method will return a set of definition element that
      * contain all the definitions referenced by the attributes generated by
@@ -132,19 +132,15 @@ public class SVGLinearGradient extends AbstractSVGConverter {
             gradientDef.appendChild(gradientStop);
 
             //
-            // Gradient ID
+            // Gradient ID and Paint descriptor
             //
-            gradientDef.
-                setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                               generatorContext.idGenerator.
-                               generateID(ID_PREFIX_LINEAR_GRADIENT));
+            String ref = addDefinition(null, gradientDef,
+                                       ID_PREFIX_LINEAR_GRADIENT);
+            if (generatorContext.definitionCache != null)
+                gradientDef = null;
 
-            //
-            // Build Paint descriptor
-            //
             StringBuffer paintAttrBuf = new StringBuffer(URL_PREFIX);
-            paintAttrBuf.append(SIGN_POUND);
-            paintAttrBuf.append(gradientDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
+            paintAttrBuf.append(ref);
             paintAttrBuf.append(URL_SUFFIX);
 
             gradientDesc = new SVGPaintDescriptor(paintAttrBuf.toString(),
@@ -155,7 +151,6 @@ public class SVGLinearGradient extends AbstractSVGConverter {
             // Update maps so that gradient can be reused if needed
             //
             descMap.put(gradient, gradientDesc);
-            defSet.add(gradientDef);
         }
 
         return gradientDesc;
@@ -118,9 +118,14 @@ public class SVGPath extends SVGGraphicObjectConverter {
             pi.next();
         } // while !isDone
 
-        if (d.length() > 0)
-            return d.toString().trim();
-        else {
+        // Drop the trailing space in place rather than trimming a copy
+        int length = d.length();
+        while (length > 0 && d.charAt(length - 1) == ' ')
+            length--;
+        if (length > 0) {
+            d.setLength(length);
+            return d.toString();
+        } else {
             // This is a degenerate case: there was no initial moveTo
             // in the path and no data at all. However, this happens
             // in the Java 2D API (e.g., when clipping to a rectangle
@@ -137,9 +142,9 @@ public class SVGPath extends SVGGraphicObjectConverter {
      * Appends a coordinate to the path data
      */
     private static void appendPoint(StringBuffer d, float x, float y, SVGGeneratorContext gc) {
-        d.append(gc.doubleString(x));
+        gc.appendDouble(d, x);
         d.append(SPACE);
-        d.append(gc.doubleString(y));
+        gc.appendDouble(d, y);
         d.append(SPACE);
     }
 }
@@ -23,6 +23,7 @@ import java.awt.TexturePaint;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
+import java.util.Arrays;
 
 import org.apache.batik.ext.awt.g2d.GraphicContext;
 import org.w3c.dom.Document;
@@ -70,6 +71,27 @@ public class SVGTexturePaint extends AbstractSVGConverter {
 
         if (patternDesc == null) {
             Rectangle2D anchorRect = texture.getAnchorRect();
+
+            //
+            // Look for a shared pattern before encoding the image. The
+            // cached image handlers reference images defined in the
+            // document, so their patterns cannot be shared.
+            //
+            TextureKey key = null;
+            if (generatorContext.definitionCache != null &&
+                !(generatorContext.genericImageHandler
+                  instanceof DefaultCachedImageHandler)) {
+                key = new TextureKey(anchorRect, texture.getImage());
+                String ref = getSharedDefinition(key);
+                if (ref != null) {
+                    patternDesc = new SVGPaintDescriptor
+                        (URL_PREFIX + ref + URL_SUFFIX,
+                         SVG_OPAQUE_VALUE, null);
+                    descMap.put(texture, patternDesc);
+                    return patternDesc;
+                }
+            }
+
             Element patternDef = domFactory.createElementNS(SVG_NAMESPACE_URI,
                                                             SVG_PATTERN_TAG);
             patternDef.setAttributeNS(null, SVG_PATTERN_UNITS_ATTRIBUTE,
@@ -144,24 +166,66 @@ public class SVGTexturePaint extends AbstractSVGConverter {
 
             patternDef.appendChild(patternContent);
 
-            patternDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
-                                      generatorContext.idGenerator.
-                                      generateID(ID_PREFIX_PATTERN));
+            String ref;
+            if (key == null) {
+                patternDef.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                          generatorContext.idGenerator.
+                                          generateID(ID_PREFIX_PATTERN));
+                defSet.add(patternDef);
+                ref = SIGN_POUND
+                    + patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE);
+            } else {
+                ref = addDefinition(key, patternDef, ID_PREFIX_PATTERN);
+                patternDef = null;
+            }
 
-//            StringBuffer patternAttrBuf = new StringBuffer(URL_PREFIX);
-//            patternAttrBuf.append(SIGN_POUND);
-//            patternAttrBuf.append(patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE));
-//            patternAttrBuf.append(URL_SUFFIX);
-            String patternAttrBuf = URL_PREFIX
-                    + SIGN_POUND
-                    + patternDef.getAttributeNS(null, SVG_ID_ATTRIBUTE)
-                    + URL_SUFFIX;
-            patternDesc = new SVGPaintDescriptor(patternAttrBuf, SVG_OPAQUE_VALUE, patternDef);
+            patternDesc = new SVGPaintDescriptor(URL_PREFIX + ref + URL_SUFFIX,
+                                                 SVG_OPAQUE_VALUE, patternDef);
 
             descMap.put(texture, patternDesc);
-            defSet.add(patternDef);
         }
 
         return patternDesc;
     }
+
+    /**
+     * The key of a shared pattern: its anchor rectangle and the pixels
+     * of its image.
+     */
+    private static class TextureKey {
+        private Rectangle2D anchorRect;
+        private int width;
+        private int height;
+        private int[] pixels;
+        private int hashCode;
+
+        TextureKey(Rectangle2D anchorRect, BufferedImage image) {
+            this.anchorRect = (Rectangle2D)anchorRect.clone();
+            width = image.getWidth();
+            height = image.getHeight();
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            int h = anchorRect.hashCode() * 31 + width;
+            h = h * 31 + height;
+            for (int i = 0; i < pixels.length; i++) {
+                h = h * 31 + pixels[i];
+            }
+            hashCode = h;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TextureKey)) {
+                return false;
+            }
+            TextureKey k = (TextureKey)o;
+            return hashCode == k.hashCode
+                && width == k.width
+                && height == k.height
+                && anchorRect.equals(k.anchorRect)
+                && Arrays.equals(pixels, k.pixels);
+        }
+    }
 }
@@ -193,9 +193,9 @@ public class SVGTransform extends AbstractSVGConverter{
             if(!transformElement.isIdentity()) {
                 transformString.append(TRANSFORM_TRANSLATE);
                 transformString.append(OPEN_PARENTHESIS);
-                transformString.append(doubleString(transformParameters[0]));
+                generatorContext.appendDouble(transformString, transformParameters[0]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[1]));
+                generatorContext.appendDouble(transformString, transformParameters[1]);
                 transformString.append(CLOSE_PARENTHESIS);
             }
             break;
@@ -203,7 +203,7 @@ public class SVGTransform extends AbstractSVGConverter{
             if(!transformElement.isIdentity()) {
                 transformString.append(TRANSFORM_ROTATE);
                 transformString.append(OPEN_PARENTHESIS);
-                transformString.append(doubleString(radiansToDegrees*transformParameters[0]));
+                generatorContext.appendDouble(transformString, radiansToDegrees*transformParameters[0]);
                 transformString.append(CLOSE_PARENTHESIS);
             }
             break;
@@ -211,9 +211,9 @@ public class SVGTransform extends AbstractSVGConverter{
             if(!transformElement.isIdentity()) {
                 transformString.append(TRANSFORM_SCALE);
                 transformString.append(OPEN_PARENTHESIS);
-                transformString.append(doubleString(transformParameters[0]));
+                generatorContext.appendDouble(transformString, transformParameters[0]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[1]));
+                generatorContext.appendDouble(transformString, transformParameters[1]);
                 transformString.append(CLOSE_PARENTHESIS);
             }
             break;
@@ -223,9 +223,9 @@ public class SVGTransform extends AbstractSVGConverter{
                 transformString.append(OPEN_PARENTHESIS);
                 transformString.append(1);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[1]));
+                generatorContext.appendDouble(transformString, transformParameters[1]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[0]));
+                generatorContext.appendDouble(transformString, transformParameters[0]);
                 transformString.append(COMMA);
                 transformString.append(1);
                 transformString.append(COMMA);
@@ -239,17 +239,17 @@ public class SVGTransform extends AbstractSVGConverter{
             if(!transformElement.isIdentity()) {
                 transformString.append(TRANSFORM_MATRIX);
                 transformString.append(OPEN_PARENTHESIS);
-                transformString.append(doubleString(transformParameters[0]));
+                generatorContext.appendDouble(transformString, transformParameters[0]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[1]));
+                generatorContext.appendDouble(transformString, transformParameters[1]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[2]));
+                generatorContext.appendDouble(transformString, transformParameters[2]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[3]));
+                generatorContext.appendDouble(transformString, transformParameters[3]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[4]));
+                generatorContext.appendDouble(transformString, transformParameters[4]);
                 transformString.append(COMMA);
-                transformString.append(doubleString(transformParameters[5]));
+                generatorContext.appendDouble(transformString, transformParameters[5]);
                 transformString.append(CLOSE_PARENTHESIS);
             }
             break;
@@ -363,19 +363,6 @@ class XmlWriter implements SVGConstants {
     private static void writeXml(Element element, IndentWriter out,
                                  boolean escaped)
         throws IOException, SVGGraphics2DIOException {
-        out.write (TAG_START, 0, 1);    // "<"
-        out.write (element.getTagName());
-
-        NamedNodeMap attributes = element.getAttributes();
-        if (attributes != null){
-            int nAttr = attributes.getLength();
-            for(int i=0; i<nAttr; i++){
-                Attr attr = (Attr)attributes.item(i);
-                out.write(' ');
-                writeXml(attr, out, escaped);
-            }
-        }
-
         boolean lastElem = (element.getParentNode().getLastChild()==element);
 
         //
@@ -384,12 +371,47 @@ class XmlWriter implements SVGConstants {
         // XML allows "<EMPTY/>" too, of course.
         //
         if (!element.hasChildNodes()) {
+            writeTagOpening(element, out, escaped);
             if (lastElem)
                 out.setIndentLevel(out.getIndentLevel()-2);
             out.printIndent ();
             out.write(TAG_END, 0, 2);   // "/>"
             return;
         }
+
+        writeStartTag(element, out, escaped);
+        writeChildrenXml(element, out, escaped);
+        writeEndTag(element, out, lastElem);
+    }
+
+    /**
+     * Writes the tag name and the attributes of an element.
+     */
+    private static void writeTagOpening(Element element, IndentWriter out,
+                                        boolean escaped)
+        throws IOException {
+        out.write (TAG_START, 0, 1);    // "<"
+        out.write (element.getTagName());
+
+        NamedNodeMap attributes = element.getAttributes();
+        if (attributes != null){
+            int nAttr = attributes.getLength();
+            for(int i=0; i<nAttr; i++){
+                Attr attr = (Attr)attributes.item(i);
+                out.write(' ');
+                writeXml(attr, out, escaped);
+            }
+        }
+    }
+
+    /**
+     * Writes the start tag of an element which has children.
+     */
+    static void writeStartTag(Element element, IndentWriter out,
+                              boolean escaped)
+        throws IOException {
+        writeTagOpening(element, out, escaped);
+
         Node child = element.getFirstChild();
         out.printIndent ();
         out.write(TAG_END, 1, 1);   // ">"
@@ -397,9 +419,14 @@ class XmlWriter implements SVGConstants {
             (element.getLastChild() != child)) { // one text node child..
             out.setIndentLevel(out.getIndentLevel()+2);
         }
+    }
 
-        writeChildrenXml(element, out, escaped);
-
+    /**
+     * Writes the end tag of an element which has children.
+     */
+    static void writeEndTag(Element element, IndentWriter out,
+                            boolean lastElem)
+        throws IOException {
         out.write (TAG_START, 0, 2);        // "</"
         out.write (element.getTagName());
         if (lastElem)
@@ -468,6 +495,40 @@ class XmlWriter implements SVGConstants {
         }
     }
 
+    /**
+     * Starts writing a document whose content is streamed: writes the
+     * document header, the start tag of the root element and the
+     * children of the root which precede the given child. The rest of
+     * the document is then written as it is completed, with
+     * {@link #writeStartTag}, {@link #writeEndTag} and
+     * {@link #writeXml(Node,Writer,boolean)}, before
+     * {@link #writeStreamEnd} is called.
+     *
+     * @param root the root element, child of a document fragment
+     * @param child a child of the root element
+     */
+    static void writeStreamStart(Element root, Node child,
+                                 IndentWriter out, boolean escaped)
+        throws IOException {
+        writeDocumentHeader(out);
+        writeStartTag(root, out, escaped);
+        Node n = root.getFirstChild();
+        while (n != child) {
+            writeXml(n, out, escaped);
+            n = n.getNextSibling();
+        }
+    }
+
+    /**
+     * Ends a document started with {@link #writeStreamStart}, once the
+     * content of the root element has been written.
+     */
+    static void writeStreamEnd(Element root, IndentWriter out)
+        throws IOException {
+        writeEndTag(root, out, root.getParentNode().getLastChild() == root);
+        out.write (EOL);
+    }
+
     static String java2std(String encodingName) {
         if (encodingName == null)
             return null;
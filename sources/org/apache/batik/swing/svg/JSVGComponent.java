@@ -23,6 +23,7 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
@@ -63,6 +64,7 @@ import org.apache.batik.dom.svg.SVGDOMImplementation;
 import org.apache.batik.dom.svg.SVGOMDocument;
 import org.apache.batik.dom.util.DOMUtilities;
 import org.apache.batik.dom.util.XLinkSupport;
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
 import org.apache.batik.gvt.CanvasGraphicsNode;
 import org.apache.batik.gvt.CompositeGraphicsNode;
@@ -893,11 +895,19 @@ public class JSVGComponent extends JGVTComponent {
     }
 
     /**
-     * Creates a new renderer.
+     * Creates a new renderer.  The renderer of a dynamic document does
+     * not cache its content, so it lets the filtered nodes keep the
+     * results of their filters.
      */
     protected ImageRenderer createImageRenderer() {
         if (isDynamicDocument) {
-            return rendererFactory.createDynamicImageRenderer();
+            ImageRenderer ir = rendererFactory.createDynamicImageRenderer();
+            RenderingHints rh = new RenderingHints(null);
+            rh.add(ir.getRenderingHints());
+            rh.put(RenderingHintsKeyExt.KEY_FILTER_RESULT_CACHE,
+                   RenderingHintsKeyExt.VALUE_FILTER_RESULT_CACHE_ON);
+            ir.setRenderingHints(rh);
+            return ir;
         } else {
             return rendererFactory.createStaticImageRenderer();
         }
@@ -0,0 +1,237 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.dom.svg.SVGOMDocument;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A static SVG document compiled into a GVT tree, as returned by
+ * {@link SVGAbstractTranscoder#compile(TranscoderInput)}.
+ *
+ * <p>The GVT tree is built once, with the viewing transform of the
+ * outermost 'svg' element left to the identity, and its structure is
+ * never modified afterwards: the transform which maps the document
+ * into a viewport is applied when painting.  A compiled document can
+ * therefore be painted or transcoded by several threads at once, each
+ * one with its own <code>Graphics2D</code> and transform.  As the
+ * antialiasing depends on where the transform is applied, a transcoded
+ * compiled document can differ slightly from the same document
+ * transcoded from its source, mostly on the edges falling on the
+ * border of the image.</p>
+ *
+ * <p>The nodes of the tree do cache renderings for the last transform
+ * they were painted with: filtered nodes keep the result of their
+ * filter when the rendering hints ask for it (see
+ * <code>FilterResultCache</code>) and the filter chain sources keep
+ * their last rendering, while pattern tiles are cached by
+ * transform in the shared <code>PatternTileCache</code>.  These caches
+ * are synchronized, so painting a document at several sizes at once
+ * gives the right images, but each paint replaces the renderings the
+ * previous one cached: the document is then rendered as if it were
+ * not cached.  Painting a document at a single size, or keeping one
+ * compiled document per size, makes the best use of them.</p>
+ *
+ * @version $Id$
+ */
+public class CompiledSVGDocument {
+
+    /**
+     * The URI of the document, or null.
+     */
+    protected String uri;
+
+    /**
+     * The fragment identifier of the URI, or null.
+     */
+    protected String ref;
+
+    /**
+     * The bridge context used to build the tree.  It is kept alive as
+     * long as the tree may be painted.
+     */
+    protected BridgeContext ctx;
+
+    /**
+     * The root of the GVT tree.
+     */
+    protected GraphicsNode root;
+
+    /**
+     * The size of the document, as specified by the 'width' and
+     * 'height' attributes of the outermost 'svg' element.
+     */
+    protected float width, height;
+
+    /**
+     * The viewBox of the outermost 'svg' element, or null.
+     */
+    protected float[] viewBox;
+
+    /**
+     * The preserveAspectRatio alignment of the outermost 'svg' element.
+     */
+    protected short align;
+
+    /**
+     * Whether the preserveAspectRatio is 'meet' (or 'slice').
+     */
+    protected boolean meet;
+
+    /**
+     * Creates a new CompiledSVGDocument.
+     * @param uri the URI of the document or null
+     * @param ctx the bridge context used to build the tree
+     * @param root the root of the GVT tree
+     * @param width the width of the document
+     * @param height the height of the document
+     * @param viewBox the viewBox of the outermost 'svg' element or null
+     * @param align the preserveAspectRatio alignment
+     * @param meet whether the preserveAspectRatio is 'meet'
+     */
+    public CompiledSVGDocument(String uri, BridgeContext ctx,
+                               GraphicsNode root,
+                               float width, float height,
+                               float[] viewBox, short align, boolean meet) {
+        this.uri = uri;
+        this.ctx = ctx;
+        this.root = root;
+        this.width = width;
+        this.height = height;
+        this.viewBox = viewBox;
+        this.align = align;
+        this.meet = meet;
+        if (uri != null) {
+            String r = new ParsedURL(uri).getRef();
+            if (r != null && r.length() != 0) {
+                ref = r;
+            }
+        }
+    }
+
+    /**
+     * Returns the URI of the document, or null.
+     */
+    public String getURI() {
+        return uri;
+    }
+
+    /**
+     * Returns the root of the GVT tree.  The tree must not be modified.
+     */
+    public GraphicsNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the width of the document.
+     */
+    public float getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the document.
+     */
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns a copy of the viewBox of the outermost 'svg' element
+     * (x, y, width, height), or null if it has none.
+     */
+    public float[] getViewBox() {
+        return (viewBox == null) ? null : (float[])viewBox.clone();
+    }
+
+    /**
+     * Returns the preserveAspectRatio alignment of the outermost 'svg'
+     * element, as one of the <code>SVGPreserveAspectRatio</code>
+     * constants.
+     */
+    public short getAlign() {
+        return align;
+    }
+
+    /**
+     * Tells whether the preserveAspectRatio of the outermost 'svg'
+     * element is 'meet'.
+     */
+    public boolean isMeet() {
+        return meet;
+    }
+
+    /**
+     * Returns the transform which maps the document into a viewport
+     * of the given size, the way a transcoder does: using the view
+     * referenced by the URI fragment if any, else the viewBox and
+     * preserveAspectRatio of the outermost 'svg' element, else a
+     * uniform scale.
+     */
+    public AffineTransform getViewTransform(float w, float h) {
+        if (ref != null) {
+            // The view is looked up in the DOM.
+            synchronized (this) {
+                SVGOMDocument doc = (SVGOMDocument)ctx.getDocument();
+                return ViewBox.getViewTransform
+                    (ref, doc.getRootElement(), w, h, ctx);
+            }
+        }
+        if (viewBox != null) {
+            return ViewBox.getPreserveAspectRatioTransform
+                (viewBox, align, meet, w, h);
+        }
+        float scale = Math.min(w / width, h / height);
+        return AffineTransform.getScaleInstance(scale, scale);
+    }
+
+    /**
+     * Paints the document with the given transform.  The graphics
+     * should have been created with
+     * {@link org.apache.batik.ext.awt.image.GraphicsUtil#createGraphics}
+     * for filters to work.
+     * @param g2d the graphics to paint into (left unchanged)
+     * @param at the transform from the document's user space to the
+     *           graphics' user space
+     */
+    public void paint(Graphics2D g2d, AffineTransform at) {
+        Graphics2D g = (Graphics2D)g2d.create();
+        try {
+            g.transform(at);
+            root.paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Paints the document fitted into the viewport (0, 0, w, h) of
+     * the given graphics.
+     */
+    public void paint(Graphics2D g2d, float w, float h) {
+        paint(g2d, getViewTransform(w, h));
+    }
+}
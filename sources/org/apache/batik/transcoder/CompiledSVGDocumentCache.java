@@ -0,0 +1,214 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A thread-safe, least recently used cache of compiled SVG documents,
+ * keyed by URI and modification stamp.
+ *
+ * <p>Documents are compiled with a dedicated transcoder, whose hints
+ * apply to all the documents of the cache.  A document whose stamp has
+ * changed since it was compiled is compiled again.</p>
+ *
+ * <pre>
+ *   CompiledSVGDocumentCache cache =
+ *       new CompiledSVGDocumentCache(new PNGTranscoder(), 32);
+ *   ...
+ *   // In any thread:
+ *   PNGTranscoder t = new PNGTranscoder();
+ *   t.addTranscodingHint(PNGTranscoder.KEY_WIDTH, new Float(w));
+ *   t.transcode(cache.getDocument(uri), output);
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class CompiledSVGDocumentCache {
+
+    /**
+     * The transcoder used to compile the documents.
+     */
+    protected SVGAbstractTranscoder compiler;
+
+    /**
+     * The maximum number of documents to keep.
+     */
+    protected int maxSize;
+
+    /**
+     * The documents, by URI, in access order.
+     */
+    protected LinkedHashMap documents;
+
+    /**
+     * Creates a new CompiledSVGDocumentCache.
+     * @param compiler the transcoder used to compile the documents
+     * @param maxSize the maximum number of documents to keep
+     */
+    public CompiledSVGDocumentCache(SVGAbstractTranscoder compiler,
+                                    int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+        }
+        this.compiler = compiler;
+        this.maxSize = maxSize;
+        documents = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > CompiledSVGDocumentCache.this.maxSize;
+                }
+            };
+    }
+
+    /**
+     * Returns the compiled document for the given URI, compiling it if
+     * it is not in the cache or if it was modified since it was compiled.
+     */
+    public CompiledSVGDocument getDocument(String uri)
+            throws TranscoderException {
+        return getDocument(uri, getModificationStamp(uri));
+    }
+
+    /**
+     * Returns the compiled document for the given URI and modification
+     * stamp, compiling it if the cache has no document for that URI
+     * with that stamp.  The stamp can be any value which changes when
+     * the document does.  A thread asking for a document which another
+     * thread is compiling waits for it rather than compiling it again.
+     */
+    public CompiledSVGDocument getDocument(String uri, long stamp)
+            throws TranscoderException {
+        Entry e;
+        synchronized (documents) {
+            for (;;) {
+                e = (Entry)documents.get(uri);
+                if (e == null || e.document != null) {
+                    break;
+                }
+                try {
+                    // Notified when the compilation ends or the entry
+                    // is removed.
+                    documents.wait();
+                } catch (InterruptedException ie) {
+                }
+            }
+            if (e != null && e.stamp == stamp) {
+                return e.document;
+            }
+            // The caller compiles the document.
+            e = new Entry(null, stamp);
+            documents.put(uri, e);
+        }
+
+        // Compile outside of the lock, so that cached documents can still
+        // be obtained meanwhile.
+        CompiledSVGDocument doc = null;
+        try {
+            synchronized (compiler) {
+                doc = compiler.compile(new TranscoderInput(uri));
+            }
+        } finally {
+            synchronized (documents) {
+                // The entry may have been removed meanwhile.
+                if (documents.get(uri) == e) {
+                    if (doc == null) {
+                        documents.remove(uri);
+                    } else {
+                        e.document = doc;
+                    }
+                }
+                documents.notifyAll();
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Removes the document for the given URI from the cache.
+     */
+    public void remove(String uri) {
+        synchronized (documents) {
+            documents.remove(uri);
+            documents.notifyAll();
+        }
+    }
+
+    /**
+     * Removes all the documents from the cache.
+     */
+    public void clear() {
+        synchronized (documents) {
+            documents.clear();
+            documents.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of documents in the cache, including the ones
+     * being compiled.
+     */
+    public int size() {
+        synchronized (documents) {
+            return documents.size();
+        }
+    }
+
+    /**
+     * Returns the modification stamp of the document at the given URI.
+     * This implementation returns the last modification time of local
+     * files, and 0 for the other URIs, which are thus never compiled
+     * again unless removed from the cache.
+     */
+    protected long getModificationStamp(String uri) {
+        ParsedURL purl = new ParsedURL(uri);
+        if (!"file".equals(purl.getProtocol())) {
+            return 0;
+        }
+        String path = purl.getPath();
+        File f;
+        try {
+            f = new File(new URI("file:" + path));
+        } catch (URISyntaxException ex) {
+            f = new File(path);
+        } catch (IllegalArgumentException ex) {
+            f = new File(path);
+        }
+        return f.lastModified();
+    }
+
+    /**
+     * A compiled document and the stamp it was compiled at.  The
+     * document is null while it is being compiled.
+     */
+    protected static class Entry {
+        protected CompiledSVGDocument document;
+        protected long stamp;
+
+        public Entry(CompiledSVGDocument document, long stamp) {
+            this.document = document;
+            this.stamp = stamp;
+        }
+    }
+}
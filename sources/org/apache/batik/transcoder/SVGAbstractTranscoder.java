@@ -39,6 +39,7 @@ import org.apache.batik.bridge.UserAgent;
 import org.apache.batik.bridge.UserAgentAdapter;
 import org.apache.batik.bridge.ViewBox;
 import org.apache.batik.bridge.svg12.SVG12BridgeContext;
+import org.apache.batik.dom.svg.LiveAttributeException;
 import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
 import org.apache.batik.dom.svg.SVGDOMImplementation;
 import org.apache.batik.dom.svg.SVGOMDocument;
@@ -56,6 +57,7 @@ import org.apache.batik.util.ParsedURL;
 import org.apache.batik.util.SVGConstants;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
+import org.w3c.dom.svg.SVGPreserveAspectRatio;
 import org.w3c.dom.svg.SVGSVGElement;
 
 /**
@@ -110,6 +112,11 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
      */
     protected float width=400, height=400;
 
+    /**
+     * The compiled document being transcoded, if any.
+     */
+    private CompiledSVGDocument compiledDocument;
+
     /** The user agent dedicated to an SVG Transcoder. */
     protected UserAgent userAgent;
 
@@ -171,23 +178,17 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
                              TranscoderOutput output)
             throws TranscoderException {
 
-        if ((document != null) &&
-            !(document.getImplementation() instanceof SVGDOMImplementation)) {
-            DOMImplementation impl;
-            impl = (DOMImplementation)hints.get(KEY_DOM_IMPLEMENTATION);
-            // impl = SVGDOMImplementation.getDOMImplementation();
-            document = DOMUtilities.deepCloneDocument(document, impl);
-            if (uri != null) {
-                ParsedURL url = new ParsedURL(uri);
-                ((SVGOMDocument)document).setParsedURL(url);
-            }
-        }
-
         if (hints.containsKey(KEY_WIDTH))
             width = ((Float)hints.get(KEY_WIDTH)).floatValue();
         if (hints.containsKey(KEY_HEIGHT))
             height = ((Float)hints.get(KEY_HEIGHT)).floatValue();
 
+        if (compiledDocument != null) {
+            transcodeCompiled(compiledDocument);
+            return;
+        }
+
+        document = toSVGDocument(document, uri);
 
         SVGOMDocument svgDoc = (SVGOMDocument)document;
         SVGSVGElement root = svgDoc.getRootElement();
@@ -289,6 +290,129 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
         this.root = gvtRoot;
     }
 
+    /**
+     * Sets up the rendering of a compiled document, leaving its GVT
+     * tree untouched.
+     */
+    private void transcodeCompiled(CompiledSVGDocument doc) {
+        ctx = null;
+        setImageSize(doc.getWidth(), doc.getHeight());
+
+        if (hints.containsKey(KEY_AOI)) {
+            Rectangle2D aoi = (Rectangle2D)hints.get(KEY_AOI);
+            curTxf = new AffineTransform();
+            double sx = width / aoi.getWidth();
+            double sy = height / aoi.getHeight();
+            double scale = Math.min(sx,sy);
+            curTxf.scale(scale, scale);
+            double tx = -aoi.getX() + (width/scale - aoi.getWidth())/2;
+            double ty = -aoi.getY() + (height/scale -aoi.getHeight())/2;
+            curTxf.translate(tx, ty);
+            curAOI = aoi;
+        } else {
+            curTxf = doc.getViewTransform(width, height);
+            curAOI = new Rectangle2D.Float(0, 0, width, height);
+        }
+
+        this.root = doc.getRoot();
+    }
+
+    /**
+     * Returns the given document, cloned into the SVG DOM implementation
+     * if needed.
+     */
+    private Document toSVGDocument(Document document, String uri) {
+        if ((document != null) &&
+            !(document.getImplementation() instanceof SVGDOMImplementation)) {
+            DOMImplementation impl;
+            impl = (DOMImplementation)hints.get(KEY_DOM_IMPLEMENTATION);
+            // impl = SVGDOMImplementation.getDOMImplementation();
+            document = DOMUtilities.deepCloneDocument(document, impl);
+            if (uri != null) {
+                ParsedURL url = new ParsedURL(uri);
+                ((SVGOMDocument)document).setParsedURL(url);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Compiles the specified SVG input into a GVT tree which can be
+     * transcoded many times, possibly at once by several transcoders,
+     * with {@link #transcode(CompiledSVGDocument,TranscoderOutput)}.
+     * The document is built statically (scripts are not run) using the
+     * hints of this transcoder.  This method does not modify the state
+     * of the transcoder, but it is not meant to be called concurrently
+     * with its other methods.
+     *
+     * @param input the SVG input to compile
+     * @exception TranscoderException if an error occured while compiling
+     */
+    public CompiledSVGDocument compile(TranscoderInput input)
+            throws TranscoderException {
+        String uri = input.getURI();
+        Document document = toSVGDocument(createDocument(input), uri);
+        if (document == null) {
+            throw new TranscoderException("No document to compile");
+        }
+
+        SVGOMDocument svgDoc = (SVGOMDocument)document;
+        SVGSVGElement root = svgDoc.getRootElement();
+        BridgeContext bctx = createBridgeContext(svgDoc);
+        try {
+            GraphicsNode gvtRoot = new GVTBuilder().build(bctx, svgDoc);
+
+            // The viewing transform is applied when painting.
+            CanvasGraphicsNode cgn = getCanvasGraphicsNode(gvtRoot);
+            if (cgn != null) {
+                cgn.setViewingTransform(new AffineTransform());
+            }
+            // Perform the lazy computations (text layout in particular)
+            // which would otherwise happen in the painting threads.
+            gvtRoot.getBounds();
+
+            String viewBox = root.getAttributeNS
+                (null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE);
+            float[] vb = ViewBox.parseViewBoxAttribute(root, viewBox, bctx);
+            SVGPreserveAspectRatio par;
+            try {
+                par = root.getPreserveAspectRatio().getAnimVal();
+            } catch (LiveAttributeException ex) {
+                throw new BridgeException(bctx, ex);
+            }
+            return new CompiledSVGDocument
+                (uri, bctx, gvtRoot,
+                 (float)bctx.getDocumentSize().getWidth(),
+                 (float)bctx.getDocumentSize().getHeight(),
+                 vb, par.getAlign(),
+                 par.getMeetOrSlice() ==
+                     SVGPreserveAspectRatio.SVG_MEETORSLICE_MEET);
+        } catch (BridgeException ex) {
+            throw new TranscoderException(ex);
+        }
+    }
+
+    /**
+     * Transcodes the specified compiled document in the specified
+     * output.  The size of the output is computed from the hints as
+     * for an SVG input; the 'onload' related hints are ignored.
+     *
+     * @param doc the compiled document to transcode
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    public void transcode(CompiledSVGDocument doc, TranscoderOutput output)
+            throws TranscoderException {
+        compiledDocument = doc;
+        try {
+            transcode((Document)null, doc.getURI(), output);
+        } catch (TranscoderException ex) {
+            handler.fatalError(ex);
+        } finally {
+            compiledDocument = null;
+        }
+    }
+
     protected CanvasGraphicsNode getCanvasGraphicsNode(GraphicsNode gn) {
         if (!(gn instanceof CompositeGraphicsNode))
             return null;
@@ -310,7 +434,13 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
      * @return the newly instantiated BridgeContext
      */
     protected BridgeContext createBridgeContext(SVGOMDocument doc) {
-        return createBridgeContext(doc.isSVG12() ? "1.2" : "1.x");
+        BridgeContext bctx =
+            createBridgeContext(doc.isSVG12() ? "1.2" : "1.x");
+        if (hints.containsKey(KEY_USE_INSTANCING)) {
+            bctx.setInstancing
+                (((Boolean)hints.get(KEY_USE_INSTANCING)).booleanValue());
+        }
+        return bctx;
     }
 
     /**
@@ -877,6 +1007,39 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
     public static final TranscodingHints.Key KEY_CONSTRAIN_SCRIPT_ORIGIN
         = new BooleanKey();
 
+    /**
+     * The 'use' instancing key.
+     * <table border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_USE_INSTANCING</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">When set to true, the 'use' elements which
+     *       reference the same element with the same computed style
+     *       share one GVT tree instead of each one building a copy of
+     *       the referenced content.  Only applies to static documents,
+     *       that is if {@link #KEY_EXECUTE_ONLOAD} is not set to
+     *       <code>true</code>.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_USE_INSTANCING
+        = new BooleanKey();
+
 
     /**
      * A user agent implementation for <code>PrintTranscoder</code>.
@@ -21,14 +21,21 @@ package org.apache.batik.transcoder.image;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.Paint;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.AbstractRed;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.gvt.renderer.ImageRendererFactory;
@@ -37,6 +44,7 @@ import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
 import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.IntegerKey;
 import org.apache.batik.transcoder.keys.PaintKey;
 import org.w3c.dom.Document;
 
@@ -98,6 +106,29 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         // paint the SVG document using the bridge package
         // create the appropriate renderer
         ImageRenderer renderer = createRenderer();
+
+        int bandHeight = 0;
+        if (hints.containsKey(KEY_BAND_HEIGHT) && canWriteBands()) {
+            bandHeight = ((Integer)hints.get(KEY_BAND_HEIGHT)).intValue();
+            if (bandHeight > h) {
+                bandHeight = h;
+            }
+        }
+        if (bandHeight > 0) {
+            renderer.updateOffScreen(w, bandHeight);
+            renderer.setTransform(curTxf);
+            renderer.setTree(this.root);
+            this.root = null; // We're done with it...
+
+            try {
+                writeBands(new BandedImage(renderer, curTxf,
+                                           w, h, bandHeight), output);
+            } catch (Exception ex) {
+                throw new TranscoderException(ex);
+            }
+            return;
+        }
+
         renderer.updateOffScreen(w, h);
         // curTxf.translate(0.5, 0.5);
         renderer.setTransform(curTxf);
@@ -133,6 +164,139 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         }
     }
 
+    /**
+     * Returns true if this transcoder can write an image computed band
+     * by band (see <code>KEY_BAND_HEIGHT</code>).  The default
+     * implementation returns false.
+     */
+    protected boolean canWriteBands() {
+        return false;
+    }
+
+    /**
+     * Writes an image whose bands are rendered as they are requested.
+     * This is only called when <code>canWriteBands</code> returns true.
+     * The default implementation copies the image in an image returned
+     * by <code>createImage</code> and writes it with
+     * <code>writeImage</code>.
+     *
+     * @param img the image to write, its bands have been painted by
+     *        <code>paintBand</code>
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeBands(RenderedImage img, TranscoderOutput output)
+            throws TranscoderException {
+        BufferedImage dest = createImage(img.getWidth(), img.getHeight());
+        img.copyData(dest.getRaster());
+        writeImage(dest, output);
+    }
+
+    /**
+     * Paints a band of an image written band by band: the background
+     * color, if any, then the rendering of the document.
+     *
+     * @param band the band, an image returned by <code>createImage</code>
+     * @param rend the rendering of the band, null if the document is empty
+     */
+    protected void paintBand(BufferedImage band, BufferedImage rend) {
+        Graphics2D g2d = GraphicsUtil.createGraphics(band);
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, band.getWidth(), band.getHeight());
+        if (hints.containsKey(KEY_BACKGROUND_COLOR)) {
+            Paint bgcolor = (Paint)hints.get(KEY_BACKGROUND_COLOR);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.setPaint(bgcolor);
+            g2d.fillRect(0, 0, band.getWidth(), band.getHeight());
+        }
+        if (rend != null) { // might be null if the svg document is empty
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.drawRenderedImage(rend, new AffineTransform());
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * An image rendered band by band with an <code>ImageRenderer</code>
+     * whose area of interest moves down the document.  Only the last
+     * band is kept, so the pixels should be requested from top to
+     * bottom: a band requested again is painted again.
+     */
+    protected class BandedImage extends AbstractRed {
+
+        /**
+         * The renderer, whose offscreen is one band high.
+         */
+        protected ImageRenderer renderer;
+
+        /**
+         * The transform of the document to the whole image.
+         */
+        protected AffineTransform txf;
+
+        /**
+         * The last band painted.
+         */
+        protected BufferedImage band;
+
+        /**
+         * The index of the last band painted, -1 if none.
+         */
+        protected int bandIndex = -1;
+
+        /**
+         * Creates a new BandedImage.
+         * @param renderer the renderer of the document
+         * @param txf the transform of the document to the image
+         * @param width the image width in pixels
+         * @param height the image height in pixels
+         * @param bandHeight the height of the bands in pixels
+         */
+        public BandedImage(ImageRenderer renderer, AffineTransform txf,
+                           int width, int height, int bandHeight) {
+            this.renderer = renderer;
+            this.txf = txf;
+            this.band = createImage(width, bandHeight);
+            init((CachableRed)null, new Rectangle(0, 0, width, height),
+                 band.getColorModel(), band.getSampleModel(), 0, 0, null);
+        }
+
+        /**
+         * Returns the given band, painting it if needed.
+         */
+        protected Raster getBand(int ty) {
+            if (ty != bandIndex) {
+                int y = ty * tileHeight;
+                AffineTransform at =
+                    AffineTransform.getTranslateInstance(0, -y);
+                at.concatenate(txf);
+                renderer.setTransform(at);
+
+                Shape raoi = new Rectangle(0, 0, tileWidth, tileHeight);
+                try {
+                    renderer.repaint(at.createInverse().
+                                     createTransformedShape(raoi));
+                } catch (NoninvertibleTransformException ex) {
+                    throw new IllegalStateException(ex.getMessage());
+                }
+                paintBand(band, renderer.getOffScreen());
+                bandIndex = ty;
+            }
+            return band.getRaster().createChild
+                (0, 0, tileWidth, tileHeight, 0, ty * tileHeight, null);
+        }
+
+        public synchronized WritableRaster copyData(WritableRaster wr) {
+            int ty0 = Math.max(getYTile(wr.getMinY()), minTileY);
+            int ty1 = Math.min(getYTile(wr.getMinY() + wr.getHeight() - 1),
+                               minTileY + numYTiles - 1);
+            for (int ty = ty0; ty <= ty1; ty++) {
+                GraphicsUtil.copyData(getBand(ty), wr);
+            }
+            return wr;
+        }
+    }
+
     /**
      * Method so subclasses can modify the Renderer used to render document.
      */
@@ -275,4 +439,50 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
      */
     public static final TranscodingHints.Key KEY_FORCE_TRANSPARENT_WHITE
         = new BooleanKey();
+
+    /**
+     * The band height key.
+     *
+     * <table border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_BAND_HEIGHT</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">none</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">When set, transcoders able to do so render
+     *       the document in bands of that many rows, handed to the
+     *       image encoder as it needs them, instead of rendering the
+     *       whole image in memory first.  The memory used is then
+     *       proportional to the band height rather than to the image
+     *       height, at the cost of rendering again the parts of the
+     *       document (filters in particular) spanning several bands.
+     *       <br/>
+     *       The result may differ slightly from a rendering of the
+     *       whole image: samples on antialiased edges by a few levels
+     *       (at most 8 out of 255), and the pixels along the edges of
+     *       aliased clips, such as the viewport of a nested
+     *       <code>svg</code> element, which fall between two pixels
+     *       may or may not be painted.
+     *       <br/>
+     *       The PNG (unless <code>KEY_INDEXED</code> is set) and TIFF
+     *       transcoders support it when they use the internal codecs.
+     *       </td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_BAND_HEIGHT
+        = new IntegerKey();
 }
@@ -19,6 +19,7 @@
 package org.apache.batik.transcoder.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.OutputStream;
 
@@ -107,17 +108,72 @@ public class PNGTranscoder extends ImageTranscoder {
             forceTransparentWhite(img, sppsm);
         }
 
+        WriteAdapter adapter = getWriteAdapter();
+        if (adapter == null) {
+            throw new TranscoderException(
+                    "Could not write PNG file because no WriteAdapter is availble");
+        }
+        adapter.writeImage(this, img, output);
+    }
+
+    /**
+     * Returns the adapter used to write images, null if none is available.
+     */
+    private WriteAdapter getWriteAdapter() {
         WriteAdapter adapter = getWriteAdapter(
                 "org.apache.batik.ext.awt.image.codec.png.PNGTranscoderInternalCodecWriteAdapter");
         if (adapter == null) {
             adapter = getWriteAdapter(
                 "org.apache.batik.transcoder.image.PNGTranscoderImageIOWriteAdapter");
         }
-        if (adapter == null) {
+        return adapter;
+    }
+
+    /**
+     * Returns true unless the image is to be reduced to a palette,
+     * which needs all its pixels, or the write adapter cannot write
+     * images band by band.
+     */
+    protected boolean canWriteBands() {
+        if (hints.containsKey(KEY_INDEXED)) {
+            return false;
+        }
+        return getWriteAdapter() instanceof BandWriteAdapter;
+    }
+
+    /**
+     * Paints a band, forcing its transparent pixels to white if
+     * requested.
+     */
+    protected void paintBand(BufferedImage band, BufferedImage rend) {
+        super.paintBand(band, rend);
+
+        if (hints.containsKey(PNGTranscoder.KEY_FORCE_TRANSPARENT_WHITE) &&
+            ((Boolean)hints.get
+             (PNGTranscoder.KEY_FORCE_TRANSPARENT_WHITE)).booleanValue()) {
+            SinglePixelPackedSampleModel sppsm;
+            sppsm = (SinglePixelPackedSampleModel)band.getSampleModel();
+            forceTransparentWhite(band, sppsm);
+        }
+    }
+
+    /**
+     * Writes the specified image, computed band by band, to the
+     * specified output.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeBands(RenderedImage img, TranscoderOutput output)
+            throws TranscoderException {
+
+        OutputStream ostream = output.getOutputStream();
+        if (ostream == null) {
             throw new TranscoderException(
-                    "Could not write PNG file because no WriteAdapter is availble");
+                Messages.formatMessage("png.badoutput", null));
         }
-        adapter.writeImage(this, img, output);
+
+        ((BandWriteAdapter)getWriteAdapter()).writeBands(this, img, output);
     }
     
     // --------------------------------------------------------------------
@@ -143,6 +199,27 @@ public class PNGTranscoder extends ImageTranscoder {
                 TranscoderOutput output) throws TranscoderException;
 
     }
+
+    /**
+     * A <code>WriteAdapter</code> which can also write images computed
+     * band by band, without holding all their pixels in memory.
+     *
+     * @version $Id$
+     */
+    public interface BandWriteAdapter extends WriteAdapter {
+
+        /**
+         * Writes the specified image to the specified output, requesting
+         * its pixels from top to bottom.
+         * @param transcoder the calling PNGTranscoder
+         * @param img the image to write
+         * @param output the output where to store the image
+         * @throws TranscoderException if an error occured while storing the image
+         */
+        void writeBands(PNGTranscoder transcoder, RenderedImage img,
+                TranscoderOutput output) throws TranscoderException;
+
+    }
     
 
     // --------------------------------------------------------------------
@@ -220,4 +297,98 @@ public class PNGTranscoder extends ImageTranscoder {
      */
     public static final TranscodingHints.Key KEY_INDEXED
         = new IntegerKey();
+
+    /**
+     * The compression level key.
+     *
+     * <table border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_LEVEL</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">9</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The deflate compression level of the image data, from 0 (no
+     *       compression, fastest) to 9 (best compression, slowest).</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_LEVEL
+        = new IntegerKey();
+
+    /**
+     * The compression strategy key.
+     *
+     * <table border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_STRATEGY</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">java.util.zip.Deflater.DEFAULT_STRATEGY</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The deflate compression strategy, one of the
+     *       <code>java.util.zip.Deflater</code> constants DEFAULT_STRATEGY,
+     *       FILTERED or HUFFMAN_ONLY.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_STRATEGY
+        = new IntegerKey();
+
+    /**
+     * The compression threads key.
+     *
+     * <table border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_COMPRESSION_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of threads filtering and
+     *       compressing the image data.  With more than one thread,
+     *       bands of rows of a non-interlaced image are compressed
+     *       concurrently, which is faster on multi-processor machines
+     *       for a slightly larger file.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_COMPRESSION_THREADS
+        = new IntegerKey();
 }
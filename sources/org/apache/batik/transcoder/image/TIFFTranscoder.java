@@ -20,6 +20,7 @@
 package org.apache.batik.transcoder.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
 
 import org.apache.batik.bridge.UserAgent;
@@ -100,17 +101,60 @@ public class TIFFTranscoder extends ImageTranscoder {
             forceTransparentWhite(img, sppsm);
         }
 
+        WriteAdapter adapter = getWriteAdapter();
+        if (adapter == null) {
+            throw new TranscoderException(
+                    "Could not write TIFF file because no WriteAdapter is availble");
+        }
+        adapter.writeImage(this, img, output);
+    }
+
+    /**
+     * Returns the adapter used to write images, null if none is available.
+     */
+    private WriteAdapter getWriteAdapter() {
         WriteAdapter adapter = getWriteAdapter(
                 "org.apache.batik.ext.awt.image.codec.tiff.TIFFTranscoderInternalCodecWriteAdapter");
         if (adapter == null) {
             adapter = getWriteAdapter(
                 "org.apache.batik.transcoder.image.TIFFTranscoderImageIOWriteAdapter");
         }
-        if (adapter == null) {
-            throw new TranscoderException(
-                    "Could not write TIFF file because no WriteAdapter is availble");
+        return adapter;
+    }
+
+    /**
+     * Returns true if the write adapter can write images band by band.
+     */
+    protected boolean canWriteBands() {
+        return getWriteAdapter() instanceof BandWriteAdapter;
+    }
+
+    /**
+     * Paints a band, forcing its transparent pixels to white if
+     * requested.
+     */
+    protected void paintBand(BufferedImage band, BufferedImage rend) {
+        super.paintBand(band, rend);
+
+        if (hints.containsKey(PNGTranscoder.KEY_FORCE_TRANSPARENT_WHITE) &&
+            ((Boolean)hints.get
+             (PNGTranscoder.KEY_FORCE_TRANSPARENT_WHITE)).booleanValue()) {
+            SinglePixelPackedSampleModel sppsm;
+            sppsm = (SinglePixelPackedSampleModel)band.getSampleModel();
+            forceTransparentWhite(band, sppsm);
         }
-        adapter.writeImage(this, img, output);
+    }
+
+    /**
+     * Writes the specified image, computed band by band, to the
+     * specified output.
+     * @param img the image to write
+     * @param output the output where to store the image
+     * @throws TranscoderException if an error occured while storing the image
+     */
+    protected void writeBands(RenderedImage img, TranscoderOutput output)
+            throws TranscoderException {
+        ((BandWriteAdapter)getWriteAdapter()).writeBands(this, img, output);
     }
     
     // --------------------------------------------------------------------
@@ -136,6 +180,27 @@ public class TIFFTranscoder extends ImageTranscoder {
                 TranscoderOutput output) throws TranscoderException;
 
     }
+
+    /**
+     * A <code>WriteAdapter</code> which can also write images computed
+     * band by band, without holding all their pixels in memory.
+     *
+     * @version $Id$
+     */
+    public interface BandWriteAdapter extends WriteAdapter {
+
+        /**
+         * Writes the specified image to the specified output, requesting
+         * its pixels from top to bottom.
+         * @param transcoder the calling TIFFTranscoder
+         * @param img the image to write
+         * @param output the output where to store the image
+         * @throws TranscoderException if an error occured while storing the image
+         */
+        void writeBands(TIFFTranscoder transcoder, RenderedImage img,
+                TranscoderOutput output) throws TranscoderException;
+
+    }
     
 
     // --------------------------------------------------------------------
@@ -0,0 +1,297 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+/**
+ * A RunnableQueue whose runnables are run by the threads of a
+ * {@link RunnableQueuePool} instead of a thread of its own.
+ *
+ * <p>The thread returned by {@link #getThread} is never started: it
+ * stands for the queue.  Halting it halts the queue, and the pool
+ * thread running the queue at the time, so that long operations
+ * checking {@link HaltingThread#hasBeenHalted()} stop as they would
+ * in the thread of a regular queue.</p>
+ *
+ * @version $Id$
+ */
+public class PooledRunnableQueue extends RunnableQueue {
+
+    /**
+     * The number of runnables a pool thread runs before giving the
+     * other queues a turn.
+     */
+    protected static final int RUNNABLES_PER_STEP = 16;
+
+    /**
+     * The pool running this queue.
+     */
+    protected RunnableQueuePool pool;
+
+    /**
+     * Whether this queue is waiting for a pool thread or is run by
+     * one.  Guarded by the lock of the runnable list.
+     */
+    protected boolean scheduled;
+
+    /**
+     * The pool thread currently running this queue, or null.
+     */
+    protected volatile HaltingThread worker;
+
+    /**
+     * The time this queue waits for in the pool, or 0.  Guarded by the
+     * lock of the pool.
+     */
+    long wakeTime;
+
+    /**
+     * Creates a new queue, which runs once {@link #schedule} is called.
+     */
+    protected PooledRunnableQueue(RunnableQueuePool pool, String name) {
+        this.pool = pool;
+        runnableQueueThread = new QueueThread(name);
+    }
+
+    /**
+     * Schedules this queue in the pool unless it already is.
+     */
+    void schedule() {
+        synchronized (list) {
+            queueChanged();
+        }
+    }
+
+    /**
+     * Called, with the lock of the runnable list held, when runnables
+     * were added or the state of the queue changed.  Schedules this
+     * queue in the pool.
+     */
+    protected void queueChanged() {
+        if (!scheduled) {
+            scheduled = true;
+            pool.submit(this);
+        }
+    }
+
+    /**
+     * Tells whether the given thread is the pool thread running this
+     * queue.
+     */
+    protected boolean isQueueThread(Thread t) {
+        return t == worker;
+    }
+
+    /**
+     * Waits until the given Runnable's <code>run()</code> has returned.
+     * If called from a thread of the pool, another one takes over while
+     * it waits.
+     */
+    public void invokeAndWait(Runnable r) throws InterruptedException {
+        boolean blocking = pool.beginBlocking();
+        try {
+            super.invokeAndWait(r);
+        } finally {
+            if (blocking) {
+                pool.endBlocking();
+            }
+        }
+    }
+
+    /**
+     * Waits until the given Runnable's <code>run()</code> has returned.
+     * If called from a thread of the pool, another one takes over while
+     * it waits.
+     */
+    public void preemptAndWait(Runnable r) throws InterruptedException {
+        boolean blocking = pool.beginBlocking();
+        try {
+            super.preemptAndWait(r);
+        } finally {
+            if (blocking) {
+                pool.endBlocking();
+            }
+        }
+    }
+
+    /**
+     * Resumes the execution of this queue.
+     * @throws IllegalStateException if getThread() is null.
+     */
+    public void resumeExecution() {
+        super.resumeExecution();
+        schedule();
+    }
+
+    /**
+     * Runs the runnables of this queue in the current thread, which
+     * owns the queue meanwhile, until there are none, the queue is
+     * suspended or halted, or the thread has run
+     * {@link #RUNNABLES_PER_STEP} of them.  The threads of the pool
+     * call it when the queue is scheduled.  It returns at once if
+     * another thread is running the queue, so that its runnables are
+     * still run one at a time and in order.
+     * The current thread must be a HaltingThread.
+     */
+    public void run() {
+        HaltingThread self = (HaltingThread)Thread.currentThread();
+        QueueThread qt = (QueueThread)runnableQueueThread;
+        if (qt == null) {
+            // Halted: stays scheduled so it is never run again.
+            return;
+        }
+        synchronized (qt) {
+            if (worker != null) {
+                // The owner goes on with the runnables added meanwhile.
+                return;
+            }
+            qt.worker = self;
+            worker = self;
+            if (qt.isHalted()) {
+                self.halt();
+            }
+        }
+
+        boolean more = false;
+        try {
+            for (int n = 0; n < RUNNABLES_PER_STEP; n++) {
+                if (self.isHalted()) {
+                    exit();
+                    return;
+                }
+
+                boolean callSuspended = false;
+                boolean callResumed   = false;
+                // Mutex for suspension work.
+                synchronized (stateLock) {
+                    if (state != RUNNING) {
+                        callSuspended = state != SUSPENDED;
+                        state = SUSPENDED;
+
+                        // notify suspendExecution in case it is
+                        // waiting til we shut down.
+                        stateLock.notifyAll();
+                    } else if (wasResumed) {
+                        wasResumed = false;
+                        callResumed = true;
+                    }
+                }
+                if (callSuspended)
+                    executionSuspended();
+                if (callResumed)
+                    executionResumed();
+
+                Link l;
+                Runnable rable;
+                synchronized (list) {
+                    if (state != RUNNING) {
+                        if (state == SUSPENDED) {
+                            // resumeExecution will schedule us again.
+                            scheduled = false;
+                            return;
+                        }
+                        continue;
+                    }
+                    l = (Link)list.pop();
+                    if (preemptCount != 0) preemptCount--;
+                    if (l == null) {
+                        // No item to run, see if there is an idle runnable
+                        // to run instead.
+                        if (idleRunnable != null &&
+                                (idleRunnableWaitTime = idleRunnable.getWaitTime())
+                                    < System.currentTimeMillis()) {
+                            rable = idleRunnable;
+                        } else {
+                            // Give the thread back until a runnable is
+                            // added or the idle runnable is due.
+                            scheduled = false;
+                            if (idleRunnable != null && idleRunnableWaitTime
+                                    != Long.MAX_VALUE) {
+                                pool.submitAt(this, idleRunnableWaitTime);
+                            }
+                            return;
+                        }
+                    } else {
+                        rable = l.runnable;
+                    }
+                }
+
+                runRunnable(rable, l);
+            }
+            more = true;
+        } finally {
+            synchronized (qt) {
+                qt.worker = null;
+                worker = null;
+                self.clearHalted();
+            }
+        }
+        if (more) {
+            // Still scheduled: go to the end of the line.
+            pool.submit(this);
+        }
+    }
+
+    /**
+     * Stops this queue once it has been halted.
+     */
+    protected void exit() {
+        Link l;
+        do {
+            // Empty the list of pending runnables and unlock them (so
+            // invokeAndWait will return).
+            // It's up to the runnables to check if the runnable actually
+            // ran, if that is important.
+            synchronized (list) {
+                l = (Link)list.pop();
+            }
+            if (l == null) break;
+            else           l.unlock();
+        } while (true);
+
+        synchronized (this) {
+            runnableQueueThread = null;
+        }
+    }
+
+    /**
+     * The thread which stands for a pooled queue.
+     */
+    protected static class QueueThread extends HaltingThread {
+
+        /**
+         * The pool thread running the queue, or null.  Guarded by the
+         * lock of this object.
+         */
+        protected HaltingThread worker;
+
+        public QueueThread(String name) {
+            super(name);
+        }
+
+        /**
+         * Halts the queue, and the pool thread running it if any.
+         */
+        public synchronized void halt() {
+            super.halt();
+            if (worker != null) {
+                worker.halt();
+            }
+        }
+    }
+}
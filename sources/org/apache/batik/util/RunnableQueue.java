@@ -87,7 +87,7 @@ public class RunnableQueue implements Runnable {
      * The Runnable objects list, also used as synchronization point
      * for pushing/poping runables.
      */
-    private final DoublyLinkedList list = new DoublyLinkedList();
+    protected final DoublyLinkedList list = new DoublyLinkedList();
 
     /**
      * Count of preempt entries in queue, so preempt entries
@@ -108,12 +108,12 @@ public class RunnableQueue implements Runnable {
     /**
      * The {@link IdleRunnable} to run if the queue is empty.
      */
-    private IdleRunnable idleRunnable;
+    protected IdleRunnable idleRunnable;
 
     /**
      * The time (in milliseconds) that the idle runnable should be run next.
      */
-    private long idleRunnableWaitTime;
+    protected long idleRunnableWaitTime;
 
     /**
      * Creates a new RunnableQueue started in a new thread.
@@ -234,34 +234,7 @@ public class RunnableQueue implements Runnable {
                     }
                 }
 
-                try {
-                    runnableStart(rable);
-
-                    rable.run();
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
-                }
-                // Notify something waiting on the runnable just completed,
-                // if we just ran one from the queue.
-                if (l != null) {
-                    l.unlock();
-                }
-
-                try {
-                    runnableInvoked(rable);
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
-                }
+                runRunnable(rable, l);
             }
         } finally {
             do {
@@ -282,6 +255,45 @@ public class RunnableQueue implements Runnable {
         }
     }
 
+    /**
+     * Runs a runnable of this queue, between the calls to the run
+     * handler, in the thread running the queue.
+     * @param rable the runnable to run
+     * @param l the link the runnable was popped from the list with,
+     *        which is unlocked once it has run, or null if it is the
+     *        idle runnable
+     */
+    protected void runRunnable(Runnable rable, Link l) {
+        try {
+            runnableStart(rable);
+
+            rable.run();
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+        // Notify something waiting on the runnable just completed,
+        // if we just ran one from the queue.
+        if (l != null) {
+            l.unlock();
+        }
+
+        try {
+            runnableInvoked(rable);
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+    }
+
     /**
      * Returns the thread in which the RunnableQueue is currently running.
      * @return null if the RunnableQueue has not entered his
@@ -291,6 +303,23 @@ public class RunnableQueue implements Runnable {
         return runnableQueueThread;
     }
 
+    /**
+     * Called, with the lock of the runnable list held, when runnables
+     * were added or the state of the queue changed.  Wakes up the
+     * queue thread.
+     */
+    protected void queueChanged() {
+        list.notify();
+    }
+
+    /**
+     * Tells whether the given thread is the one running the runnables
+     * of this queue.
+     */
+    protected boolean isQueueThread(Thread t) {
+        return t == runnableQueueThread;
+    }
+
     /**
      * Schedules the given Runnable object for a later invocation, and
      * returns.
@@ -304,7 +333,7 @@ public class RunnableQueue implements Runnable {
         }
         synchronized (list) {
             list.push(new Link(r));
-            list.notify();
+            queueChanged();
         }
     }
 
@@ -321,7 +350,7 @@ public class RunnableQueue implements Runnable {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread(Thread.currentThread())) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
@@ -329,7 +358,7 @@ public class RunnableQueue implements Runnable {
         LockableLink l = new LockableLink(r);
         synchronized (list) {
             list.push(l);
-            list.notify();
+            queueChanged();
         }
         l.lock();           // todo: the 'other side' of list may retrieve the l before it is locked...
     }
@@ -351,7 +380,7 @@ public class RunnableQueue implements Runnable {
         synchronized (list) {
             list.add(preemptCount, new Link(r));
             preemptCount++;
-            list.notify();
+            queueChanged();
         }
     }
 
@@ -370,7 +399,7 @@ public class RunnableQueue implements Runnable {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread(Thread.currentThread())) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
@@ -379,7 +408,7 @@ public class RunnableQueue implements Runnable {
         synchronized (list) {
             list.add(preemptCount, l);
             preemptCount++;
-            list.notify();
+            queueChanged();
         }
         l.lock();               // todo: the 'other side' of list may retrieve the l before it is locked...
     }
@@ -423,7 +452,7 @@ public class RunnableQueue implements Runnable {
                     // Wake up run thread if it is waiting for jobs,
                     // so we go into the suspended case (notifying
                     // run-handler etc...)
-                    list.notify();
+                    queueChanged();
                 }
             }
 
@@ -521,7 +550,7 @@ public class RunnableQueue implements Runnable {
         synchronized (list) {
             idleRunnable = r;
             idleRunnableWaitTime = 0;
-            list.notify();
+            queueChanged();
         }
     }
 
@@ -650,7 +679,7 @@ public class RunnableQueue implements Runnable {
         /**
          * The Runnable.
          */
-        private final Runnable runnable;
+        protected final Runnable runnable;
 
         /**
          * Creates a new link.
@@ -0,0 +1,335 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * A bounded pool of daemon threads which runs the runnables of many
+ * {@link RunnableQueue}s, so that hosting many dynamic documents does
+ * not take one thread per document.
+ *
+ * <p>The queues created by {@link #createRunnableQueue} behave like
+ * the ones created by {@link RunnableQueue#createRunnableQueue}: the
+ * runnables of a queue are run one at a time, in order, and the queue
+ * can be suspended, resumed and halted.  A queue waiting for
+ * runnables takes no thread.  A queue with work is run by the next
+ * free thread of the pool for a few runnables, then goes back to the
+ * end of the line so that busy queues do not starve the others.</p>
+ *
+ * <p>A thread of the pool blocked in <code>invokeAndWait</code> or
+ * <code>preemptAndWait</code> on another queue of the same pool is
+ * replaced by a new thread for as long as it is blocked, so a queue
+ * waiting for another never dead locks the pool.</p>
+ *
+ * <p>The update managers use a shared pool when the
+ * <code>org.apache.batik.update_pool_size</code> system property is
+ * set to a positive number of threads, or when one is given to
+ * {@link #setDefault}.</p>
+ *
+ * @version $Id$
+ */
+public class RunnableQueuePool {
+
+    /**
+     * The number of threads of the default pool, from the
+     * <code>org.apache.batik.update_pool_size</code> system property.
+     * If zero or negative (the default) there is no default pool.
+     */
+    static final int DEFAULT_POOL_SIZE;
+    static {
+        int value = 0;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.update_pool_size", "0");
+            value = Integer.parseInt(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            DEFAULT_POOL_SIZE = value;
+        }
+    }
+
+    private static RunnableQueuePool defaultPool;
+
+    /**
+     * Returns the pool the update managers use, or null if each
+     * update manager has its own thread.
+     */
+    public static synchronized RunnableQueuePool getDefault() {
+        if (defaultPool == null && DEFAULT_POOL_SIZE > 0) {
+            defaultPool = new RunnableQueuePool(DEFAULT_POOL_SIZE,
+                                                "RunnableQueuePool");
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool the update managers created from now on use, or
+     * null to give them their own thread.
+     */
+    public static synchronized void setDefault(RunnableQueuePool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * The queues which have runnables to run, in order.  Also used as
+     * synchronization point for the threads of the pool.
+     */
+    protected final LinkedList ready = new LinkedList();
+
+    /**
+     * The queues waiting for the time of their idle runnable, sorted by
+     * time.
+     */
+    protected final LinkedList waiting = new LinkedList();
+
+    /**
+     * The number of threads running queues when none is blocked.
+     */
+    protected int numThreads;
+
+    /**
+     * The base name of the threads and queues.
+     */
+    protected String name;
+
+    protected int threadCount;
+    protected int idleCount;
+    protected int blockedCount;
+    protected int queueCount;
+
+    /**
+     * Whether this pool has been disposed.
+     */
+    protected boolean disposed;
+
+    /**
+     * Creates a new pool.  The threads are started when needed.
+     * @param numThreads The number of threads, at least one.
+     * @param name The base name of the threads.
+     */
+    public RunnableQueuePool(int numThreads, String name) {
+        this.numThreads = Math.max(1, numThreads);
+        this.name = name;
+    }
+
+    /**
+     * Returns the number of threads which run queues at the same time.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Creates a new RunnableQueue run by this pool.
+     * @return a RunnableQueue which is started.
+     */
+    public RunnableQueue createRunnableQueue() {
+        String queueName;
+        synchronized (ready) {
+            queueName = name + "-Queue-" + queueCount++;
+        }
+        PooledRunnableQueue result = new PooledRunnableQueue(this, queueName);
+        result.schedule();
+        return result;
+    }
+
+    /**
+     * Stops the threads of this pool once the queues which have
+     * runnables have run them.  The queues of this pool should be
+     * halted first.
+     */
+    public void dispose() {
+        synchronized (ready) {
+            disposed = true;
+            ready.notifyAll();
+        }
+    }
+
+    /**
+     * Adds a queue to the queues to run.
+     */
+    void submit(PooledRunnableQueue q) {
+        synchronized (ready) {
+            ready.addLast(q);
+            if (idleCount < ready.size() &&
+                threadCount < numThreads + blockedCount) {
+                startThread();
+            }
+            ready.notify();
+        }
+    }
+
+    /**
+     * Adds a queue to the queues to run at the given time, unless it
+     * will be run before.
+     */
+    void submitAt(PooledRunnableQueue q, long time) {
+        synchronized (ready) {
+            if (q.wakeTime != 0) {
+                if (q.wakeTime <= time)
+                    return;
+                waiting.remove(q);
+            }
+            q.wakeTime = time;
+            ListIterator it = waiting.listIterator();
+            while (it.hasNext()) {
+                PooledRunnableQueue wq = (PooledRunnableQueue)it.next();
+                if (wq.wakeTime > time) {
+                    it.previous();
+                    break;
+                }
+            }
+            it.add(q);
+            if (threadCount == 0) {
+                startThread();
+            }
+            // Let an idle thread wait for the new time.
+            ready.notifyAll();
+        }
+    }
+
+    /**
+     * Called before the current thread blocks waiting for a queue.
+     * If it is a thread of this pool, a thread is started to take over
+     * while it is blocked.
+     * @return whether {@link #endBlocking} must be called once the
+     *         current thread is no longer blocked.
+     */
+    boolean beginBlocking() {
+        Thread t = Thread.currentThread();
+        if (!(t instanceof Worker) || ((Worker)t).pool != this)
+            return false;
+        synchronized (ready) {
+            blockedCount++;
+            if (idleCount == 0) {
+                startThread();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called once a thread for which {@link #beginBlocking} returned
+     * true is no longer blocked.
+     */
+    void endBlocking() {
+        synchronized (ready) {
+            blockedCount--;
+            // Let the extra threads stop.
+            ready.notifyAll();
+        }
+    }
+
+    /**
+     * Starts a new thread, with the lock of <code>ready</code> held.
+     */
+    protected void startThread() {
+        Worker w = new Worker(this, name + '-' + threadCount);
+        threadCount++;
+        w.setDaemon(true);
+        w.start();
+    }
+
+    /**
+     * The body of the threads of the pool.
+     */
+    protected void workerLoop() {
+        boolean stopped = false;
+        try {
+            for (;;) {
+                PooledRunnableQueue q = null;
+                LinkedList due = null;
+                synchronized (ready) {
+                    for (;;) {
+                        long now = System.currentTimeMillis();
+                        while (!waiting.isEmpty() &&
+                               ((PooledRunnableQueue)waiting.getFirst()).
+                               wakeTime <= now) {
+                            PooledRunnableQueue wq =
+                                (PooledRunnableQueue)waiting.removeFirst();
+                            wq.wakeTime = 0;
+                            if (due == null)
+                                due = new LinkedList();
+                            due.add(wq);
+                        }
+                        if (due != null)
+                            break;
+                        if (!ready.isEmpty()) {
+                            q = (PooledRunnableQueue)ready.removeFirst();
+                            break;
+                        }
+                        if (disposed ||
+                            threadCount > numThreads + blockedCount) {
+                            threadCount--;
+                            stopped = true;
+                            return;
+                        }
+                        long t = 0;
+                        if (!waiting.isEmpty()) {
+                            t = ((PooledRunnableQueue)waiting.getFirst()).
+                                wakeTime - now;
+                        }
+                        idleCount++;
+                        try {
+                            ready.wait(t);
+                        } catch (InterruptedException ie) {
+                            return;
+                        } finally {
+                            idleCount--;
+                        }
+                    }
+                }
+
+                if (due != null) {
+                    // Outside of the lock: scheduling locks the queue.
+                    while (!due.isEmpty()) {
+                        ((PooledRunnableQueue)due.removeFirst()).schedule();
+                    }
+                } else {
+                    q.run();
+                }
+            }
+        } finally {
+            if (!stopped) {
+                synchronized (ready) {
+                    threadCount--;
+                }
+            }
+        }
+    }
+
+    /**
+     * The threads of the pool.
+     */
+    protected static class Worker extends HaltingThread {
+        protected RunnableQueuePool pool;
+
+        public Worker(RunnableQueuePool pool, String name) {
+            super(name);
+            this.pool = pool;
+        }
+
+        public void run() {
+            pool.workerLoop();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A fixed size pool of daemon worker threads used to run a batch of
+ * independent tasks (typically image tiles) concurrently.
+ *
+ * <p>The thread calling {@link #invokeAll} takes part in running its
+ * own batch, so nested calls from within a task never dead lock, and
+ * a pool with no threads simply runs everything on the calling
+ * thread.  If the calling thread is a {@link HaltingThread} and gets
+ * halted, the workers running tasks of its batch are halted as well
+ * and tasks not yet started are skipped.</p>
+ *
+ * @version $Id$
+ */
+public class WorkerPool {
+
+    /**
+     * How often (in milliseconds) a waiting caller checks whether it
+     * has been halted.
+     */
+    protected static final long HALT_POLL_TIME = 20;
+
+    private static WorkerPool sharedPool;
+
+    private static WorkerPool defaultPool;
+
+    /**
+     * Returns the pool the image filters use to compute large requests
+     * concurrently: the one given to {@link #setDefault}, or else a
+     * shared pool with one thread less than the number of available
+     * processors (the calling thread makes up the last one).
+     */
+    public static synchronized WorkerPool getDefault() {
+        if (defaultPool != null)
+            return defaultPool;
+        if (sharedPool == null) {
+            int n = Runtime.getRuntime().availableProcessors() - 1;
+            sharedPool = new WorkerPool(n, "Batik WorkerPool");
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Sets the pool the image filters use from now on, or null to use
+     * the shared pool again.
+     */
+    public static synchronized void setDefault(WorkerPool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * A task run on a band of lines (rows or columns) of an image.
+     */
+    public interface BandTask {
+        /**
+         * Runs the task on the lines start (inclusive) to end
+         * (exclusive).
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * A set of tasks submitted by one call to invokeAll.
+     */
+    protected static class Batch {
+        protected Thread    caller;
+        protected int       remaining;
+        protected List      running = new ArrayList();
+        protected Throwable error;
+        protected boolean   interrupted;
+
+        protected Batch(Thread caller, int remaining) {
+            this.caller    = caller;
+            this.remaining = remaining;
+        }
+
+        protected boolean isHalted() {
+            return interrupted || HaltingThread.hasBeenHalted(caller);
+        }
+    }
+
+    /**
+     * One task of a batch.
+     */
+    protected static class Task {
+        protected Batch    batch;
+        protected Runnable runnable;
+
+        protected Task(Batch batch, Runnable runnable) {
+            this.batch    = batch;
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * The pending tasks, also used as synchronization point for the
+     * workers.
+     */
+    protected final LinkedList queue = new LinkedList();
+
+    /**
+     * The worker threads.
+     */
+    protected HaltingThread [] workers;
+
+    /**
+     * Whether this pool has been disposed.
+     */
+    protected boolean disposed;
+
+    /**
+     * Creates a new pool.
+     * @param numThreads The number of worker threads, may be zero.
+     * @param name The base name of the worker threads.
+     */
+    public WorkerPool(int numThreads, String name) {
+        if (numThreads < 0) numThreads = 0;
+        workers = new HaltingThread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = new HaltingThread(new Runnable() {
+                    public void run() { workerLoop(); }
+                }, name + '-' + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Returns the number of threads that can run tasks of one batch at
+     * the same time (the workers plus the calling thread).
+     */
+    public int getParallelism() {
+        return workers.length + 1;
+    }
+
+    /**
+     * Returns the number of bands to split the given number of lines
+     * of an image in: one per thread of this pool, or 1 if the image
+     * has less than <code>minPixels</code> pixels, for which it is not
+     * worth it.
+     */
+    public int getNumBands(int lines, long pixels, long minPixels) {
+        if (pixels < minPixels)
+            return 1;
+        return Math.max(1, Math.min(getParallelism(), lines));
+    }
+
+    /**
+     * Splits the lines start (inclusive) to end (exclusive) in
+     * <code>numBands</code> bands of about the same size, at most one
+     * per line, and runs the given task on each of them with
+     * {@link #invokeAll}.
+     */
+    public void invokeBands(int start, int end, int numBands,
+                            final BandTask task) {
+        int len = end - start;
+        int n = Math.min(numBands, len);
+        if (n <= 0)
+            return;
+        Runnable [] tasks = new Runnable[n];
+        for (int i = 0; i < n; i++) {
+            final int s = start + (int)(((long)len * i) / n);
+            final int e = start + (int)(((long)len * (i + 1)) / n);
+            tasks[i] = new Runnable() {
+                    public void run() { task.run(s, e); }
+                };
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Runs all the given tasks and returns once they are all complete.
+     * If the calling thread is interrupted while waiting, the running
+     * tasks are halted and the call still returns only once they have
+     * stopped, with the interrupt status of the caller set.
+     * The first exception thrown by a task is rethrown to the caller
+     * (wrapped in a RuntimeException if it is checked).
+     */
+    public void invokeAll(Runnable [] tasks) {
+        if (tasks.length == 0)
+            return;
+
+        Thread caller = Thread.currentThread();
+        if ((tasks.length == 1) || (workers.length == 0) || disposed) {
+            for (int i = 0; i < tasks.length; i++) {
+                if (HaltingThread.hasBeenHalted(caller))
+                    return;
+                tasks[i].run();
+            }
+            return;
+        }
+
+        Batch batch = new Batch(caller, tasks.length);
+        synchronized (queue) {
+            for (int i = 0; i < tasks.length; i++)
+                queue.add(new Task(batch, tasks[i]));
+            queue.notifyAll();
+        }
+
+        // Help out with our own batch.
+        for (;;) {
+            Task t = null;
+            synchronized (queue) {
+                Iterator it = queue.iterator();
+                while (it.hasNext()) {
+                    Task qt = (Task)it.next();
+                    if (qt.batch == batch) {
+                        it.remove();
+                        t = qt;
+                        break;
+                    }
+                }
+            }
+            if (t == null)
+                break;
+            runTask(t, null);
+        }
+
+        // Wait for the tasks picked up by the workers.  The callers
+        // read or reuse the memory the tasks write to, so even when
+        // interrupted we only return once every task has stopped; the
+        // interrupt halts the running tasks and is re-asserted after.
+        synchronized (batch) {
+            while (batch.remaining > 0) {
+                if (batch.isHalted()) {
+                    Iterator it = batch.running.iterator();
+                    while (it.hasNext())
+                        ((HaltingThread)it.next()).halt();
+                }
+                try {
+                    batch.wait(HALT_POLL_TIME);
+                } catch (InterruptedException ie) {
+                    batch.interrupted = true;
+                }
+            }
+        }
+        if (batch.interrupted)
+            caller.interrupt();
+
+        Throwable err = batch.error;
+        if (err instanceof RuntimeException)
+            throw (RuntimeException)err;
+        if (err instanceof Error)
+            throw (Error)err;
+        if (err != null)
+            throw new RuntimeException(err.getMessage());
+    }
+
+    /**
+     * Stops the worker threads once the pending tasks have run.
+     */
+    public void dispose() {
+        synchronized (queue) {
+            disposed = true;
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Runs one task, recording completion in its batch.
+     * @param worker The worker thread running the task, or null if
+     *        this is the thread that submitted the batch.
+     */
+    protected void runTask(Task t, HaltingThread worker) {
+        Batch b = t.batch;
+        if (worker != null) {
+            worker.clearHalted();
+            synchronized (b) { b.running.add(worker); }
+        }
+        try {
+            if (!b.isHalted())
+                t.runnable.run();
+        } catch (Throwable th) {
+            synchronized (b) {
+                if (b.error == null)
+                    b.error = th;
+            }
+        } finally {
+            synchronized (b) {
+                if (worker != null)
+                    b.running.remove(worker);
+                b.remaining--;
+                b.notifyAll();
+            }
+            if (worker != null)
+                worker.clearHalted();
+        }
+    }
+
+    /**
+     * The body of the worker threads.
+     */
+    protected void workerLoop() {
+        HaltingThread self = (HaltingThread)Thread.currentThread();
+        for (;;) {
+            Task t;
+            synchronized (queue) {
+                while (queue.isEmpty() && !disposed) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty())
+                    return;
+                t = (Task)queue.removeFirst();
+            }
+            runTask(t, self);
+        }
+    }
+}
@@ -273,6 +273,28 @@ public class SVGConverterTest extends DefaultTestSuite {
         addTest(t);
         t.setId("Operationtest.PDFTranscoding");
 
+        t = new OperationTest(){
+                protected void configure(SVGConverter c){
+                    c.setSources(new String[]{"samples/anne.svg",
+                                              "samples/tests/spec/styling/smiley.svg"});
+                    File dir = new File(System.getProperty("java.io.tmpdir"));
+                    c.setDst(dir);
+                    c.setThreads(2);
+                    new File(dir, "anne.png").deleteOnExit();
+                    new File(dir, "smiley.png").deleteOnExit();
+                }
+            };
+        addTest(t);
+        t.setId("OperationTest.Threads");
+
+        t = new TimingControllerTest(1);
+        addTest(t);
+        t.setId("TimingControllerTest.Serial");
+
+        t = new TimingControllerTest(2);
+        addTest(t);
+        t.setId("TimingControllerTest.Threads");
+
         ///////////////////////////////////////////////////////////////////////
         // Add configuration error test. These tests check that the expected
         // error gets reported for a given mis-configuration
@@ -762,6 +784,78 @@ class OperationTest extends AbstractTest{
     }
 }
 
+/**
+ * Checks that a controller implementing SVGConverterTimingController
+ * is given the time taken by each source and by the whole task.
+ */
+class TimingControllerTest extends AbstractTest
+    implements SVGConverterTimingController {
+    static final String[] SOURCES = {
+        "samples/anne.svg", "samples/tests/spec/styling/smiley.svg"
+    };
+
+    protected int threads;
+    protected List timedSources = new ArrayList();
+    protected int completed;
+
+    public TimingControllerTest(int threads){
+        this.threads = threads;
+    }
+
+    public TestReport runImpl() throws Exception {
+        SVGConverter c = new SVGConverter(this);
+        c.setSources(SOURCES);
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        c.setDst(dir);
+        c.setThreads(threads);
+        new File(dir, "anne.png").deleteOnExit();
+        new File(dir, "smiley.png").deleteOnExit();
+        c.execute();
+
+        if (timedSources.size() != SOURCES.length || completed != 1) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode("TimingControllerTest.error.missing.timing");
+            report.addDescriptionEntry("timed.sources", "" + timedSources);
+            report.addDescriptionEntry("completed.tasks", "" + completed);
+            report.setPassed(false);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    public boolean proceedWithComputedTask(Transcoder transcoder,
+                                           Map hints,
+                                           List sources,
+                                           List dest){
+        return true;
+    }
+
+    public boolean proceedWithSourceTranscoding(SVGConverterSource source,
+                                                File dest){
+        return true;
+    }
+
+    public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
+                                                     File dest,
+                                                     String errorCode){
+        return true;
+    }
+
+    public void onSourceTranscodingSuccess(SVGConverterSource source,
+                                           File dest){
+    }
+
+    public synchronized void onSourceTranscodingTime(SVGConverterSource source,
+                                                     File dest,
+                                                     long time){
+        timedSources.add(source.getName());
+    }
+
+    public void onTaskCompleted(List sources, List dest, long time){
+        completed++;
+    }
+}
+
 /**
  * Provides a simple string constructor which allows the user to
  * create a given test to check that a specific transcoder class is
@@ -0,0 +1,142 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.InstanceGraphicsNode;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a static document renders the same pixels whether its
+ * 'use' elements share their GVT tree or not, when the referenced
+ * content sets properties which are not inherited, such as 'opacity',
+ * 'filter', 'clip-path' and 'mask', to 'inherit'.  Checks too that the
+ * 'use' elements with the same style still share their tree.
+ *
+ * @version $Id$
+ */
+public class UseInstancingTest extends AbstractTest {
+
+    public static final String URI = "http://example.org/useInstancing.svg";
+
+    public static final int WIDTH = 240;
+    public static final int HEIGHT = 120;
+
+    /**
+     * The document: the first two 'use' elements can share their tree,
+     * the others give the referenced 'g' another value for one of the
+     * properties it inherits, or its children inherit from it.
+     */
+    public static final String SVG =
+        "<svg xmlns='http://www.w3.org/2000/svg'"
+        + " xmlns:xlink='http://www.w3.org/1999/xlink'"
+        + " width='" + WIDTH + "' height='" + HEIGHT + "'>"
+        + "<defs>"
+        + "<filter id='blur'><feGaussianBlur stdDeviation='2'/></filter>"
+        + "<clipPath id='clip'><circle cx='20' cy='20' r='15'/></clipPath>"
+        + "<mask id='mask' maskContentUnits='objectBoundingBox'>"
+        + "<rect width='0.5' height='1' fill='white'/></mask>"
+        + "<g id='content' opacity='inherit' filter='inherit'"
+        + " clip-path='inherit' mask='inherit'>"
+        + "<rect width='40' height='40' fill='blue'/>"
+        + "<circle cx='20' cy='20' r='10'/>"
+        + "</g>"
+        + "</defs>"
+        + "<use xlink:href='#content'/>"
+        + "<use xlink:href='#content' x='60'/>"
+        + "<use xlink:href='#content' x='120' opacity='0.3'/>"
+        + "<use xlink:href='#content' x='180' filter='url(#blur)'/>"
+        + "<use xlink:href='#content' y='60' clip-path='url(#clip)'/>"
+        + "<use xlink:href='#content' x='60' y='60' mask='url(#mask)'/>"
+        + "<use xlink:href='#content' x='120' y='60' stroke='red'"
+        + " stroke-width='4'/>"
+        + "<use xlink:href='#content' x='180' y='60' fill='green'/>"
+        + "</svg>";
+
+    public boolean runImplBasic() throws Exception {
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        GraphicsNode copies = build(ctx);
+        BridgeContext ictx = new BridgeContext(new UserAgentAdapter());
+        ictx.setInstancing(true);
+        GraphicsNode instances = build(ictx);
+        try {
+            assertEquals(0, countInstances(copies));
+            assertEquals(1, countInstances(instances));
+
+            // Reports the first pixel which differs.
+            int[] expected = paint(copies);
+            int[] actual = paint(instances);
+            for (int i = 0; i < expected.length; i++) {
+                if (expected[i] != actual[i]) {
+                    String pixel = "(" + (i % WIDTH) + ", " + (i / WIDTH) + ")";
+                    assertEquals(pixel + " #" + Integer.toHexString(expected[i]),
+                                 pixel + " #" + Integer.toHexString(actual[i]));
+                }
+            }
+        } finally {
+            ctx.dispose();
+            ictx.dispose();
+        }
+        return true;
+    }
+
+    /**
+     * Parses the document and builds its GVT tree.
+     */
+    protected GraphicsNode build(BridgeContext ctx) throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        Document doc = f.createDocument(URI, new StringReader(SVG));
+        return new GVTBuilder().build(ctx, doc);
+    }
+
+    protected int countInstances(GraphicsNode node) {
+        if (node instanceof InstanceGraphicsNode) {
+            return 1;
+        }
+        int n = 0;
+        if (node instanceof CompositeGraphicsNode) {
+            Iterator it = ((CompositeGraphicsNode)node).iterator();
+            while (it.hasNext()) {
+                n += countInstances((GraphicsNode)it.next());
+            }
+        }
+        return n;
+    }
+
+    protected int[] paint(GraphicsNode node) {
+        BufferedImage bi = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(bi);
+        node.paint(g);
+        g.dispose();
+        return bi.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.apache.batik.dom.svg.SVGOMDocument;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that the rules the CSSEngine finds through the RuleIndex of a
+ * style sheet are the ones, and in the order, it finds by testing every
+ * selector of the style sheet.  The style sheet of the test document
+ * has id, class, element, universal, multi-selector, @media and @import
+ * rules.  Also checks that the index of a style sheet is rebuilt when
+ * a rule is appended and when the style sheet is cleared.
+ *
+ * @version $Id$
+ */
+public class RuleIndexTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_RULES
+        = "RuleIndexTest.error.different.rules";
+
+    public static final String ERROR_NO_MATCH
+        = "RuleIndexTest.error.no.match";
+
+    public static final String ERROR_INDEX_NOT_REBUILT
+        = "RuleIndexTest.error.index.not.rebuilt";
+
+    public static final String ENTRY_KEY_ELEMENT
+        = "RuleIndexTest.entry.key.element";
+
+    public static final String ENTRY_KEY_LINEAR_RULES
+        = "RuleIndexTest.entry.key.linear.rules";
+
+    public static final String ENTRY_KEY_INDEXED_RULES
+        = "RuleIndexTest.entry.key.indexed.rules";
+
+    public static final String FILE
+        = "test-resources/org/apache/batik/css/engine/ruleIndex.svg";
+
+    public TestReport runImpl() throws Exception {
+        UserAgent ua = new UserAgentAdapter();
+        DocumentLoader loader = new DocumentLoader(ua);
+        BridgeContext ctx = new BridgeContext(ua, loader);
+        try {
+            String uri = new File(FILE).toURL().toString();
+            Document doc = loader.loadDocument(uri);
+            new GVTBuilder().build(ctx, doc);
+            CSSEngine eng = ((SVGOMDocument)doc).getCSSEngine();
+
+            List elts = new ArrayList();
+            collectElements(doc.getDocumentElement(), elts);
+
+            int matches = 0;
+            Iterator it = eng.getStyleSheetNodes().iterator();
+            while (it.hasNext()) {
+                StyleSheet ss = ((CSSStyleSheetNode)it.next())
+                    .getCSSStyleSheet();
+                for (int i = 0; i < elts.size(); i++) {
+                    Element elt = (Element)elts.get(i);
+                    TestReport r = compare(eng, ss, elt);
+                    if (r != null)
+                        return r;
+                    matches += getIndexedRules(eng, ss, elt).size();
+                }
+            }
+            if (matches == 0)
+                return reportError(ERROR_NO_MATCH);
+
+            return checkInvalidation(eng, new ParsedURL(uri), doc);
+        } finally {
+            ctx.dispose();
+        }
+    }
+
+    /**
+     * Checks that appending a rule to a style sheet, or clearing it,
+     * gives it a new index, which the cascade then uses.
+     */
+    protected TestReport checkInvalidation(CSSEngine eng,
+                                           ParsedURL uri,
+                                           Document doc) {
+        Element rect = doc.getElementById("r1");
+        Element circle = doc.getElementById("c1");
+
+        StyleSheet ss = eng.parseStyleSheet("rect { fill: red }",
+                                            uri, "all");
+        RuleIndex ri = ss.getRuleIndex();
+        if (ss.getRuleIndex() != ri
+            || ri.getCandidates(rect).size() != 1
+            || ri.getCandidates(circle).size() != 0)
+            return reportError(ERROR_INDEX_NOT_REBUILT);
+
+        StyleSheet other = eng.parseStyleSheet
+            ("circle, #c1 { fill: blue } @media all { rect { fill: green } }",
+             uri, "all");
+        ss.append(other.getRule(0));
+        ss.append(other.getRule(1));
+        RuleIndex ri2 = ss.getRuleIndex();
+        if (ri2 == ri
+            || ri2.getCandidates(circle).size() != 3
+            || ri2.getCandidates(rect).size() != 2)
+            return reportError(ERROR_INDEX_NOT_REBUILT);
+        TestReport r = compare(eng, ss, rect);
+        if (r == null)
+            r = compare(eng, ss, circle);
+        if (r != null)
+            return r;
+
+        ss.clear();
+        RuleIndex ri3 = ss.getRuleIndex();
+        if (ri3 == ri2
+            || ri3.getCandidates(rect).size() != 0
+            || ri3.getCandidates(circle).size() != 0
+            || getIndexedRules(eng, ss, rect).size() != 0)
+            return reportError(ERROR_INDEX_NOT_REBUILT);
+
+        return reportSuccess();
+    }
+
+    /**
+     * Compares the rules of the given style sheet which match the given
+     * element through the index with the ones found by testing every
+     * selector, returning a failure report if they differ.
+     */
+    protected TestReport compare(CSSEngine eng, StyleSheet ss, Element elt) {
+        List linear = getLinearRules(eng, ss, elt);
+        List indexed = getIndexedRules(eng, ss, elt);
+        if (linear.equals(indexed))
+            return null;
+
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_DIFFERENT_RULES);
+        report.addDescriptionEntry(ENTRY_KEY_ELEMENT, describe(elt));
+        report.addDescriptionEntry(ENTRY_KEY_LINEAR_RULES,
+                                   toString(eng, linear));
+        report.addDescriptionEntry(ENTRY_KEY_INDEXED_RULES,
+                                   toString(eng, indexed));
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * Returns the matching rules, in cascade order, found by testing
+     * every selector of the style sheet.  A rule is added once per
+     * matching selector, so the repeats are removed.
+     */
+    protected List getLinearRules(CSSEngine eng, StyleSheet ss,
+                                  Element elt) {
+        ArrayList rules = new ArrayList();
+        eng.addMatchingRules(rules, ss, elt, null);
+        eng.sortRules(rules, elt, null);
+        ArrayList ret = new ArrayList();
+        for (int i = 0; i < rules.size(); i++) {
+            Object r = rules.get(i);
+            if (ret.isEmpty() || ret.get(ret.size() - 1) != r)
+                ret.add(r);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the matching rules, in cascade order, found through the
+     * index of the style sheet.
+     */
+    protected List getIndexedRules(CSSEngine eng, StyleSheet ss,
+                                   Element elt) {
+        CSSEngine.MatchingRules rules = new CSSEngine.MatchingRules();
+        eng.addMatchingRules(rules, ss, elt, null);
+        rules.sort();
+        List ret = new ArrayList();
+        for (int i = 0; i < rules.size; i++)
+            ret.add(rules.rules[i]);
+        return ret;
+    }
+
+    protected void collectElements(Node n, List elts) {
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c instanceof CSSStylableElement) {
+                elts.add(c);
+                collectElements(c, elts);
+            }
+        }
+    }
+
+    protected String describe(Element elt) {
+        StringBuffer sb = new StringBuffer(elt.getNodeName());
+        if (elt.hasAttribute("id"))
+            sb.append(" id=\"" + elt.getAttribute("id") + "\"");
+        if (elt.hasAttribute("class"))
+            sb.append(" class=\"" + elt.getAttribute("class") + "\"");
+        return sb.toString();
+    }
+
+    protected String toString(CSSEngine eng, List rules) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < rules.size(); i++) {
+            StyleRule r = (StyleRule)rules.get(i);
+            for (int j = 0; j < r.getSelectorList().getLength(); j++) {
+                if (j > 0) sb.append(", ");
+                sb.append((ExtendedSelector)r.getSelectorList().item(j));
+            }
+            sb.append(" { ");
+            sb.append(r.getStyleDeclaration().toString(eng));
+            sb.append(" }\n");
+        }
+        return sb.toString();
+    }
+}
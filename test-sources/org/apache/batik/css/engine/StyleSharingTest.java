@@ -0,0 +1,203 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.io.StringReader;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.dom.svg.SVGOMDocument;
+import org.apache.batik.dom.svg.SVGStylableElement;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that the CSSEngine shares the computed style map of siblings
+ * with the same style inputs, refuses to when a rule tells them apart
+ * by their position, attributes or id, and gives an element a private
+ * copy of the map before its style attribute, presentation attributes
+ * or override style are applied.
+ *
+ * @version $Id$
+ */
+public class StyleSharingTest extends AbstractTest {
+
+    public static final String URI = "http://example.org/styleSharing.svg";
+
+    public static final String BLUE = "rgb(0, 0, 255)";
+    public static final String RED = "rgb(255, 0, 0)";
+    public static final String GREEN = "rgb(0, 128, 0)";
+    public static final String YELLOW = "rgb(255, 255, 0)";
+
+    protected BridgeContext ctx;
+    protected SVGOMDocument doc;
+
+    public boolean runImplBasic() throws Exception {
+        try {
+            checkSharing();
+            checkSiblingRules();
+            checkAttributeRules();
+            checkCopyOnWrite();
+        } finally {
+            dispose();
+        }
+        return true;
+    }
+
+    /**
+     * Siblings with the same name, class and attributes share their
+     * map, but not with a sibling of another class.
+     */
+    protected void checkSharing() throws Exception {
+        load(".a { fill: blue } .b { fill: red }",
+             "<circle r='5' id='a1' class='a'/><circle r='5' id='a2' class='a'/>" +
+             "<circle r='5' id='b' class='b'/><circle r='5' id='a3' class='a'/>");
+        assertTrue(map("a1") == map("a2"));
+        assertTrue(map("a1") == map("a3"));
+        assertTrue(map("a1").isShared());
+        assertTrue(map("b") != map("a1"));
+        assertEquals(BLUE, fill("a2"));
+        assertEquals(RED, fill("b"));
+    }
+
+    /**
+     * Rules depending on the position of an element among its siblings
+     * prevent any sharing.
+     */
+    protected void checkSiblingRules() throws Exception {
+        load("circle { fill: blue } circle + circle { fill: red }",
+             "<circle r='5' id='a1'/><circle r='5' id='a2'/>");
+        assertTrue(map("a1") != map("a2"));
+        assertEquals(BLUE, fill("a1"));
+        assertEquals(RED, fill("a2"));
+
+        load("circle { fill: blue } circle:first-child { fill: red }",
+             "<circle r='5' id='a1'/><circle r='5' id='a2'/>");
+        assertTrue(map("a1") != map("a2"));
+        assertEquals(RED, fill("a1"));
+        assertEquals(BLUE, fill("a2"));
+    }
+
+    /**
+     * Siblings are not shared when they differ on an attribute tested
+     * by a rule or when a rule targets the id of one of them.
+     */
+    protected void checkAttributeRules() throws Exception {
+        load("circle { fill: blue } circle[cx='10'] { fill: red }",
+             "<circle r='5' id='a1' cx='10'/><circle r='5' id='a2' cx='20'/>" +
+             "<circle r='5' id='a3' cx='20'/>");
+        assertTrue(map("a1") != map("a2"));
+        assertTrue(map("a2") == map("a3"));
+        assertEquals(RED, fill("a1"));
+        assertEquals(BLUE, fill("a2"));
+
+        load("circle { fill: blue } #a2 { fill: red }",
+             "<circle r='5' id='a1'/><circle r='5' id='a2'/><circle r='5' id='a3'/>");
+        assertTrue(map("a1") != map("a2"));
+        assertTrue(map("a1") == map("a3"));
+        assertEquals(BLUE, fill("a1"));
+        assertEquals(RED, fill("a2"));
+    }
+
+    /**
+     * Changing the style attribute, a presentation attribute or the
+     * override style of one of the sharers leaves the others alone.
+     */
+    protected void checkCopyOnWrite() throws Exception {
+        load("circle { fill: blue }",
+             "<circle r='5' id='a1'/><circle r='5' id='a2'/><circle r='5' id='a3'/><circle r='5' id='a4'/>");
+        StyleMap sm = map("a1");
+        assertTrue(map("a2") == sm);
+        assertTrue(map("a3") == sm);
+        assertTrue(map("a4") == sm);
+
+        doc.getElementById("a2").setAttribute("style", "fill: green");
+        assertTrue(map("a2") != sm);
+        assertEquals(GREEN, fill("a2"));
+        assertEquals(BLUE, fill("a1"));
+
+        doc.getElementById("a3").setAttribute("stroke", "red");
+        assertTrue(map("a3") != sm);
+        assertEquals(RED, stroke("a3"));
+        assertEquals("none", stroke("a1"));
+
+        SVGStylableElement a4 = (SVGStylableElement)doc.getElementById("a4");
+        a4.getOverrideStyle().setProperty("fill", "yellow", "");
+        assertTrue(map("a4") != sm);
+        assertEquals(YELLOW, fill("a4"));
+        assertEquals(BLUE, fill("a1"));
+        assertEquals(GREEN, fill("a2"));
+        assertEquals(BLUE, fill("a3"));
+        assertTrue(map("a1") == sm);
+    }
+
+    /**
+     * Parses a dynamic document made of the given style sheet and
+     * elements, and builds its GVT tree.
+     */
+    protected void load(String css, String content) throws Exception {
+        dispose();
+        String svg =
+            "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>"
+            + "<style type='text/css'>" + css + "</style>"
+            + "<g>" + content + "</g></svg>";
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        Document d = f.createDocument(URI, new StringReader(svg));
+        doc = (SVGOMDocument)d;
+
+        UserAgent ua = new UserAgentAdapter();
+        ctx = new BridgeContext(ua);
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        new GVTBuilder().build(ctx, doc);
+    }
+
+    protected void dispose() {
+        if (ctx != null) {
+            ctx.dispose();
+            ctx = null;
+        }
+    }
+
+    protected StyleMap map(String id) {
+        CSSStylableElement elt =
+            (CSSStylableElement)doc.getElementById(id);
+        return elt.getComputedStyleMap(null);
+    }
+
+    protected String fill(String id) {
+        return computedValue(id, SVGCSSEngine.FILL_INDEX);
+    }
+
+    protected String stroke(String id) {
+        return computedValue(id, SVGCSSEngine.STROKE_INDEX);
+    }
+
+    protected String computedValue(String id, int idx) {
+        CSSStylableElement elt =
+            (CSSStylableElement)doc.getElementById(id);
+        return doc.getCSSEngine().getComputedStyle
+            (elt, null, idx).getCssText();
+    }
+}
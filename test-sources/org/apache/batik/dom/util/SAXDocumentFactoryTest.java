@@ -0,0 +1,275 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.dom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Checks that SAXDocumentFactory reuses its SAX parsers after a
+ * successful parse, drops them after a failed one and gives a nested
+ * parse its own parser, and that it does not read the external DTD
+ * subsets when asked to, while the SVG DOCTYPEs still get their
+ * namespace declarations.
+ *
+ * @version $Id$
+ */
+public class SAXDocumentFactoryTest extends AbstractTest {
+
+    /**
+     * The directory holding the DTD of the test documents.
+     */
+    public static final String DIR =
+        "test-resources/org/apache/batik/dom/util/";
+
+    public static final String DOC =
+        "<doc><item/><item/></doc>";
+
+    public static final String MALFORMED_DOC =
+        "<doc><item></doc>";
+
+    public static final String NESTED_DOC =
+        "<doc><nested/><item/></doc>";
+
+    public static final String FOREIGN_DOC =
+        "<!DOCTYPE doc SYSTEM 'foreign.dtd'><doc><item/></doc>";
+
+    public static final String MISSING_DTD_DOC =
+        "<!DOCTYPE doc SYSTEM 'missing.dtd'><doc><item/></doc>";
+
+    public static final String SVG_DOC =
+        "<!DOCTYPE svg PUBLIC '-//W3C//DTD SVG 1.0//EN'"
+        + " 'http://www.w3.org/TR/2001/REC-SVG-20010904/DTD/svg10.dtd'>"
+        + "<svg width='10' height='10'>"
+        + "<use xlink:href='#a'/></svg>";
+
+    protected String parser = XMLResourceDescriptor.getXMLParserClassName();
+
+    public boolean runImplBasic() throws Exception {
+        checkReuse();
+        checkFailure();
+        checkNested();
+        checkForeignDTD();
+        checkSVGDTD();
+        return true;
+    }
+
+    /**
+     * Checks that a parser is created for the first document only, and
+     * that the parser kept does not reference the last document.
+     */
+    protected void checkReuse() throws Exception {
+        CountingFactory f = new CountingFactory(parser);
+        f.clearPool();
+        f.setReuseParser(true);
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        assertEquals(1, f.created);
+
+        XMLReader r = f.getPooledParser();
+        assertTrue(r != null);
+        assertTrue(r.getContentHandler() == SAXDocumentFactory.NULL_HANDLER);
+        assertTrue(r.getEntityResolver() == SAXDocumentFactory.NULL_HANDLER);
+        assertTrue(r.getProperty
+                   ("http://xml.org/sax/properties/lexical-handler")
+                   == SAXDocumentFactory.NULL_HANDLER);
+
+        f.setReuseParser(false);
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        assertEquals(2, f.created);
+    }
+
+    /**
+     * Checks that a parser which failed is not reused, and that the
+     * next parse gives the right document.
+     */
+    protected void checkFailure() throws Exception {
+        CountingFactory f = new CountingFactory(parser);
+        f.clearPool();
+        f.setReuseParser(true);
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        try {
+            f.createDocument(uri(), new StringReader(MALFORMED_DOC));
+            assertTrue(false);
+        } catch (IOException e) {
+        }
+        assertTrue(f.getPooledParser() == null);
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        checkDocument(f.createDocument(uri(), new StringReader(DOC)));
+        assertEquals(2, f.created);
+    }
+
+    /**
+     * Checks that a document parsed while another one is being parsed
+     * on the same thread gets its own parser, and that both parsers go
+     * back to the pool, which keeps one of them.
+     */
+    protected void checkNested() throws Exception {
+        final CountingFactory inner = new CountingFactory(parser);
+        inner.setReuseParser(true);
+        final Document[] nested = new Document[1];
+        CountingFactory outer = new CountingFactory(parser) {
+                public void startElement(String uri, String localName,
+                                         String rawName, Attributes attrs)
+                    throws SAXException {
+                    super.startElement(uri, localName, rawName, attrs);
+                    if ("nested".equals(localName)) {
+                        try {
+                            nested[0] = inner.createDocument
+                                (SAXDocumentFactoryTest.this.uri(),
+                                 new StringReader(DOC));
+                        } catch (IOException e) {
+                            throw new SAXException(e);
+                        }
+                    }
+                }
+            };
+        outer.clearPool();
+        outer.setReuseParser(true);
+        checkDocument(outer.createDocument(uri(), new StringReader(DOC)));
+
+        // The outer parse takes the pooled parser, the inner one must
+        // create another one.
+        Document doc =
+            outer.createDocument(uri(), new StringReader(NESTED_DOC));
+        assertEquals(1, outer.created);
+        assertEquals(1, inner.created);
+        checkDocument(nested[0]);
+        Element root = doc.getDocumentElement();
+        assertEquals("nested", root.getFirstChild().getNodeName());
+        assertEquals("item", root.getLastChild().getNodeName());
+
+        checkDocument(inner.createDocument(uri(), new StringReader(DOC)));
+        checkDocument(outer.createDocument(uri(), new StringReader(DOC)));
+        assertEquals(2, outer.created + inner.created);
+    }
+
+    /**
+     * Checks that a DTD which is not an SVG one, and the attribute
+     * defaults it declares, are ignored when the external DTDs are not
+     * loaded, and that a missing DTD is then not an error.
+     */
+    protected void checkForeignDTD() throws Exception {
+        SAXDocumentFactory f = new SAXDocumentFactory
+            (GenericDOMImplementation.getDOMImplementation(), parser);
+        Document doc = f.createDocument(uri(), new StringReader(FOREIGN_DOC));
+        assertEquals("1.2", doc.getDocumentElement().getAttribute("version"));
+
+        f.setLoadExternalDTD(false);
+        doc = f.createDocument(uri(), new StringReader(FOREIGN_DOC));
+        assertTrue(!doc.getDocumentElement().hasAttribute("version"));
+        assertEquals("doc", doc.getDoctype().getName());
+        doc = f.createDocument(uri(), new StringReader(MISSING_DTD_DOC));
+        assertEquals(1, doc.getElementsByTagName("item").getLength());
+
+        f.setLoadExternalDTD(true);
+        try {
+            f.createDocument(uri(), new StringReader(MISSING_DTD_DOC));
+            assertTrue(false);
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Checks that an SVG 1.0 DOCTYPE still declares the SVG and XLink
+     * namespaces when the external DTDs are not loaded.
+     */
+    protected void checkSVGDTD() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        f.setLoadExternalDTD(false);
+        f.setReuseParser(true);
+        for (int i = 0; i < 2; i++) {
+            Document doc = f.createDocument(uri(), new StringReader(SVG_DOC));
+            Element root = doc.getDocumentElement();
+            assertEquals(SVGConstants.SVG_NAMESPACE_URI,
+                         root.getNamespaceURI());
+            Element use = (Element)root.getFirstChild();
+            assertEquals(SVGConstants.SVG_NAMESPACE_URI,
+                         use.getNamespaceURI());
+            assertEquals("#a", use.getAttributeNS
+                         (XMLConstants.XLINK_NAMESPACE_URI, "href"));
+        }
+    }
+
+    protected void checkDocument(Document doc) throws Exception {
+        Element root = doc.getDocumentElement();
+        assertEquals("doc", root.getNodeName());
+        assertEquals(2, root.getElementsByTagName("item").getLength());
+        assertEquals(2, root.getChildNodes().getLength());
+    }
+
+    /**
+     * The URI of the test documents, next to their DTD.
+     */
+    protected String uri() {
+        try {
+            return new File(DIR + "doc.xml").toURL().toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /**
+     * A factory counting the parsers it creates.
+     */
+    protected static class CountingFactory extends SAXDocumentFactory {
+        protected int created;
+
+        public CountingFactory(String parser) {
+            super(GenericDOMImplementation.getDOMImplementation(), parser);
+        }
+
+        protected XMLReader createXMLReader()
+            throws SAXException, IOException {
+            created++;
+            return super.createXMLReader();
+        }
+
+        /**
+         * Drops the parsers kept for the current thread by the earlier
+         * tests.
+         */
+        public void clearPool() {
+            ((Map)parserPool.get()).clear();
+        }
+
+        /**
+         * Returns the parser kept for the current thread.
+         */
+        public XMLReader getPooledParser() {
+            String key = (parserClassName == null) ? "" : parserClassName;
+            return (XMLReader)((Map)parserPool.get()).get(key);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.CompositeContext;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the INT_PACK contexts of SVGComposite, which skip or
+ * copy long runs of fully transparent or opaque source pixels,
+ * composite like they do one column at a time, where no run is long
+ * enough to be skipped.
+ *
+ * @version $Id$
+ */
+public class SVGCompositeTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "SVGCompositeTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_CASE
+        = "SVGCompositeTest.entry.key.case";
+
+    public static final int WIDTH  = 150;
+    public static final int HEIGHT = 20;
+
+    public static final CompositeRule [] RULES = {
+        CompositeRule.OVER, CompositeRule.IN, CompositeRule.OUT,
+        CompositeRule.ATOP, CompositeRule.XOR, CompositeRule.MULTIPLY,
+        CompositeRule.SCREEN, CompositeRule.DARKEN, CompositeRule.LIGHTEN,
+        CompositeRule.ARITHMETIC(0.5f, 0.25f, 0.5f, 0.1f)
+    };
+
+    public TestReport runImpl() throws Exception {
+        Random rand = new Random(11);
+        int [] dst = new int[WIDTH*HEIGHT];
+        for (int i=0; i<dst.length; i++)
+            dst[i] = randomPremultiplied(rand);
+
+        for (int k=0; k<2; k++) {
+            boolean premultiplied = (k == 0);
+            ColorModel srcCM = (premultiplied
+                                ? GraphicsUtil.sRGB_Pre
+                                : GraphicsUtil.sRGB_Unpre);
+            int [] src = createSource(rand, premultiplied);
+            for (int i=0; i<RULES.length; i++) {
+                for (int j=0; j<2; j++) {
+                    boolean inPlace = (j == 0);
+                    int [] p1 = compose(RULES[i], srcCM, src, dst,
+                                        inPlace, false);
+                    int [] p2 = compose(RULES[i], srcCM, src, dst,
+                                        inPlace, true);
+                    if (!Arrays.equals(p1, p2)) {
+                        TestReport report = reportError(ERROR_DIFFERENT_PIXELS);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_CASE,
+                             RULES[i] + " premultiplied=" + premultiplied +
+                             " inPlace=" + inPlace);
+                        return report;
+                    }
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns source pixels made of runs, of various lengths, of
+     * transparent, opaque and translucent pixels.
+     */
+    protected int [] createSource(Random rand, boolean premultiplied) {
+        int [] src = new int[WIDTH*HEIGHT];
+        int i = 0;
+        while (i < src.length) {
+            int end = Math.min(src.length, i + 1 + rand.nextInt(40));
+            int kind = rand.nextInt(3);
+            for (; i<end; i++) {
+                switch (kind) {
+                case 0:
+                    src[i] = 0;
+                    break;
+                case 1:
+                    src[i] = 0xFF000000 | rand.nextInt(0x1000000);
+                    break;
+                default:
+                    src[i] = (premultiplied
+                              ? randomPremultiplied(rand)
+                              : rand.nextInt());
+                }
+            }
+        }
+        return src;
+    }
+
+    protected int randomPremultiplied(Random rand) {
+        int a = rand.nextInt(256);
+        return ((a << 24) |
+                (rand.nextInt(a+1) << 16) |
+                (rand.nextInt(a+1) <<  8) |
+                rand.nextInt(a+1));
+    }
+
+    /**
+     * Composites the given pixels, either at once or one column at a
+     * time, and returns the result.
+     */
+    protected int [] compose(CompositeRule rule, ColorModel srcCM,
+                             int [] src, int [] dst,
+                             boolean inPlace, boolean byColumn) {
+        ColorModel dstCM = GraphicsUtil.sRGB_Pre;
+        CompositeContext cc =
+            new SVGComposite(rule).createContext(srcCM, dstCM, null);
+
+        WritableRaster srcWR = createRaster(srcCM, src);
+        WritableRaster dstIn = createRaster(dstCM, dst);
+        WritableRaster dstOut = dstIn;
+        if (!inPlace)
+            dstOut = dstCM.createCompatibleWritableRaster(WIDTH, HEIGHT);
+
+        if (byColumn) {
+            for (int x=0; x<WIDTH; x++) {
+                cc.compose
+                    (srcWR.createWritableChild(x, 0, 1, HEIGHT, x, 0, null),
+                     dstIn.createWritableChild(x, 0, 1, HEIGHT, x, 0, null),
+                     dstOut.createWritableChild(x, 0, 1, HEIGHT, x, 0, null));
+            }
+        } else {
+            cc.compose(srcWR, dstIn, dstOut);
+        }
+        cc.dispose();
+        return ((DataBufferInt)dstOut.getDataBuffer()).getData();
+    }
+
+    protected WritableRaster createRaster(ColorModel cm, int [] pixels) {
+        WritableRaster wr = cm.createCompatibleWritableRaster(WIDTH, HEIGHT);
+        int [] data = ((DataBufferInt)wr.getDataBuffer()).getData();
+        System.arraycopy(pixels, 0, data, 0, pixels.length);
+        return wr;
+    }
+}
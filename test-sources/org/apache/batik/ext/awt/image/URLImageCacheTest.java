@@ -0,0 +1,239 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.image.BufferedImage;
+
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks the budgeted mode of URLImageCache: the least recently used
+ * images are evicted to stay within the budget, pending requests are
+ * never evicted, threads requesting an image another thread is loading
+ * wait until it is put or cleared, and the counters follow.
+ *
+ * @version $Id$
+ */
+public class URLImageCacheTest extends AbstractTest {
+
+    /**
+     * The cost of a SIZE x SIZE image.
+     */
+    public static final int SIZE = 10;
+    public static final long COST = SIZE * SIZE * 4;
+
+    /**
+     * How long to let a thread run before checking it is waiting, in
+     * milliseconds.
+     */
+    public static final long WAIT_TIME = 200;
+
+    public boolean runImplBasic() throws Exception {
+        checkEviction();
+        checkPending();
+        checkWaiters();
+        return true;
+    }
+
+    /**
+     * Fills a single stripe cache holding three images and checks the
+     * least recently used one goes when a fourth one is put.
+     */
+    protected void checkEviction() throws Exception {
+        URLImageCache cache = new URLImageCache(3 * COST, 1);
+        assertEquals(new Long(3 * COST), new Long(cache.getBudget()));
+
+        load(cache, "a", SIZE);
+        load(cache, "b", SIZE);
+        load(cache, "c", SIZE);
+        assertEquals(new Long(3 * COST), new Long(cache.getUsedBytes()));
+        assertEquals(new Long(0), new Long(cache.getEvictionCount()));
+
+        // "a" becomes the most recently used, "b" the least.
+        assertTrue(cache.request(url("a")) != null);
+        load(cache, "d", SIZE);
+        assertTrue(!cache.isPresent(url("b")));
+        assertTrue(cache.isDone(url("a")));
+        assertTrue(cache.isDone(url("c")));
+        assertTrue(cache.isDone(url("d")));
+        assertEquals(new Long(1), new Long(cache.getEvictionCount()));
+        assertEquals(new Long(3 * COST), new Long(cache.getUsedBytes()));
+
+        assertEquals(new Long(4), new Long(cache.getMissCount()));
+        assertEquals(new Long(1), new Long(cache.getHitCount()));
+        assertEquals(new Long(4), new Long(cache.getDecodeCount()));
+        assertTrue(cache.getDecodeTime() >= 0);
+
+        // An image larger than the budget pushes all the others out,
+        // but stays until the next one.
+        load(cache, "big", 2 * SIZE);
+        assertTrue(cache.isDone(url("big")));
+        assertTrue(!cache.isPresent(url("a")));
+        assertTrue(!cache.isPresent(url("c")));
+        assertTrue(!cache.isPresent(url("d")));
+        assertEquals(new Long(4), new Long(cache.getEvictionCount()));
+        assertEquals(new Long(4 * COST), new Long(cache.getUsedBytes()));
+
+        load(cache, "e", SIZE);
+        assertTrue(!cache.isPresent(url("big")));
+        assertEquals(new Long(COST), new Long(cache.getUsedBytes()));
+
+        cache.clear(url("e"));
+        assertEquals(new Long(0), new Long(cache.getUsedBytes()));
+
+        cache.resetStatistics();
+        assertEquals(new Long(0), new Long(cache.getHitCount()));
+        assertEquals(new Long(0), new Long(cache.getMissCount()));
+        assertEquals(new Long(0), new Long(cache.getEvictionCount()));
+        assertEquals(new Long(0), new Long(cache.getDecodeCount()));
+        assertEquals(new Long(0), new Long(cache.getDecodeTime()));
+    }
+
+    /**
+     * Checks that a pending request survives the eviction of the other
+     * entries, and that putting no image clears it.
+     */
+    protected void checkPending() throws Exception {
+        URLImageCache cache = new URLImageCache(2 * COST, 1);
+        assertTrue(cache.request(url("pending")) == null);
+        load(cache, "a", SIZE);
+        load(cache, "big", 2 * SIZE);
+        assertTrue(cache.isPresent(url("pending")));
+        assertTrue(!cache.isDone(url("pending")));
+        assertTrue(!cache.isPresent(url("a")));
+
+        cache.put(url("pending"), null);
+        assertTrue(!cache.isPresent(url("pending")));
+        assertEquals(new Long(2), new Long(cache.getDecodeCount()));
+    }
+
+    /**
+     * Checks that the threads requesting an image being loaded wait
+     * for it, and are woken by put, clear and flush.
+     */
+    protected void checkWaiters() throws Exception {
+        URLImageCache cache = new URLImageCache(10 * COST);
+
+        // Woken by put, with the image.
+        assertTrue(cache.request(url("a")) == null);
+        Requester[] rs = startRequesters(cache, "a", 2);
+        Filter filt = createImage(SIZE);
+        cache.put(url("a"), filt);
+        for (int i = 0; i < rs.length; i++) {
+            rs[i].join(10000);
+            assertTrue(!rs[i].isAlive());
+            assertTrue(rs[i].result == filt);
+        }
+        assertEquals(new Long(2), new Long(cache.getHitCount()));
+        assertEquals(new Long(1), new Long(cache.getMissCount()));
+
+        // Woken by clear, without: the first one woken is then on
+        // the hook, and the other one waits for it.
+        assertTrue(cache.request(url("b")) == null);
+        rs = startRequesters(cache, "b", 2);
+        cache.clear(url("b"));
+        Requester first = null;
+        Requester second = null;
+        long end = System.currentTimeMillis() + 10000;
+        while (first == null && System.currentTimeMillis() < end) {
+            for (int i = 0; i < rs.length; i++) {
+                if (!rs[i].isAlive()) {
+                    first = rs[i];
+                    second = rs[1 - i];
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertTrue(first != null);
+        assertTrue(first.result == null);
+        Thread.sleep(WAIT_TIME);
+        assertTrue(second.isAlive());
+        cache.put(url("b"), filt);
+        second.join(10000);
+        assertTrue(!second.isAlive());
+        assertTrue(second.result == filt);
+
+        // Woken by flush.
+        assertTrue(cache.request(url("c")) == null);
+        rs = startRequesters(cache, "c", 1);
+        cache.flush();
+        rs[0].join(10000);
+        assertTrue(!rs[0].isAlive());
+        assertTrue(rs[0].result == null);
+        assertEquals(new Long(0), new Long(cache.getUsedBytes()));
+    }
+
+    /**
+     * Starts threads requesting the given image and checks they wait.
+     */
+    protected Requester[] startRequesters(URLImageCache cache,
+                                          String name, int n)
+            throws Exception {
+        Requester[] rs = new Requester[n];
+        for (int i = 0; i < n; i++) {
+            rs[i] = new Requester(cache, url(name));
+            rs[i].start();
+        }
+        Thread.sleep(WAIT_TIME);
+        for (int i = 0; i < n; i++) {
+            assertTrue(rs[i].isAlive());
+        }
+        return rs;
+    }
+
+    /**
+     * Requests and puts an image of the given size.
+     */
+    protected void load(URLImageCache cache, String name, int size)
+            throws Exception {
+        assertTrue(cache.request(url(name)) == null);
+        cache.put(url(name), createImage(size));
+    }
+
+    protected Filter createImage(int size) {
+        BufferedImage bi =
+            new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        return new RedRable(GraphicsUtil.wrap(bi));
+    }
+
+    protected ParsedURL url(String name) {
+        return new ParsedURL("http://example.org/" + name + ".png");
+    }
+
+    /**
+     * A thread requesting an image.
+     */
+    protected static class Requester extends Thread {
+        protected URLImageCache cache;
+        protected ParsedURL purl;
+        protected Filter result;
+
+        public Requester(URLImageCache cache, ParsedURL purl) {
+            this.cache = cache;
+            this.purl = purl;
+        }
+
+        public void run() {
+            result = cache.request(purl);
+        }
+    }
+}
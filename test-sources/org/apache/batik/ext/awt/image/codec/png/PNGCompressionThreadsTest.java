@@ -0,0 +1,184 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the image data written with several compression
+ * threads decodes to the same samples as the data written with a
+ * single thread, for RGB, gray, palette and 16 bit images large
+ * enough to be split in several bands.  Also checks the messages of
+ * the compression parameters.
+ *
+ * @version $Id$
+ */
+public class PNGCompressionThreadsTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_SAMPLES
+        = "PNGCompressionThreadsTest.error.different.samples";
+
+    public static final String ERROR_NO_MESSAGE
+        = "PNGCompressionThreadsTest.error.no.message";
+
+    public static final String ENTRY_KEY_IMAGE_TYPE
+        = "PNGCompressionThreadsTest.entry.key.image.type";
+
+    public static final String ENTRY_KEY_THREADS
+        = "PNGCompressionThreadsTest.entry.key.threads";
+
+    public static final int WIDTH = 600;
+    public static final int HEIGHT = 1500;
+    public static final int THREADS = 4;
+
+    public TestReport runImpl() throws Exception {
+        String[] names = { "RGB", "ARGB", "gray", "palette", "gray16" };
+        BufferedImage[] images = {
+            createImage(BufferedImage.TYPE_INT_RGB),
+            createImage(BufferedImage.TYPE_INT_ARGB),
+            createImage(BufferedImage.TYPE_BYTE_GRAY),
+            createPaletteImage(),
+            createImage(BufferedImage.TYPE_USHORT_GRAY)
+        };
+        for (int i = 0; i < images.length; i++) {
+            Raster serial = decode(encode(images[i], 1));
+            if (!sameSamples(images[i].getRaster(), serial)) {
+                return reportDifference(names[i], 1);
+            }
+            Raster concurrent = decode(encode(images[i], THREADS));
+            if (!sameSamples(serial, concurrent)) {
+                return reportDifference(names[i], THREADS);
+            }
+        }
+
+        PNGEncodeParam param = new PNGEncodeParam.RGB();
+        try {
+            param.setCompressionThreads(0);
+            return reportError(ERROR_NO_MESSAGE);
+        } catch (IllegalArgumentException e) {
+            if ("PNGEncodeParam27".equals(e.getMessage())) {
+                return reportError(ERROR_NO_MESSAGE);
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected TestReport reportDifference(String type, int threads) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_DIFFERENT_SAMPLES);
+        report.addDescriptionEntry(ENTRY_KEY_IMAGE_TYPE, type);
+        report.addDescriptionEntry(ENTRY_KEY_THREADS, "" + threads);
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * Creates an image of the given type holding noise over gradients,
+     * so that the rows use several filter types.
+     */
+    protected BufferedImage createImage(int type) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        fill(image.getRaster());
+        return image;
+    }
+
+    protected BufferedImage createPaletteImage() {
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte)i;
+            g[i] = (byte)(255 - i);
+            b[i] = (byte)(i * 7);
+        }
+        IndexColorModel cm = new IndexColorModel(8, 256, r, g, b);
+        BufferedImage image = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, cm);
+        fill(image.getRaster());
+        return image;
+    }
+
+    protected void fill(WritableRaster wr) {
+        Random rand = new Random(42);
+        int nBands = wr.getNumBands();
+        int max = (1 << wr.getSampleModel().getSampleSize(0)) - 1;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int b = 0; b < nBands; b++) {
+                    int v;
+                    if (y < HEIGHT / 3) {
+                        v = (x + y * (b + 1)) * max / (WIDTH + 3 * HEIGHT);
+                    } else if (y < 2 * HEIGHT / 3) {
+                        v = rand.nextInt(max + 1);
+                    } else {
+                        v = ((x / 16 + y / 16) % 2 == 0) ? max : b;
+                    }
+                    wr.setSample(x, y, b, v);
+                }
+            }
+        }
+    }
+
+    protected byte[] encode(RenderedImage image, int threads)
+        throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setCompressionThreads(threads);
+        new PNGImageEncoder(bos, param).encode(image);
+        bos.close();
+        return bos.toByteArray();
+    }
+
+    protected Raster decode(byte[] data) throws Exception {
+        PNGImageDecoder decoder = new PNGImageDecoder
+            (new ByteArrayInputStream(data), new PNGDecodeParam());
+        return decoder.decodeAsRenderedImage(0).getData();
+    }
+
+    protected boolean sameSamples(Raster r1, Raster r2) {
+        if (r1.getWidth() != r2.getWidth() ||
+            r1.getHeight() != r2.getHeight() ||
+            r1.getNumBands() != r2.getNumBands()) {
+            return false;
+        }
+        int w = r1.getWidth();
+        int[] row1 = null;
+        int[] row2 = null;
+        for (int y = 0; y < r1.getHeight(); y++) {
+            row1 = r1.getPixels(r1.getMinX(), r1.getMinY() + y, w, 1, row1);
+            row2 = r2.getPixels(r2.getMinX(), r2.getMinY() + y, w, 1, row2);
+            for (int i = 0; i < row1.length; i++) {
+                if (row1[i] != row2[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
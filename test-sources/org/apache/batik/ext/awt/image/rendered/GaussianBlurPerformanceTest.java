@@ -0,0 +1,83 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares the box blur approximation of GaussianBlurRed8Bit (the
+ * operation) with its convolution path (the reference, used for small
+ * standard deviations or when quality rendering is requested) on a
+ * drop shadow like image.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurPerformanceTest extends PerformanceTest {
+
+    protected double stdDeviation = 4;
+
+    protected CachableRed src;
+
+    protected RenderingHints quality =
+        new RenderingHints(RenderingHints.KEY_RENDERING,
+                           RenderingHints.VALUE_RENDER_QUALITY);
+
+    public GaussianBlurPerformanceTest() {
+        BufferedImage bi = new BufferedImage
+            (512, 512, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        g.setColor(new Color(0, 0, 0, 128));
+        g.fillRoundRect(96, 96, 320, 320, 40, 40);
+        g.dispose();
+        src = GraphicsUtil.wrap(bi);
+    }
+
+    public void setStdDeviation(double stdDeviation) {
+        this.stdDeviation = stdDeviation;
+    }
+
+    public double getStdDeviation() {
+        return stdDeviation;
+    }
+
+    protected void blur(RenderingHints rh) {
+        GaussianBlurRed8Bit gb =
+            new GaussianBlurRed8Bit(src, stdDeviation, rh);
+        Rectangle r = gb.getBounds();
+        WritableRaster wr = gb.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height);
+        gb.copyData(wr.createWritableTranslatedChild(r.x, r.y));
+    }
+
+    public void runRef() {
+        blur(quality);
+    }
+
+    public void runOp() {
+        blur(null);
+    }
+}
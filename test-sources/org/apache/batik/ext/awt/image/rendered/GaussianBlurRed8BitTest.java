@@ -0,0 +1,215 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks the pixels of GaussianBlurRed8Bit, for both the convolution
+ * and the box blur paths, against checksums of the pixels generated
+ * before the vertical box passes were done a row at a time, when the
+ * image is requested at once, tile by tile and in an area which is not
+ * aligned on the tiles (the box blur is an approximation which depends
+ * on the area requested).  Checks too that splitting a request between
+ * threads does not change its pixels.  The last case blurs a blur,
+ * which cannot use the scratch memory of the thread while its source
+ * does.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurRed8BitTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_CHECKSUM
+        = "GaussianBlurRed8BitTest.error.different.checksum";
+
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "GaussianBlurRed8BitTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_CASE
+        = "GaussianBlurRed8BitTest.entry.key.case";
+
+    public static final String ENTRY_KEY_REQUEST
+        = "GaussianBlurRed8BitTest.entry.key.request";
+
+    /**
+     * The standard deviations (x, y) of the blurs.  The first one uses
+     * the convolution path, the others the box blur with even and odd
+     * box sizes, and the last one both paths.  A negative value stands
+     * for a blur of a blur of standard deviation 3.
+     */
+    public static final double [][] STD_DEVS = {
+        { 1.5, 1.5 }, { 3, 3 }, { 2.5, 7 }, { 8, 0.7 }, { -2.5, -2.5 }
+    };
+
+    /**
+     * The CRC32 checksums of the pixels generated by the previous
+     * implementation, for each standard deviation, when the whole
+     * image, each tile and an area are requested.
+     */
+    public static final long [][] CHECKSUMS = {
+        { 0x72953f99L, 0x72953f99L, 0x19f905a8L },
+        { 0xd73ddf21L, 0x3e45be3bL, 0x2b531f97L },
+        { 0xc8df9eb1L, 0x5b77d6cfL, 0xe1eb71e2L },
+        { 0xd3913406L, 0xa138a32cL, 0xe9dca7c7L },
+        { 0xf12a022bL, 0x41969e0cL, 0x10eb0966L }
+    };
+
+    public static final String [] REQUESTS = { "whole", "tiles", "area" };
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool serial   = new WorkerPool(0, "GaussianBlurRed8BitTest");
+        WorkerPool parallel = new WorkerPool(3, "GaussianBlurRed8BitTest");
+        try {
+            for (int i=0; i<STD_DEVS.length; i++) {
+                String name = STD_DEVS[i][0] + "x" + STD_DEVS[i][1];
+
+                WorkerPool.setDefault(serial);
+                Rectangle r = createBlur(STD_DEVS[i]).getBounds();
+                Rectangle part = new Rectangle
+                    (r.x+37, r.y+51, r.width-80, r.height-120);
+                int [][] pixels = {
+                    getPixels(createBlur(STD_DEVS[i]), r),
+                    getPixelsByTile(createBlur(STD_DEVS[i])),
+                    getPixels(createBlur(STD_DEVS[i]), part)
+                };
+                for (int j=0; j<pixels.length; j++) {
+                    if (checksum(pixels[j]) != CHECKSUMS[i][j]) {
+                        TestReport report =
+                            reportError(ERROR_DIFFERENT_CHECKSUM);
+                        report.addDescriptionEntry(ENTRY_KEY_CASE, name);
+                        report.addDescriptionEntry(ENTRY_KEY_REQUEST,
+                                                   REQUESTS[j]);
+                        return report;
+                    }
+                }
+
+                WorkerPool.setDefault(parallel);
+                if (!Arrays.equals(pixels[0],
+                                   getPixels(createBlur(STD_DEVS[i]), r)))
+                    return reportDifference(name, REQUESTS[0]);
+                if (!Arrays.equals(pixels[2],
+                                   getPixels(createBlur(STD_DEVS[i]), part)))
+                    return reportDifference(name, REQUESTS[2]);
+            }
+        } finally {
+            WorkerPool.setDefault(null);
+            serial.dispose();
+            parallel.dispose();
+        }
+        return reportSuccess();
+    }
+
+    protected TestReport reportDifference(String name, String request) {
+        TestReport report = reportError(ERROR_DIFFERENT_PIXELS);
+        report.addDescriptionEntry(ENTRY_KEY_CASE, name);
+        report.addDescriptionEntry(ENTRY_KEY_REQUEST, request);
+        return report;
+    }
+
+    /**
+     * Creates a blur of a new source, so that no tile is cached.
+     */
+    protected CachableRed createBlur(double [] stdDev) {
+        if (stdDev[0] < 0) {
+            CachableRed src =
+                new GaussianBlurRed8Bit(createSource(), 3, 3, null);
+            return new GaussianBlurRed8Bit(src, -stdDev[0], -stdDev[1], null);
+        }
+        return new GaussianBlurRed8Bit(createSource(), stdDev[0], stdDev[1],
+                                       null);
+    }
+
+    /**
+     * Creates a 520x400 source split in 128x96 tiles, made of blocks
+     * of transparent, half transparent and opaque noise.
+     */
+    protected CachableRed createSource() {
+        int w = 520;
+        int h = 400;
+        BufferedImage bi = new BufferedImage
+            (w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        int [] pixels =
+            ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+        Random rand = new Random(17);
+        for (int y=0; y<h; y++) {
+            for (int x=0; x<w; x++) {
+                int block = ((x/40)+(y/30))%3;
+                int a = (block == 0) ? 0 : ((block == 1) ? 128 : 255);
+                int r = rand.nextInt(a+1);
+                int g = rand.nextInt(a+1);
+                int b = (x*a)/w;
+                pixels[y*w+x] = (a<<24)|(r<<16)|(g<<8)|b;
+            }
+        }
+        return new TileCacheRed(GraphicsUtil.wrap(bi), 128, 96);
+    }
+
+    protected int [] getPixels(CachableRed cr, Rectangle r) {
+        WritableRaster wr = cr.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height);
+        cr.copyData(wr.createWritableTranslatedChild(r.x, r.y));
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the pixels of the image, requested one tile at a time.
+     */
+    protected int [] getPixelsByTile(CachableRed cr) {
+        Rectangle r = cr.getBounds();
+        int [] ret = new int[r.width*r.height];
+        int tx0 = cr.getMinTileX();
+        int ty0 = cr.getMinTileY();
+        for (int ty=ty0; ty<ty0+cr.getNumYTiles(); ty++) {
+            for (int tx=tx0; tx<tx0+cr.getNumXTiles(); tx++) {
+                Raster tile = cr.getTile(tx, ty);
+                Rectangle tr = tile.getBounds().intersection(r);
+                for (int y=tr.y; y<tr.y+tr.height; y++) {
+                    int [] row = (int [])tile.getDataElements
+                        (tr.x, y, tr.width, 1, null);
+                    System.arraycopy(row, 0, ret,
+                                     (y-r.y)*r.width+(tr.x-r.x), tr.width);
+                }
+            }
+        }
+        return ret;
+    }
+
+    protected long checksum(int [] pixels) {
+        CRC32 crc = new CRC32();
+        for (int i=0; i<pixels.length; i++) {
+            int v = pixels[i];
+            crc.update(v>>>24);
+            crc.update(v>>16);
+            crc.update(v>>8);
+            crc.update(v);
+        }
+        return crc.getValue();
+    }
+}
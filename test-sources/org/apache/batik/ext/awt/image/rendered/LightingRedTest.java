@@ -0,0 +1,111 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.apache.batik.ext.awt.image.DistantLight;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.Light;
+import org.apache.batik.ext.awt.image.PointLight;
+import org.apache.batik.ext.awt.image.SpotLight;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks that DiffuseLightingRed and SpecularLightingRed generate the
+ * same pixels whether a request is split between threads or not, for
+ * each kind of light, on a region which overflows the bump map.
+ *
+ * @version $Id$
+ */
+public class LightingRedTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "LightingRedTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_CASE
+        = "LightingRedTest.entry.key.case";
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool serial   = new WorkerPool(0, "LightingRedTest");
+        WorkerPool parallel = new WorkerPool(3, "LightingRedTest");
+
+        BufferedImage bi = new BufferedImage
+            (200, 180, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        g.setColor(Color.black);
+        g.fillOval(20, 20, 150, 120);
+        g.setColor(new Color(0, 0, 0, 100));
+        g.fillRect(100, 60, 90, 110);
+        g.dispose();
+        BumpMap bumpMap = new BumpMap(GraphicsUtil.wrap(bi), 2.5, 1, 1);
+
+        Light [] lights = {
+            new DistantLight(45, 60, Color.orange),
+            new PointLight(100, 80, 50, Color.white),
+            new SpotLight(120, 40, 90, 100, 100, 0, 3, 30, Color.cyan)
+        };
+        Rectangle r = new Rectangle(-5, -7, 190, 200);
+
+        try {
+            for (int i=0; i<lights.length; i++) {
+                for (int k=0; k<2; k++) {
+                    boolean diffuse = (k == 0);
+                    int [] p1 = light(serial,   diffuse, lights[i], bumpMap, r);
+                    int [] p2 = light(parallel, diffuse, lights[i], bumpMap, r);
+                    if (!Arrays.equals(p1, p2)) {
+                        TestReport report = reportError(ERROR_DIFFERENT_PIXELS);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_CASE,
+                             (diffuse ? "diffuse " : "specular ") +
+                             lights[i].getClass().getName());
+                        return report;
+                    }
+                }
+            }
+        } finally {
+            WorkerPool.setDefault(null);
+            serial.dispose();
+            parallel.dispose();
+        }
+        return reportSuccess();
+    }
+
+    protected int [] light(WorkerPool pool, boolean diffuse, Light light,
+                           BumpMap bumpMap, Rectangle r) {
+        WorkerPool.setDefault(pool);
+        CachableRed cr;
+        if (diffuse)
+            cr = new DiffuseLightingRed(1.2, light, bumpMap, r, 1, 1, false);
+        else
+            cr = new SpecularLightingRed(1.1, 7, light, bumpMap, r, 1, 1,
+                                         false);
+        WritableRaster wr = cr.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height);
+        cr.copyData(wr.createWritableTranslatedChild(r.x, r.y));
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+}
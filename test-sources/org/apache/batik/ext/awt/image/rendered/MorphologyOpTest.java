@@ -0,0 +1,146 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks MorphologyOp against a scan of the window of each pixel, for
+ * rasters smaller than, close to and larger than the window, filtered
+ * serially, concurrently and in place.
+ *
+ * @version $Id$
+ */
+public class MorphologyOpTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "MorphologyOpTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_CASE
+        = "MorphologyOpTest.entry.key.case";
+
+    /**
+     * The width, height, radiusX and radiusY of each case.  The last
+     * one is large enough to be split between threads.
+     */
+    public static final int [][] CASES = {
+        {   1,  40,  1,  2 }, {   2,  12,  5,  1 }, {   5,  11,  2,  5 },
+        {  11,   5,  5,  5 }, {  12,  13,  6,  6 }, {  40,   2, 20,  1 },
+        {  57,  31,  2, 20 }, { 157,   1,  6,  6 }, { 160, 140,  3, 11 }
+    };
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool serial   = new WorkerPool(0, "MorphologyOpTest");
+        WorkerPool parallel = new WorkerPool(3, "MorphologyOpTest");
+        ColorModel cm = ColorModel.getRGBdefault();
+        Random rand = new Random(7);
+
+        try {
+            for (int i=0; i<CASES.length; i++) {
+                int w  = CASES[i][0];
+                int h  = CASES[i][1];
+                int rx = CASES[i][2];
+                int ry = CASES[i][3];
+                for (int k=0; k<2; k++) {
+                    boolean doDilation = (k == 0);
+                    WritableRaster src
+                        = cm.createCompatibleWritableRaster(w, h);
+                    int [] pixels = getPixels(src);
+                    for (int p=0; p<pixels.length; p++)
+                        pixels[p] = rand.nextInt();
+                    int [] ref = scan(pixels, w, h, rx, ry, doDilation);
+                    MorphologyOp op = new MorphologyOp(rx, ry, doDilation);
+
+                    WorkerPool.setDefault(serial);
+                    boolean same = Arrays.equals
+                        (ref, getPixels(op.filter(src, null)));
+
+                    WorkerPool.setDefault(parallel);
+                    same = same && Arrays.equals
+                        (ref, getPixels(op.filter(src, null)));
+
+                    // In place, in a translated child of a larger
+                    // raster.
+                    WritableRaster parent
+                        = cm.createCompatibleWritableRaster(w+3, h+5);
+                    WritableRaster child = parent.createWritableChild
+                        (2, 3, w, h, -10, 20, null);
+                    child.setDataElements(-10, 20, src);
+                    op.filter(child, child);
+                    int [] res = new int[w*h];
+                    child.getDataElements(-10, 20, w, h, res);
+                    same = same && Arrays.equals(ref, res);
+
+                    if (!same) {
+                        TestReport report
+                            = reportError(ERROR_DIFFERENT_PIXELS);
+                        report.addDescriptionEntry
+                            (ENTRY_KEY_CASE,
+                             w + "x" + h + " radiusX=" + rx +
+                             " radiusY=" + ry +
+                             " doDilation=" + doDilation);
+                        return report;
+                    }
+                }
+            }
+        } finally {
+            WorkerPool.setDefault(null);
+            serial.dispose();
+            parallel.dispose();
+        }
+        return reportSuccess();
+    }
+
+    protected int [] getPixels(WritableRaster wr) {
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the max (or min) of the window of each pixel, clipped to
+     * the raster.
+     */
+    protected int [] scan(int [] pixels, int w, int h, int rx, int ry,
+                          boolean doDilation) {
+        int [] res = new int[w*h];
+        for (int y=0; y<h; y++) {
+            for (int x=0; x<w; x++) {
+                int v = 0;
+                for (int shift=0; shift<32; shift+=8) {
+                    int m = doDilation ? 0 : 0xff;
+                    for (int j=Math.max(0, y-ry); j<=Math.min(h-1, y+ry); j++) {
+                        for (int i=Math.max(0, x-rx); i<=Math.min(w-1, x+rx); i++) {
+                            int c = (pixels[j*w+i]>>>shift) & 0xff;
+                            if (doDilation ? (c > m) : (c < m)) m = c;
+                        }
+                    }
+                    v |= m << shift;
+                }
+                res[y*w+x] = v;
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares MorphologyOp (the operation), whose cost per pixel does not
+ * depend on the radius, with a direct scan of the window of each pixel
+ * (the reference) on a 512x512 image.
+ *
+ * @version $Id$
+ */
+public class MorphologyPerformanceTest extends PerformanceTest {
+
+    protected int radius = 4;
+
+    protected boolean doDilation = true;
+
+    protected BufferedImage src;
+
+    public MorphologyPerformanceTest() {
+        src = new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = src.createGraphics();
+        g.setColor(new Color(0, 0, 128, 128));
+        g.fillRoundRect(96, 96, 320, 320, 40, 40);
+        g.setColor(Color.white);
+        g.fillOval(160, 160, 192, 192);
+        g.dispose();
+    }
+
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public void setDoDilation(boolean doDilation) {
+        this.doDilation = doDilation;
+    }
+
+    public boolean getDoDilation() {
+        return doDilation;
+    }
+
+    /**
+     * Filters the rows then the columns of the image by scanning the
+     * whole window of each pixel.
+     */
+    public void runRef() {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        int [] pixels = ((DataBufferInt)src.getRaster().getDataBuffer()).getData();
+        int [] tmp = new int[w*h];
+        int [] dst = new int[w*h];
+        scan(pixels, tmp, w, h, 1, w);
+        scan(tmp, dst, h, w, w, 1);
+    }
+
+    /**
+     * Filters n lines of len pixels.
+     * @param step The distance between two pixels of a line.
+     * @param lineStep The distance between two lines.
+     */
+    protected void scan(int [] src, int [] dst, int len, int n,
+                        int step, int lineStep) {
+        int flip = doDilation ? 0 : 0xff;
+        for (int l=0; l<n; l++) {
+            int off = l*lineStep;
+            for (int i=0; i<len; i++) {
+                int start = Math.max(0, i-radius);
+                int end   = Math.min(len-1, i+radius);
+                int res = 0;
+                for (int shift=0; shift<32; shift+=8) {
+                    int m = 0;
+                    for (int j=start; j<=end; j++) {
+                        int v = ((src[off+j*step]>>>shift)&0xff) ^ flip;
+                        if (v > m) m = v;
+                    }
+                    res |= (m ^ flip) << shift;
+                }
+                dst[off+i*step] = res;
+            }
+        }
+    }
+
+    public void runOp() {
+        MorphologyOp op = new MorphologyOp(radius, radius, doDilation);
+        op.filter(src.getRaster(), null);
+    }
+}
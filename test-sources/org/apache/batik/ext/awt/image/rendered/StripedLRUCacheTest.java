@@ -0,0 +1,118 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks the eviction order, the per-stripe budgets and the counters
+ * of StripedLRUCache, and that a tile count given to setSize is
+ * converted to bytes.
+ *
+ * @version $Id$
+ */
+public class StripedLRUCacheTest extends AbstractTest {
+
+    /**
+     * The number of bytes held by each tile used in the test.
+     */
+    protected static final int TILE_BYTES = 1000;
+
+    public boolean runImplBasic() throws Exception {
+        // A single stripe is an exact LRU.
+        StripedLRUCache cache = new StripedLRUCache(3*TILE_BYTES, 1);
+        TileLRUMember a = newTile();
+        TileLRUMember b = newTile();
+        TileLRUMember c = newTile();
+        TileLRUMember d = newTile();
+        cache.add(a);
+        cache.add(b);
+        cache.add(c);
+        assertEquals(3, cache.getUsed());
+        assertTrue(cache.getUsedBytes() == 3*TILE_BYTES);
+        assertTrue(cache.getMissCount() == 3);
+        assertTrue(cache.getHitCount() == 0);
+
+        cache.add(a);   // a becomes the most recently used.
+        cache.add(d);   // b is evicted.
+        assertTrue(cache.getHitCount() == 1);
+        assertTrue(cache.getMissCount() == 4);
+        assertTrue(cache.getEvictionCount() == 1);
+        assertNull(b.lruGet());
+        assertNull(b.hRaster);
+        assertTrue(a.lruGet() != null);
+        assertTrue(c.lruGet() != null);
+        assertTrue(d.lruGet() != null);
+        assertTrue(cache.getUsedBytes() == 3*TILE_BYTES);
+
+        cache.touch(c);
+        TileLRUMember e = newTile();
+        cache.add(e);   // a is evicted, c was touched.
+        assertNull(a.lruGet());
+        assertTrue(c.lruGet() != null);
+
+        cache.remove(c);
+        assertNull(c.lruGet());
+        assertEquals(2, cache.getUsed());
+        assertTrue(cache.getUsedBytes() == 2*TILE_BYTES);
+
+        // An entry larger than the budget is kept on its own.
+        cache.setBudget(TILE_BYTES/2);
+        assertEquals(1, cache.getUsed());
+        assertTrue(e.lruGet() != null);
+
+        cache.resetStatistics();
+        assertTrue(cache.getHitCount() == 0);
+        assertTrue(cache.getMissCount() == 0);
+        assertTrue(cache.getEvictionCount() == 0);
+
+        cache.flush();
+        assertEquals(0, cache.getUsed());
+        assertTrue(cache.getUsedBytes() == 0);
+        assertNull(e.lruGet());
+
+        // Each stripe holds a quarter of the budget, i.e. one tile.
+        int nStripes = 4;
+        cache = new StripedLRUCache(nStripes*TILE_BYTES, nStripes);
+        int nTiles = 40;
+        for (int i=0; i<nTiles; i++) {
+            cache.add(newTile());
+            assertTrue(cache.getUsed() <= nStripes);
+            assertTrue(cache.getUsedBytes() <= nStripes*TILE_BYTES);
+        }
+        assertTrue(cache.getMissCount() == nTiles);
+        assertTrue(cache.getEvictionCount() == nTiles - cache.getUsed());
+
+        // setSize takes a number of tiles, as for LRUCache.
+        cache.setSize(10);
+        assertTrue(cache.getBudget()
+                   == 10*StripedLRUCache.getDefaultTileCost());
+
+        return true;
+    }
+
+    protected TileLRUMember newTile() {
+        Raster ras = Raster.createInterleavedRaster
+            (DataBuffer.TYPE_BYTE, TILE_BYTES/4, 1, 4, null);
+        return new TileLRUMember(ras);
+    }
+}
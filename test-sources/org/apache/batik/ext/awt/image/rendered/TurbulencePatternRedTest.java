@@ -0,0 +1,95 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+/**
+ * Checks that TurbulencePatternRed generates the same pixels whether
+ * a request is split between threads or not, for turbulence and
+ * fractal noise, with and without stitching.
+ *
+ * @version $Id$
+ */
+public class TurbulencePatternRedTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "TurbulencePatternRedTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_CASE
+        = "TurbulencePatternRedTest.entry.key.case";
+
+    public static final int SIZE = 193;
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool serial   = new WorkerPool(0, "TurbulencePatternRedTest");
+        WorkerPool parallel = new WorkerPool(3, "TurbulencePatternRedTest");
+        // Rotated, so that both coordinates change along rows and
+        // columns.
+        AffineTransform txf = AffineTransform.getRotateInstance(0.3);
+        txf.scale(0.7, 0.7);
+        Rectangle2D tile = new Rectangle2D.Double(10, 10, 90, 70);
+
+        try {
+            for (int i=0; i<8; i++) {
+                boolean fractal = (i & 1) != 0;
+                boolean stitch  = (i & 2) != 0;
+                boolean alpha   = (i & 4) != 0;
+                int [] p1 = generate(serial,   fractal, stitch, alpha, txf, tile);
+                int [] p2 = generate(parallel, fractal, stitch, alpha, txf, tile);
+                if (!Arrays.equals(p1, p2)) {
+                    TestReport report = reportError(ERROR_DIFFERENT_PIXELS);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_CASE,
+                         "fractal=" + fractal + " stitch=" + stitch +
+                         " alpha=" + alpha);
+                    return report;
+                }
+            }
+        } finally {
+            WorkerPool.setDefault(null);
+            serial.dispose();
+            parallel.dispose();
+        }
+        return reportSuccess();
+    }
+
+    protected int [] generate(WorkerPool pool, boolean fractal,
+                              boolean stitch, boolean alpha,
+                              AffineTransform txf, Rectangle2D tile) {
+        WorkerPool.setDefault(pool);
+        Rectangle r = new Rectangle(-20, 5, SIZE, SIZE);
+        TurbulencePatternRed red = new TurbulencePatternRed
+            (0.05, 0.03, 4, 7, fractal, stitch ? tile : null, txf, r,
+             ColorSpace.getInstance(ColorSpace.CS_sRGB), alpha);
+        WritableRaster wr = red.getColorModel().createCompatibleWritableRaster
+            (r.width, r.height);
+        red.copyData(wr.createWritableTranslatedChild(r.x, r.y));
+        return ((DataBufferInt)wr.getDataBuffer()).getData();
+    }
+}
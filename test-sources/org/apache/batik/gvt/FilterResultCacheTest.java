@@ -0,0 +1,174 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+import java.util.Arrays;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.GaussianBlurRable8Bit;
+import org.apache.batik.gvt.renderer.DynamicRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a filtered node renders its filter once for paints
+ * whose transforms differ by whole pixels, that the translated result
+ * paints the same pixels as a new rendering, and that changing the
+ * node renders the filter again.  Checks too that the filter is
+ * rendered for every paint whose hints do not ask for the cache, and
+ * that DynamicRenderer does not ask for it by default: like the
+ * transcoders, it renders the filters for every paint unless its
+ * hints are given the cache hint, as JSVGComponent does.
+ *
+ * @version $Id$
+ */
+public class FilterResultCacheTest extends AbstractTest {
+    public static final String ERROR_NOT_REUSED
+        = "FilterResultCacheTest.error.not.reused";
+
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "FilterResultCacheTest.error.different.pixels";
+
+    public static final String ERROR_NOT_INVALIDATED
+        = "FilterResultCacheTest.error.not.invalidated";
+
+    public static final String ERROR_REUSED_WITHOUT_HINT
+        = "FilterResultCacheTest.error.reused.without.hint";
+
+    public static final String ERROR_RENDERER_HINT
+        = "FilterResultCacheTest.error.renderer.hint";
+
+    public static final int SIZE = 64;
+
+    public TestReport runImpl() throws Exception {
+        ShapeNode node = new ShapeNode();
+        CountingBlur blur = createTree(node);
+
+        paint(node.getRoot(), 2, 1, true);
+        BufferedImage cached = paint(node.getRoot(), 7, 3, true);
+        if (blur.count != 1)
+            return reportError(ERROR_NOT_REUSED);
+
+        // The translated result must paint what a new rendering paints.
+        ShapeNode ref = new ShapeNode();
+        CountingBlur refBlur = createTree(ref);
+        BufferedImage fresh = paint(ref.getRoot(), 7, 3, false);
+        if (!samePixels(cached, fresh))
+            return reportError(ERROR_DIFFERENT_PIXELS);
+
+        node.setShape(new Ellipse2D.Double(10, 10, 20, 30));
+        paint(node.getRoot(), 7, 3, true);
+        if (blur.count != 2)
+            return reportError(ERROR_NOT_INVALIDATED);
+
+        // Without the hint, the cache is not used.
+        paint(ref.getRoot(), 7, 3, false);
+        if (refBlur.count != 2)
+            return reportError(ERROR_REUSED_WITHOUT_HINT);
+
+        DynamicRenderer renderer = new DynamicRenderer();
+        if (hasCacheHint(renderer))
+            return reportError(ERROR_RENDERER_HINT);
+        RenderingHints rh = new RenderingHints
+            (RenderingHintsKeyExt.KEY_FILTER_RESULT_CACHE,
+             RenderingHintsKeyExt.VALUE_FILTER_RESULT_CACHE_ON);
+        renderer.setRenderingHints(rh);
+        if (!hasCacheHint(renderer))
+            return reportError(ERROR_RENDERER_HINT);
+
+        return reportSuccess();
+    }
+
+    /**
+     * Puts the given node, blurred, under a new root.
+     * @return the blur, which counts its renderings.
+     */
+    protected CountingBlur createTree(ShapeNode node) {
+        node.setShape(new Ellipse2D.Double(10, 10, 30, 20));
+        FillShapePainter painter = new FillShapePainter(node.getShape());
+        painter.setPaint(Color.blue);
+        node.setShapePainter(painter);
+        CountingBlur blur = new CountingBlur(node.getGraphicsNodeRable(true));
+        node.setFilter(blur);
+
+        RootGraphicsNode root = new RootGraphicsNode();
+        root.getChildren().add(node);
+        return blur;
+    }
+
+    protected boolean hasCacheHint(DynamicRenderer renderer) {
+        return (renderer.getRenderingHints().get
+                (RenderingHintsKeyExt.KEY_FILTER_RESULT_CACHE) ==
+                RenderingHintsKeyExt.VALUE_FILTER_RESULT_CACHE_ON);
+    }
+
+    /**
+     * Paints the given node into a new image.
+     * @param cache whether the hints ask for the filter result cache.
+     */
+    protected BufferedImage paint(GraphicsNode gn, int tx, int ty,
+                                  boolean cache) {
+        BufferedImage bi = new BufferedImage
+            (SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = GraphicsUtil.createGraphics(bi);
+        if (cache) {
+            g2d.setRenderingHint
+                (RenderingHintsKeyExt.KEY_FILTER_RESULT_CACHE,
+                 RenderingHintsKeyExt.VALUE_FILTER_RESULT_CACHE_ON);
+        }
+        g2d.translate(tx, ty);
+        gn.paint(g2d);
+        g2d.dispose();
+        return bi;
+    }
+
+    /**
+     * Compares the pixels of the given images.
+     */
+    protected boolean samePixels(BufferedImage bi1, BufferedImage bi2) {
+        int [] p1 = bi1.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        int [] p2 = bi2.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        return Arrays.equals(p1, p2);
+    }
+
+    /**
+     * A Gaussian blur which counts the renderings it creates.
+     */
+    protected static class CountingBlur extends GaussianBlurRable8Bit {
+        int count;
+
+        public CountingBlur(Filter src) {
+            super(src, 2, 2);
+        }
+
+        public RenderedImage createRendering(RenderContext rc) {
+            count++;
+            return super.createRendering(rc);
+        }
+    }
+}
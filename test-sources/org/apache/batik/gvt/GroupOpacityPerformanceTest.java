@@ -0,0 +1,121 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * Compares the painting of a document made of many groups with an
+ * opacity (the operation), whose offscreens are drawn within the bounds
+ * of their painted pixels, with the same painting when the transcoding
+ * hint turns that off (the reference).  Each group holds a few small
+ * circles spread over a 512x512 canvas, so its offscreen is mostly
+ * transparent.
+ *
+ * @version $Id$
+ */
+public class GroupOpacityPerformanceTest extends PerformanceTest {
+
+    public static final int SIZE = 512;
+
+    protected int groups = 32;
+
+    protected GraphicsNode root;
+
+    protected BufferedImage dst;
+
+    public GroupOpacityPerformanceTest() {
+        dst = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    public void setGroups(int groups) {
+        this.groups = groups;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    /**
+     * Builds the groups, each with four circles at the corners of a
+     * square that shrinks from one group to the next.
+     */
+    protected GraphicsNode createTree() {
+        RootGraphicsNode rgn = new RootGraphicsNode();
+        List children = rgn.getChildren();
+        for (int i=0; i<groups; i++) {
+            CompositeGraphicsNode group = new CompositeGraphicsNode();
+            group.setComposite(AlphaComposite.getInstance
+                               (AlphaComposite.SRC_OVER, .5f));
+            int off = (i*(SIZE/2-24))/groups;
+            int [] pos = { off, SIZE-24-off };
+            for (int j=0; j<4; j++) {
+                ShapeNode node = new ShapeNode();
+                node.setShape(new Ellipse2D.Double
+                              (pos[j&1], pos[j>>1], 24, 24));
+                FillShapePainter painter
+                    = new FillShapePainter(node.getShape());
+                painter.setPaint(new Color(255*(j&1), 128, 255*(j>>1)));
+                node.setShapePainter(painter);
+                group.getChildren().add(node);
+            }
+            children.add(group);
+        }
+        return rgn;
+    }
+
+    /**
+     * Paints the document into the destination.
+     * @param bounds whether the offscreens may be drawn within the bounds
+     *               of their painted pixels.
+     */
+    protected void paint(boolean bounds) {
+        if (root == null) {
+            root = createTree();
+        }
+        Graphics2D g2d = GraphicsUtil.createGraphics(dst);
+        if (!bounds) {
+            g2d.setRenderingHint
+                (RenderingHintsKeyExt.KEY_TRANSCODING,
+                 RenderingHintsKeyExt.VALUE_TRANSCODING_VECTOR);
+        }
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, SIZE, SIZE);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        root.paint(g2d);
+        g2d.dispose();
+    }
+
+    public void runRef() {
+        paint(false);
+    }
+
+    public void runOp() {
+        paint(true);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.gvt.renderer.StaticRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.WorkerPool;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a StaticRenderer given a WorkerPool, which renders the
+ * offscreen in concurrent bands, paints the same pixels as when the
+ * same bands are rendered one after the other.  The reference is not
+ * a rendering of the whole offscreen at once since Java2D rounds
+ * aliased clips differently depending on the origin of the raster.
+ * Each rendering gets its own GVT tree, so that no cached rendering
+ * is shared between them.
+ *
+ * @version $Id$
+ */
+public class ParallelRenderingTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "ParallelRenderingTest.error.different.pixels";
+
+    public static final String ENTRY_KEY_FIRST_DIFFERENCE
+        = "ParallelRenderingTest.entry.key.first.difference";
+
+    public static final int NUM_THREADS = 3;
+
+    /**
+     * The size of the rendered images, large enough for several bands.
+     */
+    public static final int SIZE = 600;
+
+    protected String file;
+
+    public ParallelRenderingTest(String file) {
+        this.file = file;
+    }
+
+    public String getName() {
+        return file;
+    }
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool pool = new WorkerPool(NUM_THREADS, "ParallelRenderingTest");
+        int [] serial, parallel;
+        try {
+            serial   = render(new SerialPool(pool.getParallelism()));
+            parallel = render(pool);
+        } finally {
+            pool.dispose();
+        }
+
+        for (int i = 0; i < serial.length; i++) {
+            if (serial[i] != parallel[i]) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode(ERROR_DIFFERENT_PIXELS);
+                report.addDescriptionEntry
+                    (ENTRY_KEY_FIRST_DIFFERENCE,
+                     "(" + (i % SIZE) + ", " + (i / SIZE) + ")");
+                report.setPassed(false);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Renders the document to a SIZE x SIZE image.
+     * @param pool The pool of the renderer.
+     */
+    protected int [] render(WorkerPool pool) throws Exception {
+        UserAgent ua = new UserAgentAdapter();
+        DocumentLoader loader = new DocumentLoader(ua);
+        BridgeContext ctx = new BridgeContext(ua, loader);
+        try {
+            String uri = new File(file).toURL().toString();
+            Document doc = loader.loadDocument(uri);
+            GraphicsNode gn = new GVTBuilder().build(ctx, doc);
+
+            Rectangle2D bounds = gn.getBounds();
+            double scale = SIZE / Math.max(bounds.getWidth(),
+                                           bounds.getHeight());
+            AffineTransform at = AffineTransform.getScaleInstance
+                (scale, scale);
+            at.translate(-bounds.getX(), -bounds.getY());
+
+            StaticRenderer renderer = new StaticRenderer();
+            renderer.setWorkerPool(pool);
+            renderer.setTree(gn);
+            renderer.setTransform(at);
+            renderer.updateOffScreen(SIZE, SIZE);
+            renderer.repaint(new Rectangle(0, 0, SIZE, SIZE));
+            BufferedImage bi = renderer.getOffScreen();
+            int [] ret = bi.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+            renderer.dispose();
+            return ret;
+        } finally {
+            ctx.dispose();
+        }
+    }
+
+    /**
+     * A pool which runs the tasks of a batch one after the other on
+     * the calling thread, but reports the parallelism of another pool
+     * so that the renderer splits the offscreen in the same bands.
+     */
+    protected static class SerialPool extends WorkerPool {
+        protected int parallelism;
+
+        public SerialPool(int parallelism) {
+            super(0, "SerialPool");
+            this.parallelism = parallelism;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void invokeAll(Runnable [] tasks) {
+            for (int i = 0; i < tasks.length; i++)
+                tasks[i].run();
+        }
+    }
+}
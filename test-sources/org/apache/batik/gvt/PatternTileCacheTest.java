@@ -0,0 +1,170 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.PaintContext;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.HaltingThread;
+
+/**
+ * Checks that pattern paints with equal tile keys share their tiles
+ * through the PatternTileCache when their transforms differ by whole
+ * pixels only, and that the shared tile paints the same pixels.  A tile
+ * rendered by a thread halted meanwhile must not be shared.
+ *
+ * @version $Id$
+ */
+public class PatternTileCacheTest extends AbstractTest {
+    public static final String ERROR_NOT_SHARED
+        = "PatternTileCacheTest.error.not.shared";
+
+    public static final String ERROR_SHARED_SUBPIXEL
+        = "PatternTileCacheTest.error.shared.subpixel";
+
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "PatternTileCacheTest.error.different.pixels";
+
+    public static final String ERROR_HALTED_TILE_SHARED
+        = "PatternTileCacheTest.error.halted.tile.shared";
+
+    public static final int SIZE = 64;
+
+    public TestReport runImpl() throws Exception {
+        PatternTileCache cache = PatternTileCache.getDefaultCache();
+        ColorModel cm = ColorModel.getRGBdefault();
+        RenderingHints hints = new RenderingHints
+            (RenderingHints.KEY_ANTIALIASING,
+             RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle bounds = new Rectangle(0, 0, SIZE, SIZE);
+        Object tileKey = new Object();
+
+        cache.resetCounters();
+        PaintContext pc1 = createPaint(tileKey).createContext
+            (cm, bounds, bounds,
+             AffineTransform.getTranslateInstance(2, 1), hints);
+        PaintContext pc2 = createPaint(tileKey).createContext
+            (cm, bounds, bounds,
+             AffineTransform.getTranslateInstance(7, 3), hints);
+        if (cache.getHitCount() != 1)
+            return reportError(ERROR_NOT_SHARED);
+
+        PaintContext pc3 = createPaint(tileKey).createContext
+            (cm, bounds, bounds,
+             AffineTransform.getTranslateInstance(7.5, 3), hints);
+        if (cache.getHitCount() != 1)
+            return reportError(ERROR_SHARED_SUBPIXEL);
+        pc3.dispose();
+
+        // The shared tile must paint what an unshared one paints.
+        PaintContext ref = createPaint(null).createContext
+            (cm, bounds, bounds,
+             AffineTransform.getTranslateInstance(7, 3), hints);
+        if (!samePixels(pc2.getRaster(0, 0, SIZE, SIZE),
+                        ref.getRaster(0, 0, SIZE, SIZE)))
+            return reportError(ERROR_DIFFERENT_PIXELS);
+        pc1.dispose();
+        pc2.dispose();
+
+        // A tile whose rendering is halted must not be shared.
+        final Object haltedKey = new Object();
+        final PaintContext [] halted = new PaintContext[1];
+        final ColorModel fcm = cm;
+        final Rectangle fbounds = bounds;
+        final RenderingHints fhints = hints;
+        HaltingThread t = new HaltingThread() {
+                public void run() {
+                    halted[0] = createHaltingPaint(haltedKey).createContext
+                        (fcm, fbounds, fbounds,
+                         AffineTransform.getTranslateInstance(7, 3),
+                         fhints);
+                }
+            };
+        t.start();
+        t.join();
+        cache.resetCounters();
+        PaintContext pc4 = createPaint(haltedKey).createContext
+            (cm, bounds, bounds,
+             AffineTransform.getTranslateInstance(7, 3), hints);
+        if (cache.getHitCount() != 0 ||
+            !samePixels(pc4.getRaster(0, 0, SIZE, SIZE),
+                        ref.getRaster(0, 0, SIZE, SIZE)))
+            return reportError(ERROR_HALTED_TILE_SHARED);
+        halted[0].dispose();
+        pc4.dispose();
+        ref.dispose();
+        return reportSuccess();
+    }
+
+    /**
+     * Returns a pattern of circles which halts the current thread while
+     * its tile is rendered.
+     */
+    protected PatternPaint createHaltingPaint(Object tileKey) {
+        ShapeNode node = new ShapeNode() {
+                public void primitivePaint(Graphics2D g2d) {
+                    HaltingThread.haltThread();
+                    super.primitivePaint(g2d);
+                }
+            };
+        node.setShape(new Ellipse2D.Double(1, 1, 9, 9));
+        FillShapePainter painter = new FillShapePainter(node.getShape());
+        painter.setPaint(Color.blue);
+        node.setShapePainter(painter);
+        return new PatternPaint(node,
+                                new Rectangle2D.Double(0, 0, 11, 11),
+                                false,
+                                new AffineTransform(),
+                                tileKey);
+    }
+
+    /**
+     * Returns a pattern of circles, whose tiles are shared with the
+     * paints of the same tile key.
+     */
+    protected PatternPaint createPaint(Object tileKey) {
+        ShapeNode node = new ShapeNode();
+        node.setShape(new Ellipse2D.Double(1, 1, 9, 9));
+        FillShapePainter painter = new FillShapePainter(node.getShape());
+        painter.setPaint(Color.blue);
+        node.setShapePainter(painter);
+        return new PatternPaint(node,
+                                new Rectangle2D.Double(0, 0, 11, 11),
+                                false,
+                                new AffineTransform(),
+                                tileKey);
+    }
+
+    protected boolean samePixels(Raster r1, Raster r2) {
+        int [] p1 = r1.getPixels(0, 0, SIZE, SIZE, (int[])null);
+        int [] p2 = r2.getPixels(0, 0, SIZE, SIZE, (int[])null);
+        return Arrays.equals(p1, p2);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.*;
+
+import org.apache.batik.ext.awt.geom.ExtendedPathIterator;
+import org.apache.batik.ext.awt.geom.ExtendedShape;
+import org.apache.batik.test.*;
+
+/**
+ * Checks that the packed path producer builds the same geometry as
+ * the AWT path producer.
+ *
+ * @version $Id$
+ */
+public class PackedPathProducerTest extends AbstractTest {
+
+    protected String path;
+
+    /**
+     * Creates a new PackedPathProducerTest.
+     * @param path The path to parse.
+     */
+    public PackedPathProducerTest(String path) {
+        this.path = path;
+    }
+
+    public TestReport runImpl() throws Exception {
+        Shape expected = AWTPathProducer.createShape
+            (new StringReader(path), PathIterator.WIND_EVEN_ODD);
+        Shape actual = PackedPathProducer.createShape
+            (new StringReader(path), PathIterator.WIND_EVEN_ODD);
+
+        AffineTransform at = new AffineTransform(1.5, 0.25, -0.5, 2, 3, 4);
+        String[][] results = {
+            { toString(expected.getPathIterator(null)),
+              toString(actual.getPathIterator(null)) },
+            { toString(expected.getPathIterator(at)),
+              toString(actual.getPathIterator(at)) },
+            { toString(((ExtendedShape)expected).getExtendedPathIterator()),
+              toString(((ExtendedShape)actual).getExtendedPathIterator()) },
+            { expected.getBounds2D().toString(),
+              actual.getBounds2D().toString() }
+        };
+        for (int i = 0; i < results.length; i++) {
+            if (!results[i][0].equals(results[i][1])) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode("different.geometry");
+                report.addDescriptionEntry("expected.text", results[i][0]);
+                report.addDescriptionEntry("generated.text", results[i][1]);
+                report.setPassed(false);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected String toString(PathIterator pi) {
+        StringBuffer sb = new StringBuffer();
+        double[] coords = new double[6];
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(coords);
+            sb.append(type);
+            int n = (type == PathIterator.SEG_CLOSE) ? 0 :
+                (type == PathIterator.SEG_QUADTO) ? 4 :
+                (type == PathIterator.SEG_CUBICTO) ? 6 : 2;
+            for (int i = 0; i < n; i++) {
+                sb.append(' ');
+                sb.append(coords[i]);
+            }
+            sb.append(';');
+            pi.next();
+        }
+        sb.append(pi.getWindingRule());
+        return sb.toString();
+    }
+
+    protected String toString(ExtendedPathIterator pi) {
+        StringBuffer sb = new StringBuffer();
+        float[] coords = new float[7];
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(coords);
+            sb.append(type);
+            int n = (type == ExtendedPathIterator.SEG_CLOSE) ? 0 :
+                (type == ExtendedPathIterator.SEG_QUADTO) ? 4 :
+                (type == ExtendedPathIterator.SEG_CUBICTO) ? 6 :
+                (type == ExtendedPathIterator.SEG_ARCTO) ? 7 : 2;
+            for (int i = 0; i < n; i++) {
+                sb.append(' ');
+                sb.append(coords[i]);
+            }
+            sb.append(';');
+            pi.next();
+        }
+        sb.append(pi.getWindingRule());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.script.rhino;
+
+import java.io.StringReader;
+import java.net.URL;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the interpreters of the documents loaded from the same
+ * URL share their compiled scripts, and that a shared script runs
+ * against the global object of each document.
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCacheTest extends AbstractTest {
+    public static final String ERROR_WRONG_RESULT
+        = "CompiledScriptCacheTest.error.wrong.result";
+
+    public static final String ERROR_WRONG_COUNTERS
+        = "CompiledScriptCacheTest.error.wrong.counters";
+
+    public static final String ENTRY_KEY_RESULT
+        = "CompiledScriptCacheTest.entry.key.result";
+
+    public static final String ENTRY_KEY_COUNTERS
+        = "CompiledScriptCacheTest.entry.key.counters";
+
+    /**
+     * A script whose result depends on the global object it runs in.
+     */
+    public static final String SCRIPT
+        = "var n = (typeof n == 'undefined') ? 1 : n + 1; n";
+
+    public TestReport runImpl() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache();
+        URL url = new URL("http://xml.apache.org/batik/test.svg");
+
+        // Two documents from the same URL, one from another
+        String result = evaluate(cache, url, 2)
+            + evaluate(cache, url, 2)
+            + evaluate(cache, new URL("http://xml.apache.org/other.svg"), 1);
+
+        if (!"1.0 2.0 3.0 1.0 2.0 3.0 1.0 2.0 ".equals(result)) {
+            TestReport report = reportError(ERROR_WRONG_RESULT);
+            report.addDescriptionEntry(ENTRY_KEY_RESULT, result);
+            return report;
+        }
+
+        // The script is compiled for each URL and for each way of
+        // evaluating it, as their source names differ.
+        if (cache.getCompileCount() != 4 || cache.getHitCount() != 4) {
+            TestReport report = reportError(ERROR_WRONG_COUNTERS);
+            report.addDescriptionEntry
+                (ENTRY_KEY_COUNTERS,
+                 cache.getCompileCount() + " " + cache.getHitCount());
+            return report;
+        }
+
+        return reportSuccess();
+    }
+
+    /**
+     * Evaluates the script the given number of times from a string,
+     * then once from a reader, in a new interpreter.
+     */
+    protected String evaluate(CompiledScriptCache cache, URL url, int count)
+        throws Exception {
+        RhinoInterpreter interpreter = new RhinoInterpreter(url);
+        interpreter.scriptCache = cache;
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            sb.append(toNumber(interpreter.evaluate(SCRIPT)));
+            sb.append(' ');
+        }
+        Object o = interpreter.evaluate(new StringReader(SCRIPT), "test");
+        sb.append(toNumber(o));
+        sb.append(' ');
+        interpreter.dispose();
+        return sb.toString();
+    }
+
+    private static String toNumber(Object o) {
+        return String.valueOf(((Number)o).doubleValue());
+    }
+}
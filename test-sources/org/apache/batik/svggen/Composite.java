@@ -0,0 +1,65 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+
+/**
+ * This test draws shapes with AlphaComposite rules that read the
+ * background, after shapes drawn with the default SrcOver rule.
+ *
+ * @version $Id$
+ */
+public class Composite implements Painter {
+    public void paint(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Rectangle rect = new Rectangle(10, 40, 100, 50);
+        Ellipse2D circle = new Ellipse2D.Float(60, 20, 80, 80);
+
+        // Background drawn with the default rule
+        g.setPaint(Color.black);
+        g.drawString("SrcIn", 10, 30);
+        g.setPaint(Color.blue);
+        g.fill(rect);
+
+        // Source inside the background
+        g.setComposite(AlphaComposite.SrcIn);
+        g.setPaint(Color.red);
+        g.fill(circle);
+
+        g.translate(0, 120);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setPaint(Color.black);
+        g.drawString("DstIn", 10, 30);
+        g.setPaint(Color.blue);
+        g.fill(rect);
+
+        // Background inside the source
+        g.setComposite(AlphaComposite.DstIn);
+        g.setPaint(Color.red);
+        g.fill(circle);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+
+/**
+ * This test validates that the documents generated with a shared
+ * SVGDefinitionCache reuse its definitions: they are identical when
+ * the definitions are copied into them, and reference the external
+ * definitions otherwise.  Embedded images found in the cache must not
+ * be encoded again.
+ *
+ * @version $Id$
+ */
+public class DefinitionCacheTest extends AbstractTest implements SVGSyntax {
+    public static final String ERROR_DIFFERENT_SVG_OUTPUT
+        = "DefinitionCacheTest.error.different.svg.output";
+
+    public static final String ERROR_DEFINITIONS_NOT_SHARED
+        = "DefinitionCacheTest.error.definitions.not.shared";
+
+    public static final String ERROR_NO_EXTERNAL_REFERENCE
+        = "DefinitionCacheTest.error.no.external.reference";
+
+    public static final String ERROR_IMAGE_ENCODED_AGAIN
+        = "DefinitionCacheTest.error.image.encoded.again";
+
+    public static final String ENTRY_KEY_ENCODE_COUNT
+        = "DefinitionCacheTest.entry.key.encode.count";
+
+    public static final String ENTRY_KEY_FIRST_OUTPUT
+        = "DefinitionCacheTest.entry.key.first.output";
+
+    public static final String ENTRY_KEY_SECOND_OUTPUT
+        = "DefinitionCacheTest.entry.key.second.output";
+
+    public static final String EXTERNAL_URI = "defs.svg";
+
+    public TestReport runImpl() throws Exception {
+        // Generate the same content twice with a shared cache
+        SVGDefinitionCache cache = new SVGDefinitionCache();
+        String first = generate(cache);
+        int size = cache.size();
+        String second = generate(cache);
+
+        if (!first.equals(second)) {
+            TestReport report = reportError(ERROR_DIFFERENT_SVG_OUTPUT);
+            report.addDescriptionEntry(ENTRY_KEY_FIRST_OUTPUT, first);
+            report.addDescriptionEntry(ENTRY_KEY_SECOND_OUTPUT, second);
+            return report;
+        }
+        if (size == 0 || cache.size() != size) {
+            return reportError(ERROR_DEFINITIONS_NOT_SHARED);
+        }
+
+        // With an external cache, the definitions are referenced
+        cache = new SVGDefinitionCache(EXTERNAL_URI);
+        String external = generate(cache);
+        StringWriter defs = new StringWriter();
+        cache.writeDefinitions(defs, false);
+
+        String tag = "<" + SVG_LINEAR_GRADIENT_TAG;
+        if (external.indexOf(tag) != -1
+            || external.indexOf(EXTERNAL_URI + SIGN_POUND) == -1
+            || defs.toString().indexOf(tag) == -1) {
+            TestReport report = reportError(ERROR_NO_EXTERNAL_REFERENCE);
+            report.addDescriptionEntry(ENTRY_KEY_FIRST_OUTPUT, external);
+            report.addDescriptionEntry(ENTRY_KEY_SECOND_OUTPUT,
+                                       defs.toString());
+            return report;
+        }
+
+        // The same image, drawn twice in two documents, is encoded once
+        cache = new SVGDefinitionCache();
+        CountingImageHandler handler = new CountingImageHandler();
+        first = generateImages(cache, handler);
+        second = generateImages(cache, handler);
+        if (handler.count != 1 || !first.equals(second)) {
+            TestReport report = reportError(ERROR_IMAGE_ENCODED_AGAIN);
+            report.addDescriptionEntry(ENTRY_KEY_ENCODE_COUNT,
+                                       new Integer(handler.count));
+            report.addDescriptionEntry(ENTRY_KEY_FIRST_OUTPUT, first);
+            report.addDescriptionEntry(ENTRY_KEY_SECOND_OUTPUT, second);
+            return report;
+        }
+
+        // Without a cache, it is encoded once per document
+        handler = new CountingImageHandler();
+        generateImages(null, handler);
+        if (handler.count != 1) {
+            TestReport report = reportError(ERROR_IMAGE_ENCODED_AGAIN);
+            report.addDescriptionEntry(ENTRY_KEY_ENCODE_COUNT,
+                                       new Integer(handler.count));
+            return report;
+        }
+
+        return reportSuccess();
+    }
+
+    protected String generateImages(SVGDefinitionCache cache,
+                                    CountingImageHandler handler)
+        throws Exception {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        String namespaceURI = SVGConstants.SVG_NAMESPACE_URI;
+        Document domFactory = impl.createDocument(namespaceURI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        ctx.setDefinitionCache(cache);
+        ctx.setGenericImageHandler(handler);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+
+        BufferedImage image
+            = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(Color.red);
+        g.fillRect(0, 0, 10, 10);
+        g.dispose();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.drawImage(image, 50, 50, null);
+
+        StringWriter sw = new StringWriter();
+        g2d.stream(sw, false);
+        return sw.toString();
+    }
+
+    /**
+     * Counts the images it encodes.
+     */
+    protected static class CountingImageHandler
+        extends CachedImageHandlerBase64Encoder {
+        int count;
+
+        public void encodeImage(BufferedImage buf, OutputStream os)
+            throws IOException {
+            count++;
+            super.encodeImage(buf, os);
+        }
+    }
+
+    protected String generate(SVGDefinitionCache cache) throws Exception {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        String namespaceURI = SVGConstants.SVG_NAMESPACE_URI;
+        Document domFactory = impl.createDocument(namespaceURI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        ctx.setDefinitionCache(cache);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        new Gradient().paint(g2d);
+        new Clip().paint(g2d);
+
+        StringWriter sw = new StringWriter();
+        g2d.stream(sw, false);
+        return sw.toString();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that SVGGeneratorContext.doubleString and appendDouble give,
+ * at every precision, the text the DecimalFormat of that precision
+ * gives, as doubleString did before it formatted the numbers itself:
+ * for zero and negative zero, for the decimal and binary ties and the
+ * values next to them, for the values whose scaled value is close to
+ * 1e15, above which DecimalFormat is used, or too large for a long,
+ * and for random values of all magnitudes.
+ *
+ * @version $Id$
+ */
+public class DoubleStringFormatTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_STRING
+        = "DoubleStringFormatTest.error.different.string";
+
+    public static final String ENTRY_KEY_PRECISION
+        = "DoubleStringFormatTest.entry.key.precision";
+
+    public static final String ENTRY_KEY_VALUE
+        = "DoubleStringFormatTest.entry.key.value";
+
+    public static final String ENTRY_KEY_EXPECTED
+        = "DoubleStringFormatTest.entry.key.expected";
+
+    public static final String ENTRY_KEY_ACTUAL
+        = "DoubleStringFormatTest.entry.key.actual";
+
+    /**
+     * The largest precision of SVGGeneratorContext.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * The number of random values checked at each precision.
+     */
+    public static final int RANDOM_VALUES = 20000;
+
+    public TestReport runImpl() throws Exception {
+        Document doc = GenericDOMImplementation.getDOMImplementation()
+            .createDocument(null, "svg", null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(doc);
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols(Locale.US);
+        String pattern = "#";
+        for (int p = 0; p <= MAX_PRECISION; p++) {
+            if (p == 1) {
+                pattern += ".";
+            }
+            if (p > 0) {
+                pattern += "#";
+            }
+            DecimalFormat df = new DecimalFormat(pattern, dfs);
+            ctx.setPrecision(p);
+
+            double[] values = getValues(p);
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < values.length; i++) {
+                double v = values[i];
+                String expected;
+                if (Math.abs(v) >= 10e7 || (int)v == v) {
+                    expected = Integer.toString((int)v);
+                } else {
+                    expected = df.format(v);
+                }
+
+                String actual = ctx.doubleString(v);
+                if (expected.equals(actual)) {
+                    sb.setLength(0);
+                    sb.append('x');
+                    actual = ctx.appendDouble(sb, v).toString();
+                    expected = "x" + expected;
+                }
+                if (!expected.equals(actual)) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode(ERROR_DIFFERENT_STRING);
+                    report.addDescriptionEntry(ENTRY_KEY_PRECISION, "" + p);
+                    report.addDescriptionEntry(ENTRY_KEY_VALUE,
+                                               Double.toString(v));
+                    report.addDescriptionEntry(ENTRY_KEY_EXPECTED, expected);
+                    report.addDescriptionEntry(ENTRY_KEY_ACTUAL, actual);
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the values to check at the given precision, and their
+     * opposites.
+     */
+    protected double[] getValues(int precision) {
+        List l = new ArrayList();
+        double unit = Math.pow(10, precision);
+
+        add(l, 0);
+        add(l, Double.MIN_VALUE);
+        add(l, 1e-13);
+        add(l, 0.4 / unit);
+        add(l, 0.5 / unit);
+        add(l, 0.6 / unit);
+
+        // Decimal ties, which are rarely exact in binary.
+        int[] ks = { 0, 1, 2, 3, 12, 99, 1234, 99999, 1234567, 99999999 };
+        for (int i = 0; i < ks.length; i++) {
+            addAround(l, (ks[i] + 0.5) / unit);
+            addAround(l, (ks[i] * 10 + 5) / (unit * 10));
+        }
+
+        // Binary ties, which are exact, so DecimalFormat rounds them to
+        // the even digit.
+        for (int m = 1; m <= 24; m++) {
+            double d = 1.0 / (1 << m);
+            for (int k = 1; k < 8; k += 2) {
+                addAround(l, k * d);
+                addAround(l, 37 + k * d);
+            }
+        }
+
+        // Values whose scaled value is close to 1e15, or past the
+        // range of a long, and close to the integer limit of
+        // doubleString.
+        for (int e = 13; e <= 20; e++) {
+            double s = Math.pow(10, e);
+            addAround(l, s / unit);
+            addAround(l, (s - 0.5) / unit);
+            addAround(l, (s + 0.5) / unit);
+            addAround(l, (s / 3) / unit);
+        }
+        addAround(l, Math.pow(2, 63) / unit);
+        addAround(l, 10e7);
+        addAround(l, 10e7 - 0.5);
+
+        // Random values of all magnitudes.
+        Random rand = new Random(precision);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            int e = rand.nextInt(17) - 8;
+            add(l, rand.nextDouble() * Math.pow(10, e));
+        }
+
+        double[] values = new double[l.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ((Double)l.get(i)).doubleValue();
+        }
+        return values;
+    }
+
+    /**
+     * Adds the given value and its opposite.
+     */
+    protected void add(List l, double v) {
+        l.add(new Double(v));
+        l.add(new Double(-v));
+    }
+
+    /**
+     * Adds the given value, the doubles next to it and their opposites.
+     */
+    protected void addAround(List l, double v) {
+        add(l, v);
+        add(l, nextUp(v));
+        add(l, nextDown(v));
+    }
+
+    protected static double nextUp(double v) {
+        return Double.longBitsToDouble(Double.doubleToLongBits(v) + 1);
+    }
+
+    protected static double nextDown(double v) {
+        if (v == 0) {
+            return -Double.MIN_VALUE;
+        }
+        return Double.longBitsToDouble(Double.doubleToLongBits(v) - 1);
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.batik.svggen;
 
+import java.text.DecimalFormat;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.DOMImplementation;
 
@@ -26,7 +28,11 @@ import org.apache.batik.test.PerformanceTest;
 
 /**
  * This test checks that there is no performance degradation in the 
- * doubleString utility method.
+ * doubleString utility method. The reference operation formats the
+ * same values with the DecimalFormat the method used to rely on, and
+ * appends them to a buffer the way path data is built, so the score
+ * is the time taken by SVGGeneratorContext.appendDouble relative to
+ * that of DecimalFormat.
  *
  * @author <a href="mailto:vincent.hardy@sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -41,17 +47,70 @@ public class DoubleStringPerformanceTest extends PerformanceTest {
                                    234143,
                                    2.3333444000044e56,
                                    45.3456 };
-    public void runOp() { 
+
+    /**
+     * Coordinates, as found in path data.
+     */
+    static double[] coordinates = new double[1000];
+
+    static {
+        // A simple deterministic generator
+        long seed = 1;
+        for (int i = 0; i < coordinates.length; i++) {
+            seed = (seed * 25214903917L + 11) & ((1L << 48) - 1);
+            coordinates[i] = (float)((seed >>> 16) / 4294967296.0 * 1000 - 200);
+        }
+    }
+
+    protected SVGGeneratorContext gc;
+
+    protected StringBuffer buf = new StringBuffer(1024);
+
+    public DoubleStringPerformanceTest() {
         DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
         String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
         Document doc = impl.createDocument(svgNS, "svg", null);
-        final SVGGeneratorContext gc = new SVGGeneratorContext(doc);
+        gc = new SVGGeneratorContext(doc);
+    }
 
-        int maxLength = 0;
-        for (int i=0; i<1000; i++) {
+    protected void runRef() {
+        DecimalFormat format =
+            SVGGeneratorContext.decimalFormats[gc.getPrecision()];
+        for (int i=0; i<100; i++) {
             for (int j=0; j<testValues.length; j++) {
-                maxLength = Math.max((gc.doubleString(testValues[j])).length(), maxLength);
+                appendReference(testValues[j], format);
+            }
+            buf.setLength(0);
+            for (int j=0; j<coordinates.length; j++) {
+                appendReference(coordinates[j], format);
+                buf.append(' ');
             }
+            buf.setLength(0);
+        }
+    }
+
+    protected void runOp() { 
+        for (int i=0; i<100; i++) {
+            for (int j=0; j<testValues.length; j++) {
+                gc.appendDouble(buf, testValues[j]);
+            }
+            buf.setLength(0);
+            for (int j=0; j<coordinates.length; j++) {
+                gc.appendDouble(buf, coordinates[j]);
+                buf.append(' ');
+            }
+            buf.setLength(0);
+        }
+    }
+
+    /**
+     * Appends a value the way doubleString did with a DecimalFormat.
+     */
+    protected void appendReference(double value, DecimalFormat format) {
+        if (Math.abs(value) >= 10e7 || (int)value == value) {
+            buf.append(Integer.toString((int)value));
+        } else {
+            buf.append(format.format(value));
         }
     }
 }
@@ -0,0 +1,248 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.dom.util.DOMUtilities;
+import org.apache.batik.svggen.SVGGeneratorContext.GraphicContextDefaults;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+/**
+ * This test validates that the SVGGraphics2D generates the same result
+ * when its content is streamed with startStream and endStream as when
+ * the whole DOM tree is built and streamed afterwards.  The painters
+ * using gradients, clips and textures create definitions, which the
+ * streamed output writes last in the top level group instead of first,
+ * and groups which are written out while they are drawn: their output
+ * is compared once the definitions are moved back to the front.
+ * The streamed root element always enables the background, which the
+ * DOM mode only does when a composite reading it was used.
+ *
+ * @version $Id$
+ */
+public class StreamTest extends AbstractTest implements SVGConstants {
+    public static final Dimension CANVAS_SIZE
+        = new Dimension(300, 400);
+
+    /**
+     * The painters whose output is compared.  The first one creates no
+     * definitions, so its output must be the same without moving them.  The last one reads the
+     * background after the root is written.
+     */
+    public static final Painter[] PAINTERS = {
+        new BasicShapes(), new Gradient(), new Clip(), new Texture(),
+        new Composite()
+    };
+
+    public static final String ERROR_DIFFERENT_SVG_OUTPUT
+        = "StreamTest.error.different.svg.output";
+
+    public static final String ERROR_MISPLACED_DEFS
+        = "StreamTest.error.misplaced.defs";
+
+    public static final String ERROR_BACKGROUND_NOT_ENABLED
+        = "StreamTest.error.background.not.enabled";
+
+    public static final String ENTRY_KEY_PAINTER
+        = "StreamTest.entry.key.painter";
+
+    public static final String ENTRY_KEY_DOM_OUTPUT
+        = "StreamTest.entry.key.dom.output";
+
+    public static final String ENTRY_KEY_STREAM_OUTPUT
+        = "StreamTest.entry.key.stream.output";
+
+    /**
+     * Whether the output uses CSS style properties.
+     */
+    protected boolean useCss;
+
+    public void setUseCss(Boolean useCss) {
+        this.useCss = useCss.booleanValue();
+    }
+
+    public Boolean getUseCss() {
+        return useCss ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    public TestReport runImpl() throws Exception {
+        for (int i = 0; i < PAINTERS.length; i++) {
+            Painter painter = PAINTERS[i];
+
+            // First, build the DOM tree and stream it
+            SVGGraphics2D g2d = createGraphics();
+            painter.paint(g2d);
+
+            StringWriter swA = new StringWriter();
+            g2d.stream(swA, useCss);
+
+            // Now, stream the content while it is drawn
+            g2d = createGraphics();
+            StringWriter swB = new StringWriter();
+            g2d.startStream(swB, useCss, false);
+            painter.paint(g2d);
+            g2d.endStream();
+
+            // Compare the two output: they should be identical, once
+            // the definitions are moved to the same place and the
+            // enable-background attribute is removed from the roots
+            String a = swA.toString();
+            String b = swB.toString();
+            String name = painter.getClass().getName();
+            Document docA = parse(a);
+            Document docB = parse(b);
+            if (!removeEnableBackground(docB)) {
+                TestReport report = reportError(ERROR_BACKGROUND_NOT_ENABLED);
+                report.addDescriptionEntry(ENTRY_KEY_PAINTER, name);
+                report.addDescriptionEntry(ENTRY_KEY_STREAM_OUTPUT, b);
+                return report;
+            }
+            removeEnableBackground(docA);
+            if (i != 0 && !moveDefsFirst(docB)) {
+                TestReport report = reportError(ERROR_MISPLACED_DEFS);
+                report.addDescriptionEntry(ENTRY_KEY_PAINTER, name);
+                report.addDescriptionEntry(ENTRY_KEY_DOM_OUTPUT, a);
+                report.addDescriptionEntry(ENTRY_KEY_STREAM_OUTPUT, b);
+                return report;
+            }
+            if (!toString(docA).equals(toString(docB))) {
+                TestReport report = reportError(ERROR_DIFFERENT_SVG_OUTPUT);
+                report.addDescriptionEntry(ENTRY_KEY_PAINTER, name);
+                report.addDescriptionEntry(ENTRY_KEY_DOM_OUTPUT, a);
+                report.addDescriptionEntry(ENTRY_KEY_STREAM_OUTPUT, b);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected Document parse(String svg) throws IOException {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        return f.createDocument("http://example.org/stream.svg",
+                                new StringReader(svg));
+    }
+
+    /**
+     * Removes the enable-background attribute of the root element, or
+     * its declaration in the style attribute when CSS is used.
+     * @return false if it was not set to 'new'.
+     */
+    protected boolean removeEnableBackground(Document doc) {
+        Element svg = doc.getDocumentElement();
+        if (!useCss) {
+            String value = svg.getAttributeNS
+                (null, SVG_ENABLE_BACKGROUND_ATTRIBUTE);
+            svg.removeAttributeNS(null, SVG_ENABLE_BACKGROUND_ATTRIBUTE);
+            return SVG_NEW_VALUE.equals(value);
+        }
+        String style = svg.getAttributeNS(null, SVG_STYLE_ATTRIBUTE);
+        String decl = SVG_ENABLE_BACKGROUND_ATTRIBUTE + ":" + SVG_NEW_VALUE
+            + "; ";
+        int i = (style + " ").indexOf(decl);
+        if (i == -1)
+            return false;
+        style = (style.substring(0, i)
+                 + style.substring(Math.min(i + decl.length(),
+                                            style.length()))).trim();
+        if (style.length() == 0) {
+            svg.removeAttributeNS(null, SVG_STYLE_ATTRIBUTE);
+        } else {
+            svg.setAttributeNS(null, SVG_STYLE_ATTRIBUTE, style);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the definitions written last in the top level group of the
+     * streamed output to its front, where the DOM mode puts them.
+     * @return false if the top level group does not end with them.
+     */
+    protected boolean moveDefsFirst(Document doc) {
+        Element group = lastElement(doc.getDocumentElement());
+        if (group == null)
+            return false;
+        Element defs = lastElement(group);
+        if (defs == null || !SVG_DEFS_TAG.equals(defs.getLocalName()))
+            return false;
+        group.insertBefore(defs, group.getFirstChild());
+        return true;
+    }
+
+    protected Element lastElement(Node n) {
+        Node c = n.getLastChild();
+        while (c != null && c.getNodeType() != Node.ELEMENT_NODE)
+            c = c.getPreviousSibling();
+        return (Element)c;
+    }
+
+    /**
+     * Serializes the given document without the white space the
+     * indentation of the output added.
+     */
+    protected String toString(Document doc) throws IOException {
+        removeWhiteSpace(doc.getDocumentElement());
+        StringWriter sw = new StringWriter();
+        DOMUtilities.writeDocument(doc, sw);
+        return sw.toString();
+    }
+
+    protected void removeWhiteSpace(Node n) {
+        Node c = n.getFirstChild();
+        while (c != null) {
+            Node next = c.getNextSibling();
+            if (c.getNodeType() == Node.TEXT_NODE &&
+                c.getNodeValue().trim().length() == 0) {
+                n.removeChild(c);
+            } else {
+                removeWhiteSpace(c);
+            }
+            c = next;
+        }
+    }
+
+    protected SVGGraphics2D createGraphics() {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        String namespaceURI = SVGConstants.SVG_NAMESPACE_URI;
+        Document domFactory = impl.createDocument(namespaceURI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        GraphicContextDefaults defaults
+            = new GraphicContextDefaults();
+        defaults.font = new Font("Arial", Font.PLAIN, 12);
+        ctx.setGraphicContextDefaults(defaults);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        g2d.setSVGCanvasSize(CANVAS_SIZE);
+        return g2d;
+    }
+}
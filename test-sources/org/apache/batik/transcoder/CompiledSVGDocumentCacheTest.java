@@ -0,0 +1,120 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.io.File;
+
+import org.apache.batik.test.AbstractTest;
+
+/**
+ * Checks that a CompiledSVGDocumentCache compiles a document once when
+ * several threads ask for it at once, compiles it again when its stamp
+ * changes, and keeps nothing for a document which fails to compile.
+ *
+ * @version $Id$
+ */
+public class CompiledSVGDocumentCacheTest extends AbstractTest {
+
+    public static final String FILE = "samples/batikLogo.svg";
+
+    public static final String MISSING_FILE = "samples/doesNotExist.svg";
+
+    public static final int THREADS = 4;
+
+    /**
+     * How long a compilation lasts at least, in milliseconds, so that
+     * the threads ask for the document while it is being compiled.
+     */
+    public static final long COMPILE_TIME = 300;
+
+    protected int compilations;
+
+    public boolean runImplBasic() throws Exception {
+        CompiledSVGDocumentTest.BufferedImageTranscoder compiler =
+            new CompiledSVGDocumentTest.BufferedImageTranscoder(0) {
+                public CompiledSVGDocument compile(TranscoderInput input)
+                        throws TranscoderException {
+                    compilations++;
+                    try {
+                        Thread.sleep(COMPILE_TIME);
+                    } catch (InterruptedException ie) {
+                    }
+                    return super.compile(input);
+                }
+            };
+        CompiledSVGDocumentCache cache =
+            new CompiledSVGDocumentCache(compiler, 4);
+
+        String uri = new File(FILE).toURL().toString();
+        CompiledSVGDocument[] docs = getDocuments(cache, uri, 1);
+        assertEquals(new Integer(1), new Integer(compilations));
+        for (int i = 0; i < docs.length; i++) {
+            assertTrue(docs[i] != null);
+            assertTrue(docs[i] == docs[0]);
+        }
+        assertTrue(cache.getDocument(uri, 1) == docs[0]);
+        assertEquals(new Integer(1), new Integer(cache.size()));
+
+        CompiledSVGDocument[] docs2 = getDocuments(cache, uri, 2);
+        assertEquals(new Integer(2), new Integer(compilations));
+        for (int i = 0; i < docs2.length; i++) {
+            assertTrue(docs2[i] == docs2[0]);
+        }
+        assertTrue(docs2[0] != docs[0]);
+        assertEquals(new Integer(1), new Integer(cache.size()));
+
+        String missing = new File(MISSING_FILE).toURL().toString();
+        try {
+            cache.getDocument(missing, 1);
+            assertTrue(false);
+        } catch (TranscoderException e) {
+        }
+        assertEquals(new Integer(1), new Integer(cache.size()));
+
+        cache.clear();
+        assertEquals(new Integer(0), new Integer(cache.size()));
+        return true;
+    }
+
+    /**
+     * Asks for a document from several threads at once.
+     */
+    protected CompiledSVGDocument[] getDocuments
+            (final CompiledSVGDocumentCache cache,
+             final String uri, final long stamp) throws Exception {
+        final CompiledSVGDocument[] docs = new CompiledSVGDocument[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            docs[n] = cache.getDocument(uri, stamp);
+                        } catch (TranscoderException e) {
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+
+/**
+ * Checks that a document compiled once and transcoded by several
+ * threads at once, each one at its own size, gives the images a
+ * regular transcoding of the document gives at these sizes.  The
+ * threads paint the same tree with different transforms, so the
+ * renderings cached by its nodes are replaced on each paint.
+ *
+ * <p>A compiled document is painted with the view transform set on
+ * the renderer rather than on the canvas node, so at some sizes a few
+ * edges, mostly on the border of the image, are antialiased
+ * differently (see {@link CompiledSVGDocument}).  The widths used here
+ * are ones at which the test documents give the same pixels both
+ * ways.</p>
+ *
+ * @version $Id$
+ */
+public class CompiledSVGDocumentTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "CompiledSVGDocumentTest.error.different.pixels";
+
+    public static final String ERROR_THREAD_FAILED
+        = "CompiledSVGDocumentTest.error.thread.failed";
+
+    public static final String ENTRY_KEY_WIDTH
+        = "CompiledSVGDocumentTest.entry.key.width";
+
+    public static final String ENTRY_KEY_PIXEL
+        = "CompiledSVGDocumentTest.entry.key.pixel";
+
+    public static final String ENTRY_KEY_EXCEPTION
+        = "CompiledSVGDocumentTest.entry.key.exception";
+
+    /**
+     * The widths of the images, one per thread.
+     */
+    public static final float[] WIDTHS = { 97, 211, 300, 437 };
+
+    /**
+     * The number of times each thread transcodes the document.
+     */
+    public static final int ROUNDS = 3;
+
+    protected String file;
+
+    /**
+     * @param file the document to transcode
+     */
+    public CompiledSVGDocumentTest(String file) {
+        this.file = file;
+    }
+
+    public String getName() {
+        return file;
+    }
+
+    public TestReport runImpl() throws Exception {
+        String uri = new File(file).toURL().toString();
+
+        BufferedImage[] expected = new BufferedImage[WIDTHS.length];
+        for (int i = 0; i < WIDTHS.length; i++) {
+            BufferedImageTranscoder t = new BufferedImageTranscoder(WIDTHS[i]);
+            t.transcode(new TranscoderInput(uri), null);
+            expected[i] = t.image;
+        }
+
+        final CompiledSVGDocument doc =
+            new BufferedImageTranscoder(0).compile(new TranscoderInput(uri));
+        final BufferedImage[][] images =
+            new BufferedImage[WIDTHS.length][ROUNDS];
+        final Exception[] errors = new Exception[WIDTHS.length];
+        Thread[] threads = new Thread[WIDTHS.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int j = 0; j < ROUNDS; j++) {
+                                BufferedImageTranscoder t =
+                                    new BufferedImageTranscoder(WIDTHS[n]);
+                                t.transcode(doc, null);
+                                images[n][j] = t.image;
+                            }
+                        } catch (Exception e) {
+                            errors[n] = e;
+                        }
+                    }
+                };
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        for (int i = 0; i < WIDTHS.length; i++) {
+            if (errors[i] != null) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode(ERROR_THREAD_FAILED);
+                report.addDescriptionEntry(ENTRY_KEY_WIDTH, "" + WIDTHS[i]);
+                report.addDescriptionEntry(ENTRY_KEY_EXCEPTION,
+                                           errors[i].toString());
+                report.setPassed(false);
+                return report;
+            }
+            for (int j = 0; j < ROUNDS; j++) {
+                TestReport r = compare(WIDTHS[i], expected[i], images[i][j]);
+                if (r != null)
+                    return r;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Compares two images, returning a failure report if they differ.
+     */
+    protected TestReport compare(float width,
+                                 BufferedImage expected,
+                                 BufferedImage image) {
+        int w = expected.getWidth();
+        int h = expected.getHeight();
+        String pixel = null;
+        if (image == null
+            || image.getWidth() != w || image.getHeight() != h) {
+            pixel = "size";
+        } else {
+            for (int y = 0; y < h && pixel == null; y++) {
+                for (int x = 0; x < w; x++) {
+                    if (expected.getRGB(x, y) != image.getRGB(x, y)) {
+                        pixel = "(" + x + ", " + y + ")";
+                        break;
+                    }
+                }
+            }
+        }
+        if (pixel == null)
+            return null;
+
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_DIFFERENT_PIXELS);
+        report.addDescriptionEntry(ENTRY_KEY_WIDTH, "" + width);
+        report.addDescriptionEntry(ENTRY_KEY_PIXEL, pixel);
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * A transcoder which keeps the image it renders.
+     */
+    protected static class BufferedImageTranscoder extends ImageTranscoder {
+        protected BufferedImage image;
+
+        /**
+         * @param width the width of the image, or 0 for the document one
+         */
+        public BufferedImageTranscoder(float width) {
+            if (width > 0) {
+                addTranscodingHint(KEY_WIDTH, new Float(width));
+            }
+        }
+
+        public BufferedImage createImage(int w, int h) {
+            return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        public void writeImage(BufferedImage img, TranscoderOutput output) {
+            image = img;
+        }
+    }
+}
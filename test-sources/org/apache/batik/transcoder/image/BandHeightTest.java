@@ -0,0 +1,216 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.batik.ext.awt.image.codec.png.PNGDecodeParam;
+import org.apache.batik.ext.awt.image.codec.png.PNGImageDecoder;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Checks that a PNG or TIFF image rendered band by band (see
+ * <code>ImageTranscoder.KEY_BAND_HEIGHT</code>) matches the image
+ * rendered at once, within the difference allowed on antialiased
+ * edges, and that each band is rendered once.  For PNG, the bands are
+ * also written with several compression threads, which must give the
+ * same pixels and the same number of band renderings.
+ *
+ * @version $Id$
+ */
+public class BandHeightTest extends AbstractTest {
+    public static final String ERROR_DIFFERENT_PIXELS
+        = "BandHeightTest.error.different.pixels";
+
+    public static final String ERROR_BANDS_RENDERED_AGAIN
+        = "BandHeightTest.error.bands.rendered.again";
+
+    public static final String ENTRY_KEY_PIXEL
+        = "BandHeightTest.entry.key.pixel";
+
+    public static final String ENTRY_KEY_RENDERINGS
+        = "BandHeightTest.entry.key.renderings";
+
+    public static final String ENTRY_KEY_NOT_SUPPORTED
+        = "BandHeightTest.entry.key.not.supported";
+
+    public static final float WIDTH = 450;
+
+    /**
+     * The band height, which does not divide the image height.
+     */
+    public static final int BAND_HEIGHT = 37;
+
+    /**
+     * The largest difference allowed in each sample between the banded
+     * and the whole rendering, as documented for KEY_BAND_HEIGHT.
+     */
+    public static final int MAX_DIFFERENCE = 8;
+
+    public static final int COMPRESSION_THREADS = 3;
+
+    protected String file;
+    protected String format;
+
+    /**
+     * The number of bands painted by the last transcoding.
+     */
+    protected int renderings;
+
+    /**
+     * @param file the document to transcode
+     * @param format "png" or "tiff"
+     */
+    public BandHeightTest(String file, String format) {
+        this.file = file;
+        this.format = format;
+    }
+
+    public String getName() {
+        return file + " (" + format + ")";
+    }
+
+    public TestReport runImpl() throws Exception {
+        if (!createTranscoder(1).canWriteBands()) {
+            // The TIFF codec is only built with the Sun codecs.
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.addDescriptionEntry(ENTRY_KEY_NOT_SUPPORTED, format);
+            report.setPassed(true);
+            return report;
+        }
+
+        Raster whole = decode(transcode(null, 1));
+        Raster banded = decode(transcode(new Integer(BAND_HEIGHT), 1));
+        int expected = (whole.getHeight() + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (renderings != expected)
+            return reportRenderings(expected);
+
+        TestReport r = compare(whole, banded, MAX_DIFFERENCE);
+        if (r != null)
+            return r;
+
+        if ("png".equals(format)) {
+            Raster threaded = decode(transcode(new Integer(BAND_HEIGHT),
+                                               COMPRESSION_THREADS));
+            if (renderings != expected)
+                return reportRenderings(expected);
+            r = compare(banded, threaded, 0);
+            if (r != null)
+                return r;
+        }
+        return reportSuccess();
+    }
+
+    protected byte[] transcode(Integer bandHeight, int threads)
+        throws Exception {
+        renderings = 0;
+        ImageTranscoder t = createTranscoder(threads);
+        t.addTranscodingHint(ImageTranscoder.KEY_WIDTH, new Float(WIDTH));
+        if (bandHeight != null)
+            t.addTranscodingHint(ImageTranscoder.KEY_BAND_HEIGHT, bandHeight);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        String uri = new File(file).toURL().toString();
+        t.transcode(new TranscoderInput(uri), new TranscoderOutput(bos));
+        return bos.toByteArray();
+    }
+
+    /**
+     * Creates a transcoder for the format, counting the bands painted.
+     */
+    protected ImageTranscoder createTranscoder(int threads) {
+        ImageTranscoder t;
+        if ("png".equals(format)) {
+            t = new PNGTranscoder() {
+                    protected void paintBand(BufferedImage band,
+                                             BufferedImage rend) {
+                        renderings++;
+                        super.paintBand(band, rend);
+                    }
+                };
+            if (threads > 1)
+                t.addTranscodingHint(PNGTranscoder.KEY_COMPRESSION_THREADS,
+                                     new Integer(threads));
+        } else {
+            t = new TIFFTranscoder() {
+                    protected void paintBand(BufferedImage band,
+                                             BufferedImage rend) {
+                        renderings++;
+                        super.paintBand(band, rend);
+                    }
+                };
+        }
+        return t;
+    }
+
+    protected Raster decode(byte[] data) throws Exception {
+        ByteArrayInputStream is = new ByteArrayInputStream(data);
+        if ("png".equals(format)) {
+            return new PNGImageDecoder(is, new PNGDecodeParam())
+                .decodeAsRenderedImage(0).getData();
+        }
+        return ImageTagRegistry.getRegistry().readStream(is)
+            .createDefaultRendering().getData();
+    }
+
+    /**
+     * Compares the samples of two images, returning a failure report
+     * if two samples differ by more than the given amount.
+     */
+    protected TestReport compare(Raster r1, Raster r2, int maxDifference) {
+        int w = r1.getWidth();
+        int h = r1.getHeight();
+        int[] row1 = null;
+        int[] row2 = null;
+        for (int y = 0; y < h; y++) {
+            row1 = r1.getPixels(0, y, w, 1, row1);
+            row2 = r2.getPixels(0, y, w, 1, row2);
+            for (int i = 0; i < row1.length; i++) {
+                if (Math.abs(row1[i] - row2[i]) > maxDifference) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode(ERROR_DIFFERENT_PIXELS);
+                    report.addDescriptionEntry
+                        (ENTRY_KEY_PIXEL,
+                         "(" + (i / r1.getNumBands()) + ", " + y + ")");
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        }
+        return null;
+    }
+
+    protected TestReport reportRenderings(int expected) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_BANDS_RENDERED_AGAIN);
+        report.addDescriptionEntry(ENTRY_KEY_RENDERINGS,
+                                   renderings + " / " + expected);
+        report.setPassed(false);
+        return report;
+    }
+}
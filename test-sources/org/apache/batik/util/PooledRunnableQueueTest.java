@@ -0,0 +1,257 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the queues of a RunnableQueuePool keep the behavior of
+ * regular RunnableQueues: ordering, suspension, invokeAndWait between
+ * queues, halting and idle runnables.  A queue run by another thread
+ * than the pool's must still run its runnables one at a time.
+ *
+ * @version $Id$
+ */
+public class PooledRunnableQueueTest extends AbstractTest {
+    public static final String ERROR_WRONG_ORDER
+        = "PooledRunnableQueueTest.error.wrong.order";
+
+    public static final String ERROR_TOO_MANY_THREADS
+        = "PooledRunnableQueueTest.error.too.many.threads";
+
+    public static final String ERROR_RAN_WHILE_SUSPENDED
+        = "PooledRunnableQueueTest.error.ran.while.suspended";
+
+    public static final String ERROR_NESTED_WAIT
+        = "PooledRunnableQueueTest.error.nested.wait";
+
+    public static final String ERROR_NOT_HALTED
+        = "PooledRunnableQueueTest.error.not.halted";
+
+    public static final String ERROR_IDLE_NOT_RUN
+        = "PooledRunnableQueueTest.error.idle.not.run";
+
+    public static final String ERROR_CONCURRENT_RUN
+        = "PooledRunnableQueueTest.error.concurrent.run";
+
+    public static final int NUM_THREADS = 2;
+    public static final int NUM_QUEUES = 40;
+    public static final int NUM_RUNNABLES = 200;
+
+    protected int active;
+    protected int maxActive;
+
+    public TestReport runImpl() throws Exception {
+        RunnableQueuePool pool = new RunnableQueuePool(NUM_THREADS, "Test");
+        try {
+            String error = checkOrder(pool);
+            if (error == null) error = checkSuspension(pool);
+            if (error == null) error = checkNestedWait();
+            if (error == null) error = checkHalt(pool);
+            if (error == null) error = checkIdleRunnable(pool);
+            if (error == null) error = checkOwnerRun(pool);
+            if (error != null)
+                return reportError(error);
+        } finally {
+            pool.dispose();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Runs runnables on many queues: each queue must run its own in
+     * order, and no more than NUM_THREADS at once.
+     */
+    protected String checkOrder(RunnableQueuePool pool) throws Exception {
+        RunnableQueue [] queues = new RunnableQueue[NUM_QUEUES];
+        final int [] next = new int[NUM_QUEUES];
+        final boolean [] ordered = { true };
+        for (int i = 0; i < NUM_QUEUES; i++) {
+            queues[i] = pool.createRunnableQueue();
+            queues[i].resumeExecution();
+        }
+        for (int j = 0; j < NUM_RUNNABLES; j++) {
+            for (int i = 0; i < NUM_QUEUES; i++) {
+                final int q = i, n = j;
+                queues[i].invokeLater(new Runnable() {
+                        public void run() {
+                            synchronized (PooledRunnableQueueTest.this) {
+                                maxActive = Math.max(maxActive, ++active);
+                            }
+                            if (next[q]++ != n)
+                                ordered[0] = false;
+                            Thread.yield();
+                            synchronized (PooledRunnableQueueTest.this) {
+                                active--;
+                            }
+                        }
+                    });
+            }
+        }
+        for (int i = 0; i < NUM_QUEUES; i++) {
+            queues[i].invokeAndWait(new Runnable() { public void run() { } });
+            if (next[i] != NUM_RUNNABLES)
+                ordered[0] = false;
+            queues[i].getThread().halt();
+            queues[i].invokeLater(new Runnable() { public void run() { } });
+        }
+        if (!ordered[0])
+            return ERROR_WRONG_ORDER;
+        if (maxActive > NUM_THREADS)
+            return ERROR_TOO_MANY_THREADS;
+        return null;
+    }
+
+    /**
+     * A suspended queue must not run runnables until resumed.
+     */
+    protected String checkSuspension(RunnableQueuePool pool)
+        throws Exception {
+        RunnableQueue rq = pool.createRunnableQueue();
+        rq.resumeExecution();
+        rq.suspendExecution(true);
+        final boolean [] ran = { false };
+        rq.invokeLater(new Runnable() {
+                public void run() { ran[0] = true; }
+            });
+        Thread.sleep(50);
+        if (ran[0] || rq.getQueueState() != RunnableQueue.SUSPENDED)
+            return ERROR_RAN_WHILE_SUSPENDED;
+        rq.resumeExecution();
+        rq.invokeAndWait(new Runnable() { public void run() { } });
+        rq.getThread().halt();
+        rq.invokeLater(new Runnable() { public void run() { } });
+        return ran[0] ? null : ERROR_RAN_WHILE_SUSPENDED;
+    }
+
+    /**
+     * A queue of a one thread pool waiting for another queue of the
+     * same pool must not dead lock.
+     */
+    protected String checkNestedWait() throws Exception {
+        RunnableQueuePool pool = new RunnableQueuePool(1, "Nested");
+        final RunnableQueue rq1 = pool.createRunnableQueue();
+        final RunnableQueue rq2 = pool.createRunnableQueue();
+        rq1.resumeExecution();
+        rq2.resumeExecution();
+        final boolean [] ran = { false };
+        rq1.invokeAndWait(new Runnable() {
+                public void run() {
+                    try {
+                        rq2.invokeAndWait(new Runnable() {
+                                public void run() { ran[0] = true; }
+                            });
+                    } catch (InterruptedException ie) {
+                    }
+                }
+            });
+        pool.dispose();
+        return ran[0] ? null : ERROR_NESTED_WAIT;
+    }
+
+    /**
+     * Halting the thread of a queue from one of its runnables stops the
+     * queue.
+     */
+    protected String checkHalt(RunnableQueuePool pool) throws Exception {
+        final RunnableQueue rq = pool.createRunnableQueue();
+        rq.resumeExecution();
+        rq.invokeLater(new Runnable() {
+                public void run() {
+                    rq.getThread().halt();
+                }
+            });
+        for (int i = 0; i < 100 && rq.getThread() != null; i++) {
+            Thread.sleep(10);
+        }
+        try {
+            rq.invokeLater(new Runnable() { public void run() { } });
+        } catch (IllegalStateException ise) {
+            return null;
+        }
+        return ERROR_NOT_HALTED;
+    }
+
+    /**
+     * The idle runnable of an empty queue is run when it is due.
+     */
+    protected String checkIdleRunnable(RunnableQueuePool pool)
+        throws Exception {
+        RunnableQueue rq = pool.createRunnableQueue();
+        rq.resumeExecution();
+        final int [] count = { 0 };
+        rq.setIdleRunnable(new RunnableQueue.IdleRunnable() {
+                long next = System.currentTimeMillis() + 20;
+                public long getWaitTime() {
+                    return next;
+                }
+                public void run() {
+                    count[0]++;
+                    next = System.currentTimeMillis() + 20;
+                }
+            });
+        Thread.sleep(200);
+        rq.getThread().halt();
+        rq.invokeLater(new Runnable() { public void run() { } });
+        return count[0] > 2 ? null : ERROR_IDLE_NOT_RUN;
+    }
+
+    /**
+     * Runs a queue from another thread while the pool runs it: its
+     * runnables must still run in order, one at a time.
+     */
+    protected String checkOwnerRun(RunnableQueuePool pool) throws Exception {
+        final RunnableQueue rq = pool.createRunnableQueue();
+        rq.resumeExecution();
+        final int [] state = { 0, 0 }; // next runnable, running runnables
+        final boolean [] ok = { true };
+        for (int j = 0; j < NUM_RUNNABLES; j++) {
+            final int n = j;
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        synchronized (state) {
+                            if (++state[1] != 1 || state[0]++ != n)
+                                ok[0] = false;
+                        }
+                        Thread.yield();
+                        synchronized (state) {
+                            state[1]--;
+                        }
+                    }
+                });
+        }
+        HaltingThread t = new HaltingThread() {
+                public void run() {
+                    for (int i = 0; i < NUM_RUNNABLES; i++) {
+                        rq.run();
+                        Thread.yield();
+                    }
+                }
+            };
+        t.start();
+        t.join();
+        rq.invokeAndWait(new Runnable() { public void run() { } });
+        rq.getThread().halt();
+        rq.invokeLater(new Runnable() { public void run() { } });
+        if (!ok[0] || state[0] != NUM_RUNNABLES)
+            return ERROR_CONCURRENT_RUN;
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that WorkerPool.invokeAll runs every task, rethrows task
+ * exceptions, and, when the caller is interrupted, halts the running
+ * tasks but only returns once they have all stopped.  Checks too that
+ * invokeBands runs its task once on every line.
+ *
+ * @version $Id$
+ */
+public class WorkerPoolTest extends AbstractTest {
+    public static final String ERROR_TASK_NOT_RUN
+        = "WorkerPoolTest.error.task.not.run";
+
+    public static final String ERROR_EXCEPTION_LOST
+        = "WorkerPoolTest.error.exception.lost";
+
+    public static final String ERROR_RETURNED_EARLY
+        = "WorkerPoolTest.error.returned.early";
+
+    public static final String ERROR_INTERRUPT_LOST
+        = "WorkerPoolTest.error.interrupt.lost";
+
+    public static final String ERROR_BAD_BANDS
+        = "WorkerPoolTest.error.bad.bands";
+
+    public static final int NUM_THREADS = 3;
+    public static final int NUM_TASKS = 50;
+
+    /**
+     * How long (in milliseconds) a halted task keeps writing before it
+     * actually stops.
+     */
+    public static final long STOP_DELAY = 200;
+
+    protected int finished;
+
+    public TestReport runImpl() throws Exception {
+        WorkerPool pool = new WorkerPool(NUM_THREADS, "WorkerPoolTest");
+        try {
+            String error = checkAllRun(pool);
+            if (error == null) error = checkBands(pool);
+            if (error == null) error = checkException(pool);
+            if (error == null) error = checkInterrupt(pool);
+            if (error != null)
+                return reportError(error);
+        } finally {
+            pool.dispose();
+        }
+        return reportSuccess();
+    }
+
+    protected String checkAllRun(WorkerPool pool) {
+        final int [] ran = new int[NUM_TASKS];
+        Runnable [] tasks = new Runnable[NUM_TASKS];
+        for (int i = 0; i < NUM_TASKS; i++) {
+            final int idx = i;
+            tasks[i] = new Runnable() {
+                    public void run() { ran[idx]++; }
+                };
+        }
+        pool.invokeAll(tasks);
+        for (int i = 0; i < NUM_TASKS; i++) {
+            if (ran[i] != 1)
+                return ERROR_TASK_NOT_RUN;
+        }
+        return null;
+    }
+
+    /**
+     * Splits lines 5 to 5+len in 1 to 6 bands, for lengths shorter and
+     * longer than the number of bands, and checks every line is in a
+     * single non empty band and that there are as many bands as asked,
+     * up to one per line.
+     */
+    protected String checkBands(WorkerPool pool) {
+        for (int len = 0; len < 20; len++) {
+            for (int numBands = 1; numBands <= 6; numBands++) {
+                final int [] ran = new int[len];
+                final int [] bands = new int[1];
+                pool.invokeBands(5, 5 + len, numBands,
+                                 new WorkerPool.BandTask() {
+                                     public void run(int start, int end) {
+                                         synchronized (bands) {
+                                             if (end > start)
+                                                 bands[0]++;
+                                         }
+                                         for (int i = start; i < end; i++)
+                                             ran[i - 5]++;
+                                     }
+                                 });
+                for (int i = 0; i < len; i++) {
+                    if (ran[i] != 1)
+                        return ERROR_BAD_BANDS;
+                }
+                if (bands[0] != Math.min(numBands, len))
+                    return ERROR_BAD_BANDS;
+            }
+        }
+        return null;
+    }
+
+    protected String checkException(WorkerPool pool) {
+        Runnable [] tasks = new Runnable[NUM_TASKS];
+        for (int i = 0; i < NUM_TASKS; i++) {
+            final int idx = i;
+            tasks[i] = new Runnable() {
+                    public void run() {
+                        if (idx == NUM_TASKS / 2)
+                            throw new IllegalStateException("task");
+                    }
+                };
+        }
+        try {
+            pool.invokeAll(tasks);
+        } catch (IllegalStateException ise) {
+            return null;
+        }
+        return ERROR_EXCEPTION_LOST;
+    }
+
+    /**
+     * Runs one task per thread, each of which loops until halted (or,
+     * for the one run by the caller, interrupted) and then keeps busy
+     * for STOP_DELAY before finishing.  The caller is interrupted while
+     * the tasks are looping.
+     */
+    protected String checkInterrupt(WorkerPool pool) throws Exception {
+        finished = 0;
+        int n = pool.getParallelism();
+        Runnable [] tasks = new Runnable[n];
+        for (int i = 0; i < n; i++) {
+            tasks[i] = new Runnable() {
+                    public void run() {
+                        long end = System.currentTimeMillis() + 10000;
+                        Thread t = Thread.currentThread();
+                        while (!HaltingThread.hasBeenHalted()
+                               && !t.isInterrupted()
+                               && (System.currentTimeMillis() < end)) {
+                            Thread.yield();
+                        }
+                        end = System.currentTimeMillis() + STOP_DELAY;
+                        while (System.currentTimeMillis() < end) {
+                            Thread.yield();
+                        }
+                        synchronized (WorkerPoolTest.this) {
+                            finished++;
+                        }
+                    }
+                };
+        }
+
+        final Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread() {
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ie) {
+                    }
+                    caller.interrupt();
+                }
+            };
+        interrupter.start();
+        pool.invokeAll(tasks);
+        int done;
+        synchronized (this) {
+            done = finished;
+        }
+        boolean interrupted = Thread.interrupted();
+        interrupter.join();
+
+        if (done != n)
+            return ERROR_RETURNED_EARLY;
+        if (!interrupted)
+            return ERROR_INTERRUPT_LOST;
+        return null;
+    }
+}